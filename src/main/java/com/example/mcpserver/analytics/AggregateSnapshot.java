@@ -0,0 +1,83 @@
+package com.example.mcpserver.analytics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A file holding the {@link DailyAggregates}, {@link DailySketches} and {@link DeclineSpikeDetector}
+ * state built from a set of sources, so that a restart loads them in one sequential read instead of
+ * replaying the sources' transactions. Like the {@link RollupCube}, the file records the sources it was
+ * built from and is only loaded while they are unchanged.
+ */
+public final class AggregateSnapshot {
+
+    private static final int MAGIC = 0x54584147; // "TXAG"
+    private static final int VERSION = 1;
+
+    private AggregateSnapshot() {
+    }
+
+    /**
+     * Writes the structures to a file, replacing it atomically. Events must not be added meanwhile.
+     *
+     * @param path The file to write
+     * @param sources Descriptions of the sources the structures were built from
+     * @throws IOException If the file can't be written
+     */
+    public static void save(Path path, List<String> sources, DailyAggregates aggregates, DailySketches sketches,
+                            DeclineSpikeDetector spikes) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sources.size());
+            for (String source : sources) {
+                out.writeUTF(source);
+            }
+            aggregates.writeTo(out);
+            sketches.writeTo(out);
+            spikes.writeTo(out);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a file written by {@link #save} into empty structures if it was built from exactly the given sources
+     *
+     * @param path The file to read
+     * @param sources Descriptions of the sources as they are now
+     * @return Whether the file was loaded; if not, the structures are untouched
+     * @throws IOException If the file can't be read or is not a snapshot; the structures may then hold
+     *                     part of it and should be discarded
+     */
+    public static boolean load(Path path, List<String> sources, DailyAggregates aggregates, DailySketches sketches,
+                               DeclineSpikeDetector spikes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an aggregate snapshot: " + path);
+            }
+            List<String> saved = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                saved.add(in.readUTF());
+            }
+            if (!saved.equals(sources)) {
+                return false;
+            }
+            aggregates.readFrom(in);
+            sketches.readFrom(in);
+            spikes.readFrom(in);
+            if (in.read() != -1) {
+                throw new IOException("Corrupt aggregate snapshot: " + path);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.mcpserver.analytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Quantile sketch of transaction amounts with a relative error guarantee, after DDSketch: amounts
+ * are counted in logarithmic buckets whose bounds grow by a factor of (1 + a) / (1 - a), so any
+ * quantile is estimated within {@link #RELATIVE_ACCURACY} a of the true amount, whatever the
+ * distribution.
+ *
+ * At most {@link #MAX_BUCKETS} buckets are kept, covering amounts across a range of about four orders
+ * of magnitude, e.g. 0.50 to 10,000; when amounts spread wider the lowest buckets are folded together,
+ * which only affects the accuracy of the lowest quantiles. Amounts of zero or less share a bucket of
+ * their own. Sketches merge by adding bucket counts, so a merged sketch is exactly the sketch of all
+ * the amounts, and the minimum, maximum and mean are tracked exactly.
+ *
+ * Not thread-safe; callers serialize access.
+ */
+public final class AmountSketch {
+
+    public static final double RELATIVE_ACCURACY = 0.01;
+    public static final int MAX_BUCKETS = 512;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    // Count of the bucket with index offset + i at position i, allocated on the first positive amount
+    private int[] counts;
+    private int offset;
+    private long zeroCount;
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Adds an amount; NaN and infinite amounts are ignored
+     */
+    public void add(double amount) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            return;
+        }
+        count++;
+        sum += amount;
+        min = Math.min(min, amount);
+        max = Math.max(max, amount);
+        if (amount <= 0) {
+            zeroCount++;
+        } else {
+            addToBucket((int) Math.ceil(Math.log(amount) / LOG_GAMMA), 1);
+        }
+    }
+
+    private void addToBucket(int index, int increment) {
+        if (counts == null) {
+            counts = new int[16];
+            offset = index - counts.length / 2;
+        }
+        int top = offset + counts.length - 1;
+        if (index > top) {
+            int length = Math.min(MAX_BUCKETS, Math.max(counts.length * 2, index - offset + 1));
+            resize(Math.max(offset, index - length + 1), length);
+        } else if (index < offset) {
+            int length = Math.min(MAX_BUCKETS, Math.max(counts.length * 2, top - index + 1));
+            resize(top - length + 1, length);
+        }
+        // An index below the buckets kept is counted in the lowest bucket
+        counts[Math.max(index, offset) - offset] += increment;
+    }
+
+    /**
+     * Moves the counts into buckets starting at a new index, folding any below it into the lowest
+     */
+    private void resize(int newOffset, int length) {
+        int[] resized = new int[length];
+        for (int i = 0; i < counts.length; i++) {
+            resized[Math.max(offset + i, newOffset) - newOffset] += counts[i];
+        }
+        counts = resized;
+        offset = newOffset;
+    }
+
+    /**
+     * Adds the amounts counted by another sketch to this one
+     *
+     * @param other The sketch to merge; it is not changed
+     */
+    public void merge(AmountSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        zeroCount += other.zeroCount;
+        if (other.counts != null) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    addToBucket(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The mean amount, or NaN if the sketch is empty
+     */
+    public double getMean() {
+        return count > 0 ? sum / count : Double.NaN;
+    }
+
+    public double getMin() {
+        return count > 0 ? min : Double.NaN;
+    }
+
+    public double getMax() {
+        return count > 0 ? max : Double.NaN;
+    }
+
+    /**
+     * @param quantile The quantile, from 0 to 1
+     * @return The estimated amount at the quantile, or NaN if the sketch is empty
+     */
+    public double quantile(double quantile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.floor(quantile * (count - 1));
+        double value;
+        if (rank < zeroCount) {
+            value = 0;
+        } else {
+            long seen = zeroCount;
+            int i = 0;
+            while (i < counts.length - 1 && seen + counts[i] <= rank) {
+                seen += counts[i];
+                i++;
+            }
+            // The bucket with index k holds amounts in (gamma^(k-1), gamma^k]
+            value = 2 * Math.pow(GAMMA, offset + i) / (GAMMA + 1);
+        }
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * @return The approximate heap used by the buckets in bytes
+     */
+    public long memoryBytes() {
+        return counts != null ? (long) counts.length * Integer.BYTES : 0;
+    }
+
+    /**
+     * Writes the counts, for {@link #readFrom} to restore
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(count);
+        if (count == 0) {
+            return;
+        }
+        out.writeDouble(sum);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeLong(zeroCount);
+        out.writeShort(counts != null ? counts.length : 0);
+        if (counts != null) {
+            out.writeInt(offset);
+            for (int bucket : counts) {
+                out.writeInt(bucket);
+            }
+        }
+    }
+
+    /**
+     * Restores counts written by {@link #writeTo} into an empty sketch
+     *
+     * @throws IOException If they can't be read or are not valid
+     */
+    void readFrom(DataInput in) throws IOException {
+        count = in.readLong();
+        if (count == 0) {
+            return;
+        }
+        sum = in.readDouble();
+        min = in.readDouble();
+        max = in.readDouble();
+        zeroCount = in.readLong();
+        int length = in.readShort();
+        if (count < 0 || length < 0 || length > MAX_BUCKETS) {
+            throw new IOException("Corrupt amount sketch");
+        }
+        if (length > 0) {
+            offset = in.readInt();
+            counts = new int[length];
+            for (int i = 0; i < length; i++) {
+                counts[i] = in.readInt();
+            }
+        }
+    }
+}
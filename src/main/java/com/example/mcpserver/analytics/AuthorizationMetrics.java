@@ -0,0 +1,106 @@
+package com.example.mcpserver.analytics;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Mutable counters that aggregate queries accumulate into: transactions, approvals and declines
+ * by reason. Queries add to an instance passed in by the caller so they allocate nothing themselves.
+ */
+public final class AuthorizationMetrics {
+
+    long total;
+    long approved;
+    final long[] declines = new long[DeclineReason.count()];
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getApproved() {
+        return approved;
+    }
+
+    public long getDeclined() {
+        return total - approved;
+    }
+
+    public long getDeclines(DeclineReason reason) {
+        return declines[reason.code()];
+    }
+
+    /**
+     * Counts one transaction
+     */
+    public void add(boolean approved, DeclineReason reason) {
+        total++;
+        if (approved) {
+            this.approved++;
+        } else {
+            declines[reason.code()]++;
+        }
+    }
+
+    /**
+     * Counts a number of transactions with the same outcome
+     */
+    public void add(boolean approved, DeclineReason reason, long count) {
+        total += count;
+        if (approved) {
+            this.approved += count;
+        } else {
+            declines[reason.code()] += count;
+        }
+    }
+
+    /**
+     * Adds the counts of another instance to this one
+     */
+    public void merge(AuthorizationMetrics other) {
+        total += other.total;
+        approved += other.approved;
+        for (int i = 0; i < declines.length; i++) {
+            declines[i] += other.declines[i];
+        }
+    }
+
+    public void reset() {
+        total = 0;
+        approved = 0;
+        Arrays.fill(declines, 0);
+    }
+
+    /**
+     * @return Approved transactions as a percentage of all transactions, or 0 if there are none
+     */
+    public double getAuthorizationRate() {
+        return percentage(approved, total);
+    }
+
+    /**
+     * @return Declined transactions as a percentage of all transactions, or 0 if there are none
+     */
+    public double getDeclineRate() {
+        return percentage(getDeclined(), total);
+    }
+
+    /**
+     * @return Each decline reason's share of all declines as a percentage, keyed by reason name
+     */
+    public Map<String, Object> getDeclineReasonShares() {
+        Map<String, Object> shares = new LinkedHashMap<>();
+        long declined = getDeclined();
+        for (DeclineReason reason : DeclineReason.values()) {
+            shares.put(reason.key(), percentage(declines[reason.code()], declined));
+        }
+        return shares;
+    }
+
+    /**
+     * @return The percentage rounded to one decimal place, or 0 if the whole is zero
+     */
+    static double percentage(long part, long whole) {
+        return whole == 0 ? 0.0 : Math.round(part * 1000.0 / whole) / 10.0;
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.mcpserver.analytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running authorization counters per merchant, transaction type and UTC day, updated as events are
+ * ingested so that timeframe queries sum daily buckets instead of scanning transactions.
+ *
+ * Each merchant and type has a ring of {@link #RING_DAYS} daily buckets holding the transaction,
+ * approval and per-reason decline counts. A bucket is reused when its slot comes round again for a
+ * later day, so the ring always covers the latest year, and a query for any {@link Timeframe} reads at
+ * most 365 buckets per type. Windows are whole UTC days ending with the day of the latest event.
+ * Events older than the ring are dropped and counted.
+ *
+ * A merchant costs about 13 KB per transaction type it has used. Updates and queries of one merchant
+ * are serialized on its buckets; different merchants don't contend.
+ */
+public final class DailyAggregates implements TransactionSink {
+
+    // One more than the longest timeframe, so a year-long window never reads a slot being reused
+    public static final int RING_DAYS = 366;
+    // Matches any transaction type in queries
+    public static final int ANY_TYPE = -1;
+
+    private static final int TOTAL = 0;
+    private static final int APPROVED = 1;
+    private static final int DECLINES = 2;
+    private static final int COUNTERS = DECLINES + DeclineReason.count();
+    private static final int TYPES = TransactionType.values().length;
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final Map<String, MerchantBuckets> merchants = new ConcurrentHashMap<>();
+    private volatile long latestDay = Long.MIN_VALUE;
+    private final AtomicLong dropped = new AtomicLong();
+
+    @Override
+    public void append(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason) {
+        long day = Math.floorDiv(timestamp, DAY_MILLIS);
+        long latest = day > latestDay ? advance(day) : latestDay;
+        if (day <= latest - RING_DAYS) {
+            dropped.incrementAndGet();
+            return;
+        }
+        MerchantBuckets buckets = merchants.computeIfAbsent(merchantId, id -> new MerchantBuckets());
+        buckets.add(day, type.code(), approved, approved || reason == null ? DeclineReason.OTHER.code() : reason.code());
+    }
+
+    private synchronized long advance(long day) {
+        if (day > latestDay) {
+            latestDay = day;
+        }
+        return latestDay;
+    }
+
+    /**
+     * Adds a merchant's counts for the last days up to and including the latest day to the given metrics
+     *
+     * @param merchantId The merchant ID
+     * @param days The number of days, at most {@link #RING_DAYS}
+     * @param type The transaction type code, or {@link DailyAggregates#ANY_TYPE}
+     * @param into The metrics to add to
+     */
+    public void query(String merchantId, int days, int type, AuthorizationMetrics into) {
+        if (days < 1 || days > RING_DAYS) {
+            throw new IllegalArgumentException("Window must be between 1 and " + RING_DAYS + " days: " + days);
+        }
+        MerchantBuckets buckets = merchants.get(merchantId);
+        if (buckets != null) {
+            long end = latestDay;
+            buckets.sum(end - days + 1, end, type, into);
+        }
+    }
+
+    /**
+     * @return The latest UTC day with events, as days since the epoch, or Long.MIN_VALUE if there are none
+     */
+    public long getLatestDay() {
+        return latestDay;
+    }
+
+    public int merchantCount() {
+        return merchants.size();
+    }
+
+    /**
+     * @return The IDs of the merchants with events, in no particular order
+     */
+    public List<String> merchantIds() {
+        return new ArrayList<>(merchants.keySet());
+    }
+
+    /**
+     * @return The number of events dropped for being older than the ring
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The approximate heap used by the buckets in bytes
+     */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (MerchantBuckets buckets : merchants.values()) {
+            bytes += buckets.memoryBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the counters, for {@link #readFrom} to restore; events must not be added meanwhile
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(latestDay);
+        out.writeLong(dropped.get());
+        List<Map.Entry<String, MerchantBuckets>> entries = new ArrayList<>(merchants.entrySet());
+        out.writeInt(entries.size());
+        for (Map.Entry<String, MerchantBuckets> entry : entries) {
+            out.writeUTF(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+    }
+
+    /**
+     * Restores counters written by {@link #writeTo} into empty aggregates
+     *
+     * @throws IOException If they can't be read or are not valid
+     */
+    void readFrom(DataInput in) throws IOException {
+        latestDay = in.readLong();
+        dropped.set(in.readLong());
+        for (int i = in.readInt(); i > 0; i--) {
+            String merchantId = in.readUTF();
+            MerchantBuckets buckets = new MerchantBuckets();
+            buckets.readFrom(in);
+            merchants.put(merchantId, buckets);
+        }
+    }
+
+    /**
+     * One merchant's rings, one per transaction type and allocated on first use
+     */
+    private static final class MerchantBuckets {
+
+        // Day held by each slot of each type's ring
+        private final long[][] days = new long[TYPES][];
+        // COUNTERS counts per slot
+        private final int[][] counts = new int[TYPES][];
+
+        synchronized void add(long day, int type, boolean approved, int reason) {
+            if (counts[type] == null) {
+                days[type] = new long[RING_DAYS];
+                Arrays.fill(days[type], Long.MIN_VALUE);
+                counts[type] = new int[RING_DAYS * COUNTERS];
+            }
+            int slot = (int) Math.floorMod(day, (long) RING_DAYS);
+            int[] typeCounts = counts[type];
+            int base = slot * COUNTERS;
+            if (days[type][slot] != day) {
+                if (days[type][slot] > day) {
+                    // The slot already moved on to a later day
+                    return;
+                }
+                Arrays.fill(typeCounts, base, base + COUNTERS, 0);
+                days[type][slot] = day;
+            }
+            typeCounts[base + TOTAL]++;
+            if (approved) {
+                typeCounts[base + APPROVED]++;
+            } else {
+                typeCounts[base + DECLINES + reason]++;
+            }
+        }
+
+        synchronized void sum(long fromDay, long toDay, int type, AuthorizationMetrics into) {
+            for (int t = 0; t < TYPES; t++) {
+                if ((type != DailyAggregates.ANY_TYPE && t != type) || counts[t] == null) {
+                    continue;
+                }
+                long[] typeDays = days[t];
+                int[] typeCounts = counts[t];
+                for (long day = fromDay; day <= toDay; day++) {
+                    int slot = (int) Math.floorMod(day, (long) RING_DAYS);
+                    if (typeDays[slot] != day) {
+                        continue;
+                    }
+                    int base = slot * COUNTERS;
+                    into.total += typeCounts[base + TOTAL];
+                    into.approved += typeCounts[base + APPROVED];
+                    for (int reason = 0; reason < COUNTERS - DECLINES; reason++) {
+                        into.declines[reason] += typeCounts[base + DECLINES + reason];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes each type's slots that hold a day
+         */
+        synchronized void writeTo(DataOutput out) throws IOException {
+            for (int t = 0; t < TYPES; t++) {
+                int used = 0;
+                for (int slot = 0; counts[t] != null && slot < RING_DAYS; slot++) {
+                    used += days[t][slot] != Long.MIN_VALUE ? 1 : 0;
+                }
+                out.writeShort(counts[t] != null ? used : -1);
+                for (int slot = 0; counts[t] != null && slot < RING_DAYS; slot++) {
+                    if (days[t][slot] == Long.MIN_VALUE) {
+                        continue;
+                    }
+                    out.writeLong(days[t][slot]);
+                    for (int counter = 0; counter < COUNTERS; counter++) {
+                        out.writeInt(counts[t][slot * COUNTERS + counter]);
+                    }
+                }
+            }
+        }
+
+        synchronized void readFrom(DataInput in) throws IOException {
+            for (int t = 0; t < TYPES; t++) {
+                int used = in.readShort();
+                if (used < 0) {
+                    continue;
+                }
+                if (used > RING_DAYS) {
+                    throw new IOException("Corrupt daily aggregates");
+                }
+                days[t] = new long[RING_DAYS];
+                Arrays.fill(days[t], Long.MIN_VALUE);
+                counts[t] = new int[RING_DAYS * COUNTERS];
+                for (int i = 0; i < used; i++) {
+                    long day = in.readLong();
+                    int slot = (int) Math.floorMod(day, (long) RING_DAYS);
+                    days[t][slot] = day;
+                    for (int counter = 0; counter < COUNTERS; counter++) {
+                        counts[t][slot * COUNTERS + counter] = in.readInt();
+                    }
+                }
+            }
+        }
+
+        synchronized long memoryBytes() {
+            long bytes = 0;
+            for (int t = 0; t < TYPES; t++) {
+                if (counts[t] != null) {
+                    bytes += (long) RING_DAYS * (Long.BYTES + COUNTERS * Integer.BYTES);
+                }
+            }
+            return bytes;
+        }
+    }
+}
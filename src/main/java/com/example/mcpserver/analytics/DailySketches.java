@@ -0,0 +1,235 @@
+package com.example.mcpserver.analytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link TransactionSketches} per merchant, transaction type and UTC day, updated as events are
+ * ingested, for distinct card counts and amount distributions that would be too costly to compute
+ * exactly over a timeframe.
+ *
+ * Like {@link DailyAggregates}, each merchant and type has a ring of {@link DailyAggregates#RING_DAYS}
+ * daily slots covering the latest year, and a timeframe query merges the sketches of the days in the
+ * window. A day's sketches are allocated on its first event with an amount, card or BIN, so merchants
+ * whose data has none of them cost nothing. Each day is bounded by the sizes of its sketches, at most
+ * about 12 KB, and a few hundred bytes for a day with a few dozen cards.
+ *
+ * Updates and queries of one merchant are serialized on its slots; different merchants don't contend.
+ */
+public final class DailySketches implements TransactionSink {
+
+    private static final int RING_DAYS = DailyAggregates.RING_DAYS;
+    private static final int TYPES = TransactionType.values().length;
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final Map<String, MerchantSketches> merchants = new ConcurrentHashMap<>();
+    private volatile long latestDay = Long.MIN_VALUE;
+    private final AtomicLong dropped = new AtomicLong();
+
+    @Override
+    public void append(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason) {
+        append(timestamp, merchantId, type, approved, reason, Float.NaN, 0, 0);
+    }
+
+    @Override
+    public void append(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason,
+                       float amount, long card, int bin) {
+        long day = Math.floorDiv(timestamp, DAY_MILLIS);
+        // Windows end with the latest day with any event, as for the aggregates
+        long latest = day > latestDay ? advance(day) : latestDay;
+        if (Float.isNaN(amount) && card == 0 && bin == 0) {
+            return;
+        }
+        if (day <= latest - RING_DAYS) {
+            dropped.incrementAndGet();
+            return;
+        }
+        MerchantSketches sketches = merchants.computeIfAbsent(merchantId, id -> new MerchantSketches());
+        sketches.add(day, type.code(), approved, amount, card, bin);
+    }
+
+    private synchronized long advance(long day) {
+        if (day > latestDay) {
+            latestDay = day;
+        }
+        return latestDay;
+    }
+
+    /**
+     * Merges a merchant's sketches for the last days up to and including the latest day into the given sketches
+     *
+     * @param merchantId The merchant ID
+     * @param days The number of days, at most {@link DailyAggregates#RING_DAYS}
+     * @param type The transaction type code, or {@link DailyAggregates#ANY_TYPE}
+     * @param into The sketches to merge into
+     */
+    public void query(String merchantId, int days, int type, TransactionSketches into) {
+        if (days < 1 || days > RING_DAYS) {
+            throw new IllegalArgumentException("Window must be between 1 and " + RING_DAYS + " days: " + days);
+        }
+        MerchantSketches sketches = merchants.get(merchantId);
+        if (sketches != null) {
+            long end = latestDay;
+            sketches.merge(end - days + 1, end, type, into);
+        }
+    }
+
+    public int merchantCount() {
+        return merchants.size();
+    }
+
+    /**
+     * @return The number of events with sketched fields dropped for being older than the ring
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The approximate heap used by the sketches in bytes
+     */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (MerchantSketches sketches : merchants.values()) {
+            bytes += sketches.memoryBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the sketches, for {@link #readFrom} to restore; events must not be added meanwhile
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(latestDay);
+        out.writeLong(dropped.get());
+        List<Map.Entry<String, MerchantSketches>> entries = new ArrayList<>(merchants.entrySet());
+        out.writeInt(entries.size());
+        for (Map.Entry<String, MerchantSketches> entry : entries) {
+            out.writeUTF(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+    }
+
+    /**
+     * Restores sketches written by {@link #writeTo} into empty daily sketches
+     *
+     * @throws IOException If they can't be read or are not valid
+     */
+    void readFrom(DataInput in) throws IOException {
+        latestDay = in.readLong();
+        dropped.set(in.readLong());
+        for (int i = in.readInt(); i > 0; i--) {
+            String merchantId = in.readUTF();
+            MerchantSketches sketches = new MerchantSketches();
+            sketches.readFrom(in);
+            merchants.put(merchantId, sketches);
+        }
+    }
+
+    /**
+     * One merchant's rings, one per transaction type and allocated on first use
+     */
+    private static final class MerchantSketches {
+
+        // Day held by each slot of each type's ring
+        private final long[][] days = new long[TYPES][];
+        private final TransactionSketches[][] slots = new TransactionSketches[TYPES][];
+
+        synchronized void add(long day, int type, boolean approved, float amount, long card, int bin) {
+            if (slots[type] == null) {
+                days[type] = new long[RING_DAYS];
+                Arrays.fill(days[type], Long.MIN_VALUE);
+                slots[type] = new TransactionSketches[RING_DAYS];
+            }
+            int slot = (int) Math.floorMod(day, (long) RING_DAYS);
+            if (days[type][slot] != day) {
+                if (days[type][slot] > day) {
+                    // The slot already moved on to a later day
+                    return;
+                }
+                slots[type][slot] = new TransactionSketches();
+                days[type][slot] = day;
+            }
+            slots[type][slot].add(approved, amount, card, bin);
+        }
+
+        synchronized void merge(long fromDay, long toDay, int type, TransactionSketches into) {
+            for (int t = 0; t < TYPES; t++) {
+                if ((type != DailyAggregates.ANY_TYPE && t != type) || slots[t] == null) {
+                    continue;
+                }
+                for (long day = fromDay; day <= toDay; day++) {
+                    int slot = (int) Math.floorMod(day, (long) RING_DAYS);
+                    if (days[t][slot] == day) {
+                        into.merge(slots[t][slot]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes each type's slots that hold a day
+         */
+        synchronized void writeTo(DataOutput out) throws IOException {
+            for (int t = 0; t < TYPES; t++) {
+                int used = 0;
+                for (int slot = 0; slots[t] != null && slot < RING_DAYS; slot++) {
+                    used += slots[t][slot] != null ? 1 : 0;
+                }
+                out.writeShort(slots[t] != null ? used : -1);
+                for (int slot = 0; slots[t] != null && slot < RING_DAYS; slot++) {
+                    if (slots[t][slot] != null) {
+                        out.writeLong(days[t][slot]);
+                        slots[t][slot].writeTo(out);
+                    }
+                }
+            }
+        }
+
+        synchronized void readFrom(DataInput in) throws IOException {
+            for (int t = 0; t < TYPES; t++) {
+                int used = in.readShort();
+                if (used < 0) {
+                    continue;
+                }
+                if (used > RING_DAYS) {
+                    throw new IOException("Corrupt daily sketches");
+                }
+                days[t] = new long[RING_DAYS];
+                Arrays.fill(days[t], Long.MIN_VALUE);
+                slots[t] = new TransactionSketches[RING_DAYS];
+                for (int i = 0; i < used; i++) {
+                    long day = in.readLong();
+                    int slot = (int) Math.floorMod(day, (long) RING_DAYS);
+                    days[t][slot] = day;
+                    slots[t][slot] = new TransactionSketches();
+                    slots[t][slot].readFrom(in);
+                }
+            }
+        }
+
+        synchronized long memoryBytes() {
+            long bytes = 0;
+            for (int t = 0; t < TYPES; t++) {
+                if (slots[t] == null) {
+                    continue;
+                }
+                bytes += (long) RING_DAYS * (Long.BYTES + 8);
+                for (TransactionSketches sketches : slots[t]) {
+                    if (sketches != null) {
+                        bytes += sketches.memoryBytes();
+                    }
+                }
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.mcpserver.analytics;
+
+/**
+ * Reason a transaction was declined, stored as its one-byte {@link #code()}
+ */
+public enum DeclineReason {
+
+    INSUFFICIENT_FUNDS("insufficient_funds"),
+    RISK_TRIGGERS("risk_triggers"),
+    EXPIRED_CARD("expired_card"),
+    INVALID_DATA("invalid_data"),
+    OTHER("other");
+
+    private static final DeclineReason[] VALUES = values();
+
+    private final String key;
+
+    DeclineReason(String key) {
+        this.key = key;
+    }
+
+    /**
+     * @return The name used in analysis results and data files
+     */
+    public String key() {
+        return key;
+    }
+
+    public byte code() {
+        return (byte) ordinal();
+    }
+
+    public static DeclineReason fromCode(int code) {
+        return VALUES[code];
+    }
+
+    /**
+     * @return The number of reasons, i.e. one more than the highest code
+     */
+    public static int count() {
+        return VALUES.length;
+    }
+
+    /**
+     * @param key A decline reason name, in any case
+     * @return The reason, or OTHER if the name is not known
+     */
+    public static DeclineReason fromKey(String key) {
+        for (DeclineReason reason : VALUES) {
+            if (reason.key.equalsIgnoreCase(key)) {
+                return reason;
+            }
+        }
+        return OTHER;
+    }
+}
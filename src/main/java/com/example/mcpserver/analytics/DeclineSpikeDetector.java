@@ -0,0 +1,279 @@
+package com.example.mcpserver.analytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Flags merchants whose decline rate for a reason has jumped above its usual level, updated as
+ * events are ingested.
+ *
+ * For each merchant and decline reason the detector keeps the share of events declined with that
+ * reason as an exponentially weighted moving average over about {@code baselineEvents} events, the
+ * baseline, and over about {@code recentEvents} events, for reporting. A Bernoulli CUSUM accumulates
+ * the declines beyond a reference rate between the baseline p0 and the spiking rate
+ * p1 = {@code multiplier} x p0: S = max(0, S + x - k) with k = (p1 - p0) / ln(p1 / p0), where x is 1
+ * for a decline with the reason and 0 otherwise. The merchant is flagged for the reason once S reaches
+ * {@code threshold} excess declines, and cleared when S falls back to zero. While the rate stays normal
+ * S keeps returning to zero, so isolated declines don't add up; a sustained spike raises it by about
+ * x - k per event, so a tripled rate is flagged within a few dozen declines. A lasting shift becomes
+ * the new baseline and clears after about {@code baselineEvents} events.
+ *
+ * Each event costs a constant amount of work per reason, and a merchant's state is about 300 bytes.
+ * Merchants with fewer than {@code baselineEvents} events aren't flagged, as their baseline isn't
+ * settled. Updates of one merchant are serialized on its state; different merchants don't contend.
+ */
+public final class DeclineSpikeDetector implements TransactionSink {
+
+    private static final int REASONS = DeclineReason.count();
+    // Floor for the baseline, so a reason that is normally absent needs a real cluster of declines
+    private static final double MIN_BASELINE_RATE = 0.002;
+    // A merchant's state object and arrays, and its map entry
+    private static final int STATE_BYTES = 16 + 24 + 3 * (16 + REASONS * Double.BYTES) + 16 + REASONS * Long.BYTES + 48;
+
+    private final double baselineAlpha;
+    private final double recentAlpha;
+    private final long warmupEvents;
+    private final double referenceFactor;
+    private final double threshold;
+    private final Map<String, MerchantState> merchants = new ConcurrentHashMap<>();
+    // Merchants with at least one reason flagged, so listing spikes doesn't visit every merchant
+    private final Set<MerchantState> flagged = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param baselineEvents The number of events the baseline rate averages over
+     * @param recentEvents The number of events the reported recent rate averages over
+     * @param multiplier The increase over the baseline rate to detect, greater than 1
+     * @param threshold The excess declines at which a merchant is flagged
+     */
+    public DeclineSpikeDetector(int baselineEvents, int recentEvents, double multiplier, double threshold) {
+        if (baselineEvents < 1 || recentEvents < 1 || multiplier <= 1 || threshold <= 0) {
+            throw new IllegalArgumentException("Event counts and the threshold must be positive and the multiplier greater than 1");
+        }
+        this.baselineAlpha = 1.0 / baselineEvents;
+        this.recentAlpha = 1.0 / recentEvents;
+        this.warmupEvents = baselineEvents;
+        this.referenceFactor = (multiplier - 1) / Math.log(multiplier);
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void append(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason) {
+        MerchantState state = merchants.computeIfAbsent(merchantId, MerchantState::new);
+        state.add(timestamp, approved ? -1 : (reason != null ? reason : DeclineReason.OTHER).code());
+    }
+
+    /**
+     * Lists the merchants currently flagged
+     *
+     * @param reason The decline reason, or null for all reasons
+     * @return One spike per merchant and reason flagged, in no particular order
+     */
+    public List<Spike> spikes(DeclineReason reason) {
+        List<Spike> spikes = new ArrayList<>();
+        for (MerchantState state : flagged) {
+            state.collect(reason, spikes);
+        }
+        return spikes;
+    }
+
+    public int merchantCount() {
+        return merchants.size();
+    }
+
+    /**
+     * @return The approximate heap used by the detector's state in bytes
+     */
+    public long memoryBytes() {
+        return (long) merchants.size() * STATE_BYTES;
+    }
+
+    /**
+     * Writes each merchant's rates and statistics, for {@link #readFrom} to restore; events must not be
+     * added meanwhile
+     */
+    void writeTo(DataOutput out) throws IOException {
+        List<MerchantState> states = new ArrayList<>(merchants.values());
+        out.writeInt(states.size());
+        for (MerchantState state : states) {
+            state.writeTo(out);
+        }
+    }
+
+    /**
+     * Restores state written by {@link #writeTo} into an empty detector. The state carries no record
+     * of the settings it was built with, so they should be the same.
+     *
+     * @throws IOException If it can't be read
+     */
+    void readFrom(DataInput in) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            MerchantState state = new MerchantState(in.readUTF());
+            state.readFrom(in);
+            merchants.put(state.merchantId, state);
+            if (state.flaggedReasons > 0) {
+                flagged.add(state);
+            }
+        }
+    }
+
+    /**
+     * One merchant's rates and CUSUM statistics, indexed by decline reason code
+     */
+    private final class MerchantState {
+
+        final String merchantId;
+        final double[] baseline = new double[REASONS];
+        final double[] recent = new double[REASONS];
+        final double[] cusum = new double[REASONS];
+        // Event time at which each reason was flagged, or 0 while it isn't
+        final long[] flaggedSince = new long[REASONS];
+        long events;
+        int flaggedReasons;
+
+        MerchantState(String merchantId) {
+            this.merchantId = merchantId;
+        }
+
+        /**
+         * Updates every reason with an event
+         *
+         * @param declined The code of the event's decline reason, or -1 for an approval
+         */
+        synchronized void add(long timestamp, int declined) {
+            events++;
+            // Until the averages have seen enough events they are plain means, free of the zero they start from
+            double alpha = Math.max(baselineAlpha, 1.0 / events);
+            double beta = Math.max(recentAlpha, 1.0 / events);
+            int wasFlagged = flaggedReasons;
+            for (int r = 0; r < REASONS; r++) {
+                double x = r == declined ? 1 : 0;
+                double k = Math.max(baseline[r], MIN_BASELINE_RATE) * referenceFactor;
+                double s = Math.max(0, cusum[r] + x - k);
+                cusum[r] = s;
+                baseline[r] += alpha * (x - baseline[r]);
+                recent[r] += beta * (x - recent[r]);
+                if (flaggedSince[r] == 0) {
+                    if (s >= threshold && events >= warmupEvents) {
+                        flaggedSince[r] = Math.max(1, timestamp);
+                        flaggedReasons++;
+                    }
+                } else if (s == 0) {
+                    flaggedSince[r] = 0;
+                    flaggedReasons--;
+                }
+            }
+            if (wasFlagged == 0 && flaggedReasons > 0) {
+                flagged.add(this);
+            } else if (wasFlagged > 0 && flaggedReasons == 0) {
+                flagged.remove(this);
+            }
+        }
+
+        synchronized void writeTo(DataOutput out) throws IOException {
+            out.writeUTF(merchantId);
+            out.writeLong(events);
+            for (int r = 0; r < REASONS; r++) {
+                out.writeDouble(baseline[r]);
+                out.writeDouble(recent[r]);
+                out.writeDouble(cusum[r]);
+                out.writeLong(flaggedSince[r]);
+            }
+        }
+
+        synchronized void readFrom(DataInput in) throws IOException {
+            events = in.readLong();
+            for (int r = 0; r < REASONS; r++) {
+                baseline[r] = in.readDouble();
+                recent[r] = in.readDouble();
+                cusum[r] = in.readDouble();
+                flaggedSince[r] = in.readLong();
+                if (flaggedSince[r] != 0) {
+                    flaggedReasons++;
+                }
+            }
+        }
+
+        synchronized void collect(DeclineReason reason, List<Spike> into) {
+            for (int r = 0; r < REASONS; r++) {
+                if (flaggedSince[r] != 0 && (reason == null || reason.code() == r)) {
+                    into.add(new Spike(merchantId, DeclineReason.fromCode(r), baseline[r], recent[r], cusum[r],
+                            flaggedSince[r], events));
+                }
+            }
+        }
+    }
+
+    /**
+     * A merchant flagged for a decline reason, as of the latest event
+     */
+    public static final class Spike {
+
+        private final String merchantId;
+        private final DeclineReason reason;
+        private final double baselineRate;
+        private final double recentRate;
+        private final double score;
+        private final long since;
+        private final long events;
+
+        Spike(String merchantId, DeclineReason reason, double baselineRate, double recentRate, double score,
+              long since, long events) {
+            this.merchantId = merchantId;
+            this.reason = reason;
+            this.baselineRate = baselineRate;
+            this.recentRate = recentRate;
+            this.score = score;
+            this.since = since;
+            this.events = events;
+        }
+
+        public String getMerchantId() {
+            return merchantId;
+        }
+
+        public DeclineReason getReason() {
+            return reason;
+        }
+
+        /**
+         * @return The long-run share of the merchant's events declined with the reason, from 0 to 1
+         */
+        public double getBaselineRate() {
+            return baselineRate;
+        }
+
+        /**
+         * @return The share of the merchant's recent events declined with the reason, from 0 to 1
+         */
+        public double getRecentRate() {
+            return recentRate;
+        }
+
+        /**
+         * @return The CUSUM statistic: the declines in excess of the reference rate since the spike began
+         */
+        public double getScore() {
+            return score;
+        }
+
+        /**
+         * @return The event time in epoch milliseconds at which the merchant was flagged
+         */
+        public long getSince() {
+            return since;
+        }
+
+        /**
+         * @return The number of the merchant's events seen so far
+         */
+        public long getEvents() {
+            return events;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.mcpserver.analytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct 64-bit values, such as card fingerprints,
+ * in a fixed amount of memory.
+ *
+ * With {@link #PRECISION} 11 there are 2048 one-byte registers and the standard error of an estimate
+ * is about 2.3%. Small sketches keep only their non-zero registers in a sorted int array, so a
+ * merchant-day that sees a handful of cards costs a few dozen bytes rather than 2 KB; the sketch
+ * switches to the dense registers once the sparse form would be as large. Two sketches merge by
+ * taking the larger of each pair of registers, which gives exactly the sketch of the union.
+ *
+ * Not thread-safe; callers serialize access.
+ */
+public final class HyperLogLog {
+
+    public static final int PRECISION = 11;
+    private static final int REGISTERS = 1 << PRECISION;
+    // Sparse entries hold a register index and its value in the low 6 bits
+    private static final int MAX_SPARSE = REGISTERS / Integer.BYTES;
+    private static final int[] EMPTY = new int[0];
+
+    private int[] sparse = EMPTY;
+    private int sparseSize;
+    private byte[] dense;
+
+    /**
+     * @return The relative standard error of estimates, as a percentage
+     */
+    public static double standardError() {
+        return Math.round(1040.0 / Math.sqrt(REGISTERS)) / 10.0;
+    }
+
+    /**
+     * Adds a value
+     *
+     * @param value The value; it is hashed here, so it needn't be uniformly distributed
+     */
+    public void add(long value) {
+        long hash = mix(value);
+        int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        set(index, rank);
+    }
+
+    private void set(int index, int rank) {
+        if (dense != null) {
+            if (dense[index] < rank) {
+                dense[index] = (byte) rank;
+            }
+            return;
+        }
+        int position = search(index);
+        if (position >= 0) {
+            if ((sparse[position] & 63) < rank) {
+                sparse[position] = index << 6 | rank;
+            }
+            return;
+        }
+        if (sparseSize == MAX_SPARSE) {
+            toDense();
+            dense[index] = (byte) rank;
+            return;
+        }
+        position = -position - 1;
+        if (sparseSize == sparse.length) {
+            sparse = Arrays.copyOf(sparse, Math.min(MAX_SPARSE, Math.max(4, sparseSize * 2)));
+        }
+        System.arraycopy(sparse, position, sparse, position + 1, sparseSize - position);
+        sparse[position] = index << 6 | rank;
+        sparseSize++;
+    }
+
+    /**
+     * @return The position of the register in the sparse entries, or -(insertion point) - 1
+     */
+    private int search(int index) {
+        int low = 0;
+        int high = sparseSize - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midIndex = sparse[mid] >>> 6;
+            if (midIndex < index) {
+                low = mid + 1;
+            } else if (midIndex > index) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -low - 1;
+    }
+
+    private void toDense() {
+        dense = new byte[REGISTERS];
+        for (int i = 0; i < sparseSize; i++) {
+            dense[sparse[i] >>> 6] = (byte) (sparse[i] & 63);
+        }
+        sparse = EMPTY;
+        sparseSize = 0;
+    }
+
+    /**
+     * Adds the values counted by another sketch to this one
+     *
+     * @param other The sketch to merge; it is not changed
+     */
+    public void merge(HyperLogLog other) {
+        if (other.dense != null) {
+            if (dense == null) {
+                toDense();
+            }
+            for (int index = 0; index < REGISTERS; index++) {
+                if (dense[index] < other.dense[index]) {
+                    dense[index] = other.dense[index];
+                }
+            }
+        } else {
+            for (int i = 0; i < other.sparseSize; i++) {
+                set(other.sparse[i] >>> 6, other.sparse[i] & 63);
+            }
+        }
+    }
+
+    /**
+     * @return The estimated number of distinct values added
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = REGISTERS;
+        if (dense != null) {
+            zeros = 0;
+            for (byte register : dense) {
+                sum += Math.scalb(1.0, -register);
+                if (register == 0) {
+                    zeros++;
+                }
+            }
+        } else {
+            for (int i = 0; i < sparseSize; i++) {
+                sum += Math.scalb(1.0, -(sparse[i] & 63));
+            }
+            zeros -= sparseSize;
+            sum += zeros;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+        double estimate = alpha * REGISTERS * (double) REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            // Linear counting is more accurate for small cardinalities
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public boolean isEmpty() {
+        return dense == null && sparseSize == 0;
+    }
+
+    /**
+     * @return The approximate heap used by the registers in bytes
+     */
+    public long memoryBytes() {
+        return dense != null ? REGISTERS : (long) sparse.length * Integer.BYTES;
+    }
+
+    /**
+     * Writes the registers, for {@link #readFrom} to restore
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeBoolean(dense != null);
+        if (dense != null) {
+            out.write(dense);
+            return;
+        }
+        out.writeShort(sparseSize);
+        for (int i = 0; i < sparseSize; i++) {
+            out.writeInt(sparse[i]);
+        }
+    }
+
+    /**
+     * Restores registers written by {@link #writeTo} into an empty sketch
+     *
+     * @throws IOException If they can't be read or are not valid
+     */
+    void readFrom(DataInput in) throws IOException {
+        if (in.readBoolean()) {
+            dense = new byte[REGISTERS];
+            in.readFully(dense);
+            return;
+        }
+        int size = in.readShort();
+        if (size < 0 || size > MAX_SPARSE) {
+            throw new IOException("Corrupt HyperLogLog sketch");
+        }
+        sparse = new int[size];
+        for (int i = 0; i < size; i++) {
+            sparse[i] = in.readInt();
+            if ((i > 0 && sparse[i] >>> 6 <= sparse[i - 1] >>> 6) || sparse[i] >>> 6 >= REGISTERS) {
+                throw new IOException("Corrupt HyperLogLog sketch");
+            }
+        }
+        sparseSize = size;
+    }
+
+    /**
+     * The 64-bit finalizer of MurmurHash3, spreading the bits of values such as sequential BINs
+     */
+    private static long mix(long value) {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.mcpserver.analytics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary encoding of merchant IDs, so the transaction store keeps a four-byte code per row
+ * instead of a string. Codes are assigned densely from zero in order of first appearance.
+ */
+public final class MerchantDictionary {
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] merchantIds = new String[16];
+    private volatile int size;
+
+    /**
+     * @param merchantId A merchant ID
+     * @return Its code, or -1 if the merchant has no transactions
+     */
+    public int codeOf(String merchantId) {
+        Integer code = codes.get(merchantId);
+        return code != null ? code : -1;
+    }
+
+    /**
+     * Returns the code of a merchant, assigning the next free one if it is new
+     *
+     * @param merchantId A merchant ID
+     * @return Its code
+     */
+    public synchronized int encode(String merchantId) {
+        Integer code = codes.get(merchantId);
+        if (code != null) {
+            return code;
+        }
+        String[] ids = merchantIds;
+        if (size == ids.length) {
+            String[] grown = new String[ids.length * 2];
+            System.arraycopy(ids, 0, grown, 0, size);
+            ids = grown;
+        }
+        ids[size] = merchantId;
+        merchantIds = ids;
+        codes.put(merchantId, size);
+        return size++;
+    }
+
+    /**
+     * @param code A code assigned by this dictionary
+     * @return The merchant ID it stands for
+     */
+    public String decode(int code) {
+        if (code < 0 || code >= size) {
+            throw new IllegalArgumentException("Unknown merchant code " + code);
+        }
+        return merchantIds[code];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.mcpserver.analytics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the authorization metrics of many merchants at once on a fork/join pool.
+ *
+ * The merchant list is split in halves until each part is small enough, and each leaf task queries
+ * the {@link DailyAggregates} of its merchants into its own result: the metrics of every merchant
+ * with transactions plus a running portfolio total. Results are merged pairwise as tasks join, so
+ * workers never share an accumulator.
+ *
+ * Each merchant's transaction types are queried one at a time, which costs the same as querying them
+ * together, so that the {@link RecommendationRules} can estimate its recoverable declines per type.
+ */
+public final class PortfolioScan {
+
+    // Merchants per leaf task; each costs at most a few thousand bucket reads
+    static final int LEAF_SIZE = 64;
+
+    private static final int TYPES = TransactionType.values().length;
+
+    private PortfolioScan() {
+    }
+
+    /**
+     * Runs a scan
+     *
+     * @param pool The pool to run on
+     * @param aggregates The daily aggregates to query
+     * @param rules The rules estimating the recoverable declines
+     * @param merchantIds The merchants to include
+     * @param days The number of days, ending with the latest day in the aggregates
+     * @param type The transaction type code, or {@link DailyAggregates#ANY_TYPE}
+     * @param checkpoint Run by every leaf task before it starts; throws to abandon the scan
+     * @return The metrics of each merchant with transactions in the window, and their total
+     */
+    public static Result run(ForkJoinPool pool, DailyAggregates aggregates, RecommendationRules rules,
+                             List<String> merchantIds, int days, int type, Runnable checkpoint) {
+        return pool.invoke(new Task(aggregates, rules, merchantIds, 0, merchantIds.size(), days, type, checkpoint));
+    }
+
+    /**
+     * One merchant's metrics
+     */
+    public static final class MerchantMetrics {
+
+        private final String merchantId;
+        private final AuthorizationMetrics metrics;
+        private final double recoverable;
+
+        MerchantMetrics(String merchantId, AuthorizationMetrics metrics, double recoverable) {
+            this.merchantId = merchantId;
+            this.metrics = metrics;
+            this.recoverable = recoverable;
+        }
+
+        public String getMerchantId() {
+            return merchantId;
+        }
+
+        public AuthorizationMetrics getMetrics() {
+            return metrics;
+        }
+
+        /**
+         * @return The estimated number of declines the rules would recover
+         */
+        public double getRecoverable() {
+            return recoverable;
+        }
+    }
+
+    /**
+     * The merchants' metrics, in no particular order, and their total
+     */
+    public static final class Result {
+
+        private final List<MerchantMetrics> merchants = new ArrayList<>();
+        private final AuthorizationMetrics total = new AuthorizationMetrics();
+        private double recoverable;
+
+        public List<MerchantMetrics> getMerchants() {
+            return merchants;
+        }
+
+        public AuthorizationMetrics getTotal() {
+            return total;
+        }
+
+        /**
+         * @return The estimated number of declines the rules would recover across the merchants
+         */
+        public double getRecoverable() {
+            return recoverable;
+        }
+
+        Result merge(Result other) {
+            merchants.addAll(other.merchants);
+            total.merge(other.total);
+            recoverable += other.recoverable;
+            return this;
+        }
+    }
+
+    private static final class Task extends RecursiveTask<Result> {
+
+        private final DailyAggregates aggregates;
+        private final RecommendationRules rules;
+        private final List<String> merchantIds;
+        private final int from;
+        private final int to;
+        private final int days;
+        private final int type;
+        private final Runnable checkpoint;
+
+        Task(DailyAggregates aggregates, RecommendationRules rules, List<String> merchantIds, int from, int to,
+             int days, int type, Runnable checkpoint) {
+            this.aggregates = aggregates;
+            this.rules = rules;
+            this.merchantIds = merchantIds;
+            this.from = from;
+            this.to = to;
+            this.days = days;
+            this.type = type;
+            this.checkpoint = checkpoint;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from > LEAF_SIZE) {
+                int middle = (from + to) >>> 1;
+                Task right = new Task(aggregates, rules, merchantIds, middle, to, days, type, checkpoint);
+                right.fork();
+                Result left = new Task(aggregates, rules, merchantIds, from, middle, days, type, checkpoint).compute();
+                return left.merge(right.join());
+            }
+
+            checkpoint.run();
+            Result result = new Result();
+            AuthorizationMetrics typeMetrics = new AuthorizationMetrics();
+            for (int i = from; i < to; i++) {
+                AuthorizationMetrics metrics = new AuthorizationMetrics();
+                double recoverable = 0;
+                for (int t = 0; t < TYPES; t++) {
+                    if (type != DailyAggregates.ANY_TYPE && t != type) {
+                        continue;
+                    }
+                    typeMetrics.reset();
+                    aggregates.query(merchantIds.get(i), days, t, typeMetrics);
+                    if (typeMetrics.getTotal() > 0) {
+                        metrics.merge(typeMetrics);
+                        recoverable += rules.recoverable(typeMetrics, t);
+                    }
+                }
+                if (metrics.getTotal() > 0) {
+                    result.merchants.add(new MerchantMetrics(merchantIds.get(i), metrics, recoverable));
+                    result.total.merge(metrics);
+                    result.recoverable += recoverable;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.example.mcpserver.analytics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rules that turn a merchant's declines into ranked recommendations, compiled from a JSON document:
+ * <pre>
+ * {
+ *   "priorities": {"high": 2.0, "medium": 0.5},
+ *   "maxRecommendations": 5,
+ *   "rules": [
+ *     {"id": "account_updater", "title": "...", "description": "...",
+ *      "transactionTypes": ["card"], "recoveryRates": {"expired_card": 0.6}}
+ *   ]
+ * }
+ * </pre>
+ *
+ * A rule estimates the share of declines with each reason that its remedy recovers, for the
+ * transaction types it applies to (all types when {@code transactionTypes} is omitted). Compiling
+ * turns each rule into a dense reason-by-type table of rates, so scoring a merchant is a pass over
+ * its decline counts per rule. A recommendation's priority follows from its estimated gain in
+ * authorization rate: high from {@code priorities.high} percentage points, medium from
+ * {@code priorities.medium}, and low below that.
+ *
+ * The rules also give the share of each reason's declines that all their remedies together recover.
+ * Remedies for the same declines are taken to act in turn, each recovering its share of what the
+ * others left, so the combined rate never exceeds one.
+ */
+public final class RecommendationRules {
+
+    private static final int TYPES = TransactionType.values().length;
+    private static final int REASONS = DeclineReason.count();
+
+    private final List<Rule> rules;
+    // Share of declines recovered by every rule together, at type * REASONS + reason
+    private final double[] combinedRates;
+    private final double highImpact;
+    private final double mediumImpact;
+    private final int maxRecommendations;
+
+    private RecommendationRules(List<Rule> rules, double highImpact, double mediumImpact, int maxRecommendations) {
+        this.rules = rules;
+        this.combinedRates = combine(rules);
+        this.highImpact = highImpact;
+        this.mediumImpact = mediumImpact;
+        this.maxRecommendations = maxRecommendations;
+    }
+
+    /**
+     * Compiles a rules document
+     *
+     * @param document The parsed JSON document
+     * @return The compiled rules
+     * @throws IllegalArgumentException If the document is not a valid rules document
+     */
+    public static RecommendationRules compile(JsonNode document) {
+        JsonNode ruleNodes = document.path("rules");
+        if (!ruleNodes.isArray() || ruleNodes.size() == 0) {
+            throw new IllegalArgumentException("rules must be a non-empty array");
+        }
+        List<Rule> rules = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        for (JsonNode node : ruleNodes) {
+            Rule rule = compileRule(node);
+            if (!ids.add(rule.id)) {
+                throw new IllegalArgumentException("Duplicate rule " + rule.id);
+            }
+            rules.add(rule);
+        }
+        double highImpact = document.path("priorities").path("high").asDouble(2.0);
+        double mediumImpact = document.path("priorities").path("medium").asDouble(0.5);
+        int maxRecommendations = document.path("maxRecommendations").asInt(5);
+        if (mediumImpact > highImpact || maxRecommendations < 1) {
+            throw new IllegalArgumentException("priorities.medium must not exceed priorities.high and maxRecommendations must be positive");
+        }
+        return new RecommendationRules(Collections.unmodifiableList(rules), highImpact, mediumImpact, maxRecommendations);
+    }
+
+    private static Rule compileRule(JsonNode node) {
+        String id = node.path("id").asText("");
+        String title = node.path("title").asText("");
+        String description = node.path("description").asText("");
+        if (id.isEmpty() || title.isEmpty() || description.isEmpty()) {
+            throw new IllegalArgumentException("Every rule needs an id, a title and a description");
+        }
+        boolean[] types = new boolean[TYPES];
+        JsonNode typeNodes = node.path("transactionTypes");
+        if (typeNodes.isMissingNode()) {
+            Arrays.fill(types, true);
+        } else {
+            for (JsonNode typeNode : typeNodes) {
+                TransactionType type = TransactionType.fromKey(typeNode.asText());
+                if (type == null) {
+                    throw new IllegalArgumentException("Rule " + id + ": unknown transaction type " + typeNode.asText());
+                }
+                types[type.code()] = true;
+            }
+        }
+        double[] reasonRates = new double[REASONS];
+        JsonNode rateNodes = node.path("recoveryRates");
+        if (!rateNodes.isObject() || rateNodes.size() == 0) {
+            throw new IllegalArgumentException("Rule " + id + ": recoveryRates must name at least one decline reason");
+        }
+        for (Iterator<Map.Entry<String, JsonNode>> fields = rateNodes.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            DeclineReason reason = reason(field.getKey());
+            double rate = field.getValue().asDouble(-1);
+            if (reason == null || !field.getValue().isNumber() || rate < 0 || rate > 1) {
+                throw new IllegalArgumentException("Rule " + id + ": recoveryRates." + field.getKey()
+                        + " must be a decline reason with a rate between 0 and 1");
+            }
+            reasonRates[reason.code()] = rate;
+        }
+        double[] rates = new double[TYPES * REASONS];
+        for (int type = 0; type < TYPES; type++) {
+            if (types[type]) {
+                System.arraycopy(reasonRates, 0, rates, type * REASONS, REASONS);
+            }
+        }
+        return new Rule(id, title, description, rates);
+    }
+
+    private static double[] combine(List<Rule> rules) {
+        double[] unrecovered = new double[TYPES * REASONS];
+        Arrays.fill(unrecovered, 1);
+        for (Rule rule : rules) {
+            for (int i = 0; i < unrecovered.length; i++) {
+                unrecovered[i] *= 1 - rule.rates[i];
+            }
+        }
+        double[] combined = new double[unrecovered.length];
+        for (int i = 0; i < combined.length; i++) {
+            combined[i] = 1 - unrecovered[i];
+        }
+        return combined;
+    }
+
+    private static DeclineReason reason(String key) {
+        for (DeclineReason reason : DeclineReason.values()) {
+            if (reason.key().equals(key)) {
+                return reason;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return rules.size();
+    }
+
+    /**
+     * Estimates how many of a merchant's declines of one transaction type the rules would recover together
+     *
+     * @param metrics The merchant's metrics for that type
+     * @param type The transaction type code
+     * @return The estimated number of recovered declines
+     */
+    public double recoverable(AuthorizationMetrics metrics, int type) {
+        double recovered = 0;
+        for (int reason = 0; reason < REASONS; reason++) {
+            recovered += metrics.declines[reason] * combinedRates[type * REASONS + reason];
+        }
+        return recovered;
+    }
+
+    /**
+     * Scores every rule against a merchant's transactions and ranks the ones that would recover anything
+     *
+     * @param byType The merchant's metrics per transaction type, indexed by type code
+     * @return At most maxRecommendations recommendations, the largest estimated recovery first
+     */
+    public List<Recommendation> rank(AuthorizationMetrics[] byType) {
+        long total = 0;
+        for (AuthorizationMetrics metrics : byType) {
+            total += metrics.total;
+        }
+        List<Recommendation> recommendations = new ArrayList<>();
+        for (Rule rule : rules) {
+            double recovered = 0;
+            for (int type = 0; type < TYPES; type++) {
+                long[] declines = byType[type].declines;
+                for (int reason = 0; reason < REASONS; reason++) {
+                    recovered += declines[reason] * rule.rates[type * REASONS + reason];
+                }
+            }
+            long recoveredTransactions = Math.round(recovered);
+            if (recoveredTransactions == 0) {
+                continue;
+            }
+            double impact = Math.round(recovered * 1000.0 / total) / 10.0;
+            String priority = impact >= highImpact ? "high" : impact >= mediumImpact ? "medium" : "low";
+            recommendations.add(new Recommendation(rule.id, rule.title, rule.description, priority,
+                    recoveredTransactions, impact));
+        }
+        recommendations.sort(Comparator.comparingLong(Recommendation::getEstimatedRecoveredTransactions).reversed()
+                .thenComparing(Recommendation::getId));
+        return recommendations.size() > maxRecommendations
+                ? new ArrayList<>(recommendations.subList(0, maxRecommendations)) : recommendations;
+    }
+
+    private static final class Rule {
+
+        final String id;
+        final String title;
+        final String description;
+        // Recovery rate per transaction type and decline reason, at type * REASONS + reason
+        final double[] rates;
+
+        Rule(String id, String title, String description, double[] rates) {
+            this.id = id;
+            this.title = title;
+            this.description = description;
+            this.rates = rates;
+        }
+    }
+
+    /**
+     * One ranked recommendation for a merchant
+     */
+    public static final class Recommendation {
+
+        private final String id;
+        private final String title;
+        private final String description;
+        private final String priority;
+        private final long estimatedRecoveredTransactions;
+        private final double estimatedImpactPercentage;
+
+        Recommendation(String id, String title, String description, String priority,
+                       long estimatedRecoveredTransactions, double estimatedImpactPercentage) {
+            this.id = id;
+            this.title = title;
+            this.description = description;
+            this.priority = priority;
+            this.estimatedRecoveredTransactions = estimatedRecoveredTransactions;
+            this.estimatedImpactPercentage = estimatedImpactPercentage;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getPriority() {
+            return priority;
+        }
+
+        /**
+         * @return The number of declined transactions in the window the remedy would likely have recovered
+         */
+        public long getEstimatedRecoveredTransactions() {
+            return estimatedRecoveredTransactions;
+        }
+
+        /**
+         * @return The estimated gain in authorization rate, in percentage points
+         */
+        public double getEstimatedImpactPercentage() {
+            return estimatedImpactPercentage;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.example.mcpserver.analytics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Authorization counts rolled up by merchant, UTC day and transaction type, with the decline reason
+ * as the innermost dimension, for questions across the whole portfolio.
+ *
+ * The cube is sparse: it holds one cell per merchant, day and type that has transactions. Each cell
+ * has {@link #COUNTERS} int counters (transactions, approvals and declines per reason) in one flat
+ * array, found through an open-addressing table of packed keys, so a cell takes about 44 bytes and
+ * ten million merchant-days of one type fit in under half a gigabyte. Cells are updated as events are
+ * ingested, and queries aggregate the cells in a day range in one pass over the arrays.
+ *
+ * The cube can be saved to and loaded from a file together with a list of the sources it was built
+ * from, so a restart only rebuilds it when its sources change.
+ */
+public final class RollupCube implements TransactionSink {
+
+    public static final int TOTAL = 0;
+    public static final int APPROVED = 1;
+    public static final int DECLINES = 2;
+    public static final int COUNTERS = DECLINES + DeclineReason.count();
+
+    private static final int MAGIC = 0x54584342; // "TXCB"
+    private static final int VERSION = 1;
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final int MAX_DAY = (1 << 29) - 1;
+
+    /**
+     * The dimension query results are grouped by
+     */
+    public enum Dimension {
+        NONE, MERCHANT, DAY, TYPE
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final MerchantDictionary merchants = new MerchantDictionary();
+    // Per cell: packed merchant, day and type, and COUNTERS counts
+    private long[] cellKeys = new long[1024];
+    private int[] counts = new int[1024 * COUNTERS];
+    private int cellCount;
+    // Open-addressing table of cell index + 1, zero marking a free slot
+    private int[] table = new int[2048];
+    private int minDay = Integer.MAX_VALUE;
+    private int maxDay = Integer.MIN_VALUE;
+    private long dropped;
+    private List<String> sources = Collections.emptyList();
+
+    @Override
+    public void append(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason) {
+        lock.writeLock().lock();
+        try {
+            add(timestamp, merchantId, type, approved, reason);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void append(TransactionBatch batch) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                add(batch.timestamp(i), batch.merchantId(i), batch.type(i), batch.approved(i), batch.reason(i));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Counts an event; the caller holds the write lock
+     */
+    private void add(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason) {
+        long day = Math.floorDiv(timestamp, DAY_MILLIS);
+        if (day < 0 || day > MAX_DAY) {
+            dropped++;
+            return;
+        }
+        int merchant = merchants.encode(merchantId);
+        int base = cell(key(merchant, (int) day, type.code())) * COUNTERS;
+        counts[base + TOTAL]++;
+        if (approved) {
+            counts[base + APPROVED]++;
+        } else {
+            counts[base + DECLINES + (reason != null ? reason.code() : DeclineReason.OTHER.code())]++;
+        }
+        minDay = Math.min(minDay, (int) day);
+        maxDay = Math.max(maxDay, (int) day);
+    }
+
+    private static long key(int merchant, int day, int type) {
+        return ((long) merchant << 32) | ((long) day << 3) | type;
+    }
+
+    /**
+     * @return The index of the cell with the given key, adding an empty cell if there is none
+     */
+    private int cell(long key) {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != 0) {
+            int index = table[slot] - 1;
+            if (cellKeys[index] == key) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int index = cellCount++;
+        if (index == cellKeys.length) {
+            cellKeys = Arrays.copyOf(cellKeys, index * 2);
+            counts = Arrays.copyOf(counts, index * 2 * COUNTERS);
+        }
+        cellKeys[index] = key;
+        table[slot] = index + 1;
+        if (cellCount * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return index;
+    }
+
+    private void rehash(int size) {
+        int[] grown = new int[size];
+        int mask = size - 1;
+        for (int index = 0; index < cellCount; index++) {
+            int slot = hash(cellKeys[index]) & mask;
+            while (grown[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            grown[slot] = index + 1;
+        }
+        table = grown;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Sums the counters of the cells in a day range, grouped by a dimension
+     *
+     * @param fromDay First day of the range, as days since the epoch
+     * @param toDay Last day of the range, inclusive
+     * @param type The transaction type code, or {@link DailyAggregates#ANY_TYPE}
+     * @param merchantFilter Codes of the merchants to include, or null for all
+     * @param groupBy The dimension to group by
+     * @return {@link #COUNTERS} counters per group: per merchant code, per day from fromDay, per
+     *         type code, or a single group
+     */
+    public long[] aggregate(int fromDay, int toDay, int type, BitSet merchantFilter, Dimension groupBy) {
+        lock.readLock().lock();
+        try {
+            long[] result = new long[groups(groupBy, fromDay, toDay) * COUNTERS];
+            for (int index = 0; index < cellCount; index++) {
+                long key = cellKeys[index];
+                int day = (int) (key >>> 3) & MAX_DAY;
+                int cellType = (int) key & 7;
+                int merchant = (int) (key >>> 32);
+                if (day < fromDay || day > toDay || (type != DailyAggregates.ANY_TYPE && cellType != type)
+                        || (merchantFilter != null && !merchantFilter.get(merchant))) {
+                    continue;
+                }
+                int group;
+                switch (groupBy) {
+                    case MERCHANT:
+                        group = merchant;
+                        break;
+                    case DAY:
+                        group = day - fromDay;
+                        break;
+                    case TYPE:
+                        group = cellType;
+                        break;
+                    default:
+                        group = 0;
+                }
+                int from = index * COUNTERS;
+                int to = group * COUNTERS;
+                for (int counter = 0; counter < COUNTERS; counter++) {
+                    result[to + counter] += counts[from + counter];
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int groups(Dimension groupBy, int fromDay, int toDay) {
+        switch (groupBy) {
+            case MERCHANT:
+                return merchants.size();
+            case DAY:
+                return Math.max(0, toDay - fromDay + 1);
+            case TYPE:
+                return TransactionType.values().length;
+            default:
+                return 1;
+        }
+    }
+
+    public MerchantDictionary getMerchants() {
+        return merchants;
+    }
+
+    /**
+     * @return The latest day with transactions, as days since the epoch, or Integer.MIN_VALUE if there are none
+     */
+    public int getMaxDay() {
+        lock.readLock().lock();
+        try {
+            return maxDay;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The earliest day with transactions, as days since the epoch, or Integer.MAX_VALUE if there are none
+     */
+    public int getMinDay() {
+        lock.readLock().lock();
+        try {
+            return minDay;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getCellCount() {
+        lock.readLock().lock();
+        try {
+            return cellCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of events dropped for falling outside the days the cube can index
+     */
+    public long getDropped() {
+        lock.readLock().lock();
+        try {
+            return dropped;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The approximate heap used by the cells and their table in bytes
+     */
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) cellKeys.length * Long.BYTES + (long) counts.length * Integer.BYTES
+                    + (long) table.length * Integer.BYTES;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The sources the cube was built from, as recorded by {@link #setSources}
+     */
+    public List<String> getSources() {
+        lock.readLock().lock();
+        try {
+            return sources;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records the sources the cube was built from, saved along with it
+     *
+     * @param sources Descriptions of the sources, e.g. file names with their sizes and modification times
+     */
+    public void setSources(List<String> sources) {
+        lock.writeLock().lock();
+        try {
+            this.sources = Collections.unmodifiableList(new ArrayList<>(sources));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the cube to a file, replacing it atomically
+     *
+     * @param path The file to write
+     * @throws IOException If the file can't be written
+     */
+    public void save(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sources.size());
+            for (String source : sources) {
+                out.writeUTF(source);
+            }
+            out.writeInt(merchants.size());
+            for (int merchant = 0; merchant < merchants.size(); merchant++) {
+                out.writeUTF(merchants.decode(merchant));
+            }
+            out.writeLong(dropped);
+            out.writeInt(cellCount);
+            for (int index = 0; index < cellCount; index++) {
+                out.writeLong(cellKeys[index]);
+                for (int counter = 0; counter < COUNTERS; counter++) {
+                    out.writeInt(counts[index * COUNTERS + counter]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a cube written by {@link #save}
+     *
+     * @param path The file to read
+     * @return The cube
+     * @throws IOException If the file can't be read or is not a cube
+     */
+    public static RollupCube load(Path path) throws IOException {
+        RollupCube cube = new RollupCube();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a rollup cube: " + path);
+            }
+            List<String> sources = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                sources.add(in.readUTF());
+            }
+            cube.sources = Collections.unmodifiableList(sources);
+            int merchantCount = in.readInt();
+            for (int merchant = 0; merchant < merchantCount; merchant++) {
+                cube.merchants.encode(in.readUTF());
+            }
+            cube.dropped = in.readLong();
+            int cells = in.readInt();
+            for (int i = 0; i < cells; i++) {
+                long key = in.readLong();
+                int merchant = (int) (key >>> 32);
+                int day = (int) (key >>> 3) & MAX_DAY;
+                if (merchant < 0 || merchant >= merchantCount) {
+                    throw new IOException("Corrupt rollup cube: " + path);
+                }
+                int base = cube.cell(key) * COUNTERS;
+                for (int counter = 0; counter < COUNTERS; counter++) {
+                    cube.counts[base + counter] = in.readInt();
+                }
+                cube.minDay = Math.min(cube.minDay, day);
+                cube.maxDay = Math.max(cube.maxDay, day);
+            }
+        }
+        return cube;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.mcpserver.analytics;
+
+/**
+ * A figure computed from a group of {@link RollupCube} counters
+ */
+public enum RollupMetric {
+
+    TRANSACTIONS("transactions", null),
+    APPROVED("approved", null),
+    DECLINED("declined", null),
+    AUTHORIZATION_RATE("authorization_rate", null),
+    DECLINE_RATE("decline_rate", null),
+    INSUFFICIENT_FUNDS(DeclineReason.INSUFFICIENT_FUNDS),
+    RISK_TRIGGERS(DeclineReason.RISK_TRIGGERS),
+    EXPIRED_CARD(DeclineReason.EXPIRED_CARD),
+    INVALID_DATA(DeclineReason.INVALID_DATA),
+    OTHER(DeclineReason.OTHER);
+
+    private final String key;
+    // Set for the count of declines with one reason
+    private final DeclineReason reason;
+
+    RollupMetric(String key, DeclineReason reason) {
+        this.key = key;
+        this.reason = reason;
+    }
+
+    RollupMetric(DeclineReason reason) {
+        this(reason.key(), reason);
+    }
+
+    public String key() {
+        return key;
+    }
+
+    /**
+     * @return Whether the metric is a percentage rather than a count
+     */
+    public boolean isRate() {
+        return this == AUTHORIZATION_RATE || this == DECLINE_RATE;
+    }
+
+    /**
+     * @param counters Counters laid out as in {@link RollupCube#aggregate}
+     * @param group The group whose counters to use
+     * @return The metric's value for the group
+     */
+    public double value(long[] counters, int group) {
+        int base = group * RollupCube.COUNTERS;
+        long total = counters[base + RollupCube.TOTAL];
+        long approved = counters[base + RollupCube.APPROVED];
+        switch (this) {
+            case TRANSACTIONS:
+                return total;
+            case APPROVED:
+                return approved;
+            case DECLINED:
+                return total - approved;
+            case AUTHORIZATION_RATE:
+                return AuthorizationMetrics.percentage(approved, total);
+            case DECLINE_RATE:
+                return AuthorizationMetrics.percentage(total - approved, total);
+            default:
+                return counters[base + RollupCube.DECLINES + reason.code()];
+        }
+    }
+
+    /**
+     * @param key A metric name
+     * @return The metric, or null if the name is not known
+     */
+    public static RollupMetric fromKey(String key) {
+        for (RollupMetric metric : values()) {
+            if (metric.key.equals(key)) {
+                return metric;
+            }
+        }
+        return null;
+    }
+}
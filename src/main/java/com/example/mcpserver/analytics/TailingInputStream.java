@@ -0,0 +1,132 @@
+package com.example.mcpserver.analytics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * Reads a file that is still being appended to, like {@code tail -f}: at the end of the file a read
+ * waits for more data, polling the file's size, instead of returning end of stream.
+ *
+ * The stream does end when the file is truncated or replaced, e.g. by log rotation, so the reader can
+ * open the file again and read it from the start, and when it is {@link #close() closed} or the
+ * reading thread is interrupted. A stream can also pick up where an earlier one on the same file
+ * stopped, e.g. after a read error.
+ */
+public final class TailingInputStream extends InputStream {
+
+    private final Path path;
+    private final long pollMillis;
+    private final FileChannel channel;
+    private final Object fileKey;
+    private long position;
+    // Set when the file to resume is no longer the one at the path
+    private boolean ended;
+    private volatile boolean closed;
+
+    /**
+     * Opens a file to read from its start
+     *
+     * @param path The file
+     * @param pollMillis How long to wait between checks for more data at the end of the file
+     * @throws NoSuchFileException If the file doesn't exist
+     * @throws IOException If the file can't be opened
+     */
+    public TailingInputStream(Path path, long pollMillis) throws IOException {
+        this.path = path;
+        this.pollMillis = pollMillis;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+    /**
+     * Opens a file to carry on reading at a position an earlier stream on it reached. If the path now
+     * names another file, or the file is shorter than the position, the stream ends at once as it would
+     * for a replaced file.
+     *
+     * @param path The file
+     * @param pollMillis How long to wait between checks for more data at the end of the file
+     * @param position Where to start reading
+     * @param fileKey The {@link #getFileKey() key} of the file the earlier stream read
+     * @throws NoSuchFileException If the file doesn't exist
+     * @throws IOException If the file can't be opened
+     */
+    public TailingInputStream(Path path, long pollMillis, long position, Object fileKey) throws IOException {
+        this(path, pollMillis);
+        if (Objects.equals(this.fileKey, fileKey) && position <= channel.size()) {
+            channel.position(position);
+            this.position = position;
+        } else {
+            ended = true;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (!closed && !ended) {
+            int read = channel.read(ByteBuffer.wrap(buffer, offset, length));
+            if (read > 0) {
+                position += read;
+                return read;
+            }
+            if (replaced()) {
+                return -1;
+            }
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Whether the path no longer names the file being read, or the file was truncated
+     */
+    private boolean replaced() throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.size() < position || !Objects.equals(attributes.fileKey(), fileKey);
+        } catch (NoSuchFileException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @return The offset in the file of the next byte to read
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return The file system's key for the file, or null if it has none
+     */
+    public Object getFileKey() {
+        return fileKey;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.mcpserver.analytics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analysis windows offered by the authorization rate tool, ending at the time of analysis
+ */
+public enum Timeframe {
+
+    LAST_7_DAYS("last_7_days", 7),
+    LAST_30_DAYS("last_30_days", 30),
+    LAST_90_DAYS("last_90_days", 90),
+    LAST_YEAR("last_year", 365);
+
+    private final String key;
+    private final int days;
+
+    Timeframe(String key, int days) {
+        this.key = key;
+        this.days = days;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public int days() {
+        return days;
+    }
+
+    /**
+     * @param endMillis The exclusive end of the window in epoch milliseconds
+     * @return The inclusive start of the window in epoch milliseconds
+     */
+    public long startMillis(long endMillis) {
+        return endMillis - TimeUnit.DAYS.toMillis(days);
+    }
+
+    /**
+     * @param key A timeframe name
+     * @return The timeframe, or null if the name is not known
+     */
+    public static Timeframe fromKey(String key) {
+        for (Timeframe timeframe : values()) {
+            if (timeframe.key.equals(key)) {
+                return timeframe;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.mcpserver.analytics;
+
+/**
+ * A micro-batch of authorization events in column arrays, filled by an ingestion source and applied
+ * to the {@link TransactionSink sinks} in one go, so a sink can take its locks once per batch
+ * rather than once per event.
+ *
+ * Filled by a single thread, then handed over to the thread that applies it; not thread-safe.
+ */
+public final class TransactionBatch {
+
+    private final long[] timestamps;
+    private final String[] merchantIds;
+    private final TransactionType[] types;
+    private final boolean[] approved;
+    private final DeclineReason[] reasons;
+    private final float[] amounts;
+    private final long[] cards;
+    private final int[] bins;
+    private int size;
+    private long firstAddedNanos;
+    private long maxTimestamp = Long.MIN_VALUE;
+
+    public TransactionBatch(int capacity) {
+        timestamps = new long[capacity];
+        merchantIds = new String[capacity];
+        types = new TransactionType[capacity];
+        approved = new boolean[capacity];
+        reasons = new DeclineReason[capacity];
+        amounts = new float[capacity];
+        cards = new long[capacity];
+        bins = new int[capacity];
+    }
+
+    /**
+     * Adds an event; the arguments are those of {@link TransactionSink#append}
+     *
+     * @throws IllegalStateException If the batch is full
+     */
+    public void add(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason,
+                    float amount, long card, int bin) {
+        if (size == timestamps.length) {
+            throw new IllegalStateException("Batch is full");
+        }
+        if (size == 0) {
+            firstAddedNanos = System.nanoTime();
+        }
+        timestamps[size] = timestamp;
+        merchantIds[size] = merchantId;
+        types[size] = type;
+        this.approved[size] = approved;
+        reasons[size] = reason;
+        amounts[size] = amount;
+        cards[size] = card;
+        bins[size] = bin;
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == timestamps.length;
+    }
+
+    /**
+     * @return The {@link System#nanoTime()} at which the first event was added
+     */
+    public long getFirstAddedNanos() {
+        return firstAddedNanos;
+    }
+
+    /**
+     * @return The latest event time in the batch in epoch milliseconds, or Long.MIN_VALUE if it is empty
+     */
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    public long timestamp(int index) {
+        return timestamps[index];
+    }
+
+    public String merchantId(int index) {
+        return merchantIds[index];
+    }
+
+    public TransactionType type(int index) {
+        return types[index];
+    }
+
+    public boolean approved(int index) {
+        return approved[index];
+    }
+
+    public DeclineReason reason(int index) {
+        return reasons[index];
+    }
+
+    public float amount(int index) {
+        return amounts[index];
+    }
+
+    public long card(int index) {
+        return cards[index];
+    }
+
+    public int bin(int index) {
+        return bins[index];
+    }
+
+    /**
+     * Passes the events to a sink one by one, in the order they were added
+     */
+    public void replay(TransactionSink sink) {
+        for (int i = 0; i < size; i++) {
+            sink.append(timestamps[i], merchantIds[i], types[i], approved[i], reasons[i], amounts[i], cards[i], bins[i]);
+        }
+    }
+}
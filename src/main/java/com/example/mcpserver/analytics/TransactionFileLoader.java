@@ -0,0 +1,353 @@
+package com.example.mcpserver.analytics;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads authorization events from CSV or JSON Lines files into a {@link TransactionSink}, such as the
+ * {@link DailyAggregates}.
+ *
+ * Both formats carry the fields {@code timestamp} (epoch milliseconds or an ISO-8601 instant),
+ * {@code merchant_id}, {@code type}, {@code approved} and, for declines, {@code decline_reason};
+ * camelCase names are accepted as well. The optional fields {@code amount}, {@code card_id} and
+ * {@code card_bin} feed the distinct card counts and amount distributions; card IDs are kept only as
+ * 64-bit fingerprints. CSV files start with a header row naming the columns and
+ * must not quote fields. Rows that can't be read are skipped and counted rather than failing the load;
+ * in JSON Lines a line that isn't valid JSON is skipped up to the next newline.
+ *
+ * The stream loaders count the bytes of the lines they have consumed, so a reader that loses its stream
+ * part-way through a file can open it again at {@link #getConsumed()} and hand the new stream to the
+ * same loader, which then carries on with the CSV columns it already read.
+ */
+@Slf4j
+public final class TransactionFileLoader {
+
+    private static final int TIMESTAMP = 0;
+    private static final int MERCHANT = 1;
+    private static final int TYPE = 2;
+    private static final int APPROVED = 3;
+    private static final int REASON = 4;
+    private static final int AMOUNT = 5;
+    private static final int CARD = 6;
+    private static final int BIN = 7;
+    private static final int FIELD_COUNT = 8;
+
+    // Longer lines are skipped rather than buffered; a multiple of the initial buffer size
+    private static final int MAX_LINE_BYTES = 1 << 20;
+
+    private static final Map<String, Integer> FIELDS = new HashMap<>();
+
+    static {
+        FIELDS.put("timestamp", TIMESTAMP);
+        FIELDS.put("merchant_id", MERCHANT);
+        FIELDS.put("merchantid", MERCHANT);
+        FIELDS.put("type", TYPE);
+        FIELDS.put("transaction_type", TYPE);
+        FIELDS.put("transactiontype", TYPE);
+        FIELDS.put("approved", APPROVED);
+        FIELDS.put("decline_reason", REASON);
+        FIELDS.put("declinereason", REASON);
+        FIELDS.put("amount", AMOUNT);
+        FIELDS.put("card_id", CARD);
+        FIELDS.put("cardid", CARD);
+        FIELDS.put("card_bin", BIN);
+        FIELDS.put("cardbin", BIN);
+        FIELDS.put("bin", BIN);
+    }
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final TransactionSink sink;
+    // Read by other threads while a stream is being loaded
+    private volatile long loaded;
+    private volatile long skipped;
+    private long consumed;
+    // Field of each CSV column, once the header row has been read
+    private int[] fieldOf;
+
+    public TransactionFileLoader(TransactionSink sink) {
+        this.sink = sink;
+    }
+
+    public long getLoaded() {
+        return loaded;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return The number of bytes of complete lines that the stream loaders have read
+     */
+    public long getConsumed() {
+        return consumed;
+    }
+
+    /**
+     * Loads a file, choosing the format by its extension: .jsonl or .json for JSON Lines, CSV otherwise
+     *
+     * @param path The file to load
+     * @throws IOException If the file can't be read
+     */
+    public void load(Path path) throws IOException {
+        long loadedBefore = loaded;
+        long skippedBefore = skipped;
+        if (isJsonLines(path)) {
+            try (InputStream in = Files.newInputStream(path)) {
+                loadJsonLines(in);
+            }
+        } else {
+            loadCsv(Files.newBufferedReader(path, StandardCharsets.UTF_8));
+        }
+        log.info("Loaded {} transactions from {} ({} invalid rows skipped)",
+                loaded - loadedBefore, path, skipped - skippedBefore);
+    }
+
+    /**
+     * @return Whether a file holds JSON Lines by its extension, .jsonl or .json, rather than CSV
+     */
+    public static boolean isJsonLines(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".jsonl") || name.endsWith(".json");
+    }
+
+    /**
+     * Loads CSV with a header row
+     */
+    public void loadCsv(Reader source) throws IOException {
+        try (BufferedReader reader = new BufferedReader(source)) {
+            String header = reader.readLine();
+            if (header == null) {
+                return;
+            }
+            readHeader(header);
+            String[] values = new String[FIELD_COUNT];
+            String line;
+            while ((line = reader.readLine()) != null) {
+                appendCsv(line, values);
+            }
+        }
+    }
+
+    /**
+     * Loads UTF-8 CSV, starting with a header row unless this loader has already read one
+     */
+    public void loadCsv(InputStream in) throws IOException {
+        String[] values = new String[FIELD_COUNT];
+        readLines(in, (buffer, offset, length) -> {
+            String line = new String(buffer, offset, length, StandardCharsets.UTF_8);
+            if (fieldOf == null) {
+                readHeader(line);
+            } else {
+                appendCsv(line, values);
+            }
+        });
+    }
+
+    private void readHeader(String header) {
+        String[] columns = header.split(",", -1);
+        fieldOf = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            fieldOf[i] = fieldIndex(columns[i]);
+        }
+    }
+
+    private void appendCsv(String line, String[] values) {
+        if (line.isEmpty()) {
+            return;
+        }
+        Arrays.fill(values, null);
+        int column = 0;
+        int start = 0;
+        for (int i = 0; i <= line.length(); i++) {
+            if (i == line.length() || line.charAt(i) == ',') {
+                if (column < fieldOf.length && fieldOf[column] >= 0) {
+                    values[fieldOf[column]] = line.substring(start, i).trim();
+                }
+                column++;
+                start = i + 1;
+            }
+        }
+        append(values);
+    }
+
+    /**
+     * Loads JSON Lines: JSON objects, one per transaction, each on a line of its own
+     */
+    public void loadJsonLines(InputStream in) throws IOException {
+        String[] values = new String[FIELD_COUNT];
+        readLines(in, (buffer, offset, length) -> appendJson(buffer, offset, length, values));
+    }
+
+    private void appendJson(byte[] buffer, int offset, int length, String[] values) throws IOException {
+        // Whether the value being read has already been counted as skipped
+        boolean counted = false;
+        try (JsonParser parser = jsonFactory.createParser(buffer, offset, length)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    skipped++;
+                    counted = true;
+                    parser.skipChildren();
+                    counted = false;
+                    continue;
+                }
+                Arrays.fill(values, null);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    int field = fieldIndex(parser.getCurrentName());
+                    JsonToken value = parser.nextToken();
+                    if (field >= 0 && value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                        values[field] = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                append(values);
+            }
+        } catch (JsonProcessingException e) {
+            // The rest of the line is lost, the next one is read afresh
+            if (!counted) {
+                skipped++;
+            }
+        }
+    }
+
+    private interface LineHandler {
+        void line(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    /**
+     * Hands each line of a stream to a handler without its line terminator, counting the bytes consumed
+     * as each line is handled. A line over {@link #MAX_LINE_BYTES} is counted as skipped and dropped.
+     */
+    private void readLines(InputStream in, LineHandler handler) throws IOException {
+        byte[] buffer = new byte[8192];
+        // The line being read is buffer[start, end), with no newline before scan
+        int start = 0;
+        int end = 0;
+        int scan = 0;
+        boolean dropping = false;
+        while (true) {
+            int newline = -1;
+            for (int i = scan; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+            if (newline >= 0) {
+                if (!dropping) {
+                    int length = newline - start;
+                    handler.line(buffer, start, length > 0 && buffer[newline - 1] == '\r' ? length - 1 : length);
+                }
+                dropping = false;
+                consumed += newline + 1 - start;
+                start = newline + 1;
+                scan = start;
+                continue;
+            }
+            if (start == end) {
+                start = 0;
+                end = 0;
+            } else if (end == buffer.length) {
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                } else if (buffer.length < MAX_LINE_BYTES) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                } else {
+                    if (!dropping) {
+                        skipped++;
+                        dropping = true;
+                    }
+                    consumed += end;
+                    end = 0;
+                }
+            }
+            scan = end;
+            int read = in.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                if (end > start && !dropping) {
+                    handler.line(buffer, start, end - start);
+                }
+                consumed += end - start;
+                return;
+            }
+            end += read;
+        }
+    }
+
+    private void append(String[] values) {
+        String timestampValue = values[TIMESTAMP];
+        String merchantId = values[MERCHANT];
+        TransactionType type = values[TYPE] != null ? TransactionType.fromKey(values[TYPE]) : null;
+        String approvedValue = values[APPROVED];
+        if (timestampValue == null || timestampValue.isEmpty() || merchantId == null || merchantId.isEmpty()
+                || type == null || approvedValue == null) {
+            skipped++;
+            return;
+        }
+        try {
+            long timestamp = parseTimestamp(timestampValue);
+            boolean approved = "true".equalsIgnoreCase(approvedValue) || "1".equals(approvedValue);
+            if (!approved && !"false".equalsIgnoreCase(approvedValue) && !"0".equals(approvedValue)) {
+                skipped++;
+                return;
+            }
+            String reason = values[REASON];
+            String amount = values[AMOUNT];
+            String card = values[CARD];
+            String bin = values[BIN];
+            sink.append(timestamp, merchantId, type, approved,
+                    reason == null || reason.isEmpty() ? DeclineReason.OTHER : DeclineReason.fromKey(reason),
+                    amount == null || amount.isEmpty() ? Float.NaN : Float.parseFloat(amount),
+                    card == null || card.isEmpty() ? 0 : fingerprint(card),
+                    bin == null || bin.isEmpty() ? 0 : Integer.parseInt(bin));
+            loaded++;
+        } catch (NumberFormatException | DateTimeParseException e) {
+            skipped++;
+        }
+    }
+
+    private static long parseTimestamp(String value) {
+        if (value.indexOf('T') < 0) {
+            return Long.parseLong(value);
+        }
+        return Instant.parse(value).toEpochMilli();
+    }
+
+    /**
+     * @return A 64-bit FNV-1a hash of a card ID, never 0 as that marks an unknown card
+     */
+    static long fingerprint(String card) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < card.length(); i++) {
+            hash ^= card.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash != 0 ? hash : 1;
+    }
+
+    private static int fieldIndex(String name) {
+        Integer field = FIELDS.get(name.trim().toLowerCase(Locale.ROOT));
+        return field != null ? field : -1;
+    }
+}
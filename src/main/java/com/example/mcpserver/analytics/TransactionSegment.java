@@ -0,0 +1,173 @@
+package com.example.mcpserver.analytics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable file of authorization events covering one time partition, read through a memory mapping.
+ *
+ * Layout, big-endian:
+ * <pre>
+ *   header   (64 bytes)  magic, version, row count, min and max timestamp, merchant count,
+ *                        index offset, records offset
+ *   records  (26 bytes each, grouped by merchant and sorted by time within a merchant)
+ *            timestamp (8), type (1), flags (1): the approved bit (0x80) or the decline reason,
+ *            amount (4, float, NaN if unknown), card fingerprint (8), BIN (4), zero if unknown
+ *   index    per merchant: UTF-8 ID with a two-byte length, first row (4), row count (4)
+ * </pre>
+ *
+ * Opening a segment reads only the header and the merchant index. A replay binary-searches each
+ * merchant's rows for its start time, so a replay of the latest year skips the pages of older rows.
+ * Queries don't read segments: they are answered by {@link DailyAggregates} rebuilt from a replay when
+ * the segments change, and otherwise loaded from an {@link AggregateSnapshot}.
+ */
+public final class TransactionSegment {
+
+    static final int MAGIC = 0x54585347; // "TXSG"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 26;
+    static final int APPROVED_FLAG = 0x80;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int rowCount;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    // Merchant ID to first row (high 32 bits) and row count (low 32 bits)
+    private final Map<String, Long> ranges;
+
+    private TransactionSegment(Path path, MappedByteBuffer buffer, int rowCount, long minTimestamp,
+                               long maxTimestamp, Map<String, Long> ranges) {
+        this.path = path;
+        this.buffer = buffer;
+        this.rowCount = rowCount;
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        this.ranges = ranges;
+    }
+
+    /**
+     * Maps a segment file
+     *
+     * @param path The segment file
+     * @return The segment
+     * @throws IOException If the file can't be read or is not a segment
+     */
+    public static TransactionSegment open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a transaction segment: " + path);
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a transaction segment: " + path);
+        }
+        long rows = buffer.getLong(8);
+        long minTimestamp = buffer.getLong(16);
+        long maxTimestamp = buffer.getLong(24);
+        int merchantCount = buffer.getInt(32);
+        long indexOffset = buffer.getLong(40);
+        long recordsOffset = buffer.getLong(48);
+        if (recordsOffset != HEADER_SIZE || indexOffset != HEADER_SIZE + rows * RECORD_SIZE
+                || indexOffset > buffer.capacity()) {
+            throw new IOException("Corrupt transaction segment: " + path);
+        }
+
+        Map<String, Long> ranges = new HashMap<>(merchantCount * 4 / 3 + 1);
+        ByteBuffer index = buffer.duplicate();
+        index.position((int) indexOffset);
+        try {
+            for (int i = 0; i < merchantCount; i++) {
+                byte[] id = new byte[index.getShort() & 0xFFFF];
+                index.get(id);
+                int firstRow = index.getInt();
+                int count = index.getInt();
+                if (firstRow < 0 || count < 0 || (long) firstRow + count > rows) {
+                    throw new IOException("Corrupt transaction segment: " + path);
+                }
+                ranges.put(new String(id, StandardCharsets.UTF_8), ((long) firstRow << 32) | count);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt transaction segment: " + path, e);
+        }
+        return new TransactionSegment(path, buffer, (int) rows, minTimestamp, maxTimestamp, ranges);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    public long getSizeInBytes() {
+        return buffer.capacity();
+    }
+
+    Set<String> merchantIds() {
+        return ranges.keySet();
+    }
+
+    /**
+     * Passes the segment's transactions at or after a time to a sink, merchant by merchant
+     *
+     * @param fromMillis Inclusive start time in epoch milliseconds
+     * @param sink The sink to replay into
+     */
+    public void replay(long fromMillis, TransactionSink sink) {
+        if (maxTimestamp < fromMillis) {
+            return;
+        }
+        for (Map.Entry<String, Long> entry : ranges.entrySet()) {
+            long range = entry.getValue();
+            int first = (int) (range >>> 32);
+            int end = first + (int) range;
+            for (int row = lowerBound(first, end, fromMillis); row < end; row++) {
+                int offset = HEADER_SIZE + row * RECORD_SIZE;
+                int flags = buffer.get(offset + 9);
+                boolean approved = (flags & APPROVED_FLAG) != 0;
+                sink.append(buffer.getLong(offset), entry.getKey(), TransactionType.fromCode(buffer.get(offset + 8)),
+                        approved, approved ? null : DeclineReason.fromCode(flags),
+                        buffer.getFloat(offset + 10), buffer.getLong(offset + 14), buffer.getInt(offset + 22));
+            }
+        }
+    }
+
+    /**
+     * @return The first row of a merchant's range with a timestamp at or after the given time
+     */
+    private int lowerBound(int first, int end, long fromMillis) {
+        int low = first;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getLong(HEADER_SIZE + mid * RECORD_SIZE) < fromMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
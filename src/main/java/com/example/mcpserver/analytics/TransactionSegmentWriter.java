@@ -0,0 +1,175 @@
+package com.example.mcpserver.analytics;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the contents of a {@link TransactionStore} as {@link TransactionSegment} files, one per
+ * calendar month (UTC), so that a segment can be skipped by any query whose window misses its month.
+ */
+public final class TransactionSegmentWriter {
+
+    public static final String EXTENSION = ".seg";
+
+    private TransactionSegmentWriter() {
+    }
+
+    /**
+     * Writes one segment per month that has transactions, named {@code <prefix>.<yyyy-MM>.seg}
+     *
+     * @param store The transactions to write
+     * @param directory The directory to write to
+     * @param prefix The file name prefix
+     * @return The segment files written
+     * @throws IOException If a segment can't be written
+     */
+    public static List<Path> writeMonthly(TransactionStore store, Path directory, String prefix) throws IOException {
+        List<Path> written = new ArrayList<>();
+        long rows = store.size();
+        if (rows == 0) {
+            return written;
+        }
+        long minTimestamp = Long.MAX_VALUE;
+        for (long row = 0; row < rows; row++) {
+            minTimestamp = Math.min(minTimestamp, store.timestamp(row));
+        }
+        YearMonth month = YearMonth.from(Instant.ofEpochMilli(minTimestamp).atZone(ZoneOffset.UTC));
+        YearMonth last = YearMonth.from(Instant.ofEpochMilli(store.getMaxTimestamp()).atZone(ZoneOffset.UTC));
+        while (!month.isAfter(last)) {
+            long from = month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            long to = month.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            Path target = directory.resolve(prefix + "." + month + EXTENSION);
+            if (write(store, from, to, target) > 0) {
+                written.add(target);
+            }
+            month = month.plusMonths(1);
+        }
+        return written;
+    }
+
+    /**
+     * Writes the transactions in a time window as one segment, replacing the target atomically
+     *
+     * @param store The transactions to write
+     * @param fromMillis Inclusive start of the window in epoch milliseconds
+     * @param toMillis Exclusive end of the window in epoch milliseconds
+     * @param target The segment file
+     * @return The number of transactions written; no file is written if there are none
+     * @throws IOException If the segment can't be written
+     */
+    public static int write(TransactionStore store, long fromMillis, long toMillis, Path target) throws IOException {
+        // Counting sort of the window's rows by merchant, keeping time order within a merchant
+        int merchants = store.getMerchants().size();
+        int[] starts = new int[merchants + 1];
+        long rows = store.size();
+        long count = 0;
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        for (long row = 0; row < rows; row++) {
+            long timestamp = store.timestamp(row);
+            if (timestamp >= fromMillis && timestamp < toMillis) {
+                starts[store.merchant(row) + 1]++;
+                count++;
+                minTimestamp = Math.min(minTimestamp, timestamp);
+                maxTimestamp = Math.max(maxTimestamp, timestamp);
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        int merchantCount = 0;
+        long indexSize = 0;
+        for (int merchant = 0; merchant < merchants; merchant++) {
+            if (starts[merchant + 1] > 0) {
+                merchantCount++;
+                indexSize += 10 + store.getMerchants().decode(merchant).getBytes(StandardCharsets.UTF_8).length;
+            }
+            starts[merchant + 1] += starts[merchant];
+        }
+        // Segments are mapped with a single buffer
+        if (TransactionSegment.HEADER_SIZE + count * TransactionSegment.RECORD_SIZE + indexSize > Integer.MAX_VALUE) {
+            throw new IOException("Too many transactions for one segment: " + count);
+        }
+        long[] sorted = new long[(int) count];
+        int[] next = Arrays.copyOf(starts, merchants);
+        for (long row = 0; row < rows; row++) {
+            long timestamp = store.timestamp(row);
+            if (timestamp >= fromMillis && timestamp < toMillis) {
+                sorted[next[store.merchant(row)]++] = row;
+            }
+        }
+        for (int merchant = 0; merchant < merchants; merchant++) {
+            sortByTimestamp(store, sorted, starts[merchant], starts[merchant + 1]);
+        }
+
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(TransactionSegment.MAGIC);
+            out.writeInt(TransactionSegment.VERSION);
+            out.writeLong(count);
+            out.writeLong(minTimestamp);
+            out.writeLong(maxTimestamp);
+            out.writeInt(merchantCount);
+            out.writeInt(0);
+            out.writeLong(TransactionSegment.HEADER_SIZE + count * TransactionSegment.RECORD_SIZE);
+            out.writeLong(TransactionSegment.HEADER_SIZE);
+            out.write(new byte[TransactionSegment.HEADER_SIZE - out.size()]);
+
+            for (long row : sorted) {
+                out.writeLong(store.timestamp(row));
+                out.writeByte(store.type(row));
+                out.writeByte(store.approved(row) ? TransactionSegment.APPROVED_FLAG : store.reason(row));
+                out.writeFloat(store.amount(row));
+                out.writeLong(store.card(row));
+                out.writeInt(store.bin(row));
+            }
+
+            for (int merchant = 0; merchant < merchants; merchant++) {
+                int length = starts[merchant + 1] - starts[merchant];
+                if (length == 0) {
+                    continue;
+                }
+                byte[] id = store.getMerchants().decode(merchant).getBytes(StandardCharsets.UTF_8);
+                out.writeShort(id.length);
+                out.write(id);
+                out.writeInt(starts[merchant]);
+                out.writeInt(length);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return (int) count;
+    }
+
+    /**
+     * Sorts a merchant's rows by timestamp. Rows are usually loaded in time order already, in which
+     * case this is a single pass.
+     */
+    private static void sortByTimestamp(TransactionStore store, long[] rows, int from, int to) {
+        boolean ordered = true;
+        for (int i = from + 1; i < to && ordered; i++) {
+            ordered = store.timestamp(rows[i - 1]) <= store.timestamp(rows[i]);
+        }
+        if (ordered) {
+            return;
+        }
+        Long[] boxed = new Long[to - from];
+        for (int i = from; i < to; i++) {
+            boxed[i - from] = rows[i];
+        }
+        Arrays.sort(boxed, (left, right) -> Long.compare(store.timestamp(left), store.timestamp(right)));
+        for (int i = from; i < to; i++) {
+            rows[i] = boxed[i - from];
+        }
+    }
+}
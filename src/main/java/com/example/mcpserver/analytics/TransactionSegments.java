@@ -0,0 +1,112 @@
+package com.example.mcpserver.analytics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The {@link TransactionSegment} files in a directory, replayed as one transaction history.
+ * Replays skip the segments that end before the start time.
+ */
+@Slf4j
+public final class TransactionSegments {
+
+    private final List<TransactionSegment> segments;
+    private final long size;
+    private final int merchantCount;
+    private final long maxTimestamp;
+    private final long memoryBytes;
+
+    private TransactionSegments(List<TransactionSegment> segments) {
+        this.segments = segments;
+        long rows = 0;
+        long bytes = 0;
+        long latest = Long.MIN_VALUE;
+        Set<String> merchants = new HashSet<>();
+        for (TransactionSegment segment : segments) {
+            rows += segment.getRowCount();
+            bytes += segment.getSizeInBytes();
+            latest = Math.max(latest, segment.getMaxTimestamp());
+            merchants.addAll(segment.merchantIds());
+        }
+        this.size = rows;
+        this.memoryBytes = bytes;
+        this.maxTimestamp = latest;
+        this.merchantCount = merchants.size();
+    }
+
+    /**
+     * Maps every segment file in a directory, skipping files that aren't valid segments
+     *
+     * @param directory The directory holding the segments
+     * @return The segments, ordered by start time
+     * @throws IOException If the directory can't be listed
+     */
+    public static TransactionSegments open(Path directory) throws IOException {
+        List<TransactionSegment> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + TransactionSegmentWriter.EXTENSION)) {
+            for (Path file : files) {
+                try {
+                    segments.add(TransactionSegment.open(file));
+                } catch (IOException e) {
+                    log.warn("Skipping transaction segment {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(TransactionSegment::getMinTimestamp));
+        return new TransactionSegments(Collections.unmodifiableList(segments));
+    }
+
+    public List<TransactionSegment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return The number of transactions
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return The number of distinct merchants
+     */
+    public int merchantCount() {
+        return merchantCount;
+    }
+
+    /**
+     * @return The latest transaction timestamp, or Long.MIN_VALUE if there are no transactions
+     */
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    /**
+     * @return The bytes mapped from the segment files
+     */
+    public long memoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * Passes the transactions at or after a time to a sink, segment by segment
+     *
+     * @param fromMillis Inclusive start time in epoch milliseconds
+     * @param sink The sink to replay into
+     */
+    public void replay(long fromMillis, TransactionSink sink) {
+        for (TransactionSegment segment : segments) {
+            segment.replay(fromMillis, sink);
+        }
+    }
+}
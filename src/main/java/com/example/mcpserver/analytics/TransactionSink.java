@@ -0,0 +1,73 @@
+package com.example.mcpserver.analytics;
+
+/**
+ * Receives authorization events as they are ingested
+ */
+public interface TransactionSink {
+
+    /**
+     * Accepts an authorization event
+     *
+     * @param timestamp The event time in epoch milliseconds
+     * @param merchantId The merchant ID
+     * @param type The transaction type
+     * @param approved Whether the transaction was approved
+     * @param reason The decline reason; ignored for approved transactions
+     */
+    void append(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason);
+
+    /**
+     * Accepts an authorization event together with its amount and card. Sinks that only count
+     * authorizations ignore the extra fields.
+     *
+     * @param timestamp The event time in epoch milliseconds
+     * @param merchantId The merchant ID
+     * @param type The transaction type
+     * @param approved Whether the transaction was approved
+     * @param reason The decline reason; ignored for approved transactions
+     * @param amount The amount in major currency units, or NaN if not known
+     * @param card A 64-bit fingerprint of the card, or 0 if not known
+     * @param bin The card's BIN (issuer identification number), or 0 if not known
+     */
+    default void append(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason,
+                        float amount, long card, int bin) {
+        append(timestamp, merchantId, type, approved, reason);
+    }
+
+    /**
+     * Accepts a batch of events. Sinks that can apply a batch more cheaply than event by event, e.g.
+     * by locking once, override this.
+     *
+     * @param batch The events, in the order they were ingested
+     */
+    default void append(TransactionBatch batch) {
+        batch.replay(this);
+    }
+
+    /**
+     * @return A sink that passes each event to this sink and then to the next one
+     */
+    default TransactionSink andThen(TransactionSink next) {
+        TransactionSink first = this;
+        return new TransactionSink() {
+            @Override
+            public void append(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason) {
+                first.append(timestamp, merchantId, type, approved, reason);
+                next.append(timestamp, merchantId, type, approved, reason);
+            }
+
+            @Override
+            public void append(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason,
+                               float amount, long card, int bin) {
+                first.append(timestamp, merchantId, type, approved, reason, amount, card, bin);
+                next.append(timestamp, merchantId, type, approved, reason, amount, card, bin);
+            }
+
+            @Override
+            public void append(TransactionBatch batch) {
+                first.append(batch);
+                next.append(batch);
+            }
+        };
+    }
+}
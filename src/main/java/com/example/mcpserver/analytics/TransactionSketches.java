@@ -0,0 +1,118 @@
+package com.example.mcpserver.analytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Mergeable sketches of a set of transactions: distinct cards and BINs, overall and among declined
+ * transactions, and the distributions of approved and declined amounts. {@link DailySketches} keeps
+ * one per merchant, type and day, and merges them into a fresh instance to answer a timeframe query.
+ *
+ * Not thread-safe; callers serialize access.
+ */
+public final class TransactionSketches {
+
+    private final HyperLogLog cards = new HyperLogLog();
+    private final HyperLogLog declinedCards = new HyperLogLog();
+    private final HyperLogLog bins = new HyperLogLog();
+    private final HyperLogLog declinedBins = new HyperLogLog();
+    private final AmountSketch approvedAmounts = new AmountSketch();
+    private final AmountSketch declinedAmounts = new AmountSketch();
+
+    /**
+     * Adds one transaction
+     *
+     * @param approved Whether the transaction was approved
+     * @param amount The amount, or NaN if not known
+     * @param card The card fingerprint, or 0 if not known
+     * @param bin The card's BIN, or 0 if not known
+     */
+    public void add(boolean approved, float amount, long card, int bin) {
+        if (card != 0) {
+            cards.add(card);
+            if (!approved) {
+                declinedCards.add(card);
+            }
+        }
+        if (bin != 0) {
+            bins.add(bin);
+            if (!approved) {
+                declinedBins.add(bin);
+            }
+        }
+        (approved ? approvedAmounts : declinedAmounts).add(amount);
+    }
+
+    /**
+     * Adds the transactions sketched by another instance to this one
+     *
+     * @param other The sketches to merge; they are not changed
+     */
+    public void merge(TransactionSketches other) {
+        cards.merge(other.cards);
+        declinedCards.merge(other.declinedCards);
+        bins.merge(other.bins);
+        declinedBins.merge(other.declinedBins);
+        approvedAmounts.merge(other.approvedAmounts);
+        declinedAmounts.merge(other.declinedAmounts);
+    }
+
+    public HyperLogLog getCards() {
+        return cards;
+    }
+
+    public HyperLogLog getDeclinedCards() {
+        return declinedCards;
+    }
+
+    public HyperLogLog getBins() {
+        return bins;
+    }
+
+    public HyperLogLog getDeclinedBins() {
+        return declinedBins;
+    }
+
+    public AmountSketch getApprovedAmounts() {
+        return approvedAmounts;
+    }
+
+    public AmountSketch getDeclinedAmounts() {
+        return declinedAmounts;
+    }
+
+    /**
+     * @return The approximate heap used by the sketches in bytes
+     */
+    public long memoryBytes() {
+        return cards.memoryBytes() + declinedCards.memoryBytes() + bins.memoryBytes() + declinedBins.memoryBytes()
+                + approvedAmounts.memoryBytes() + declinedAmounts.memoryBytes();
+    }
+
+    /**
+     * Writes the sketches, for {@link #readFrom} to restore
+     */
+    void writeTo(DataOutput out) throws IOException {
+        cards.writeTo(out);
+        declinedCards.writeTo(out);
+        bins.writeTo(out);
+        declinedBins.writeTo(out);
+        approvedAmounts.writeTo(out);
+        declinedAmounts.writeTo(out);
+    }
+
+    /**
+     * Restores sketches written by {@link #writeTo} into empty ones
+     *
+     * @throws IOException If they can't be read or are not valid
+     */
+    void readFrom(DataInput in) throws IOException {
+        cards.readFrom(in);
+        declinedCards.readFrom(in);
+        bins.readFrom(in);
+        declinedBins.readFrom(in);
+        approvedAmounts.readFrom(in);
+        declinedAmounts.readFrom(in);
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.mcpserver.analytics;
+
+import java.util.Arrays;
+
+/**
+ * Append-only, column-oriented store of authorization events, used to gather a data file's rows
+ * before {@link TransactionSegmentWriter} sorts them by merchant into segments.
+ *
+ * Rows are kept in fixed-size chunks of primitive columns: an epoch-millisecond timestamp, a
+ * {@link MerchantDictionary dictionary-encoded} merchant, one-byte transaction type and decline
+ * reason codes, and an approved bit, about 14 bytes per row. Amount, card fingerprint and BIN columns
+ * add another 16 bytes per row, allocated only for chunks that hold rows with those fields.
+ *
+ * There is a single writer at a time ({@code append} is synchronized). Queries are answered by
+ * {@link DailyAggregates} rather than by scanning a store.
+ */
+public final class TransactionStore implements TransactionSink {
+
+    static final int CHUNK_SHIFT = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final MerchantDictionary merchants = new MerchantDictionary();
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile long size;
+    private volatile long maxTimestamp = Long.MIN_VALUE;
+
+    public MerchantDictionary getMerchants() {
+        return merchants;
+    }
+
+    /**
+     * @return The number of rows
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return The latest timestamp, or Long.MIN_VALUE if there are no rows
+     */
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    @Override
+    public void append(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason) {
+        int merchant = merchants.encode(merchantId);
+        append(timestamp, merchant, type.code(), approved, approved || reason == null ? 0 : reason.code(), Float.NaN, 0, 0);
+    }
+
+    @Override
+    public void append(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason,
+                       float amount, long card, int bin) {
+        int merchant = merchants.encode(merchantId);
+        append(timestamp, merchant, type.code(), approved, approved || reason == null ? 0 : reason.code(), amount, card, bin);
+    }
+
+    @Override
+    public synchronized void append(TransactionBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            append(batch.timestamp(i), batch.merchantId(i), batch.type(i), batch.approved(i), batch.reason(i),
+                    batch.amount(i), batch.card(i), batch.bin(i));
+        }
+    }
+
+    synchronized void append(long timestamp, int merchant, byte type, boolean approved, byte reason,
+                             float amount, long card, int bin) {
+        long row = size;
+        int index = (int) (row & CHUNK_MASK);
+        Chunk chunk;
+        if (index == 0) {
+            chunk = new Chunk();
+            Chunk[] current = chunks;
+            Chunk[] grown = new Chunk[current.length + 1];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            grown[current.length] = chunk;
+            chunks = grown;
+        } else {
+            chunk = chunks[chunks.length - 1];
+        }
+
+        chunk.timestamps[index] = timestamp;
+        chunk.merchants[index] = merchant;
+        chunk.types[index] = type;
+        chunk.reasons[index] = reason;
+        if (approved) {
+            chunk.approved[index >>> 6] |= 1L << index;
+        }
+        if (!Float.isNaN(amount) || card != 0 || bin != 0) {
+            chunk.setDetails(index, amount, card, bin);
+        }
+        if (timestamp > maxTimestamp) {
+            maxTimestamp = timestamp;
+        }
+        // Publishes the row to readers
+        size = row + 1;
+    }
+
+    // Row accessors for copying the store into segment files; rows must be below size()
+
+    long timestamp(long row) {
+        return chunk(row).timestamps[(int) (row & CHUNK_MASK)];
+    }
+
+    int merchant(long row) {
+        return chunk(row).merchants[(int) (row & CHUNK_MASK)];
+    }
+
+    byte type(long row) {
+        return chunk(row).types[(int) (row & CHUNK_MASK)];
+    }
+
+    byte reason(long row) {
+        return chunk(row).reasons[(int) (row & CHUNK_MASK)];
+    }
+
+    boolean approved(long row) {
+        int index = (int) (row & CHUNK_MASK);
+        return (chunk(row).approved[index >>> 6] & (1L << index)) != 0;
+    }
+
+    float amount(long row) {
+        float[] amounts = chunk(row).amounts;
+        return amounts != null ? amounts[(int) (row & CHUNK_MASK)] : Float.NaN;
+    }
+
+    long card(long row) {
+        long[] cards = chunk(row).cards;
+        return cards != null ? cards[(int) (row & CHUNK_MASK)] : 0;
+    }
+
+    int bin(long row) {
+        int[] bins = chunk(row).bins;
+        return bins != null ? bins[(int) (row & CHUNK_MASK)] : 0;
+    }
+
+    private Chunk chunk(long row) {
+        return chunks[(int) (row >>> CHUNK_SHIFT)];
+    }
+
+    /**
+     * One block of rows, column by column
+     */
+    private static final class Chunk {
+
+        final long[] timestamps = new long[CHUNK_SIZE];
+        final int[] merchants = new int[CHUNK_SIZE];
+        final byte[] types = new byte[CHUNK_SIZE];
+        final byte[] reasons = new byte[CHUNK_SIZE];
+        final long[] approved = new long[CHUNK_SIZE >>> 6];
+        // Allocated together when the first row with an amount, card or BIN arrives
+        float[] amounts;
+        long[] cards;
+        int[] bins;
+
+        void setDetails(int index, float amount, long card, int bin) {
+            if (amounts == null) {
+                amounts = new float[CHUNK_SIZE];
+                Arrays.fill(amounts, Float.NaN);
+                cards = new long[CHUNK_SIZE];
+                bins = new int[CHUNK_SIZE];
+            }
+            amounts[index] = amount;
+            cards[index] = card;
+            bins[index] = bin;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.mcpserver.analytics;
+
+/**
+ * Payment method of a transaction, stored as its one-byte {@link #code()}
+ */
+public enum TransactionType {
+
+    CARD("card"),
+    BANK("bank"),
+    WALLET("wallet"),
+    CRYPTO("crypto");
+
+    private static final TransactionType[] VALUES = values();
+
+    private final String key;
+
+    TransactionType(String key) {
+        this.key = key;
+    }
+
+    /**
+     * @return The name used in tool arguments and data files
+     */
+    public String key() {
+        return key;
+    }
+
+    public byte code() {
+        return (byte) ordinal();
+    }
+
+    public static TransactionType fromCode(int code) {
+        return VALUES[code];
+    }
+
+    /**
+     * @param key A transaction type name, in any case
+     * @return The type, or null if the name is not known
+     */
+    public static TransactionType fromKey(String key) {
+        for (TransactionType type : VALUES) {
+            if (type.key.equalsIgnoreCase(key)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.mcpserver.config;
+
+import com.example.mcpserver.service.AdmissionControlService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Applies {@link AdmissionControlService} to HTTP requests, answering 503 with a
+ * Retry-After header when the server is overloaded
+ */
+@Component
+@RequiredArgsConstructor
+public class AdmissionControlInterceptor implements HandlerInterceptor {
+
+    // Marks a request holding an admission slot; async redispatches reuse the same slot
+    private static final String ADMITTED_ATTRIBUTE = AdmissionControlInterceptor.class.getName() + ".ADMITTED";
+
+    private final AdmissionControlService admissionControlService;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (request.getAttribute(ADMITTED_ATTRIBUTE) != null) {
+            return true;
+        }
+
+        if (admissionControlService.tryAcquire()) {
+            request.setAttribute(ADMITTED_ATTRIBUTE, Boolean.TRUE);
+            return true;
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("message", "Server overloaded, retry later");
+        body.put("code", "OVERLOADED");
+
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(admissionControlService.getRetryAfterSeconds()));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), body);
+        return false;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(ADMITTED_ATTRIBUTE) != null) {
+            request.removeAttribute(ADMITTED_ATTRIBUTE);
+            admissionControlService.release();
+        }
+    }
+}
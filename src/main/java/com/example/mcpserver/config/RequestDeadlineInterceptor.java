@@ -0,0 +1,68 @@
+package com.example.mcpserver.config;
+
+import com.example.mcpserver.service.RequestContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Gives HTTP requests a {@link RequestContext}, bounded by the optional {@code X-Deadline-Ms}
+ * header carrying the caller's time budget in milliseconds.
+ *
+ * The context is detached from the servlet thread when a handler goes asynchronous and the
+ * same context is attached again when the request is dispatched back to complete it.
+ */
+@Slf4j
+@Component
+public class RequestDeadlineInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String DEADLINE_HEADER = "X-Deadline-Ms";
+
+    private static final String CONTEXT_ATTRIBUTE = RequestDeadlineInterceptor.class.getName() + ".CONTEXT";
+    private static final String SCOPE_ATTRIBUTE = RequestDeadlineInterceptor.class.getName() + ".SCOPE";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        RequestContext context = (RequestContext) request.getAttribute(CONTEXT_ATTRIBUTE);
+        if (context == null) {
+            context = RequestContext.create(parseDeadline(request.getHeader(DEADLINE_HEADER)));
+            request.setAttribute(CONTEXT_ATTRIBUTE, context);
+        }
+        request.setAttribute(SCOPE_ATTRIBUTE, context.attach());
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        detach(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        detach(request);
+        request.removeAttribute(CONTEXT_ATTRIBUTE);
+    }
+
+    private static void detach(HttpServletRequest request) {
+        Object scope = request.getAttribute(SCOPE_ATTRIBUTE);
+        if (scope != null) {
+            request.removeAttribute(SCOPE_ATTRIBUTE);
+            ((RequestContext.Scope) scope).close();
+        }
+    }
+
+    private static Long parseDeadline(String header) {
+        if (header == null || header.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring invalid {} header: {}", DEADLINE_HEADER, header);
+            return null;
+        }
+    }
+}
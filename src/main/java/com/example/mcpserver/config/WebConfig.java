@@ -0,0 +1,23 @@
+package com.example.mcpserver.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebConfig implements WebMvcConfigurer {
+
+    private final AdmissionControlInterceptor admissionControlInterceptor;
+    private final RequestDeadlineInterceptor requestDeadlineInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // Only the endpoints doing real work are subject to admission control
+        registry.addInterceptor(admissionControlInterceptor)
+                .addPathPatterns("/api/v1/completions", "/api/v1/tools/**");
+        registry.addInterceptor(requestDeadlineInterceptor)
+                .addPathPatterns("/api/v1/completions", "/api/v1/tools/**");
+    }
+}
@@ -13,6 +13,7 @@ import org.springframework.web.bind.annotation.*;
 import javax.servlet.http.HttpServletRequest;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @RestController
@@ -24,31 +25,40 @@ public class McpController {
     private final McpInspectorService mcpInspectorService;
 
     @PostMapping("/completions")
-    public ResponseEntity<McpResponse> getCompletions(
+    public CompletableFuture<ResponseEntity<McpResponse>> getCompletions(
             @Valid @RequestBody McpRequest request,
             HttpServletRequest servletRequest) {
         log.debug("Received MCP request: {}", request);
         
         long startTime = System.currentTimeMillis();
-        McpResponse response = mcpService.processRequest(request);
-        long processingTime = System.currentTimeMillis() - startTime;
         
-        // Record the interaction for the inspector
-        Map<String, Object> additionalInfo = new HashMap<>();
-        additionalInfo.put("processingTimeMs", processingTime);
-        additionalInfo.put("userAgent", servletRequest.getHeader("User-Agent"));
+        // Read while the request is being handled; the interaction is recorded from a bulkhead thread
+        String userAgent = servletRequest.getHeader("User-Agent");
+        String remoteAddr = servletRequest.getRemoteAddr();
+        String requestUri = servletRequest.getRequestURI();
+        String method = servletRequest.getMethod();
         
-        mcpInspectorService.recordInteraction(
-                servletRequest.getRemoteAddr(),
-                servletRequest.getRequestURI(),
-                servletRequest.getMethod(),
-                request,
-                response,
-                processingTime,
-                additionalInfo
-        );
-        
-        return ResponseEntity.ok(response);
+        // A tool the query needs runs on its bulkhead; the servlet thread is released until the response is ready
+        return mcpService.processRequestAsync(request).thenApply(response -> {
+            long processingTime = System.currentTimeMillis() - startTime;
+            
+            // Record the interaction for the inspector
+            Map<String, Object> additionalInfo = new HashMap<>();
+            additionalInfo.put("processingTimeMs", processingTime);
+            additionalInfo.put("userAgent", userAgent);
+            
+            mcpInspectorService.recordInteraction(
+                    remoteAddr,
+                    requestUri,
+                    method,
+                    request,
+                    response,
+                    processingTime,
+                    additionalInfo
+            );
+            
+            return ResponseEntity.ok(response);
+        });
     }
     
     @GetMapping("/health")
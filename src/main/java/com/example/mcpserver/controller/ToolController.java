@@ -1,22 +1,27 @@
 package com.example.mcpserver.controller;
 
+import com.example.mcpserver.exception.McpException;
 import com.example.mcpserver.model.McpRequest;
 import com.example.mcpserver.model.McpResponse;
 import com.example.mcpserver.model.tool.Tool;
 import com.example.mcpserver.service.McpInspectorService;
 import com.example.mcpserver.service.ToolExecutorService;
+import com.example.mcpserver.service.ToolListCache;
 import com.example.mcpserver.service.ToolRegistry;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 @RestController
@@ -25,13 +30,21 @@ import java.util.Map;
 public class ToolController {
 
     private final ToolRegistry toolRegistry;
+    private final ToolListCache toolListCache;
     private final ToolExecutorService toolExecutorService;
     private final McpInspectorService mcpInspectorService;
-    private final ObjectMapper objectMapper;
 
     @GetMapping
-    public ResponseEntity<List<Tool>> getAvailableTools() {
-        return ResponseEntity.ok(toolRegistry.getAvailableTools());
+    public ResponseEntity<byte[]> getAvailableTools(WebRequest webRequest) {
+        // The list is served pre-serialized; clients holding the current ETag get 304 Not Modified
+        ToolListCache.Snapshot snapshot = toolListCache.getSnapshot();
+        if (webRequest.checkNotModified(snapshot.getEtag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(snapshot.getEtag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.getToolsJson());
     }
     
     @GetMapping("/{function}")
@@ -44,19 +57,35 @@ public class ToolController {
     }
     
     @PostMapping("/{function}/execute")
-    public ResponseEntity<Object> executeToolDirectly(
+    public CompletableFuture<ResponseEntity<Object>> executeToolDirectly(
             @PathVariable String function,
-            @RequestBody Map<String, Object> arguments,
+            @RequestBody JsonNode arguments,
             HttpServletRequest servletRequest) {
         
-        try {
-            long startTime = System.currentTimeMillis();
-            
-            // Convert arguments to JSON string
-            String argsJson = objectMapper.writeValueAsString(arguments);
-            
-            // Execute the tool
-            Object result = toolExecutorService.executeTool(function, argsJson);
+        long startTime = System.currentTimeMillis();
+        
+        // Read while the request is being handled; the result is recorded from a bulkhead thread
+        String userAgent = servletRequest.getHeader("User-Agent");
+        String remoteAddr = servletRequest.getRemoteAddr();
+        String requestUri = servletRequest.getRequestURI();
+        String method = servletRequest.getMethod();
+        
+        // Execute the tool on its bulkhead with the arguments as parsed from the request body;
+        // the servlet thread is released until the result is ready
+        return toolExecutorService.executeToolAsync(function, arguments).handle((result, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (cause instanceof McpException
+                        && (((McpException) cause).isAbandoned() || "OVERLOADED".equals(((McpException) cause).getErrorCode()))) {
+                    // Reported as a timeout or 503 by the global exception handler
+                    throw (McpException) cause;
+                }
+                log.error("Error executing tool directly", cause);
+                return ResponseEntity.badRequest().body(Map.of(
+                        "error", "Tool execution failed",
+                        "message", String.valueOf(cause.getMessage())
+                ));
+            }
             
             long processingTime = System.currentTimeMillis() - startTime;
             
@@ -76,13 +105,13 @@ public class ToolController {
             // Record the interaction for the inspector
             Map<String, Object> additionalInfo = new HashMap<>();
             additionalInfo.put("processingTimeMs", processingTime);
-            additionalInfo.put("userAgent", servletRequest.getHeader("User-Agent"));
+            additionalInfo.put("userAgent", userAgent);
             additionalInfo.put("toolFunction", function);
             
             mcpInspectorService.recordInteraction(
-                    servletRequest.getRemoteAddr(),
-                    servletRequest.getRequestURI(),
-                    servletRequest.getMethod(),
+                    remoteAddr,
+                    requestUri,
+                    method,
                     mcpRequest,
                     mcpResponse,
                     processingTime,
@@ -90,12 +119,6 @@ public class ToolController {
             );
             
             return ResponseEntity.ok(result);
-        } catch (Exception e) {
-            log.error("Error executing tool directly", e);
-            return ResponseEntity.badRequest().body(Map.of(
-                    "error", "Tool execution failed",
-                    "message", e.getMessage()
-            ));
-        }
+        });
     }
 } 
\ No newline at end of file
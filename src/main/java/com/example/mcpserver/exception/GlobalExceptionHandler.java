@@ -1,6 +1,9 @@
 package com.example.mcpserver.exception;
 
+import com.example.mcpserver.service.AdmissionControlService;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -12,8 +15,11 @@ import java.util.Map;
 
 @Slf4j
 @ControllerAdvice
+@RequiredArgsConstructor
 public class GlobalExceptionHandler {
 
+    private final AdmissionControlService admissionControlService;
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Object> handleAllExceptions(Exception ex, WebRequest request) {
         log.error("Unhandled exception", ex);
@@ -33,6 +39,11 @@ public class GlobalExceptionHandler {
         body.put("message", ex.getMessage());
         body.put("code", ex.getErrorCode());
         
-        return new ResponseEntity<>(body, ex.getStatus());
+        HttpHeaders headers = new HttpHeaders();
+        if ("OVERLOADED".equals(ex.getErrorCode())) {
+            // Same hint as requests shed by admission control
+            headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(admissionControlService.getRetryAfterSeconds()));
+        }
+        return new ResponseEntity<>(body, headers, ex.getStatus());
     }
 } 
\ No newline at end of file
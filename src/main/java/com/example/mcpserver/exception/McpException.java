@@ -32,4 +32,24 @@ public class McpException extends RuntimeException {
     public static McpException modelError(String message) {
         return new McpException(message, "MODEL_ERROR", HttpStatus.INTERNAL_SERVER_ERROR);
     }
+    
+    public static McpException overloaded(String message) {
+        return new McpException(message, "OVERLOADED", HttpStatus.SERVICE_UNAVAILABLE);
+    }
+    
+    public static McpException cancelled(String message) {
+        return new McpException(message, "CANCELLED", HttpStatus.REQUEST_TIMEOUT);
+    }
+    
+    public static McpException deadlineExceeded(String message) {
+        return new McpException(message, "DEADLINE_EXCEEDED", HttpStatus.GATEWAY_TIMEOUT);
+    }
+    
+    /**
+     * @return true if the request was abandoned because it was cancelled or ran past its deadline,
+     *         in which case the error must be passed through rather than wrapped
+     */
+    public boolean isAbandoned() {
+        return "CANCELLED".equals(errorCode) || "DEADLINE_EXCEEDED".equals(errorCode);
+    }
 } 
\ No newline at end of file
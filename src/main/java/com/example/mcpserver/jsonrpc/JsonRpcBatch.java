@@ -0,0 +1,24 @@
+package com.example.mcpserver.jsonrpc;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * A JSON-RPC batch array. Its members are parsed individually, so an invalid member only
+ * fails itself.
+ */
+@Getter
+public class JsonRpcBatch implements JsonRpcMessage {
+
+    private final List<JsonRpcRequest> requests;
+
+    public JsonRpcBatch(List<JsonRpcRequest> requests) {
+        this.requests = requests;
+    }
+
+    @Override
+    public boolean isNotification() {
+        return false;
+    }
+}
@@ -0,0 +1,435 @@
+package com.example.mcpserver.jsonrpc;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits a raw byte stream into JSON-RPC frames without decoding it to characters.
+ *
+ * Two framings are recognised, chosen per message: newline-delimited JSON, and LSP-style
+ * {@code Content-Length} headers followed by a blank line and the message body. Frames are
+ * handed to a {@link FrameHandler} as a slice of an internal buffer that is reused for the next
+ * read, so the handler must consume the slice (e.g. parse it with Jackson) before returning.
+ *
+ * Frames larger than {@code maxFrameSize} are dropped as they stream in and reported through
+ * {@link FrameHandler#onFrameTooLarge(long)}; the buffer never grows beyond the frame limit.
+ * A header block longer than {@value #MAX_HEADER_SIZE} bytes is dropped whole, together with the
+ * body its leading {@code Content-Length} declares. Without a usable length the end of that body
+ * can't be found, so the stream is treated as ended rather than read as frames from the middle of
+ * the body.
+ */
+@Slf4j
+public class JsonRpcFrameDecoder {
+
+    /**
+     * Receives decoded frames
+     */
+    public interface FrameHandler {
+
+        /**
+         * Called for each complete frame. The slice is only valid until this method returns.
+         */
+        void onFrame(byte[] buffer, int offset, int length);
+
+        /**
+         * Called once an oversized frame has been skipped
+         *
+         * @param length The number of bytes dropped
+         */
+        void onFrameTooLarge(long length);
+    }
+
+    private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_HEADER_SIZE = 1024;
+
+    private final int maxFrameSize;
+    private final int maxBufferSize;
+    private byte[] buffer;
+
+    // Unconsumed bytes are buffer[start, end); bytes before 'scanned' are known not to end a frame
+    private int start;
+    private int end;
+    private int scanned;
+
+    // Body length of a Content-Length frame whose header has been read, or -1
+    private int contentLength = -1;
+
+    // Bytes dropped so far of an oversized newline-delimited frame, or -1
+    private long discarded = -1;
+
+    // Bytes still to skip of an oversized Content-Length body, and its total size
+    private long skipRemaining;
+    private long skipTotal;
+
+    // Bytes dropped so far of an oversized header block, or -1; the body length it declares, or -1 if
+    // unknown; and the line breaks seen in a row, two of which end the block
+    private long headerDiscarded = -1;
+    private long headerBodyLength;
+    private int headerNewlines;
+
+    // Set once the stream can no longer be split into frames
+    private boolean unframeable;
+
+    public JsonRpcFrameDecoder(int initialBufferSize, int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+        this.maxBufferSize = maxFrameSize + MAX_HEADER_SIZE + 1;
+        this.buffer = new byte[Math.min(initialBufferSize, maxBufferSize)];
+    }
+
+    /**
+     * Performs one blocking read from the stream and dispatches every frame it completes
+     *
+     * @param in The stream to read from
+     * @param handler The frame handler
+     * @return false once the end of the stream has been reached
+     * @throws IOException if the read fails
+     */
+    public boolean readFrom(InputStream in, FrameHandler handler) throws IOException {
+        if (unframeable) {
+            return false;
+        }
+        makeRoom();
+        return consume(in.read(buffer, end, buffer.length - end), handler);
+    }
+
+    /**
+     * Performs one read from the channel, which may be non-blocking, and dispatches every frame it completes
+     *
+     * @param channel The channel to read from
+     * @param handler The frame handler
+     * @return false once the end of the stream has been reached
+     * @throws IOException if the read fails
+     */
+    public boolean readFrom(ReadableByteChannel channel, FrameHandler handler) throws IOException {
+        if (unframeable) {
+            return false;
+        }
+        makeRoom();
+        return consume(channel.read(ByteBuffer.wrap(buffer, end, buffer.length - end)), handler);
+    }
+
+    private boolean consume(int read, FrameHandler handler) {
+        if (read < 0) {
+            finish(handler);
+            return false;
+        }
+        if (read > 0) {
+            end += read;
+            decodeFrames(handler);
+        }
+        return !unframeable;
+    }
+
+    private void decodeFrames(FrameHandler handler) {
+        while (!unframeable) {
+            if (headerDiscarded >= 0) {
+                if (!discardHeader(handler)) {
+                    return;
+                }
+                continue;
+            }
+
+            if (discarded >= 0) {
+                int newline = indexOfNewline(start);
+                if (newline < 0) {
+                    discarded += end - start;
+                    start = end;
+                    return;
+                }
+                handler.onFrameTooLarge(discarded + newline - start);
+                discarded = -1;
+                start = newline + 1;
+                scanned = start;
+                continue;
+            }
+
+            if (skipRemaining > 0) {
+                int skipped = (int) Math.min(skipRemaining, end - start);
+                start += skipped;
+                skipRemaining -= skipped;
+                if (skipRemaining > 0) {
+                    return;
+                }
+                handler.onFrameTooLarge(skipTotal);
+                scanned = start;
+                continue;
+            }
+
+            if (contentLength >= 0) {
+                if (end - start < contentLength) {
+                    return;
+                }
+                handler.onFrame(buffer, start, contentLength);
+                start += contentLength;
+                scanned = start;
+                contentLength = -1;
+                continue;
+            }
+
+            // Skip blank lines and whitespace between frames
+            while (start < end && isWhitespace(buffer[start])) {
+                start++;
+            }
+            scanned = Math.max(scanned, start);
+            if (start == end) {
+                return;
+            }
+
+            int header = matchContentLengthHeader();
+            if (header < 0) {
+                return;
+            }
+            if (header > 0) {
+                if (!readHeader(handler)) {
+                    return;
+                }
+                continue;
+            }
+
+            int newline = indexOfNewline(scanned);
+            if (newline < 0) {
+                if (end - start > maxFrameSize) {
+                    // Too large already; drop what we have and keep dropping until the newline
+                    discarded = end - start;
+                    start = end;
+                } else {
+                    scanned = end;
+                }
+                return;
+            }
+
+            int frameEnd = newline;
+            while (frameEnd > start && isWhitespace(buffer[frameEnd - 1])) {
+                frameEnd--;
+            }
+            if (frameEnd - start > maxFrameSize) {
+                handler.onFrameTooLarge(frameEnd - start);
+            } else {
+                handler.onFrame(buffer, start, frameEnd - start);
+            }
+            start = newline + 1;
+            scanned = start;
+        }
+    }
+
+    /**
+     * Reads a Content-Length header block once it is complete
+     *
+     * @return false if more input is needed
+     */
+    private boolean readHeader(FrameHandler handler) {
+        int headerEnd = -1;
+        for (int i = Math.max(scanned, start); i < end; i++) {
+            if (buffer[i] != '\n') {
+                continue;
+            }
+            int next = i + 1;
+            if (next < end && buffer[next] == '\r') {
+                next++;
+            }
+            if (next < end && buffer[next] == '\n') {
+                headerEnd = next + 1;
+                break;
+            }
+        }
+
+        if (headerEnd < 0) {
+            if (end - start > MAX_HEADER_SIZE) {
+                // Drop through the end of the block and its body, not just to the next line inside it
+                int lineEnd = indexOfNewline(start);
+                headerBodyLength = lineEnd < 0 ? -1 : parseLength(start + CONTENT_LENGTH.length, lineEnd);
+                headerDiscarded = 0;
+                headerNewlines = 0;
+                return true;
+            }
+            scanned = Math.max(start, end - 2);
+            return false;
+        }
+
+        long length = parseContentLength(headerEnd);
+        if (length < 0) {
+            // Let the JSON parser report the malformed header as a parse error
+            handler.onFrame(buffer, start, headerEnd - start);
+        } else if (length > maxFrameSize) {
+            skipRemaining = length;
+            skipTotal = length;
+        } else {
+            contentLength = (int) length;
+        }
+        start = headerEnd;
+        scanned = start;
+        return true;
+    }
+
+    /**
+     * Drops an oversized header block up to the blank line that ends it, then sets up skipping its body
+     *
+     * @return false if more input is needed, or the stream can't be framed any further
+     */
+    private boolean discardHeader(FrameHandler handler) {
+        int i = start;
+        while (i < end && headerNewlines < 2) {
+            byte b = buffer[i++];
+            if (b == '\n') {
+                headerNewlines++;
+            } else if (b != '\r') {
+                headerNewlines = 0;
+            }
+        }
+        headerDiscarded += i - start;
+        start = i;
+        scanned = start;
+        if (headerNewlines < 2) {
+            return false;
+        }
+
+        long dropped = headerDiscarded;
+        headerDiscarded = -1;
+        if (headerBodyLength < 0) {
+            log.warn("Dropped a {} byte header block without a usable Content-Length; no further frames can be read",
+                    dropped);
+            handler.onFrameTooLarge(dropped);
+            unframeable = true;
+            return false;
+        }
+        if (headerBodyLength == 0) {
+            handler.onFrameTooLarge(dropped);
+        } else {
+            skipRemaining = headerBodyLength;
+            skipTotal = dropped + headerBodyLength;
+        }
+        return true;
+    }
+
+    private long parseContentLength(int headerEnd) {
+        long length = -1;
+        int lineStart = start;
+        for (int i = start; i < headerEnd; i++) {
+            if (buffer[i] != '\n') {
+                continue;
+            }
+            if (i - lineStart > CONTENT_LENGTH.length && matchesIgnoreCase(lineStart, CONTENT_LENGTH)) {
+                length = parseLength(lineStart + CONTENT_LENGTH.length, i);
+                if (length < 0) {
+                    return -1;
+                }
+            }
+            lineStart = i + 1;
+        }
+        return length;
+    }
+
+    /**
+     * @return The decimal length in buffer[from, to), surrounded by optional whitespace, or -1 if there is none
+     */
+    private long parseLength(int from, int to) {
+        long length = 0;
+        boolean digits = false;
+        for (int j = from; j < to; j++) {
+            byte b = buffer[j];
+            if (b >= '0' && b <= '9' && length < Integer.MAX_VALUE) {
+                length = length * 10 + (b - '0');
+                digits = true;
+            } else if (!isWhitespace(b)) {
+                return -1;
+            }
+        }
+        return digits ? length : -1;
+    }
+
+    /**
+     * @return 1 if the pending frame starts with a Content-Length header, 0 if it does not,
+     *         -1 if not enough bytes are buffered to tell
+     */
+    private int matchContentLengthHeader() {
+        for (int i = 0; i < CONTENT_LENGTH.length; i++) {
+            if (start + i >= end) {
+                return -1;
+            }
+            if (toLowerCase(buffer[start + i]) != CONTENT_LENGTH[i]) {
+                return 0;
+            }
+        }
+        return 1;
+    }
+
+    private boolean matchesIgnoreCase(int offset, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (toLowerCase(buffer[offset + i]) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOfNewline(int from) {
+        for (int i = from; i < end; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Makes space for the next read by resetting, compacting or growing the buffer
+     */
+    private void makeRoom() {
+        if (start == end) {
+            start = 0;
+            end = 0;
+            scanned = 0;
+            return;
+        }
+        if (end < buffer.length) {
+            return;
+        }
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            scanned -= start;
+            start = 0;
+            return;
+        }
+        if (buffer.length < maxBufferSize) {
+            byte[] grown = new byte[(int) Math.min((long) buffer.length * 2, maxBufferSize)];
+            System.arraycopy(buffer, 0, grown, 0, end);
+            buffer = grown;
+        }
+    }
+
+    private void finish(FrameHandler handler) {
+        if (discarded >= 0) {
+            handler.onFrameTooLarge(discarded);
+        } else if (headerDiscarded >= 0) {
+            handler.onFrameTooLarge(headerDiscarded + end - start);
+        } else if (skipRemaining > 0 || contentLength >= 0) {
+            log.warn("End of stream inside a Content-Length frame, dropping {} buffered bytes", end - start);
+        } else {
+            // A final frame without a trailing newline
+            int frameEnd = end;
+            while (frameEnd > start && isWhitespace(buffer[frameEnd - 1])) {
+                frameEnd--;
+            }
+            if (frameEnd > start) {
+                handler.onFrame(buffer, start, frameEnd - start);
+            }
+        }
+        start = 0;
+        end = 0;
+        scanned = 0;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static byte toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+}
@@ -1,19 +1,40 @@
 package com.example.mcpserver.jsonrpc;
 
+import com.example.mcpserver.exception.McpException;
 import com.example.mcpserver.model.McpRequest;
 import com.example.mcpserver.model.McpResponse;
+import com.example.mcpserver.service.AdmissionControlService;
 import com.example.mcpserver.service.McpService;
+import com.example.mcpserver.service.MetricsService;
+import com.example.mcpserver.service.MetricsSubscriptionService;
+import com.example.mcpserver.service.RequestContext;
 import com.example.mcpserver.service.ToolExecutorService;
-import com.example.mcpserver.service.ToolRegistry;
+import com.example.mcpserver.service.ToolListCache;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Service
@@ -22,7 +43,10 @@ public class JsonRpcHandler {
 
     private final McpService mcpService;
     private final ToolExecutorService toolExecutorService;
-    private final ToolRegistry toolRegistry;
+    private final ToolListCache toolListCache;
+    private final MetricsService metricsService;
+    private final AdmissionControlService admissionControlService;
+    private final MetricsSubscriptionService metricsSubscriptionService;
     private final ObjectMapper objectMapper;
     
     private static final int PARSE_ERROR = -32700;
@@ -30,40 +54,368 @@ public class JsonRpcHandler {
     private static final int METHOD_NOT_FOUND = -32601;
     private static final int INVALID_PARAMS = -32602;
     private static final int INTERNAL_ERROR = -32603;
+    private static final int SERVER_OVERLOADED = -32000;
+    private static final int DEADLINE_EXCEEDED = -32001;
+    private static final int REQUEST_CANCELLED = -32800;
+    
+    static final String CANCEL_REQUEST_METHOD = "$/cancelRequest";
+    static final String METRICS_CHANGED_METHOD = "metrics/changed";
+    
+    @Value("${jsonrpc.batch.max-size:100}")
+    private int maxBatchSize;
+    
+    @Value("${jsonrpc.batch.parallelism:8}")
+    private int batchParallelism;
+    
+    private ThreadPoolExecutor batchExecutor;
+    
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        batchExecutor = new ThreadPoolExecutor(batchParallelism, batchParallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "jsonrpc-batch-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        batchExecutor.allowCoreThreadTimeOut(true);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        batchExecutor.shutdownNow();
+    }
     
     /**
-     * Handles a JSON-RPC request
+     * Handles a JSON-RPC request or batch
      * 
      * @param jsonRequest The JSON-RPC request as a string
-     * @return The JSON-RPC response as a string
+     * @return The JSON-RPC response as a string, or null if nothing should be sent back
+     *         (a notification, or a batch made up only of notifications)
      */
     public String handleRequest(String jsonRequest) {
         log.debug("Received JSON-RPC request: {}", jsonRequest);
+        Object response;
+        try {
+            response = handle(read(objectMapper.createParser(jsonRequest)));
+        } catch (Exception e) {
+            log.error("Error parsing JSON-RPC request", e);
+            response = parseError(e);
+        }
+        
+        if (response == null) {
+            return null;
+        }
+        
         try {
-            JsonRpcRequest request = objectMapper.readValue(jsonRequest, JsonRpcRequest.class);
-            JsonRpcResponse response = processRequest(request);
             String responseStr = objectMapper.writeValueAsString(response);
             log.debug("Sending JSON-RPC response: {}", responseStr);
             return responseStr;
         } catch (Exception e) {
-            log.error("Error parsing JSON-RPC request", e);
-            JsonRpcResponse response = JsonRpcResponse.error(null, PARSE_ERROR, "Parse error", e.getMessage());
-            try {
-                return objectMapper.writeValueAsString(response);
-            } catch (Exception ex) {
-                log.error("Error serializing error response", ex);
-                return "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32700,\"message\":\"Parse error\"},\"id\":null}";
+            log.error("Error serializing JSON-RPC response", e);
+            return "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32603,\"message\":\"Internal error\"},\"id\":null}";
+        }
+    }
+    
+    /**
+     * Parses a JSON-RPC message directly from a slice of a byte buffer, without decoding it to a String
+     * 
+     * @param buffer The buffer holding the UTF-8 encoded message
+     * @param offset The offset of the message in the buffer
+     * @param length The length of the message in bytes
+     * @return The parsed message
+     * @throws IOException if the bytes are not valid JSON
+     */
+    public JsonRpcMessage parse(byte[] buffer, int offset, int length) throws IOException {
+        return read(objectMapper.createParser(buffer, offset, length));
+    }
+    
+    private static JsonRpcMessage read(JsonParser parser) throws IOException {
+        try (parser) {
+            return JsonRpcMessageReader.read(parser);
+        }
+    }
+    
+    /**
+     * Binds the params of a request to the given type
+     * 
+     * @param request The JSON-RPC request
+     * @param type The type to bind to, or JsonNode for a tree
+     * @return The bound params, or null if the request has none
+     * @throws IOException if the params cannot be bound to the type
+     */
+    <T> T readParams(JsonRpcRequest request, Class<T> type) throws IOException {
+        TokenBuffer params = request.getParams();
+        if (params == null) {
+            return null;
+        }
+        // Params may carry transport-level members such as deadlineMs alongside the method's own
+        try (JsonParser parser = params.asParser(objectMapper)) {
+            return objectMapper.readerFor(type)
+                    .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                    .readValue(parser);
+        }
+    }
+    
+    /**
+     * Creates the response sent for a message that could not be parsed
+     * 
+     * @param e The parse failure
+     * @return The parse error response
+     */
+    public JsonRpcResponse parseError(Exception e) {
+        return JsonRpcResponse.error(null, PARSE_ERROR, "Parse error", e.getMessage());
+    }
+    
+    /**
+     * Creates the response sent for a message that exceeded the transport's frame size limit
+     * 
+     * @param length The size of the rejected message in bytes
+     * @param maxFrameSize The frame size limit in bytes
+     * @return The invalid request response
+     */
+    public JsonRpcResponse frameTooLarge(long length, int maxFrameSize) {
+        return JsonRpcResponse.error(null, INVALID_REQUEST, "Invalid request",
+                "Request of " + length + " bytes exceeds the maximum frame size of " + maxFrameSize + " bytes");
+    }
+    
+    /**
+     * Creates the response sent when admission control rejects a message
+     * 
+     * @param message The rejected message
+     * @return The server overloaded response, or null if the message is a notification
+     */
+    public JsonRpcResponse overloaded(JsonRpcMessage message) {
+        if (message.isNotification()) {
+            return null;
+        }
+        return overloaded(requestId(message));
+    }
+    
+    private JsonRpcResponse overloaded(String id) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("retryAfterSeconds", admissionControlService.getRetryAfterSeconds());
+        return JsonRpcResponse.error(id, SERVER_OVERLOADED, "Server overloaded", data);
+    }
+    
+    /**
+     * Creates the response sent for a request cancelled through {@code $/cancelRequest}
+     * 
+     * @param id The id of the cancelled request
+     * @return The request cancelled response
+     */
+    public JsonRpcResponse cancelled(String id) {
+        return JsonRpcResponse.error(id, REQUEST_CANCELLED, "Request cancelled", null);
+    }
+    
+    /**
+     * Creates the response sent for a request that ran past its deadline
+     * 
+     * @param id The id of the expired request
+     * @return The deadline exceeded response
+     */
+    public JsonRpcResponse deadlineExceeded(String id) {
+        return JsonRpcResponse.error(id, DEADLINE_EXCEEDED, "Request timed out", null);
+    }
+    
+    /**
+     * Creates the subscriber for a connection, which pushes metric updates to it as
+     * {@code metrics/changed} notifications
+     * 
+     * @param name The connection name
+     * @param output The connection's output channel
+     * @return The subscriber to pass to {@link #handleAsync(JsonRpcMessage, MetricsSubscriptionService.Subscriber)}
+     */
+    public MetricsSubscriptionService.Subscriber createSubscriber(String name, JsonRpcOutputChannel output) {
+        return new MetricsSubscriptionService.Subscriber(name,
+                params -> output.send(JsonRpcNotification.of(METRICS_CHANGED_METHOD, params)));
+    }
+    
+    /**
+     * Ends a connection's subscriptions when it closes
+     * 
+     * @param subscriber The connection's subscriber
+     */
+    public void closeSubscriber(MetricsSubscriptionService.Subscriber subscriber) {
+        metricsSubscriptionService.close(subscriber);
+    }
+    
+    /**
+     * @param message A parsed JSON-RPC message
+     * @return The id of a single request, or null for batches, notifications and invalid ids
+     */
+    static String requestId(JsonRpcMessage message) {
+        return message instanceof JsonRpcRequest ? ((JsonRpcRequest) message).getId() : null;
+    }
+    
+    /**
+     * @param message A parsed JSON-RPC message
+     * @return The optional {@code deadlineMs} time budget carried in the params of a single request
+     */
+    static Long deadlineMs(JsonRpcMessage message) {
+        return message instanceof JsonRpcRequest ? ((JsonRpcRequest) message).getDeadlineMs() : null;
+    }
+    
+    /**
+     * @param notification A {@code $/cancelRequest} notification
+     * @return The id of the request to cancel, or null if the params don't name one
+     */
+    String cancelTarget(JsonRpcRequest notification) {
+        try {
+            JsonNode params = readParams(notification, JsonNode.class);
+            JsonNode id = params != null ? params.get("id") : null;
+            return id != null && id.isValueNode() && !id.isNull() ? id.asText() : null;
+        } catch (IOException e) {
+            log.debug("Malformed cancellation params", e);
+            return null;
+        }
+    }
+    
+    /**
+     * Handles a parsed JSON-RPC message, which is either a single request or a batch array
+     * 
+     * @param message The parsed JSON-RPC message
+     * @return A {@link JsonRpcResponse}, a list of responses for a batch, or null if nothing
+     *         should be sent back
+     */
+    public Object handle(JsonRpcMessage message) {
+        return handle(message, null);
+    }
+    
+    /**
+     * Handles a parsed JSON-RPC message from a connection that can receive notifications
+     * 
+     * @param message The parsed JSON-RPC message
+     * @param subscriber The connection's subscriber, or null if it cannot subscribe
+     * @return A {@link JsonRpcResponse}, a list of responses for a batch, or null if nothing
+     *         should be sent back
+     */
+    public Object handle(JsonRpcMessage message, MetricsSubscriptionService.Subscriber subscriber) {
+        if (message instanceof JsonRpcBatch) {
+            return handleBatch(((JsonRpcBatch) message).getRequests(), subscriber);
+        }
+        return handleSingle((JsonRpcRequest) message, subscriber);
+    }
+    
+    /**
+     * Handles a parsed JSON-RPC message without holding the calling thread while a tool executes.
+     * Function executions and completions that call a tool complete on the tool's bulkhead; anything
+     * else is handled on the calling thread.
+     * 
+     * @param message The parsed JSON-RPC message
+     * @return The future of what {@link #handle} would return; cancelling it abandons the tool execution
+     */
+    public CompletableFuture<?> handleAsync(JsonRpcMessage message) {
+        return handleAsync(message, null);
+    }
+    
+    /**
+     * Handles a parsed JSON-RPC message from a connection that can receive notifications, without
+     * holding the calling thread while a tool executes
+     * 
+     * @param message The parsed JSON-RPC message
+     * @param subscriber The connection's subscriber, or null if it cannot subscribe
+     * @return The future of what {@link #handle} would return; cancelling it abandons the tool execution
+     */
+    public CompletableFuture<?> handleAsync(JsonRpcMessage message, MetricsSubscriptionService.Subscriber subscriber) {
+        if (!(message instanceof JsonRpcRequest)) {
+            return CompletableFuture.completedFuture(handle(message, subscriber));
+        }
+        JsonRpcRequest request = (JsonRpcRequest) message;
+        boolean executesTool = "executeFunction".equals(request.getMethod()) || "completions".equals(request.getMethod());
+        if (request.getInvalidReason() != null || !executesTool) {
+            return CompletableFuture.completedFuture(handleSingle(request, subscriber));
+        }
+        
+        log.info("Processing JSON-RPC request: method={}, id={}", request.getMethod(), request.getId());
+        
+        // The execution captures the request's own deadline, if any, within the caller's context
+        try (RequestContext.Scope scope = RequestContext.current().child(request.getDeadlineMs()).attach()) {
+            return "completions".equals(request.getMethod())
+                    ? handleCompletionsAsync(request)
+                    : handleExecuteFunctionAsync(request);
+        }
+    }
+    
+    /**
+     * Handles a batch by running its members concurrently on the batch executor.
+     * Notifications in the batch produce no entry in the response array.
+     * 
+     * @param batch The batch array
+     * @param subscriber The connection's subscriber, or null if it cannot subscribe
+     * @return The list of responses, or null if every member was a notification
+     */
+    private Object handleBatch(List<JsonRpcRequest> batch, MetricsSubscriptionService.Subscriber subscriber) {
+        if (batch.size() == 0) {
+            return JsonRpcResponse.error(null, INVALID_REQUEST, "Invalid request", "Batch must not be empty");
+        }
+        if (batch.size() > maxBatchSize) {
+            return JsonRpcResponse.error(null, INVALID_REQUEST, "Invalid request",
+                    "Batch size " + batch.size() + " exceeds the maximum of " + maxBatchSize);
+        }
+        
+        log.info("Processing JSON-RPC batch of {} requests", batch.size());
+        
+        // Fan out all but the last member; the calling thread handles the last one itself.
+        // Members inherit the cancellation and deadline of the batch.
+        RequestContext context = RequestContext.current();
+        int last = batch.size() - 1;
+        List<CompletableFuture<JsonRpcResponse>> pending = new ArrayList<>(last);
+        for (int i = 0; i < last; i++) {
+            JsonRpcRequest member = batch.get(i);
+            pending.add(CompletableFuture.supplyAsync(() -> {
+                try (RequestContext.Scope scope = context.attach()) {
+                    return handleSingle(member, subscriber);
+                }
+            }, batchExecutor));
+        }
+        JsonRpcResponse lastResponse = handleSingle(batch.get(last), subscriber);
+        
+        List<JsonRpcResponse> responses = new ArrayList<>(batch.size());
+        for (CompletableFuture<JsonRpcResponse> future : pending) {
+            JsonRpcResponse response = future.join();
+            if (response != null) {
+                responses.add(response);
             }
         }
+        if (lastResponse != null) {
+            responses.add(lastResponse);
+        }
+        
+        return responses.isEmpty() ? null : responses;
+    }
+    
+    /**
+     * Handles a single request
+     * 
+     * @param request The request
+     * @param subscriber The connection's subscriber, or null if it cannot subscribe
+     * @return The JSON-RPC response, or null if the request is a notification
+     */
+    private JsonRpcResponse handleSingle(JsonRpcRequest request, MetricsSubscriptionService.Subscriber subscriber) {
+        if (request.getInvalidReason() != null) {
+            log.error("Invalid JSON-RPC request: {}", request.getInvalidReason());
+            return JsonRpcResponse.error(request.getId(), INVALID_REQUEST, "Invalid request", request.getInvalidReason());
+        }
+        
+        // Work below runs under the request's own deadline, if any, within the caller's context
+        JsonRpcResponse response;
+        try (RequestContext.Scope scope = RequestContext.current().child(request.getDeadlineMs()).attach()) {
+            response = processRequest(request, subscriber);
+        }
+        
+        // Notifications carry no id and must not be answered
+        return request.isNotification() ? null : response;
     }
     
     /**
      * Processes a JSON-RPC request
      * 
      * @param request The JSON-RPC request
+     * @param subscriber The connection's subscriber, or null if it cannot subscribe
      * @return The JSON-RPC response
      */
-    private JsonRpcResponse processRequest(JsonRpcRequest request) {
+    private JsonRpcResponse processRequest(JsonRpcRequest request, MetricsSubscriptionService.Subscriber subscriber) {
         if (request.getMethod() == null) {
             return JsonRpcResponse.error(request.getId(), INVALID_REQUEST, "Invalid request", "Method is required");
         }
@@ -80,9 +432,20 @@ public class JsonRpcHandler {
                     return handleGetTools(request);
                 case "initialize":
                     return handleInitialize(request);
+                case "getMetrics":
+                    return JsonRpcResponse.success(request.getId(), metricsService.getMetrics());
+                case "subscribe":
+                    return handleSubscribe(request, subscriber);
+                case "unsubscribe":
+                    return handleUnsubscribe(request, subscriber);
+                case CANCEL_REQUEST_METHOD:
+                    // Cancellation is carried out by the transport that owns the request
+                    return JsonRpcResponse.success(request.getId(), null);
                 default:
                     return JsonRpcResponse.error(request.getId(), METHOD_NOT_FOUND, "Method not found", request.getMethod());
             }
+        } catch (McpException e) {
+            return mcpError(request, INTERNAL_ERROR, "Internal error", e);
         } catch (Exception e) {
             log.error("Error processing JSON-RPC request", e);
             return JsonRpcResponse.error(request.getId(), INTERNAL_ERROR, "Internal error", e.getMessage());
@@ -90,48 +453,221 @@ public class JsonRpcHandler {
     }
     
     /**
-     * Handles a completions request
+     * Maps an {@link McpException} to a JSON-RPC error, giving cancellation, deadline and
+     * overload errors their own codes
+     * 
+     * @param request The JSON-RPC request
+     * @param code The error code used for any other failure
+     * @param message The error message used for any other failure
+     * @param e The exception
+     * @return The JSON-RPC error response
+     */
+    private JsonRpcResponse mcpError(JsonRpcRequest request, int code, String message, McpException e) {
+        if ("CANCELLED".equals(e.getErrorCode())) {
+            log.info("JSON-RPC request {} was cancelled", request.getId());
+            return cancelled(request.getId());
+        }
+        if ("DEADLINE_EXCEEDED".equals(e.getErrorCode())) {
+            log.info("JSON-RPC request {} exceeded its deadline", request.getId());
+            return deadlineExceeded(request.getId());
+        }
+        if ("OVERLOADED".equals(e.getErrorCode())) {
+            log.info("JSON-RPC request {} was rejected: {}", request.getId(), e.getMessage());
+            return overloaded(request.getId());
+        }
+        log.error("Error handling {} request", request.getMethod(), e);
+        return JsonRpcResponse.error(request.getId(), code, message, e.getMessage());
+    }
+    
+    /**
+     * Handles a completions request, waiting for any tool it executes
      * 
      * @param request The JSON-RPC request
      * @return The JSON-RPC response
      */
     private JsonRpcResponse handleCompletions(JsonRpcRequest request) {
+        return await(request, handleCompletionsAsync(request));
+    }
+    
+    /**
+     * Handles a completions request; a tool the query needs runs on its bulkhead
+     * 
+     * @param request The JSON-RPC request
+     * @return The JSON-RPC response; cancelling it abandons the tool execution
+     */
+    private CompletableFuture<JsonRpcResponse> handleCompletionsAsync(JsonRpcRequest request) {
+        McpRequest mcpRequest;
         try {
-            McpRequest mcpRequest = objectMapper.convertValue(request.getParams(), McpRequest.class);
-            McpResponse mcpResponse = mcpService.processRequest(mcpRequest);
-            return JsonRpcResponse.success(request.getId(), mcpResponse);
+            mcpRequest = readParams(request, McpRequest.class);
         } catch (Exception e) {
             log.error("Error handling completions request", e);
-            return JsonRpcResponse.error(request.getId(), INVALID_PARAMS, "Invalid params", e.getMessage());
+            return CompletableFuture.completedFuture(
+                    JsonRpcResponse.error(request.getId(), INVALID_PARAMS, "Invalid params", e.getMessage()));
         }
+        
+        CompletableFuture<McpResponse> result = mcpService.processRequestAsync(mcpRequest);
+        return respond(request, result, "Error handling completions request");
     }
     
     /**
-     * Handles an execute function request
+     * Handles an execute function request, waiting for the tool execution
      * 
      * @param request The JSON-RPC request
      * @return The JSON-RPC response
      */
     private JsonRpcResponse handleExecuteFunction(JsonRpcRequest request) {
+        return await(request, handleExecuteFunctionAsync(request));
+    }
+    
+    /**
+     * Waits for the response to a request that runs a tool, cancelling it if interrupted
+     */
+    private JsonRpcResponse await(JsonRpcRequest request, CompletableFuture<JsonRpcResponse> response) {
         try {
-            JsonNode params = objectMapper.valueToTree(request.getParams());
-            
-            if (!params.has("function") || !params.has("arguments")) {
-                return JsonRpcResponse.error(request.getId(), INVALID_PARAMS, "Invalid params", 
-                        "Both 'function' and 'arguments' are required");
-            }
-            
-            String function = params.get("function").asText();
-            String arguments = objectMapper.writeValueAsString(params.get("arguments"));
-            
-            Object result = toolExecutorService.executeTool(function, arguments);
-            return JsonRpcResponse.success(request.getId(), result);
+            return response.get();
+        } catch (InterruptedException e) {
+            response.cancel(true);
+            Thread.currentThread().interrupt();
+            return cancelled(request.getId());
+        } catch (ExecutionException e) {
+            // Not expected: every failure is mapped to an error response
+            log.error("Error handling {} request", request.getMethod(), e.getCause());
+            return JsonRpcResponse.error(request.getId(), INTERNAL_ERROR, "Internal error", e.getCause().getMessage());
+        }
+    }
+    
+    /**
+     * Handles an execute function request, running the tool on its bulkhead
+     * 
+     * @param request The JSON-RPC request
+     * @return The JSON-RPC response, or null for a notification; cancelling it abandons the execution
+     */
+    private CompletableFuture<JsonRpcResponse> handleExecuteFunctionAsync(JsonRpcRequest request) {
+        JsonNode params;
+        try {
+            params = readParams(request, JsonNode.class);
         } catch (Exception e) {
             log.error("Error handling execute function request", e);
+            return CompletableFuture.completedFuture(
+                    JsonRpcResponse.error(request.getId(), INVALID_PARAMS, "Invalid params", e.getMessage()));
+        }
+        
+        if (params == null || !params.has("function") || !params.has("arguments")) {
+            return CompletableFuture.completedFuture(JsonRpcResponse.error(request.getId(), INVALID_PARAMS,
+                    "Invalid params", "Both 'function' and 'arguments' are required"));
+        }
+        
+        String function = params.get("function").asText();
+        
+        // The arguments are handed over as the tree parsed from the request
+        CompletableFuture<Object> result = toolExecutorService.executeToolAsync(function, params.get("arguments"));
+        return respond(request, result, "Error handling execute function request");
+    }
+    
+    /**
+     * Maps the outcome of a tool execution to the request's response
+     * 
+     * @param request The JSON-RPC request
+     * @param result The execution's result
+     * @param errorMessage Logged with any failure that isn't an McpException
+     * @return The JSON-RPC response, or null for a notification; cancelling it cancels the execution
+     */
+    private CompletableFuture<JsonRpcResponse> respond(JsonRpcRequest request, CompletableFuture<?> result,
+                                                       String errorMessage) {
+        CompletableFuture<JsonRpcResponse> response = result.handle((value, error) -> {
+            if (request.isNotification()) {
+                return null;
+            }
+            if (error == null) {
+                return JsonRpcResponse.success(request.getId(), value);
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof McpException) {
+                return mcpError(request, INVALID_PARAMS, "Invalid params", (McpException) cause);
+            }
+            if (cause instanceof CancellationException) {
+                return cancelled(request.getId());
+            }
+            log.error("{}", errorMessage, cause);
+            return JsonRpcResponse.error(request.getId(), INVALID_PARAMS, "Invalid params", cause.getMessage());
+        });
+        response.whenComplete((value, error) -> {
+            if (response.isCancelled()) {
+                result.cancel(true);
+            }
+        });
+        return response;
+    }
+    
+    /**
+     * Handles a subscribe request, which asks for {@code metrics/changed} notifications when a
+     * merchant's metrics change
+     * 
+     * @param request The JSON-RPC request
+     * @param subscriber The connection's subscriber, or null if it cannot subscribe
+     * @return The JSON-RPC response with the subscription ID and the current metrics
+     */
+    private JsonRpcResponse handleSubscribe(JsonRpcRequest request, MetricsSubscriptionService.Subscriber subscriber) {
+        if (subscriber == null) {
+            return JsonRpcResponse.error(request.getId(), INVALID_REQUEST, "Invalid request",
+                    "Subscriptions need a persistent stdio or socket connection");
+        }
+        try {
+            JsonNode params = readParams(request, JsonNode.class);
+            if (params == null || !params.isObject()) {
+                return JsonRpcResponse.error(request.getId(), INVALID_PARAMS, "Invalid params", "'merchantId' is required");
+            }
+            // Absent or null options take the defaults; a value of the wrong type is a client error
+            JsonNode threshold = params.get("threshold");
+            if (threshold != null && !threshold.isNull() && !threshold.isNumber()) {
+                return JsonRpcResponse.error(request.getId(), INVALID_PARAMS, "Invalid params", "'threshold' must be a number");
+            }
+            JsonNode minIntervalSeconds = params.get("minIntervalSeconds");
+            if (minIntervalSeconds != null && !minIntervalSeconds.isNull() && !minIntervalSeconds.isInt()) {
+                return JsonRpcResponse.error(request.getId(), INVALID_PARAMS, "Invalid params",
+                        "'minIntervalSeconds' must be an integer");
+            }
+            return JsonRpcResponse.success(request.getId(), metricsSubscriptionService.subscribe(subscriber,
+                    text(params, "merchantId"), text(params, "timeframe"), text(params, "transactionType"),
+                    threshold != null && !threshold.isNull() ? threshold.asDouble() : null,
+                    minIntervalSeconds != null && !minIntervalSeconds.isNull() ? minIntervalSeconds.asInt() : null));
+        } catch (McpException e) {
+            return mcpError(request, INVALID_PARAMS, "Invalid params", e);
+        } catch (Exception e) {
+            log.error("Error handling subscribe request", e);
+            return JsonRpcResponse.error(request.getId(), INVALID_PARAMS, "Invalid params", e.getMessage());
+        }
+    }
+    
+    /**
+     * Handles an unsubscribe request
+     * 
+     * @param request The JSON-RPC request
+     * @param subscriber The connection's subscriber, or null if it cannot subscribe
+     * @return The JSON-RPC response telling whether the subscription existed
+     */
+    private JsonRpcResponse handleUnsubscribe(JsonRpcRequest request, MetricsSubscriptionService.Subscriber subscriber) {
+        if (subscriber == null) {
+            return JsonRpcResponse.error(request.getId(), INVALID_REQUEST, "Invalid request",
+                    "Subscriptions need a persistent stdio or socket connection");
+        }
+        try {
+            JsonNode params = readParams(request, JsonNode.class);
+            return JsonRpcResponse.success(request.getId(),
+                    metricsSubscriptionService.unsubscribe(subscriber, params != null ? text(params, "subscriptionId") : null));
+        } catch (McpException e) {
+            return mcpError(request, INVALID_PARAMS, "Invalid params", e);
+        } catch (Exception e) {
+            log.error("Error handling unsubscribe request", e);
             return JsonRpcResponse.error(request.getId(), INVALID_PARAMS, "Invalid params", e.getMessage());
         }
     }
     
+    private static String text(JsonNode params, String field) {
+        JsonNode value = params.get(field);
+        return value != null && value.isValueNode() && !value.isNull() ? value.asText() : null;
+    }
+    
     /**
      * Handles a get tools request
      * 
@@ -141,7 +677,7 @@ public class JsonRpcHandler {
     private JsonRpcResponse handleGetTools(JsonRpcRequest request) {
         try {
             log.info("Handling getTools request");
-            return JsonRpcResponse.success(request.getId(), toolRegistry.getAvailableTools());
+            return JsonRpcResponse.success(request.getId(), toolListCache.getSnapshot().getTools());
         } catch (Exception e) {
             log.error("Error handling get tools request", e);
             return JsonRpcResponse.error(request.getId(), INTERNAL_ERROR, "Internal error", e.getMessage());
@@ -158,20 +694,8 @@ public class JsonRpcHandler {
         try {
             log.info("Handling initialize request");
             
-            // Create a capabilities object
-            ObjectNode capabilities = objectMapper.createObjectNode();
-            capabilities.put("protocol_version", "1.0");
-            capabilities.put("name", "PayPal Java MCP Server");
-            
-            // Add supported methods
-            capabilities.put("supports_completions", true);
-            capabilities.put("supports_execute_function", true);
-            capabilities.put("supports_get_tools", true);
-            
-            // Add available tools
-            capabilities.set("tools", objectMapper.valueToTree(toolRegistry.getAvailableTools()));
-            
-            return JsonRpcResponse.success(request.getId(), capabilities);
+            // Capabilities and tools are pre-serialized; only the envelope is written per call
+            return JsonRpcResponse.success(request.getId(), toolListCache.getSnapshot().getCapabilities());
         } catch (Exception e) {
             log.error("Error handling initialize request", e);
             return JsonRpcResponse.error(request.getId(), INTERNAL_ERROR, "Internal error", e.getMessage());
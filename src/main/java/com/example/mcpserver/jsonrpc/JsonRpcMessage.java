@@ -0,0 +1,12 @@
+package com.example.mcpserver.jsonrpc;
+
+/**
+ * A parsed JSON-RPC message: either a single {@link JsonRpcRequest} or a {@link JsonRpcBatch}
+ */
+public interface JsonRpcMessage {
+
+    /**
+     * @return true if the message is a notification, which must not be answered
+     */
+    boolean isNotification();
+}
@@ -0,0 +1,126 @@
+package com.example.mcpserver.jsonrpc;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming reader for the JSON-RPC envelope.
+ *
+ * Only {@code jsonrpc}, {@code method} and {@code id} are decoded; the {@code params} value is
+ * captured as a {@link TokenBuffer} without building a map or tree, so it can later be bound
+ * directly to the type the method expects. Unknown members are skipped.
+ */
+final class JsonRpcMessageReader {
+
+    private JsonRpcMessageReader() {
+    }
+
+    /**
+     * Reads one message from the parser
+     *
+     * @param parser A parser positioned before the message
+     * @return The request or batch
+     * @throws IOException if the input is not valid JSON
+     */
+    static JsonRpcMessage read(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            throw new JsonParseException(parser, "No content to map due to end-of-input");
+        }
+        if (token != JsonToken.START_ARRAY) {
+            return readRequest(parser);
+        }
+
+        List<JsonRpcRequest> requests = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            requests.add(readRequest(parser));
+        }
+        return new JsonRpcBatch(requests);
+    }
+
+    private static JsonRpcRequest readRequest(JsonParser parser) throws IOException {
+        JsonRpcRequest request = new JsonRpcRequest();
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            request.setInvalidReason("Request must be a JSON object");
+            return request;
+        }
+
+        request.setNotification(true);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "jsonrpc":
+                    if (value.isScalarValue()) {
+                        request.setJsonrpc(parser.getText());
+                    } else {
+                        invalid(request, "jsonrpc must be a string");
+                    }
+                    break;
+                case "method":
+                    if (value == JsonToken.VALUE_STRING) {
+                        request.setMethod(parser.getText());
+                    } else {
+                        invalid(request, "Method must be a string");
+                    }
+                    break;
+                case "id":
+                    request.setNotification(false);
+                    if (value.isScalarValue()) {
+                        request.setId(value == JsonToken.VALUE_NULL ? null : parser.getText());
+                    } else {
+                        invalid(request, "Id must be a string, number or null");
+                    }
+                    break;
+                case "params":
+                    TokenBuffer params = new TokenBuffer(parser);
+                    params.copyCurrentStructure(parser);
+                    request.setParams(params);
+                    request.setDeadlineMs(readDeadline(params));
+                    break;
+                default:
+                    break;
+            }
+            parser.skipChildren();
+        }
+
+        // Malformed requests are answered even without an id
+        if (request.getInvalidReason() != null) {
+            request.setNotification(false);
+        }
+        return request;
+    }
+
+    private static void invalid(JsonRpcRequest request, String reason) {
+        if (request.getInvalidReason() == null) {
+            request.setInvalidReason(reason);
+        }
+    }
+
+    /**
+     * Looks for a top-level numeric {@code deadlineMs} member in the params object
+     */
+    private static Long readDeadline(TokenBuffer params) throws IOException {
+        try (JsonParser parser = params.asParser()) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("deadlineMs".equals(field) && value.isNumeric()) {
+                    return parser.getValueAsLong();
+                }
+                parser.skipChildren();
+            }
+            return null;
+        }
+    }
+}
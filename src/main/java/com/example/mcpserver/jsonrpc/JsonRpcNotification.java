@@ -0,0 +1,24 @@
+package com.example.mcpserver.jsonrpc;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A message pushed to the client without a request, such as a subscription update; it carries no id
+ * and is never answered
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JsonRpcNotification {
+    private String jsonrpc = "2.0";
+    private String method;
+    private Object params;
+    
+    public static JsonRpcNotification of(String method, Object params) {
+        return new JsonRpcNotification("2.0", method, params);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,256 @@
+package com.example.mcpserver.jsonrpc;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.WritableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Newline-delimited JSON-RPC output with group-commit flushing.
+ *
+ * Responses are queued by {@link #send(Object)} from any thread and serialized by Jackson as
+ * UTF-8 straight into a reusable direct buffer, which is written to the channel in one call. The buffer
+ * grows to fit a large response and goes back to its initial size once output is small again.
+ * A single drain task runs at a time on the supplied executor: when the queue is idle a response
+ * is flushed as soon as it is serialized, and under load every response that queued up in the
+ * meantime is coalesced into the same write.
+ *
+ * Non-blocking channels are supported: when the peer is not reading, the drain task waits for the
+ * channel to become writable, and gives up on the channel if it makes no progress for
+ * {@value #WRITE_TIMEOUT_SECONDS} seconds by default.
+ */
+@Slf4j
+public class JsonRpcOutputChannel implements AutoCloseable {
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final long WRITE_TIMEOUT_SECONDS = 30;
+
+    private final WritableByteChannel channel;
+    private final ObjectWriter writer;
+    private final Executor executor;
+    private final int flushThreshold;
+    private final long writeTimeoutNanos;
+    private final Queue<Object> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final BufferOutputStream buffer = new BufferOutputStream(INITIAL_BUFFER_SIZE);
+    private volatile boolean failed;
+
+    // Lazily opened to wait for a non-blocking channel to drain; only accessed by the drain task
+    private Selector writeSelector;
+
+    /**
+     * @param channel The channel responses are written to
+     * @param writer The writer used to serialize responses; it must not pretty-print
+     * @param executor The executor that runs the drain task
+     * @param flushThreshold Number of buffered bytes after which a write is issued even under load
+     */
+    public JsonRpcOutputChannel(WritableByteChannel channel, ObjectWriter writer, Executor executor, int flushThreshold) {
+        this(channel, writer, executor, flushThreshold, TimeUnit.SECONDS.toMillis(WRITE_TIMEOUT_SECONDS));
+    }
+
+    /**
+     * @param writeTimeoutMillis How long the channel may accept no output before it is given up on
+     */
+    JsonRpcOutputChannel(WritableByteChannel channel, ObjectWriter writer, Executor executor, int flushThreshold,
+                         long writeTimeoutMillis) {
+        this.channel = channel;
+        this.writer = writer;
+        this.executor = executor;
+        this.flushThreshold = flushThreshold;
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+    }
+
+    /**
+     * Queues a response for writing
+     *
+     * @param response The response object (a {@link JsonRpcResponse} or a batch of them)
+     */
+    public void send(Object response) {
+        if (failed) {
+            log.debug("Output channel has failed, dropping response");
+            return;
+        }
+        pending.add(response);
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        do {
+            try {
+                Object response;
+                while ((response = pending.poll()) != null) {
+                    serialize(response);
+                    if (buffer.size() >= flushThreshold) {
+                        flush();
+                    }
+                }
+                // Queue is idle: commit whatever has been coalesced so far
+                flush();
+            } catch (IOException e) {
+                log.error("Failed to write JSON-RPC output, closing output channel", e);
+                failed = true;
+                pending.clear();
+            } finally {
+                draining.set(false);
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+            // A response may have been queued after the last poll but before the flag was cleared
+        } while (!pending.isEmpty() && !failed && draining.compareAndSet(false, true));
+    }
+
+    private void serialize(Object response) {
+        int mark = buffer.size();
+        try {
+            writer.writeValue(buffer, response);
+            buffer.write('\n');
+        } catch (IOException e) {
+            // Serialization failures only lose this response
+            log.error("Failed to serialize JSON-RPC response", e);
+            buffer.truncate(mark);
+        }
+    }
+
+    private void flush() throws IOException {
+        ByteBuffer bytes = buffer.flip();
+        long stalledSince = 0;
+        while (bytes.hasRemaining()) {
+            if (channel.write(bytes) > 0) {
+                stalledSince = 0;
+                continue;
+            }
+            long now = System.nanoTime();
+            if (stalledSince == 0) {
+                stalledSince = now;
+            } else if (now - stalledSince > writeTimeoutNanos) {
+                throw new IOException("Peer has not read any output for "
+                        + TimeUnit.NANOSECONDS.toMillis(writeTimeoutNanos) + " ms");
+            }
+            awaitWritable();
+        }
+        buffer.reset();
+    }
+
+    private void awaitWritable() throws IOException {
+        if (!(channel instanceof SelectableChannel) || ((SelectableChannel) channel).isBlocking()) {
+            Thread.onSpinWait();
+            return;
+        }
+        if (writeSelector == null) {
+            writeSelector = Selector.open();
+            ((SelectableChannel) channel).register(writeSelector, SelectionKey.OP_WRITE);
+        }
+        writeSelector.select(TimeUnit.SECONDS.toMillis(1));
+        writeSelector.selectedKeys().clear();
+    }
+
+    /**
+     * Waits until every queued response has been written
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            while (!failed && (draining.get() || !pending.isEmpty())) {
+                try {
+                    wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        if (writeSelector != null) {
+            try {
+                writeSelector.close();
+            } catch (IOException e) {
+                log.debug("Failed to close write selector", e);
+            }
+        }
+    }
+
+    /**
+     * Output stream over a direct byte buffer that grows to fit a large response, and is replaced by
+     * one of the initial capacity when a flush finds it holding no more than that. Only accessed by
+     * the drain task.
+     */
+    private static class BufferOutputStream extends OutputStream {
+
+        // Grown buffers are kept while flushes still need more than the initial capacity
+        private static final int SHRINK_FACTOR = 4;
+
+        private final int initialCapacity;
+        private ByteBuffer buffer;
+
+        BufferOutputStream(int initialCapacity) {
+            this.initialCapacity = initialCapacity;
+            this.buffer = ByteBuffer.allocateDirect(initialCapacity);
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            buffer.put(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            // Jackson closes its target after each value; the buffer stays open
+        }
+
+        int size() {
+            return buffer.position();
+        }
+
+        void truncate(int size) {
+            buffer.position(size);
+        }
+
+        ByteBuffer flip() {
+            return buffer.flip();
+        }
+
+        void reset() {
+            if (buffer.capacity() > initialCapacity * SHRINK_FACTOR && buffer.limit() <= initialCapacity) {
+                // The large response that grew the buffer has gone; don't keep its memory
+                buffer = ByteBuffer.allocateDirect(initialCapacity);
+                return;
+            }
+            buffer.clear();
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        private void ensureCapacity(int length) {
+            if (buffer.remaining() >= length) {
+                return;
+            }
+            int required = buffer.position() + length;
+            ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(required, buffer.capacity() * 2));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+}
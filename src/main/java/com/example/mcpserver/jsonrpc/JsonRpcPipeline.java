@@ -0,0 +1,375 @@
+package com.example.mcpserver.jsonrpc;
+
+import com.example.mcpserver.service.AdmissionControlService;
+import com.example.mcpserver.service.MetricsSubscriptionService;
+import com.example.mcpserver.service.RequestContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipelined request dispatcher for line-oriented JSON-RPC transports.
+ *
+ * The reader thread hands each parsed message to {@link #submit(JsonRpcMessage)}, which only blocks once
+ * {@code maxInFlight} requests are outstanding. Requests are dispatched on a bounded worker pool,
+ * tool executions complete on their tool's bulkhead without holding a worker, and the responses
+ * are emitted through a {@link JsonRpcOutputChannel}. In the default mode responses are written as
+ * soon as they complete (clients match them by JSON-RPC {@code id}); in strict-ordering mode they
+ * are held back and written in the order the requests were received.
+ *
+ * Every request must also be admitted by the process-wide {@link AdmissionControlService} before it
+ * runs; rejected requests are answered with a server overloaded error. Admission is sought on the
+ * worker, as it may wait for a slot, so the reader keeps reading and a cancellation reaches a request
+ * that is still waiting to be admitted.
+ *
+ * A request can be abandoned before it completes: a {@code $/cancelRequest} notification naming
+ * its id, or the {@code deadlineMs} budget in its params running out, answers it straight away
+ * with a cancelled or timed out error, frees its in-flight slot and interrupts the worker running
+ * it. Work that has not started yet is never run. Batch members are bounded by their own
+ * deadlines but cannot be cancelled individually. A cancellation can overtake its request, for instance
+ * while the request waits behind the in-flight limit; its id is then remembered for a few seconds and
+ * the request is answered as cancelled when it is submitted.
+ *
+ * The pipeline also stands for the connection's metric subscriptions: their {@code metrics/changed}
+ * notifications are written through the same output channel, between responses, until it is closed.
+ */
+@Slf4j
+public class JsonRpcPipeline implements AutoCloseable {
+
+    private static final Object NO_RESPONSE = new Object();
+
+    // How long, and for how many ids, a cancellation waits for a request that hasn't been submitted yet
+    private static final long EARLY_CANCEL_TTL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int MAX_EARLY_CANCELS = 1024;
+
+    // Deadline timer shared by every pipeline; timed out requests are answered from here
+    private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+
+    private final JsonRpcHandler jsonRpcHandler;
+    private final JsonRpcOutputChannel output;
+    private final MetricsSubscriptionService.Subscriber subscriber;
+    private final AdmissionControlService admissionControlService;
+    private final int maxInFlight;
+    private final boolean strictOrdering;
+    private final Semaphore inFlight;
+    private final ExecutorService workers;
+    private final boolean ownsWorkers;
+    private final Map<String, PendingRequest> pendingById = new ConcurrentHashMap<>();
+    // Ids cancelled before their request was submitted, with the time the cancellation arrived
+    private final Map<String, Long> earlyCancels = new ConcurrentHashMap<>();
+
+    // Reorder buffer used in strict-ordering mode, guarded by itself
+    private final Map<Long, Object> completed = new HashMap<>();
+    private long nextSubmitSequence;
+    private long nextWriteSequence;
+
+    /**
+     * Creates a pipeline with its own pool of {@code workerThreads} workers
+     */
+    public JsonRpcPipeline(JsonRpcHandler jsonRpcHandler, JsonRpcOutputChannel output,
+                           AdmissionControlService admissionControlService, String name,
+                           int workerThreads, int maxInFlight, boolean strictOrdering) {
+        this(jsonRpcHandler, output, admissionControlService, name,
+                Executors.newFixedThreadPool(workerThreads, namedThreadFactory(name + "-worker")), true,
+                maxInFlight, strictOrdering);
+    }
+
+    /**
+     * Creates a pipeline running requests on a worker pool shared with other pipelines.
+     * The pool is not shut down when the pipeline is closed.
+     */
+    public JsonRpcPipeline(JsonRpcHandler jsonRpcHandler, JsonRpcOutputChannel output,
+                           AdmissionControlService admissionControlService, String name,
+                           ExecutorService workers, int maxInFlight, boolean strictOrdering) {
+        this(jsonRpcHandler, output, admissionControlService, name, workers, false, maxInFlight, strictOrdering);
+    }
+
+    private JsonRpcPipeline(JsonRpcHandler jsonRpcHandler, JsonRpcOutputChannel output,
+                            AdmissionControlService admissionControlService, String name,
+                            ExecutorService workers, boolean ownsWorkers, int maxInFlight, boolean strictOrdering) {
+        this.jsonRpcHandler = jsonRpcHandler;
+        this.output = output;
+        this.subscriber = jsonRpcHandler.createSubscriber(name, output);
+        this.admissionControlService = admissionControlService;
+        this.maxInFlight = maxInFlight;
+        this.strictOrdering = strictOrdering;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.workers = workers;
+        this.ownsWorkers = ownsWorkers;
+
+        log.debug("JSON-RPC pipeline '{}' started (max in-flight: {}, strict ordering: {})",
+                name, maxInFlight, strictOrdering);
+    }
+
+    /**
+     * Dispatches a parsed request or batch to the worker pool, blocking while the in-flight
+     * limit is reached
+     *
+     * @param message The parsed JSON-RPC message
+     * @throws InterruptedException if interrupted while waiting for an in-flight slot
+     */
+    public void submit(JsonRpcMessage message) throws InterruptedException {
+        if (isCancelNotification(message)) {
+            // Handled on the reader thread so it is never queued behind the request it cancels
+            cancel(jsonRpcHandler.cancelTarget((JsonRpcRequest) message));
+            return;
+        }
+
+        inFlight.acquire();
+        PendingRequest pending = new PendingRequest(nextSubmitSequence++, JsonRpcHandler.requestId(message),
+                RequestContext.create(JsonRpcHandler.deadlineMs(message)));
+        if (pending.id != null && pendingById.putIfAbsent(pending.id, pending) != null) {
+            log.warn("Duplicate in-flight JSON-RPC request id {}, it cannot be cancelled", pending.id);
+        }
+        if (pending.id != null && earlyCancels.remove(pending.id) != null) {
+            log.debug("Request {} was cancelled before it was submitted", pending.id);
+            abort(pending, jsonRpcHandler.cancelled(pending.id));
+            return;
+        }
+        try {
+            pending.future = workers.submit(() -> run(pending, message));
+        } catch (RuntimeException e) {
+            pending.started.set(true);
+            finish(pending, null);
+            throw e;
+        }
+        if (pending.context.hasDeadline()) {
+            pending.timeout = TIMER.schedule(
+                    () -> abort(pending, jsonRpcHandler.deadlineExceeded(pending.id)),
+                    pending.context.remainingMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Cancels an in-flight request, answering it with a request cancelled error. If no request
+     * with that id is pending, it is assumed not to have been submitted yet and will be answered
+     * as cancelled if it is submitted within a few seconds.
+     *
+     * @param id The JSON-RPC id of the request
+     * @return true if a pending request with that id was found
+     */
+    public boolean cancel(String id) {
+        if (id == null) {
+            return false;
+        }
+        // Recorded before looking the request up, so a concurrent submit sees one or the other
+        rememberEarlyCancel(id);
+        PendingRequest pending = pendingById.get(id);
+        if (pending == null) {
+            log.debug("Cancellation of unknown or completed request {}, remembering it", id);
+            return false;
+        }
+        earlyCancels.remove(id);
+        abort(pending, jsonRpcHandler.cancelled(id));
+        return true;
+    }
+
+    private void rememberEarlyCancel(String id) {
+        long now = System.nanoTime();
+        earlyCancels.values().removeIf(at -> now - at > EARLY_CANCEL_TTL_NANOS);
+        if (earlyCancels.size() < MAX_EARLY_CANCELS) {
+            earlyCancels.put(id, now);
+        }
+    }
+
+    private void run(PendingRequest pending, JsonRpcMessage message) {
+        if (!pending.started.compareAndSet(false, true)) {
+            // Abandoned while queued
+            return;
+        }
+        if (!admissionControlService.tryAcquire()) {
+            finish(pending, jsonRpcHandler.overloaded(message));
+            return;
+        }
+        if (pending.answered.get()) {
+            // Abandoned while waiting to be admitted
+            admissionControlService.release();
+            return;
+        }
+        CompletableFuture<?> response;
+        try (RequestContext.Scope scope = pending.context.attach()) {
+            response = execute(message);
+        }
+        pending.response = response;
+        if (pending.answered.get()) {
+            // Aborted while being dispatched
+            response.cancel(true);
+        }
+        // Tool executions complete on their bulkhead; the worker is free to take the next request
+        response.whenComplete((value, error) -> {
+            admissionControlService.release();
+            if (error != null && !response.isCancelled()) {
+                log.error("Unexpected error handling JSON-RPC request", error);
+                finish(pending, JsonRpcResponse.error(pending.id, -32603, "Internal error", error.getMessage()));
+                return;
+            }
+            finish(pending, value);
+        });
+    }
+
+    private void abort(PendingRequest pending, Object response) {
+        if (!pending.answered.compareAndSet(false, true)) {
+            return;
+        }
+        pending.context.cancel();
+        // Work that hasn't started is never run; started work releases its own admission slot
+        pending.started.set(true);
+        Future<?> future = pending.future;
+        if (future != null) {
+            future.cancel(true);
+        }
+        CompletableFuture<?> pendingResponse = pending.response;
+        if (pendingResponse != null) {
+            pendingResponse.cancel(true);
+        }
+        release(pending);
+        complete(pending.sequence, pending.id != null ? response : null);
+    }
+
+    private void finish(PendingRequest pending, Object response) {
+        if (!pending.answered.compareAndSet(false, true)) {
+            // Already answered by a cancellation or timeout
+            return;
+        }
+        release(pending);
+        complete(pending.sequence, response);
+    }
+
+    private void release(PendingRequest pending) {
+        if (pending.id != null) {
+            pendingById.remove(pending.id, pending);
+        }
+        ScheduledFuture<?> timeout = pending.timeout;
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+    }
+
+    /**
+     * @return true if the message is a {@code $/cancelRequest} notification, which never waits for an in-flight slot
+     */
+    static boolean isCancelNotification(JsonRpcMessage message) {
+        return message instanceof JsonRpcRequest && message.isNotification()
+                && JsonRpcHandler.CANCEL_REQUEST_METHOD.equals(((JsonRpcRequest) message).getMethod());
+    }
+
+    /**
+     * Queues a response produced by the reader itself, such as a parse error, keeping its place
+     * in the response order
+     *
+     * @param response The response to write
+     * @throws InterruptedException if interrupted while waiting for an in-flight slot
+     */
+    public void reply(Object response) throws InterruptedException {
+        inFlight.acquire();
+        complete(nextSubmitSequence++, response);
+    }
+
+    private CompletableFuture<?> execute(JsonRpcMessage message) {
+        try {
+            return jsonRpcHandler.handleAsync(message, subscriber);
+        } catch (Exception e) {
+            log.error("Unexpected error handling JSON-RPC request", e);
+            return CompletableFuture.completedFuture(JsonRpcResponse.error(null, -32603, "Internal error", e.getMessage()));
+        }
+    }
+
+    private void complete(long sequence, Object response) {
+        if (!strictOrdering) {
+            if (response != null) {
+                output.send(response);
+            }
+            inFlight.release();
+            return;
+        }
+
+        // Hold the response back until every earlier request has been written
+        synchronized (completed) {
+            completed.put(sequence, response != null ? response : NO_RESPONSE);
+            Object next;
+            while ((next = completed.remove(nextWriteSequence)) != null) {
+                nextWriteSequence++;
+                if (next != NO_RESPONSE) {
+                    output.send(next);
+                }
+                inFlight.release();
+            }
+        }
+    }
+
+    /**
+     * Ends the connection's metric subscriptions, so no further notifications are pushed to it
+     */
+    public void closeSubscriptions() {
+        jsonRpcHandler.closeSubscriber(subscriber);
+    }
+
+    /**
+     * Ends the connection's subscriptions, waits for all in-flight requests to complete and their
+     * responses to be written, then stops the worker threads
+     */
+    @Override
+    public void close() {
+        closeSubscriptions();
+        try {
+            inFlight.acquire(maxInFlight);
+            output.close();
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while draining JSON-RPC pipeline");
+            Thread.currentThread().interrupt();
+        } finally {
+            if (ownsWorkers) {
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * A dispatched request that can still be cancelled or time out
+     */
+    private static class PendingRequest {
+
+        final long sequence;
+        final String id;
+        final RequestContext context;
+        final AtomicBoolean started = new AtomicBoolean();
+        final AtomicBoolean answered = new AtomicBoolean();
+        volatile Future<?> future;
+        volatile CompletableFuture<?> response;
+        volatile ScheduledFuture<?> timeout;
+
+        PendingRequest(long sequence, String id, RequestContext context) {
+            this.sequence = sequence;
+            this.id = id;
+            this.context = context;
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, namedThreadFactory("jsonrpc-timer"));
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
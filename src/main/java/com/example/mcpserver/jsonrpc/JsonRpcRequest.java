@@ -1,6 +1,6 @@
 package com.example.mcpserver.jsonrpc;
 
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -8,10 +8,21 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@JsonIgnoreProperties(ignoreUnknown = true)
-public class JsonRpcRequest {
+public class JsonRpcRequest implements JsonRpcMessage {
     private String jsonrpc = "2.0";
     private String method;
-    private Object params;
+    
+    // Raw tokens of the params value; each method binds them straight to the type it needs,
+    // and methods without params never look at them
+    private TokenBuffer params;
     private String id;
-} 
\ No newline at end of file
+    
+    // Set when the request has no id member
+    private boolean notification;
+    
+    // The deadlineMs time budget found in params, if any
+    private Long deadlineMs;
+    
+    // Why the message is not a valid request object, or null if it is
+    private String invalidReason;
+}
@@ -0,0 +1,389 @@
+package com.example.mcpserver.jsonrpc;
+
+import com.example.mcpserver.service.AdmissionControlService;
+import com.example.mcpserver.service.MetricsSource;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JSON-RPC over a local TCP socket, serving many client sessions from one process.
+ *
+ * A single selector thread accepts connections and reads from every session. Each session has its
+ * own {@link JsonRpcFrameDecoder}, {@link JsonRpcPipeline} and {@link JsonRpcOutputChannel}, so
+ * framing, in-flight limits and response ordering are independent per client, while requests from
+ * all sessions run on one shared worker pool. Parsed messages are handed to the session's pipeline
+ * by a dispatch task off the selector thread; once a session has {@code max-in-flight} messages
+ * waiting, reading from it is paused until it catches up.
+ *
+ * Only enabled when {@code jsonrpc.socket.enabled=true}; it binds to the loopback interface by
+ * default and runs alongside the HTTP or stdio front door.
+ */
+@Slf4j
+@Component
+@Lazy(false)
+@ConditionalOnProperty(name = "jsonrpc.socket.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class JsonRpcSocketServer implements MetricsSource {
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    private final JsonRpcHandler jsonRpcHandler;
+    private final AdmissionControlService admissionControlService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${jsonrpc.socket.host:127.0.0.1}")
+    private String host;
+
+    @Value("${jsonrpc.socket.port:7070}")
+    private int port;
+
+    @Value("${jsonrpc.socket.max-sessions:256}")
+    private int maxSessions;
+
+    @Value("${jsonrpc.socket.workers:16}")
+    private int workerThreads;
+
+    @Value("${jsonrpc.socket.max-in-flight:64}")
+    private int maxInFlight;
+
+    @Value("${jsonrpc.socket.strict-ordering:false}")
+    private boolean strictOrdering;
+
+    @Value("${jsonrpc.socket.max-frame-size:16777216}")
+    private int maxFrameSize;
+
+    @Value("${jsonrpc.socket.flush-threshold:65536}")
+    private int flushThreshold;
+
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private final AtomicLong sessionIds = new AtomicLong();
+    private final AtomicLong acceptedSessions = new AtomicLong();
+    private final AtomicLong rejectedSessions = new AtomicLong();
+
+    private ObjectWriter writer;
+    private ExecutorService workers;
+    private ExecutorService io;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() throws IOException {
+        writer = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        workers = Executors.newFixedThreadPool(workerThreads, JsonRpcPipeline.namedThreadFactory("socket-worker"));
+        // Dispatch and write tasks only occupy a thread while a session has work
+        io = Executors.newCachedThreadPool(JsonRpcPipeline.namedThreadFactory("socket-io"));
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(host, port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        selectorThread = new Thread(this::runSelector, "socket-selector");
+        selectorThread.start();
+
+        log.info("JSON-RPC socket server listening on {} (max sessions: {}, workers: {}, max in-flight per session: {})",
+                serverChannel.getLocalAddress(), maxSessions, workerThreads, maxInFlight);
+    }
+
+    @PreDestroy
+    public void stop() {
+        log.info("Stopping JSON-RPC socket server");
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (selectorThread != null) {
+            try {
+                selectorThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Session session : sessions) {
+            session.abort();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+        if (io != null) {
+            io.shutdownNow();
+        }
+    }
+
+    private void runSelector() {
+        try {
+            while (running) {
+                selector.select();
+
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        ((Session) key.attachment()).read();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("Fatal error in JSON-RPC socket server", e);
+        } finally {
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+        }
+        log.info("JSON-RPC socket server stopped");
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        if (sessions.size() >= maxSessions) {
+            rejectedSessions.incrementAndGet();
+            log.warn("Rejected connection from {}, maximum of {} sessions reached", channel.getRemoteAddress(), maxSessions);
+            closeQuietly(channel);
+            return;
+        }
+
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Session session = new Session("socket-" + sessionIds.incrementAndGet(), channel);
+        session.key = channel.register(selector, SelectionKey.OP_READ, session);
+        sessions.add(session);
+        acceptedSessions.incrementAndGet();
+        log.info("Opened JSON-RPC session {} from {}", session.name, channel.getRemoteAddress());
+    }
+
+    private void runOnSelector(Runnable task) {
+        selectorTasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "socket";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("activeSessions", sessions.size());
+        metrics.put("acceptedSessions", acceptedSessions.get());
+        metrics.put("rejectedSessions", rejectedSessions.get());
+        return metrics;
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            log.debug("Failed to close {}", closeable, e);
+        }
+    }
+
+    /**
+     * One client connection. Reads and framing happen on the selector thread; messages are
+     * queued in the inbox and submitted to the pipeline by a dispatch task.
+     */
+    private class Session implements JsonRpcFrameDecoder.FrameHandler {
+
+        private final String name;
+        private final SocketChannel channel;
+        private final JsonRpcFrameDecoder decoder = new JsonRpcFrameDecoder(INITIAL_BUFFER_SIZE, maxFrameSize);
+        private final JsonRpcPipeline pipeline;
+
+        // Parsed messages (JsonRpcMessage) and reader-generated error responses waiting for the pipeline
+        private final Queue<Object> inbox = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean dispatching = new AtomicBoolean(false);
+        private final AtomicBoolean paused = new AtomicBoolean(false);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private volatile boolean endOfInput;
+        private SelectionKey key;
+
+        Session(String name, SocketChannel channel) {
+            this.name = name;
+            this.channel = channel;
+            JsonRpcOutputChannel output = new JsonRpcOutputChannel(channel, writer, io, flushThreshold);
+            this.pipeline = new JsonRpcPipeline(jsonRpcHandler, output, admissionControlService, name,
+                    workers, maxInFlight, strictOrdering);
+        }
+
+        /**
+         * Reads whatever is available; called on the selector thread
+         */
+        void read() {
+            try {
+                if (!decoder.readFrom(channel, this)) {
+                    log.debug("Session {} reached end of input", name);
+                    endOfInput = true;
+                }
+            } catch (IOException e) {
+                log.debug("Session {} read failed: {}", name, e.getMessage());
+                endOfInput = true;
+            }
+
+            if (endOfInput) {
+                key.interestOps(0);
+            } else if (queued.get() >= maxInFlight && paused.compareAndSet(false, true)) {
+                // The pipeline is behind; stop reading until the dispatcher catches up
+                key.interestOps(0);
+            }
+            scheduleDispatch();
+        }
+
+        @Override
+        public void onFrame(byte[] buffer, int offset, int length) {
+            JsonRpcMessage message;
+            try {
+                message = jsonRpcHandler.parse(buffer, offset, length);
+            } catch (IOException e) {
+                log.debug("Session {} sent malformed JSON: {}", name, e.getMessage());
+                enqueue(jsonRpcHandler.parseError(e));
+                return;
+            }
+            if (JsonRpcPipeline.isCancelNotification(message)) {
+                // Never blocks, and must not wait behind the request it cancels; if that request is
+                // still in the inbox, the pipeline answers it as cancelled when it is submitted
+                submit(message);
+                return;
+            }
+            enqueue(message);
+        }
+
+        @Override
+        public void onFrameTooLarge(long length) {
+            log.warn("Session {} sent a {} byte request exceeding the maximum frame size of {} bytes",
+                    name, length, maxFrameSize);
+            enqueue(jsonRpcHandler.frameTooLarge(length, maxFrameSize));
+        }
+
+        private void enqueue(Object item) {
+            inbox.add(item);
+            queued.incrementAndGet();
+        }
+
+        private void scheduleDispatch() {
+            if (dispatching.compareAndSet(false, true)) {
+                io.execute(this::dispatch);
+            }
+        }
+
+        private void dispatch() {
+            do {
+                try {
+                    Object item;
+                    while ((item = inbox.poll()) != null) {
+                        queued.decrementAndGet();
+                        if (item instanceof JsonRpcMessage) {
+                            submit((JsonRpcMessage) item);
+                        } else {
+                            pipeline.reply(item);
+                        }
+                        resumeIfDrained();
+                    }
+                    if (endOfInput && inbox.isEmpty()) {
+                        close();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    abort();
+                    return;
+                } finally {
+                    dispatching.set(false);
+                }
+                // Reading may have been paused or ended after the last check
+                resumeIfDrained();
+            } while ((!inbox.isEmpty() || (endOfInput && !closed.get())) && dispatching.compareAndSet(false, true));
+        }
+
+        private void submit(JsonRpcMessage message) {
+            try {
+                pipeline.submit(message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void resumeIfDrained() {
+            if (queued.get() < maxInFlight / 2 + 1 && paused.compareAndSet(true, false)) {
+                runOnSelector(() -> {
+                    if (key.isValid() && !endOfInput) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Waits for outstanding responses to be written, then closes the connection
+         */
+        private void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            pipeline.close();
+            closeQuietly(channel);
+            sessions.remove(this);
+            log.info("Closed JSON-RPC session {}", name);
+        }
+
+        /**
+         * Closes the connection without waiting for outstanding requests
+         */
+        void abort() {
+            if (closed.compareAndSet(false, true)) {
+                pipeline.closeSubscriptions();
+                closeQuietly(channel);
+                sessions.remove(this);
+            }
+        }
+    }
+}
@@ -1,17 +1,23 @@
 package com.example.mcpserver.jsonrpc;
 
+import com.example.mcpserver.service.AdmissionControlService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.PrintStream;
-import java.io.PrintWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -20,24 +26,47 @@ import java.util.concurrent.atomic.AtomicBoolean;
 @Profile("stdio")
 public class JsonRpcStdioServer implements CommandLineRunner {
 
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final Object END_OF_INPUT = new Object();
+
     private final JsonRpcHandler jsonRpcHandler;
+    private final AdmissionControlService admissionControlService;
     private final ObjectMapper objectMapper;
     private final Environment environment;
     private final AtomicBoolean running = new AtomicBoolean(true);
     private final AtomicBoolean initialized = new AtomicBoolean(false);
     private final CountDownLatch initLatch = new CountDownLatch(1);
     private final boolean interactiveMode;
+    private final int workerThreads;
+    private final int maxInFlight;
+    private final boolean strictOrdering;
+    private final int maxFrameSize;
+    private final int flushThreshold;
 
-    public JsonRpcStdioServer(JsonRpcHandler jsonRpcHandler, ObjectMapper objectMapper, Environment environment) {
+    public JsonRpcStdioServer(JsonRpcHandler jsonRpcHandler, AdmissionControlService admissionControlService,
+                              ObjectMapper objectMapper, Environment environment) {
         this.jsonRpcHandler = jsonRpcHandler;
+        this.admissionControlService = admissionControlService;
         this.objectMapper = objectMapper;
         this.environment = environment;
         
         // Check if we're running in interactive mode
         this.interactiveMode = "true".equals(environment.getProperty("jsonrpc.stdio.interactive", "false"));
         
+        // Pipelining settings; strict ordering writes responses in request order
+        this.workerThreads = environment.getProperty("jsonrpc.stdio.workers", Integer.class, 8);
+        this.maxInFlight = environment.getProperty("jsonrpc.stdio.max-in-flight", Integer.class, 64);
+        this.strictOrdering = "true".equals(environment.getProperty("jsonrpc.stdio.strict-ordering", "false"));
+        
+        // Upper bound on a single message so one oversized line cannot exhaust the heap
+        this.maxFrameSize = environment.getProperty("jsonrpc.stdio.max-frame-size", Integer.class, 16 * 1024 * 1024);
+        
+        // Buffered output is written once this many bytes accumulate, or as soon as the writer is idle
+        this.flushThreshold = environment.getProperty("jsonrpc.stdio.flush-threshold", Integer.class, 64 * 1024);
+        
         // Log to stderr only
-        log.info("JsonRpcStdioServer initialized (interactive mode: {})", interactiveMode);
+        log.info("JsonRpcStdioServer initialized (interactive mode: {}, workers: {}, max in-flight: {}, strict ordering: {})",
+                interactiveMode, workerThreads, maxInFlight, strictOrdering);
     }
 
     @Override
@@ -105,13 +134,25 @@ public class JsonRpcStdioServer implements CommandLineRunner {
     }
     
     private void processStdio() {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in))) {
+        // Responses bypass System.out and are written as UTF-8 bytes straight to the stdout descriptor
+        ExecutorService writerExecutor = Executors.newSingleThreadExecutor(
+                JsonRpcPipeline.namedThreadFactory("stdio-writer"));
+        JsonRpcOutputChannel output = new JsonRpcOutputChannel(
+                new FileOutputStream(FileDescriptor.out).getChannel(),
+                objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT),
+                writerExecutor,
+                flushThreshold);
+        
+        try (InputStream in = System.in;
+             JsonRpcPipeline pipeline = new JsonRpcPipeline(
+                     jsonRpcHandler, output, admissionControlService, "stdio",
+                     workerThreads, maxInFlight, strictOrdering)) {
             log.debug("Stdio processor thread started");
             
             // Check if stdin is available/ready
             boolean stdinAvailable;
             try {
-                stdinAvailable = reader.ready();
+                stdinAvailable = in.available() > 0;
                 log.info("Stdin availability check: {}", stdinAvailable ? "AVAILABLE" : "NOT AVAILABLE");
             } catch (Exception e) {
                 stdinAvailable = false;
@@ -123,60 +164,29 @@ public class JsonRpcStdioServer implements CommandLineRunner {
                          "The server will wait for input but may not receive any in non-interactive mode.");
             }
             
-            String line;
+            // Frames are scanned straight off the byte stream and parsed from the decoder's buffer
+            JsonRpcFrameDecoder decoder = new JsonRpcFrameDecoder(INITIAL_BUFFER_SIZE, maxFrameSize);
+            // Messages wait here for an in-flight slot on the dispatch thread, so the reader keeps reading
+            // and a cancellation reaches requests held back by the in-flight limit
+            BlockingQueue<Object> inbox = new ArrayBlockingQueue<>(maxInFlight);
+            Thread dispatcher = new Thread(() -> dispatch(inbox, pipeline), "stdio-dispatch");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+            JsonRpcFrameDecoder.FrameHandler frameHandler = new StdioFrameHandler(pipeline, inbox);
+            
             while (running.get()) {
                 try {
-                    // Try to read a line, which may block indefinitely in non-interactive environments
-                    line = reader.readLine();
-                    
-                    // If we get null, it means EOF (end of stream)
-                    if (line == null) {
+                    // Read the next chunk, which may block indefinitely in non-interactive environments
+                    if (!decoder.readFrom(in, frameHandler)) {
                         log.info("Reached end of stdin stream, exiting");
                         break;
                     }
                     
-                    // Skip empty lines
-                    if (line.trim().isEmpty()) {
-                        continue;
-                    }
-                    
-                    // Mark as initialized after first successful read
-                    if (!initialized.getAndSet(true)) {
-                        log.info("First request received, server is now fully initialized");
-                        initLatch.countDown();
+                    if (Thread.currentThread().isInterrupted()) {
+                        break;
                     }
-                    
-                    log.debug("Received line from stdin: {}", line);
-                    String response = jsonRpcHandler.handleRequest(line);
-                    
-                    // Write directly to System.out for JSON-RPC responses
-                    System.out.println(response);
-                    System.out.flush();
-                    
-                    log.debug("Wrote response to stdout");
                 } catch (Exception e) {
-                    log.error("Error handling request or reading from stdin", e);
-                    
-                    // Only try to send an error response if it's a processing error, not an I/O error
-                    if (initialized.get()) {
-                        try {
-                            JsonRpcResponse errorResponse = JsonRpcResponse.error(
-                                    null, 
-                                    -32603, 
-                                    "Internal error", 
-                                    e.getMessage()
-                            );
-                            String errorJson = objectMapper.writeValueAsString(errorResponse);
-                            
-                            // Write errors to System.out as well since they are part of the JSON-RPC protocol
-                            System.out.println(errorJson);
-                            System.out.flush();
-                            
-                            log.debug("Wrote error response to stdout: {}", errorJson);
-                        } catch (Exception ex) {
-                            log.error("Failed to write error response", ex);
-                        }
-                    }
+                    log.error("Error reading from stdin", e);
                     
                     // If this is an I/O error and we haven't initialized yet, count down the latch
                     // to unblock the main thread
@@ -193,10 +203,14 @@ public class JsonRpcStdioServer implements CommandLineRunner {
                 }
             }
             
+            // Let the dispatcher submit what is already read before the pipeline is drained
+            finishDispatch(inbox, dispatcher);
             log.info("Stdio processor thread exiting");
         } catch (Exception e) {
             log.error("Fatal error in JSON-RPC stdio server", e);
         } finally {
+            writerExecutor.shutdown();
+            
             // Ensure the latch is counted down in case of errors
             initLatch.countDown();
         }
@@ -204,6 +218,96 @@ public class JsonRpcStdioServer implements CommandLineRunner {
         log.info("JSON-RPC stdio server stopped");
     }
     
+    /**
+     * Submits queued messages and reader-generated error responses to the pipeline in the order
+     * they were read, blocking while the in-flight limit is reached
+     */
+    private void dispatch(BlockingQueue<Object> inbox, JsonRpcPipeline pipeline) {
+        try {
+            Object item;
+            while ((item = inbox.take()) != END_OF_INPUT) {
+                if (item instanceof JsonRpcMessage) {
+                    pipeline.submit((JsonRpcMessage) item);
+                } else {
+                    pipeline.reply(item);
+                }
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while dispatching requests, stopping stdio processor");
+            Thread.currentThread().interrupt();
+            running.set(false);
+        }
+    }
+    
+    private void finishDispatch(BlockingQueue<Object> inbox, Thread dispatcher) {
+        try {
+            inbox.put(END_OF_INPUT);
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            dispatcher.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Parses each frame on the reader thread while it is still in the decoder's buffer, then queues
+     * the parsed message for the dispatch thread. Cancellations go to the pipeline straight away.
+     */
+    private class StdioFrameHandler implements JsonRpcFrameDecoder.FrameHandler {
+        
+        private final JsonRpcPipeline pipeline;
+        private final BlockingQueue<Object> inbox;
+        
+        StdioFrameHandler(JsonRpcPipeline pipeline, BlockingQueue<Object> inbox) {
+            this.pipeline = pipeline;
+            this.inbox = inbox;
+        }
+        
+        @Override
+        public void onFrame(byte[] buffer, int offset, int length) {
+            // Mark as initialized after first successful read
+            if (!initialized.getAndSet(true)) {
+                log.info("First request received, server is now fully initialized");
+                initLatch.countDown();
+            }
+            
+            log.debug("Received {} byte frame from stdin", length);
+            
+            try {
+                JsonRpcMessage message;
+                try {
+                    message = jsonRpcHandler.parse(buffer, offset, length);
+                } catch (IOException e) {
+                    log.error("Error parsing JSON-RPC request", e);
+                    inbox.put(jsonRpcHandler.parseError(e));
+                    return;
+                }
+                if (JsonRpcPipeline.isCancelNotification(message)) {
+                    // Never blocks; a request still in the inbox is answered as cancelled when it is submitted
+                    pipeline.submit(message);
+                    return;
+                }
+                // Only blocks once the inbox is full as well
+                inbox.put(message);
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while dispatching request, stopping stdio processor");
+                Thread.currentThread().interrupt();
+                running.set(false);
+            }
+        }
+        
+        @Override
+        public void onFrameTooLarge(long length) {
+            log.warn("Rejected {} byte request exceeding the maximum frame size of {} bytes", length, maxFrameSize);
+            try {
+                inbox.put(jsonRpcHandler.frameTooLarge(length, maxFrameSize));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running.set(false);
+            }
+        }
+    }
+    
     public void stop() {
         log.info("Stopping JSON-RPC stdio server");
         running.set(false);
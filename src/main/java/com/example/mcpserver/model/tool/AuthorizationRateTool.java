@@ -42,6 +42,8 @@ public class AuthorizationRateTool extends Tool {
                 .function("improveAuthorizationRate")
                 .description("Analyzes transaction data and provides recommendations to improve authorization rates")
                 .parameters(parameters)
+                .cachePolicy(new CachePolicy(60, 100000, true))
+                .executorPolicy(new ExecutorPolicy(8, 64))
                 .build();
     }
 } 
\ No newline at end of file
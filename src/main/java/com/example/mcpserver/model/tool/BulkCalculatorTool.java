@@ -0,0 +1,59 @@
+package com.example.mcpserver.model.tool;
+
+import lombok.NoArgsConstructor;
+import lombok.experimental.SuperBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@NoArgsConstructor
+@SuperBuilder
+public class BulkCalculatorTool extends Tool {
+    
+    public static BulkCalculatorTool createDefault() {
+        Map<String, ParameterDefinition> parameters = new HashMap<>();
+        
+        parameters.put("operation", new ParameterDefinition(
+            "string",
+            "The operation to apply to every row (add, subtract, multiply, divide); give either this or operations",
+            false,
+            null,
+            new String[]{"add", "subtract", "multiply", "divide"}
+        ));
+        
+        parameters.put("operations", new ParameterDefinition(
+            "array",
+            "The operation for each row (add, subtract, multiply, divide), as many as there are operands",
+            false,
+            null,
+            null,
+            new ParameterDefinition("string", null, false, null, new String[]{"add", "subtract", "multiply", "divide"})
+        ));
+        
+        parameters.put("a", new ParameterDefinition(
+            "array",
+            "First operand of each row",
+            true,
+            null,
+            null,
+            new ParameterDefinition("number", null, false, null, null)
+        ));
+        
+        parameters.put("b", new ParameterDefinition(
+            "array",
+            "Second operand of each row, as many as first operands",
+            true,
+            null,
+            null,
+            new ParameterDefinition("number", null, false, null, null)
+        ));
+        
+        return BulkCalculatorTool.builder()
+                .type("function")
+                .function("calculateBulk")
+                .description("Performs basic math operations over many rows of operands at once, returning the results in row order")
+                .parameters(parameters)
+                .executorPolicy(new ExecutorPolicy(4, 64))
+                .build();
+    }
+} 
\ No newline at end of file
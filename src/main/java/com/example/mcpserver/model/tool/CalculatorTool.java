@@ -42,6 +42,8 @@ public class CalculatorTool extends Tool {
                 .function("calculate")
                 .description("Performs basic math operations (add, subtract, multiply, divide)")
                 .parameters(parameters)
+                .cachePolicy(new CachePolicy(300, 10000))
+                .executorPolicy(new ExecutorPolicy(4, 256))
                 .build();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,40 @@
+package com.example.mcpserver.model.tool;
+
+import lombok.NoArgsConstructor;
+import lombok.experimental.SuperBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@NoArgsConstructor
+@SuperBuilder
+public class DeclineSpikeTool extends Tool {
+    
+    public static DeclineSpikeTool createDefault() {
+        Map<String, ParameterDefinition> parameters = new HashMap<>();
+        
+        parameters.put("declineReason", new ParameterDefinition(
+            "string",
+            "Only list spikes of this decline reason",
+            false,
+            "all",
+            new String[]{"all", "insufficient_funds", "risk_triggers", "expired_card", "invalid_data", "other"}
+        ));
+        
+        parameters.put("limit", new ParameterDefinition(
+            "integer",
+            "The maximum number of spikes to list, at most 10000",
+            false,
+            100,
+            null
+        ));
+        
+        return DeclineSpikeTool.builder()
+                .type("function")
+                .function("detectDeclineSpikes")
+                .description("Lists the merchants whose decline rate for a reason is currently spiking above its usual level, the largest spikes first")
+                .parameters(parameters)
+                .executorPolicy(new ExecutorPolicy(4, 64))
+                .build();
+    }
+} 
\ No newline at end of file
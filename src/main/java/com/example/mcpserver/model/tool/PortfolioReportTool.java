@@ -0,0 +1,64 @@
+package com.example.mcpserver.model.tool;
+
+import lombok.NoArgsConstructor;
+import lombok.experimental.SuperBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@NoArgsConstructor
+@SuperBuilder
+public class PortfolioReportTool extends Tool {
+    
+    public static PortfolioReportTool createDefault() {
+        Map<String, ParameterDefinition> parameters = new HashMap<>();
+        
+        parameters.put("merchantIds", new ParameterDefinition(
+            "array",
+            "The merchant IDs to report on; all merchants when omitted",
+            false,
+            null,
+            null
+        ));
+        
+        parameters.put("timeframe", new ParameterDefinition(
+            "string",
+            "The timeframe for analysis",
+            false,
+            "last_30_days",
+            new String[]{"last_7_days", "last_30_days", "last_90_days", "last_year"}
+        ));
+        
+        parameters.put("transactionType", new ParameterDefinition(
+            "string",
+            "Optional transaction type filter",
+            false,
+            "all",
+            new String[]{"all", "card", "bank", "wallet", "crypto"}
+        ));
+        
+        parameters.put("sortBy", new ParameterDefinition(
+            "string",
+            "List the lowest authorization rates first (authorization_rate) or the largest estimated recoveries first (recovery)",
+            false,
+            "authorization_rate",
+            new String[]{"authorization_rate", "recovery"}
+        ));
+        
+        parameters.put("limit", new ParameterDefinition(
+            "integer",
+            "The maximum number of merchants to list, at most 10000",
+            false,
+            100,
+            null
+        ));
+        
+        return PortfolioReportTool.builder()
+                .type("function")
+                .function("generatePortfolioReport")
+                .description("Reports authorization rates, decline reasons and estimated recoverable declines for many merchants at once")
+                .parameters(parameters)
+                .executorPolicy(new ExecutorPolicy(2, 16))
+                .build();
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,89 @@
+package com.example.mcpserver.model.tool;
+
+import lombok.NoArgsConstructor;
+import lombok.experimental.SuperBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@NoArgsConstructor
+@SuperBuilder
+public class RollupQueryTool extends Tool {
+    
+    public static RollupQueryTool createDefault() {
+        Map<String, ParameterDefinition> parameters = new HashMap<>();
+        
+        parameters.put("metric", new ParameterDefinition(
+            "string",
+            "The figure to report: transaction, approval or decline counts, authorization or decline rate, or the count of declines with one reason",
+            false,
+            "decline_rate",
+            new String[]{"transactions", "approved", "declined", "authorization_rate", "decline_rate",
+                    "insufficient_funds", "risk_triggers", "expired_card", "invalid_data", "other"}
+        ));
+        
+        parameters.put("groupBy", new ParameterDefinition(
+            "string",
+            "The dimension to break the figure down by; grouping by reason reports the declines of each reason",
+            false,
+            "merchant",
+            new String[]{"merchant", "day", "type", "reason"}
+        ));
+        
+        parameters.put("timeframe", new ParameterDefinition(
+            "string",
+            "The timeframe for analysis, compared with the timeframe of the same length before it",
+            false,
+            "last_30_days",
+            new String[]{"last_7_days", "last_30_days", "last_90_days", "last_year"}
+        ));
+        
+        parameters.put("transactionType", new ParameterDefinition(
+            "string",
+            "Optional transaction type filter",
+            false,
+            "all",
+            new String[]{"all", "card", "bank", "wallet", "crypto"}
+        ));
+        
+        parameters.put("merchantIds", new ParameterDefinition(
+            "array",
+            "Optional merchant IDs to restrict the analysis to",
+            false,
+            null,
+            null
+        ));
+        
+        parameters.put("rankBy", new ParameterDefinition(
+            "string",
+            "Rank groups by the figure itself or by its change from the previous timeframe",
+            false,
+            "value",
+            new String[]{"value", "change"}
+        ));
+        
+        parameters.put("order", new ParameterDefinition(
+            "string",
+            "Rank from the highest (desc) or the lowest (asc)",
+            false,
+            "desc",
+            new String[]{"desc", "asc"}
+        ));
+        
+        parameters.put("limit", new ParameterDefinition(
+            "integer",
+            "The number of groups to return, at most 1000",
+            false,
+            10,
+            null
+        ));
+        
+        return RollupQueryTool.builder()
+                .type("function")
+                .function("queryRollup")
+                .description("Answers portfolio questions across merchants from daily rollups, e.g. which merchants' risk-trigger declines grew most in the last 30 days")
+                .parameters(parameters)
+                .executorPolicy(new ExecutorPolicy(4, 64))
+                .build();
+    }
+} 
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.example.mcpserver.model.tool;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -19,6 +20,13 @@ public abstract class Tool {
     private String description;
     private Map<String, ParameterDefinition> parameters;
     
+    // Server-side only, so it is left out of the tool list sent to agents
+    @JsonIgnore
+    private CachePolicy cachePolicy;
+    
+    @JsonIgnore
+    private ExecutorPolicy executorPolicy;
+    
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -28,5 +36,48 @@ public abstract class Tool {
         private boolean required;
         private Object defaultValue;
         private Object[] enumValues;
+        // The type and allowed values of each element of an array parameter
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private ParameterDefinition items;
+        
+        public ParameterDefinition(String type, String description, boolean required, Object defaultValue,
+                                   Object[] enumValues) {
+            this(type, description, required, defaultValue, enumValues, null);
+        }
+    }
+    
+    /**
+     * Opts a tool into result caching. Only tools whose result is a pure function of their
+     * arguments for the length of the TTL should declare one, or of their arguments and the
+     * transaction data when {@code dataBacked} is set.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CachePolicy {
+        // How long a result is served after it was computed
+        private long ttlSeconds;
+        // Upper bound on the total weight of cached results, see ToolResultCache
+        private long maxWeight;
+        // Whether results are dropped as soon as new transactions are ingested
+        private boolean dataBacked;
+        
+        public CachePolicy(long ttlSeconds, long maxWeight) {
+            this(ttlSeconds, maxWeight, false);
+        }
+    }
+    
+    /**
+     * Sizes the bulkhead a tool runs on, so a slow tool can only tie up its own threads.
+     * Can be overridden per tool with the {@code tools.executor.<function>.*} properties.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ExecutorPolicy {
+        // Maximum number of concurrent executions
+        private int threads;
+        // Executions waiting for a thread before further ones are rejected
+        private int queueSize;
     }
 } 
\ No newline at end of file
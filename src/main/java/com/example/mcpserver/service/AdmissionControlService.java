@@ -0,0 +1,115 @@
+package com.example.mcpserver.service;
+
+import javax.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide admission control shared by the HTTP and JSON-RPC front doors.
+ *
+ * At most {@code maxInFlight} requests run at once. Up to {@code maxQueued} further requests
+ * may wait for a slot for at most {@code queueTimeoutMs}; anything beyond that is rejected
+ * immediately so callers can back off instead of timing out.
+ */
+@Slf4j
+@Service
+public class AdmissionControlService implements MetricsSource {
+
+    @Value("${admission.max-in-flight:64}")
+    private int maxInFlight;
+
+    @Value("${admission.max-queued:128}")
+    private int maxQueued;
+
+    @Value("${admission.queue-timeout-ms:500}")
+    private long queueTimeoutMs;
+
+    @Getter
+    @Value("${admission.retry-after-seconds:1}")
+    private int retryAfterSeconds;
+
+    private Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxInFlight);
+        log.info("Admission control initialized (max in-flight: {}, max queued: {}, queue timeout: {} ms)",
+                maxInFlight, maxQueued, queueTimeoutMs);
+    }
+
+    /**
+     * Tries to admit a request, waiting in the queue if all slots are busy and the queue has room.
+     * Every successful call must be paired with {@link #release()}.
+     *
+     * @return true if the request was admitted, false if it must be rejected
+     */
+    public boolean tryAcquire() {
+        if (permits.tryAcquire()) {
+            admitted.incrementAndGet();
+            return true;
+        }
+
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            return reject();
+        }
+
+        try {
+            if (permits.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                admitted.incrementAndGet();
+                return true;
+            }
+            return reject();
+        } catch (InterruptedException e) {
+            // The caller gave up, so this isn't counted as a rejection
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * Releases the slot held by an admitted request
+     */
+    public void release() {
+        permits.release();
+    }
+
+    private boolean reject() {
+        long count = rejected.incrementAndGet();
+        if (count == 1 || count % 1000 == 0) {
+            log.warn("Server overloaded, rejected {} requests so far", count);
+        }
+        return false;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "admission";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("maxInFlight", maxInFlight);
+        metrics.put("maxQueued", maxQueued);
+        metrics.put("inFlight", maxInFlight - permits.availablePermits());
+        metrics.put("queued", queued.get());
+        metrics.put("admitted", admitted.get());
+        metrics.put("rejected", rejected.get());
+        return metrics;
+    }
+}
@@ -1,5 +1,11 @@
 package com.example.mcpserver.service;
 
+import com.example.mcpserver.analytics.AmountSketch;
+import com.example.mcpserver.analytics.AuthorizationMetrics;
+import com.example.mcpserver.analytics.HyperLogLog;
+import com.example.mcpserver.analytics.Timeframe;
+import com.example.mcpserver.analytics.TransactionSketches;
+import com.example.mcpserver.analytics.TransactionType;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -7,13 +13,15 @@ import org.springframework.stereotype.Service;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
-import java.util.Arrays;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class AuthorizationRateService {
 
+    private final TransactionDataService transactionDataService;
+    private final RecommendationService recommendationService;
+
     /**
      * Analyzes transaction data and provides recommendations to improve authorization rates
      * 
@@ -26,69 +34,102 @@ public class AuthorizationRateService {
         log.info("Analyzing authorization rates for merchant: {}, timeframe: {}, transaction type: {}", 
                 merchantId, timeframe, transactionType);
         
-        // In a real implementation, this would query a database or call an API
-        // For demonstration, we'll return mock data
+        RequestContext context = RequestContext.current();
+        context.checkpoint();
         
         Map<String, Object> result = new HashMap<>();
-        
-        // Current metrics
         Map<String, Object> currentMetrics = new HashMap<>();
-        currentMetrics.put("authorizationRate", 85.3);
-        currentMetrics.put("declineRate", 14.7);
-        currentMetrics.put("totalTransactions", 12500);
-        currentMetrics.put("timeframe", timeframe);
+        Map<String, Object> declineReasons;
+        TransactionSketches sketches = null;
+        Timeframe window = Timeframe.fromKey(timeframe);
+        if (window == null) {
+            window = Timeframe.LAST_30_DAYS;
+        }
+        TransactionType type = TransactionType.fromKey(transactionType);
+        
+        if (transactionDataService.hasData()) {
+            // Read the figures off the daily aggregates and sketches of the loaded transactions
+            AuthorizationMetrics metrics = transactionDataService.metrics(merchantId, window, type);
+            sketches = transactionDataService.sketches(merchantId, window, type);
+            currentMetrics.put("authorizationRate", metrics.getAuthorizationRate());
+            currentMetrics.put("declineRate", metrics.getDeclineRate());
+            currentMetrics.put("totalTransactions", metrics.getTotal());
+            currentMetrics.put("timeframe", timeframe);
+            declineReasons = metrics.getDeclineReasonShares();
+        } else {
+            // No transaction data loaded, so return sample figures
+            currentMetrics.put("authorizationRate", 85.3);
+            currentMetrics.put("declineRate", 14.7);
+            currentMetrics.put("totalTransactions", 12500);
+            currentMetrics.put("timeframe", timeframe);
+            
+            declineReasons = new HashMap<>();
+            declineReasons.put("insufficient_funds", 42.5);
+            declineReasons.put("risk_triggers", 23.8);
+            declineReasons.put("expired_card", 12.3);
+            declineReasons.put("invalid_data", 10.7);
+            declineReasons.put("other", 10.7);
+        }
         
-        // Decline reasons
-        Map<String, Object> declineReasons = new HashMap<>();
-        declineReasons.put("insufficient_funds", 42.5);
-        declineReasons.put("risk_triggers", 23.8);
-        declineReasons.put("expired_card", 12.3);
-        declineReasons.put("invalid_data", 10.7);
-        declineReasons.put("other", 10.7);
+        // Abandon the analysis if the caller has gone away in the meantime
+        context.checkpoint();
         
-        // Recommendations
-        List<Map<String, Object>> recommendations = Arrays.asList(
-            createRecommendation(
-                "Implement Account Updater",
-                "Use PayPal's Account Updater service to automatically update expired or replaced cards",
-                "high",
-                3.5
-            ),
-            createRecommendation(
-                "Optimize AVS Settings",
-                "Adjust Address Verification Service settings to reduce false declines",
-                "medium",
-                2.1
-            ),
-            createRecommendation(
-                "Implement Intelligent Retry Logic",
-                "Add smart retry logic for declined transactions with specific reason codes",
-                "high",
-                4.2
-            ),
-            createRecommendation(
-                "Review Risk Rules",
-                "Analyze and adjust risk rules to reduce false positives",
-                "medium",
-                2.8
-            )
-        );
+        // Recommendations ranked by the declines they would recover
+        List<Map<String, Object>> recommendations = transactionDataService.hasData()
+                ? recommendationService.recommend(merchantId, window, type)
+                : recommendationService.recommendSample(12500, 14.7, declineReasons);
         
         // Assemble the result
         result.put("merchantId", merchantId);
         result.put("currentMetrics", currentMetrics);
         result.put("declineReasons", declineReasons);
         result.put("recommendations", recommendations);
+        // Estimated from sketches, when the transaction data has cards and amounts
+        if (sketches != null && !sketches.getCards().isEmpty()) {
+            result.put("cardMetrics", cardMetrics(sketches));
+        }
+        if (sketches != null && sketches.getApprovedAmounts().getCount() + sketches.getDeclinedAmounts().getCount() > 0) {
+            result.put("amountDistribution", amountDistribution(sketches));
+        }
         
         return result;
     }
-    
-    private Map<String, Object> createRecommendation(String title, String description, String priority, double estimatedImpact) {
-        Map<String, Object> recommendation = new HashMap<>();
-        recommendation.put("title", title);
-        recommendation.put("description", description);
-        recommendation.put("priority", priority);
-        recommendation.put("estimatedImpactPercentage", estimatedImpact);
-        return recommendation;
+
+    private Map<String, Object> cardMetrics(TransactionSketches sketches) {
+        Map<String, Object> cardMetrics = new HashMap<>();
+        cardMetrics.put("uniqueCards", sketches.getCards().estimate());
+        cardMetrics.put("uniqueDeclinedCards", sketches.getDeclinedCards().estimate());
+        if (!sketches.getBins().isEmpty()) {
+            cardMetrics.put("uniqueBins", sketches.getBins().estimate());
+            cardMetrics.put("uniqueDeclinedBins", sketches.getDeclinedBins().estimate());
+        }
+        cardMetrics.put("standardErrorPercentage", HyperLogLog.standardError());
+        return cardMetrics;
+    }
+
+    private Map<String, Object> amountDistribution(TransactionSketches sketches) {
+        Map<String, Object> distribution = new HashMap<>();
+        distribution.put("approved", amountSummary(sketches.getApprovedAmounts()));
+        distribution.put("declined", amountSummary(sketches.getDeclinedAmounts()));
+        distribution.put("relativeErrorPercentage", AmountSketch.RELATIVE_ACCURACY * 100);
+        return distribution;
+    }
+
+    private Map<String, Object> amountSummary(AmountSketch amounts) {
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("transactions", amounts.getCount());
+        if (amounts.getCount() > 0) {
+            summary.put("mean", round(amounts.getMean()));
+            summary.put("p50", round(amounts.quantile(0.5)));
+            summary.put("p90", round(amounts.quantile(0.9)));
+            summary.put("p95", round(amounts.quantile(0.95)));
+            summary.put("p99", round(amounts.quantile(0.99)));
+            summary.put("max", round(amounts.getMax()));
+        }
+        return summary;
+    }
+
+    private static double round(double amount) {
+        return Math.round(amount * 100.0) / 100.0;
     }
 } 
\ No newline at end of file
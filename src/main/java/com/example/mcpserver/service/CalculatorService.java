@@ -1,10 +1,14 @@
 package com.example.mcpserver.service;
 
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Slf4j
@@ -12,6 +16,15 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class CalculatorService {
 
+    private static final byte ADD = 0;
+    private static final byte SUBTRACT = 1;
+    private static final byte MULTIPLY = 2;
+    private static final byte DIVIDE = 3;
+    
+    @Getter
+    @Value("${calculator.bulk.max-rows:100000}")
+    private int maxBulkRows;
+
     /**
      * Performs basic math operations
      * 
@@ -64,4 +77,140 @@ public class CalculatorService {
             default: return operation;
         }
     }
+    
+    /**
+     * Applies one operation to every row of column-oriented operands.
+     * 
+     * Each operation is a single counted loop over primitive arrays with no per-row branching or
+     * allocation, which the JIT compiles to SIMD instructions where the CPU supports them.
+     * Rows dividing by zero are reported instead of failing the batch; their result is NaN.
+     * 
+     * @param operation The operation to perform (add, subtract, multiply, divide)
+     * @param a First operands
+     * @param b Second operands, as many as first operands
+     * @return Map containing the results in row order
+     */
+    public Map<String, Object> calculateBulk(String operation, double[] a, double[] b) {
+        byte code = operationCode(operation);
+        log.info("Performing bulk calculation: {} over {} rows", operation, a.length);
+        
+        double[] results = new double[a.length];
+        switch (code) {
+            case ADD:
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = a[i] + b[i];
+                }
+                break;
+            case SUBTRACT:
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = a[i] - b[i];
+                }
+                break;
+            case MULTIPLY:
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = a[i] * b[i];
+                }
+                break;
+            default:
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = a[i] / b[i];
+                }
+                break;
+        }
+        
+        int[] divisionByZeroRows = code == DIVIDE ? divisionByZeroRows(null, b, results) : null;
+        return bulkResponse(operation.toLowerCase(), results, divisionByZeroRows);
+    }
+    
+    /**
+     * Applies a separate operation to each row of column-oriented operands
+     * 
+     * @param operations The operation for each row (add, subtract, multiply, divide)
+     * @param a First operands
+     * @param b Second operands
+     * @return Map containing the results in row order
+     * @see #calculateBulk(String, double[], double[])
+     */
+    public Map<String, Object> calculateBulk(String[] operations, double[] a, double[] b) {
+        byte[] codes = new byte[operations.length];
+        boolean divides = false;
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = operationCode(operations[i]);
+            divides |= codes[i] == DIVIDE;
+        }
+        log.info("Performing bulk calculation: mixed operations over {} rows", a.length);
+        
+        double[] results = new double[a.length];
+        for (int i = 0; i < results.length; i++) {
+            double x = a[i];
+            double y = b[i];
+            switch (codes[i]) {
+                case ADD:
+                    results[i] = x + y;
+                    break;
+                case SUBTRACT:
+                    results[i] = x - y;
+                    break;
+                case MULTIPLY:
+                    results[i] = x * y;
+                    break;
+                default:
+                    results[i] = x / y;
+                    break;
+            }
+        }
+        
+        int[] divisionByZeroRows = divides ? divisionByZeroRows(codes, b, results) : null;
+        return bulkResponse("mixed", results, divisionByZeroRows);
+    }
+    
+    private static byte operationCode(String operation) {
+        // Called once per row for mixed batches, so lower-casing is only tried after an exact match fails
+        switch (operation) {
+            case "add": return ADD;
+            case "subtract": return SUBTRACT;
+            case "multiply": return MULTIPLY;
+            case "divide": return DIVIDE;
+            default:
+                String lowerCase = operation.toLowerCase();
+                if (!lowerCase.equals(operation)) {
+                    return operationCode(lowerCase);
+                }
+                throw new IllegalArgumentException("Unsupported operation: " + operation);
+        }
+    }
+    
+    /**
+     * Finds the dividing rows with a zero divisor and sets their result to NaN
+     * 
+     * @param codes The operation of each row, or null if every row divides
+     * @return The indexes of those rows, or null if there are none
+     */
+    private static int[] divisionByZeroRows(byte[] codes, double[] b, double[] results) {
+        int[] rows = null;
+        int count = 0;
+        for (int i = 0; i < b.length; i++) {
+            if (b[i] == 0 && (codes == null || codes[i] == DIVIDE)) {
+                if (rows == null) {
+                    rows = new int[8];
+                } else if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = i;
+                results[i] = Double.NaN;
+            }
+        }
+        return rows == null ? null : Arrays.copyOf(rows, count);
+    }
+    
+    private static Map<String, Object> bulkResponse(String operation, double[] results, int[] divisionByZeroRows) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("operation", operation);
+        response.put("count", results.length);
+        response.put("results", results);
+        if (divisionByZeroRows != null) {
+            response.put("divisionByZeroRows", divisionByZeroRows);
+        }
+        return response;
+    }
 } 
\ No newline at end of file
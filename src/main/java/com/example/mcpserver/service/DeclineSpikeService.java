@@ -0,0 +1,94 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.analytics.DeclineReason;
+import com.example.mcpserver.analytics.DeclineSpikeDetector;
+import com.example.mcpserver.exception.McpException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lists the merchants whose decline rate for a reason is spiking, from the
+ * {@link DeclineSpikeDetector} that {@link TransactionDataService} keeps up to date as transactions
+ * are ingested. A query only reads the state of the merchants currently flagged, so on-call tooling
+ * can poll it every few seconds.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DeclineSpikeService implements MetricsSource {
+
+    static final int MAX_LIMIT = 10000;
+
+    private final TransactionDataService transactionDataService;
+
+    private final LongAdder queries = new LongAdder();
+
+    /**
+     * Lists the current spikes
+     *
+     * @param declineReason A decline reason, or "all"
+     * @param limit The maximum number of spikes to list
+     * @return Map containing the spikes, the largest excess of declines first
+     */
+    public Map<String, Object> spikes(String declineReason, long limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw McpException.badRequest("Invalid arguments for detectDeclineSpikes: limit must be between 1 and " + MAX_LIMIT);
+        }
+        queries.increment();
+        DeclineReason reason = "all".equals(declineReason) ? null : DeclineReason.fromKey(declineReason);
+        DeclineSpikeDetector detector = transactionDataService.getSpikes();
+        List<DeclineSpikeDetector.Spike> spikes = detector.spikes(reason);
+        spikes.sort(Comparator.comparingDouble(DeclineSpikeDetector.Spike::getScore).reversed()
+                .thenComparing(DeclineSpikeDetector.Spike::getMerchantId)
+                .thenComparing(DeclineSpikeDetector.Spike::getReason));
+        log.debug("Found {} decline spikes (reason: {})", spikes.size(), declineReason);
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (DeclineSpikeDetector.Spike spike : spikes.subList(0, (int) Math.min(limit, spikes.size()))) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("merchantId", spike.getMerchantId());
+            row.put("declineReason", spike.getReason().key());
+            row.put("baselineRate", percentage(spike.getBaselineRate()));
+            row.put("recentRate", percentage(spike.getRecentRate()));
+            row.put("excessDeclines", Math.round(spike.getScore() * 10) / 10.0);
+            row.put("since", Instant.ofEpochMilli(spike.getSince()).toString());
+            rows.add(row);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("declineReason", declineReason);
+        result.put("merchantsMonitored", detector.merchantCount());
+        result.put("spikeCount", spikes.size());
+        result.put("spikes", rows);
+        return result;
+    }
+
+    private static double percentage(double rate) {
+        return Math.round(rate * 1000) / 10.0;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "declineSpikes";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        DeclineSpikeDetector detector = transactionDataService.getSpikes();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("merchantsMonitored", detector.merchantCount());
+        metrics.put("activeSpikes", detector.spikes(null).size());
+        metrics.put("memoryBytes", detector.memoryBytes());
+        metrics.put("queries", queries.sum());
+        return metrics;
+    }
+}
@@ -0,0 +1,451 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.analytics.DeclineReason;
+import com.example.mcpserver.analytics.TailingInputStream;
+import com.example.mcpserver.analytics.TransactionBatch;
+import com.example.mcpserver.analytics.TransactionFileLoader;
+import com.example.mcpserver.analytics.TransactionSink;
+import com.example.mcpserver.analytics.TransactionType;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams live authorization events into the analysis from the files and named pipes listed in
+ * {@code analytics.ingest.paths}, in the CSV or JSON Lines formats of {@link TransactionFileLoader}.
+ *
+ * Each source has a reader thread that follows it: a regular file is read from the start and then
+ * tailed, and read again from the start when it is truncated or replaced; a named pipe is read once per
+ * writer that connects to it. After a read error a file is opened again at the end of the last line
+ * loaded from it, so no event is loaded twice. Events are gathered into {@link TransactionBatch micro-batches} of
+ * {@code analytics.ingest.batch-size} events, and a batch is handed over when it is full, when its
+ * source has nothing more to read, or at the latest {@code analytics.ingest.batch-millis} after its
+ * first event. A single applier thread takes the batches from a queue of
+ * {@code analytics.ingest.queue-capacity} batches and {@link TransactionDataService#ingest applies} them,
+ * so each sink is locked once per batch. When the applier falls behind the queue fills up and the
+ * readers wait, which holds back the writers of the sources rather than buffering without bound.
+ *
+ * Nothing depends on this service, so it is created eagerly even where beans are initialized lazily,
+ * as with the stdio profile.
+ */
+@Slf4j
+@Service
+@Lazy(false)
+@RequiredArgsConstructor
+public class IngestionService implements MetricsSource {
+
+    private static final long RATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final TransactionDataService transactionDataService;
+
+    @Value("${analytics.ingest.paths:}")
+    private String ingestPaths;
+
+    @Value("${analytics.ingest.batch-size:4096}")
+    private int batchSize;
+
+    @Value("${analytics.ingest.batch-millis:100}")
+    private long batchMillis;
+
+    @Value("${analytics.ingest.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${analytics.ingest.poll-millis:200}")
+    private long pollMillis;
+
+    private final List<Source> sources = new ArrayList<>();
+    private final List<Thread> readers = new ArrayList<>();
+    private BlockingQueue<TransactionBatch> queue;
+    private Thread applier;
+    private Thread flusher;
+    private volatile boolean running;
+
+    private final AtomicLong backpressureWaits = new AtomicLong();
+    private final LongAdder backpressureNanos = new LongAdder();
+    // Written by the applier thread only
+    private volatile long events;
+    private volatile long batches;
+    private volatile int lastBatchSize;
+    private volatile int maxBatchSize;
+    private volatile double lastLagMillis;
+    private volatile double maxLagMillis;
+    private volatile long latestTimestamp = Long.MIN_VALUE;
+    private volatile long lastAppliedNanos;
+    private volatile double eventsPerSecond;
+    private long rateStartNanos;
+    private long rateEvents;
+
+    @PostConstruct
+    public void start() {
+        for (String ingestPath : ingestPaths.split(",")) {
+            if (!ingestPath.trim().isEmpty()) {
+                sources.add(new Source(Paths.get(ingestPath.trim())));
+            }
+        }
+        if (sources.isEmpty()) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        rateStartNanos = System.nanoTime();
+        applier = daemon(new Thread(this::applyBatches, "ingest-applier"));
+        flusher = daemon(new Thread(this::flushStaleBatches, "ingest-flusher"));
+        for (int i = 0; i < sources.size(); i++) {
+            Source source = sources.get(i);
+            readers.add(daemon(new Thread(() -> read(source), "ingest-reader-" + i)));
+        }
+        log.info("Ingesting transactions from {} (batch size: {}, max batch delay: {} ms, queue capacity: {} batches)",
+                ingestPaths, batchSize, batchMillis, queueCapacity);
+    }
+
+    private static Thread daemon(Thread thread) {
+        // A reader may be stuck opening a named pipe that no writer connects to
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        log.info("Stopping transaction ingestion");
+        running = false;
+        for (Source source : sources) {
+            source.close();
+        }
+        readers.forEach(Thread::interrupt);
+        flusher.interrupt();
+        try {
+            for (Thread reader : readers) {
+                reader.join(1000);
+            }
+            // The applier drains the batches already queued before it stops
+            applier.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Follows a source until ingestion stops, loading each stream opened on it
+     */
+    private void read(Source source) {
+        boolean waiting = false;
+        TransactionFileLoader loader = null;
+        while (running) {
+            if (loader == null) {
+                loader = new TransactionFileLoader(source);
+                source.loader = loader;
+            }
+            boolean resume = false;
+            try (InputStream in = source.open(loader.getConsumed())) {
+                waiting = false;
+                if (TransactionFileLoader.isJsonLines(source.path)) {
+                    loader.loadJsonLines(in);
+                } else {
+                    loader.loadCsv(in);
+                }
+            } catch (NoSuchFileException e) {
+                if (!waiting) {
+                    log.info("Waiting for {} to be created", source.path);
+                    waiting = true;
+                }
+                pause();
+            } catch (IOException e) {
+                if (running) {
+                    // A pipe's next stream comes from another writer, so only a file is resumed
+                    resume = source.tailing;
+                    log.warn("Failed to read transactions from {}, {}: {}", source.path,
+                            resume ? "resuming at byte " + loader.getConsumed() : "reopening", e.getMessage());
+                    pause();
+                }
+            } finally {
+                if (resume) {
+                    source.flush(0);
+                } else {
+                    source.finish(loader);
+                    loader = null;
+                }
+            }
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(pollMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hands over the batches that have waited longer than the batch delay for more events
+     */
+    private void flushStaleBatches() {
+        long maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(batchMillis);
+        while (running) {
+            try {
+                Thread.sleep(Math.max(1, batchMillis / 2));
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (Source source : sources) {
+                source.flush(maxAgeNanos);
+            }
+        }
+    }
+
+    /**
+     * Queues a batch for the applier, waiting while the queue is full
+     */
+    private void dispatch(TransactionBatch batch) {
+        if (queue.offer(batch)) {
+            return;
+        }
+        backpressureWaits.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Dropped a batch of {} transactions while stopping", batch.size());
+        } finally {
+            backpressureNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private void applyBatches() {
+        while (running || !queue.isEmpty()) {
+            TransactionBatch batch;
+            try {
+                batch = queue.poll(pollMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (batch == null) {
+                continue;
+            }
+            try {
+                transactionDataService.ingest(batch);
+            } catch (RuntimeException e) {
+                log.error("Failed to apply a batch of {} transactions", batch.size(), e);
+                continue;
+            }
+            record(batch);
+        }
+    }
+
+    private void record(TransactionBatch batch) {
+        long now = System.nanoTime();
+        int size = batch.size();
+        events += size;
+        batches++;
+        lastBatchSize = size;
+        maxBatchSize = Math.max(maxBatchSize, size);
+        // From the arrival of the batch's first event to the moment it was fully applied
+        lastLagMillis = (now - batch.getFirstAddedNanos()) / 1e6;
+        maxLagMillis = Math.max(maxLagMillis, lastLagMillis);
+        latestTimestamp = Math.max(latestTimestamp, batch.getMaxTimestamp());
+        lastAppliedNanos = now;
+        rateEvents += size;
+        if (now - rateStartNanos >= RATE_INTERVAL_NANOS) {
+            eventsPerSecond = rateEvents * 1e9 / (now - rateStartNanos);
+            rateStartNanos = now;
+            rateEvents = 0;
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "ingest";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("sources", sources.size());
+        if (sources.isEmpty()) {
+            return metrics;
+        }
+        long skipped = 0;
+        List<Map<String, Object>> perSource = new ArrayList<>();
+        for (Source source : sources) {
+            skipped += source.skipped();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("path", source.path.toString());
+            map.put("events", source.loaded());
+            map.put("skippedRows", source.skipped());
+            map.put("bytesRead", source.bytesRead.get());
+            map.put("opens", source.opens);
+            perSource.add(map);
+        }
+        long sinceApplied = System.nanoTime() - lastAppliedNanos;
+        metrics.put("events", events);
+        metrics.put("skippedRows", skipped);
+        metrics.put("batches", batches);
+        // The rate of the latest full second, or nothing while no batches arrive
+        metrics.put("eventsPerSecond", batches > 0 && sinceApplied < 2 * RATE_INTERVAL_NANOS ? Math.round(eventsPerSecond) : 0);
+        metrics.put("lastBatchSize", lastBatchSize);
+        metrics.put("averageBatchSize", batches > 0 ? Math.round(events * 10.0 / batches) / 10.0 : 0);
+        metrics.put("maxBatchSize", maxBatchSize);
+        metrics.put("queuedBatches", queue.size());
+        metrics.put("queueCapacity", queueCapacity);
+        metrics.put("lastLagMillis", Math.round(lastLagMillis * 10) / 10.0);
+        metrics.put("maxLagMillis", Math.round(maxLagMillis * 10) / 10.0);
+        // How far the latest event applied is behind the wall clock
+        metrics.put("eventTimeLagMillis", latestTimestamp != Long.MIN_VALUE ? System.currentTimeMillis() - latestTimestamp : 0);
+        metrics.put("backpressureWaits", backpressureWaits.get());
+        metrics.put("backpressureMillis", TimeUnit.NANOSECONDS.toMillis(backpressureNanos.sum()));
+        metrics.put("perSource", perSource);
+        return metrics;
+    }
+
+    /**
+     * A followed file or pipe, and the batch being filled from it by its reader. The flusher thread
+     * may take the batch over when it has waited too long, so access to it is synchronized.
+     */
+    private final class Source implements TransactionSink {
+
+        final Path path;
+        final AtomicLong bytesRead = new AtomicLong();
+        volatile TransactionFileLoader loader;
+        volatile InputStream stream;
+        volatile long opens;
+        // Whether the current stream tails a file, and that file's key; used by the reader thread only
+        boolean tailing;
+        private Object fileKey;
+        private volatile long loadedBefore;
+        private volatile long skippedBefore;
+        private TransactionBatch batch;
+
+        Source(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * Opens the next stream to read: the file to tail, or the pipe, which waits for a writer
+         *
+         * @param position Where to resume the file the previous stream read, or 0 to read from the start
+         */
+        InputStream open(long position) throws IOException {
+            InputStream in;
+            tailing = !Files.exists(path) || Files.isRegularFile(path);
+            if (!tailing) {
+                in = Files.newInputStream(path);
+            } else if (position > 0) {
+                in = new TailingInputStream(path, pollMillis, position, fileKey);
+            } else {
+                TailingInputStream tail = new TailingInputStream(path, pollMillis);
+                fileKey = tail.getFileKey();
+                in = tail;
+            }
+            opens++;
+            stream = new FilterInputStream(in) {
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int read = super.read(buffer, offset, length);
+                    if (read > 0) {
+                        bytesRead.addAndGet(read);
+                    }
+                    return read;
+                }
+            };
+            return stream;
+        }
+
+        /**
+         * Hands over the rest of a stream's events and keeps its counts
+         */
+        void finish(TransactionFileLoader finished) {
+            flush(0);
+            loader = null;
+            loadedBefore += finished.getLoaded();
+            skippedBefore += finished.getSkipped();
+            stream = null;
+        }
+
+        long loaded() {
+            TransactionFileLoader current = loader;
+            return loadedBefore + (current != null ? current.getLoaded() : 0);
+        }
+
+        long skipped() {
+            TransactionFileLoader current = loader;
+            return skippedBefore + (current != null ? current.getSkipped() : 0);
+        }
+
+        @Override
+        public void append(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason) {
+            append(timestamp, merchantId, type, approved, reason, Float.NaN, 0, 0);
+        }
+
+        @Override
+        public void append(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason,
+                           float amount, long card, int bin) {
+            TransactionBatch full = null;
+            synchronized (this) {
+                if (batch == null) {
+                    batch = new TransactionBatch(batchSize);
+                }
+                batch.add(timestamp, merchantId, type, approved, reason, amount, card, bin);
+                if (batch.isFull()) {
+                    full = batch;
+                    batch = null;
+                }
+            }
+            if (full != null) {
+                dispatch(full);
+            }
+        }
+
+        /**
+         * Hands over the batch being filled if its first event is at least the given age
+         */
+        void flush(long maxAgeNanos) {
+            TransactionBatch stale = null;
+            synchronized (this) {
+                if (batch != null && System.nanoTime() - batch.getFirstAddedNanos() >= maxAgeNanos) {
+                    stale = batch;
+                    batch = null;
+                }
+            }
+            if (stale != null) {
+                dispatch(stale);
+            }
+        }
+
+        void close() {
+            InputStream current = stream;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException e) {
+                    log.debug("Failed to close {}", path, e);
+                }
+            }
+        }
+    }
+}
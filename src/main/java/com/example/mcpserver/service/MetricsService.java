@@ -0,0 +1,27 @@
+package com.example.mcpserver.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+@Service
+@RequiredArgsConstructor
+public class MetricsService {
+
+    // Resolved on each call so metrics sources may themselves depend on metrics consumers
+    private final ObjectProvider<MetricsSource> metricsSources;
+
+    /**
+     * Collects a snapshot of the metrics published by every {@link MetricsSource}
+     * 
+     * @return Map of source name to its metrics
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new TreeMap<>();
+        metricsSources.orderedStream().forEach(source -> metrics.put(source.getMetricsName(), source.getMetrics()));
+        return metrics;
+    }
+}
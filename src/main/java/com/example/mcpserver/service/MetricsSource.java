@@ -0,0 +1,19 @@
+package com.example.mcpserver.service;
+
+import java.util.Map;
+
+/**
+ * A component that publishes runtime metrics through {@link MetricsService}
+ */
+public interface MetricsSource {
+
+    /**
+     * @return The name the metrics are grouped under
+     */
+    String getMetricsName();
+
+    /**
+     * @return A snapshot of the current metric values
+     */
+    Map<String, Object> getMetrics();
+}
@@ -0,0 +1,495 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.analytics.AuthorizationMetrics;
+import com.example.mcpserver.analytics.DeclineReason;
+import com.example.mcpserver.analytics.Timeframe;
+import com.example.mcpserver.analytics.TransactionBatch;
+import com.example.mcpserver.analytics.TransactionSink;
+import com.example.mcpserver.analytics.TransactionType;
+import com.example.mcpserver.exception.McpException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Pushes a merchant's authorization metrics to connected clients as live transactions change them.
+ *
+ * A client subscribes to a merchant, timeframe and transaction type over its JSON-RPC connection and
+ * is sent an update when the authorization rate or a decline reason's share of declines has moved by
+ * at least the subscription's threshold, in percentage points, since the last update it was sent, but
+ * no more often than once every {@code minIntervalSeconds}. Smaller moves add up until they cross the
+ * threshold.
+ *
+ * Ingested transactions only mark their merchant as changed when someone subscribes to it, and a
+ * timer re-evaluates the changed merchants every {@code jsonrpc.subscriptions.tick-millis}, computing
+ * each merchant, timeframe and type once from the daily aggregates however many subscriptions share
+ * it. The updates due to one client are coalesced into a single notification per tick; a subscription
+ * still held back by its interval keeps only its latest metrics.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MetricsSubscriptionService implements MetricsSource {
+
+    static final int MAX_INTERVAL_SECONDS = 3600;
+
+    private final TransactionDataService transactionDataService;
+
+    @Value("${jsonrpc.subscriptions.tick-millis:1000}")
+    private long tickMillis;
+
+    @Value("${jsonrpc.subscriptions.max-per-connection:100}")
+    private int maxPerConnection;
+
+    @Value("${jsonrpc.subscriptions.default-threshold:0.5}")
+    private double defaultThreshold;
+
+    @Value("${jsonrpc.subscriptions.default-interval-seconds:5}")
+    private int defaultIntervalSeconds;
+
+    // Subscriptions per merchant, so ingestion can tell whether anyone is watching an event's merchant
+    private final Map<String, Set<Subscription>> byMerchant = new ConcurrentHashMap<>();
+    private final Set<String> changedMerchants = ConcurrentHashMap.newKeySet();
+    // Clients with updates held back by their interval, flushed on every tick
+    private final Set<Subscriber> pendingSubscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong nextId = new AtomicLong();
+    private ScheduledExecutorService timer;
+    // Only touched by the timer thread
+    private long evaluatedDay = Long.MIN_VALUE;
+
+    private final LongAdder subscriptions = new LongAdder();
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder notifications = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder coalescedUpdates = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        transactionDataService.addLiveSink(new ChangeTracker());
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-subscriptions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Subscribes a client to a merchant's metrics
+     *
+     * @param subscriber The client's connection
+     * @param merchantId The merchant ID
+     * @param timeframe The analysis window, or null for last_30_days
+     * @param transactionType The transaction type, "all" or null for all types
+     * @param threshold The change in percentage points that triggers an update, or null for the default
+     * @param minIntervalSeconds The minimum time between updates, or null for the default
+     * @return Map containing the subscription ID and the merchant's current metrics
+     */
+    public Map<String, Object> subscribe(Subscriber subscriber, String merchantId, String timeframe,
+                                         String transactionType, Double threshold, Integer minIntervalSeconds) {
+        if (merchantId == null || merchantId.isEmpty()) {
+            throw McpException.badRequest("Invalid params for subscribe: merchantId is required");
+        }
+        Timeframe window = Timeframe.fromKey(timeframe != null ? timeframe : Timeframe.LAST_30_DAYS.key());
+        if (window == null) {
+            throw McpException.badRequest("Invalid params for subscribe: unknown timeframe " + timeframe);
+        }
+        TransactionType type = transactionType == null || "all".equals(transactionType)
+                ? null : TransactionType.fromKey(transactionType);
+        if (transactionType != null && !"all".equals(transactionType) && type == null) {
+            throw McpException.badRequest("Invalid params for subscribe: unknown transactionType " + transactionType);
+        }
+        double change = threshold != null ? threshold : defaultThreshold;
+        int interval = minIntervalSeconds != null ? minIntervalSeconds : defaultIntervalSeconds;
+        if (!(change > 0 && change <= 100) || interval < 0 || interval > MAX_INTERVAL_SECONDS) {
+            throw McpException.badRequest("Invalid params for subscribe: threshold must be above 0 and at most 100, "
+                    + "and minIntervalSeconds between 0 and " + MAX_INTERVAL_SECONDS);
+        }
+
+        Subscription subscription = new Subscription("sub-" + nextId.incrementAndGet(), subscriber, merchantId,
+                window, type, change, TimeUnit.SECONDS.toNanos(interval));
+        // The client gets the metrics as of subscribing; updates are measured against them
+        Snapshot current = new Snapshot(transactionDataService.metrics(merchantId, window, type));
+        subscription.sent = current;
+        subscription.latest = current;
+        subscription.sentNanos = System.nanoTime();
+        subscriber.add(subscription, maxPerConnection);
+        byMerchant.compute(merchantId, (id, watching) -> {
+            Set<Subscription> set = watching != null ? watching : ConcurrentHashMap.<Subscription>newKeySet();
+            set.add(subscription);
+            return set;
+        });
+        if (!subscription.active) {
+            // The connection closed while subscribing
+            deregister(subscription);
+        }
+        // Transactions ingested since the metrics were computed weren't tracked yet
+        changedMerchants.add(merchantId);
+        subscriptions.increment();
+        log.debug("Connection {} subscribed to {} as {}", subscriber.name, merchantId, subscription.id);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("subscriptionId", subscription.id);
+        result.put("merchantId", merchantId);
+        result.put("timeframe", window.key());
+        result.put("transactionType", type != null ? type.key() : "all");
+        result.put("threshold", change);
+        result.put("minIntervalSeconds", interval);
+        result.put("metrics", current.toMap());
+        return result;
+    }
+
+    /**
+     * Ends one of a client's subscriptions
+     *
+     * @param subscriber The client's connection
+     * @param subscriptionId The subscription ID returned by {@link #subscribe}
+     * @return Map telling whether the subscription existed
+     */
+    public Map<String, Object> unsubscribe(Subscriber subscriber, String subscriptionId) {
+        if (subscriptionId == null || subscriptionId.isEmpty()) {
+            throw McpException.badRequest("Invalid params for unsubscribe: subscriptionId is required");
+        }
+        Subscription subscription = subscriber.remove(subscriptionId);
+        if (subscription != null) {
+            deregister(subscription);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("subscriptionId", subscriptionId);
+        result.put("unsubscribed", subscription != null);
+        return result;
+    }
+
+    /**
+     * Ends all of a client's subscriptions, when its connection closes
+     *
+     * @param subscriber The client's connection
+     */
+    public void close(Subscriber subscriber) {
+        for (Subscription subscription : subscriber.close()) {
+            deregister(subscription);
+        }
+        pendingSubscribers.remove(subscriber);
+    }
+
+    private void deregister(Subscription subscription) {
+        subscription.active = false;
+        byMerchant.computeIfPresent(subscription.merchantId, (id, subscriptions) -> {
+            subscriptions.remove(subscription);
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
+    }
+
+    /**
+     * Re-evaluates the subscriptions of the merchants changed since the last tick and sends the updates due
+     */
+    void tick() {
+        try {
+            // Windows end with the latest day, so a new day moves every subscribed merchant's window
+            long day = transactionDataService.getAggregates().getLatestDay();
+            boolean newDay = day != evaluatedDay;
+            evaluatedDay = day;
+            Iterator<String> changed = (newDay ? byMerchant.keySet() : changedMerchants).iterator();
+            Map<String, Snapshot> computed = new HashMap<>();
+            while (changed.hasNext()) {
+                String merchantId = changed.next();
+                if (!newDay) {
+                    changed.remove();
+                }
+                Set<Subscription> watching = byMerchant.get(merchantId);
+                if (watching != null) {
+                    for (Subscription subscription : watching) {
+                        evaluate(subscription, computed);
+                    }
+                }
+            }
+            if (newDay) {
+                changedMerchants.clear();
+            }
+            long now = System.nanoTime();
+            for (Subscriber subscriber : pendingSubscribers) {
+                List<Map<String, Object>> due = subscriber.due(now);
+                if (!due.isEmpty()) {
+                    Map<String, Object> params = new LinkedHashMap<>();
+                    params.put("updates", due);
+                    subscriber.notifier.accept(params);
+                    notifications.increment();
+                }
+                if (!subscriber.hasPending()) {
+                    pendingSubscribers.remove(subscriber);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Keep the timer running; the next tick tries again
+            log.error("Failed to evaluate metrics subscriptions", e);
+        }
+    }
+
+    private void evaluate(Subscription subscription, Map<String, Snapshot> computed) {
+        String key = subscription.merchantId + '\u0000' + subscription.timeframe.key() + '\u0000'
+                + (subscription.type != null ? subscription.type.key() : "all");
+        Snapshot latest = computed.get(key);
+        if (latest == null) {
+            latest = new Snapshot(transactionDataService.metrics(subscription.merchantId, subscription.timeframe,
+                    subscription.type));
+            computed.put(key, latest);
+            evaluations.increment();
+        }
+        subscription.latest = latest;
+        if (latest.differsFrom(subscription.sent, subscription.threshold)) {
+            if (subscription.subscriber.markPending(subscription)) {
+                pendingSubscribers.add(subscription.subscriber);
+            } else {
+                coalescedUpdates.increment();
+            }
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "subscriptions";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        int active = 0;
+        for (Set<Subscription> watching : byMerchant.values()) {
+            active += watching.size();
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("activeSubscriptions", active);
+        metrics.put("subscribedMerchants", byMerchant.size());
+        metrics.put("subscriptions", subscriptions.sum());
+        metrics.put("evaluations", evaluations.sum());
+        metrics.put("notifications", notifications.sum());
+        metrics.put("updates", updates.sum());
+        metrics.put("coalescedUpdates", coalescedUpdates.sum());
+        return metrics;
+    }
+
+    /**
+     * Marks the merchants of ingested transactions that someone subscribes to as changed
+     */
+    private final class ChangeTracker implements TransactionSink {
+
+        @Override
+        public void append(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason) {
+            if (byMerchant.containsKey(merchantId)) {
+                changedMerchants.add(merchantId);
+            }
+        }
+
+        @Override
+        public void append(TransactionBatch batch) {
+            if (byMerchant.isEmpty()) {
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                String merchantId = batch.merchantId(i);
+                if (byMerchant.containsKey(merchantId)) {
+                    changedMerchants.add(merchantId);
+                }
+            }
+        }
+    }
+
+    /**
+     * A client connection holding subscriptions, which receives the params of each update notification
+     */
+    public static final class Subscriber {
+
+        private final String name;
+        private final Consumer<Map<String, Object>> notifier;
+        // Guarded by this
+        private final Map<String, Subscription> subscriptions = new HashMap<>();
+        private final Set<Subscription> pending = new LinkedHashSet<>();
+        private boolean closed;
+
+        /**
+         * @param name The connection name, for logging
+         * @param notifier Sends the params of an update notification to the client
+         */
+        public Subscriber(String name, Consumer<Map<String, Object>> notifier) {
+            this.name = name;
+            this.notifier = notifier;
+        }
+
+        synchronized void add(Subscription subscription, int maxSubscriptions) {
+            if (closed) {
+                throw McpException.badRequest("Connection " + name + " is closing");
+            }
+            if (subscriptions.size() >= maxSubscriptions) {
+                throw McpException.badRequest("Invalid params for subscribe: a connection may hold at most "
+                        + maxSubscriptions + " subscriptions");
+            }
+            subscriptions.put(subscription.id, subscription);
+        }
+
+        synchronized Subscription remove(String subscriptionId) {
+            Subscription subscription = subscriptions.remove(subscriptionId);
+            if (subscription != null) {
+                pending.remove(subscription);
+            }
+            return subscription;
+        }
+
+        synchronized List<Subscription> close() {
+            closed = true;
+            List<Subscription> removed = new ArrayList<>(subscriptions.values());
+            subscriptions.clear();
+            pending.clear();
+            return removed;
+        }
+
+        /**
+         * @return true if the subscription wasn't already waiting to be sent
+         */
+        synchronized boolean markPending(Subscription subscription) {
+            return subscription.active && pending.add(subscription);
+        }
+
+        /**
+         * Takes the pending updates whose interval has passed
+         *
+         * @param now The current {@link System#nanoTime()}
+         * @return The updates to send in one notification
+         */
+        synchronized List<Map<String, Object>> due(long now) {
+            List<Map<String, Object>> due = new ArrayList<>();
+            for (Iterator<Subscription> it = pending.iterator(); it.hasNext(); ) {
+                Subscription subscription = it.next();
+                if (now - subscription.sentNanos < subscription.minIntervalNanos) {
+                    continue;
+                }
+                it.remove();
+                Snapshot latest = subscription.latest;
+                // The metrics may have moved back within the threshold while held back
+                if (latest.differsFrom(subscription.sent, subscription.threshold)) {
+                    due.add(subscription.update(latest));
+                    subscription.sent = latest;
+                    subscription.sentNanos = now;
+                }
+            }
+            return due;
+        }
+
+        synchronized boolean hasPending() {
+            return !pending.isEmpty();
+        }
+    }
+
+    /**
+     * One merchant, timeframe and transaction type a client watches, with the metrics it was last sent
+     */
+    private final class Subscription {
+
+        final String id;
+        final Subscriber subscriber;
+        final String merchantId;
+        final Timeframe timeframe;
+        final TransactionType type;
+        final double threshold;
+        final long minIntervalNanos;
+        volatile boolean active = true;
+        // Updated by the timer thread, and set before the subscription is registered
+        volatile Snapshot sent;
+        volatile Snapshot latest;
+        volatile long sentNanos;
+
+        Subscription(String id, Subscriber subscriber, String merchantId, Timeframe timeframe, TransactionType type,
+                     double threshold, long minIntervalNanos) {
+            this.id = id;
+            this.subscriber = subscriber;
+            this.merchantId = merchantId;
+            this.timeframe = timeframe;
+            this.type = type;
+            this.threshold = threshold;
+            this.minIntervalNanos = minIntervalNanos;
+        }
+
+        Map<String, Object> update(Snapshot latest) {
+            updates.increment();
+            Map<String, Object> update = new LinkedHashMap<>();
+            update.put("subscriptionId", id);
+            update.put("merchantId", merchantId);
+            update.put("timeframe", timeframe.key());
+            update.put("transactionType", type != null ? type.key() : "all");
+            update.put("metrics", latest.toMap());
+            update.put("authorizationRateChange", round(latest.authorizationRate - sent.authorizationRate));
+            update.put("newTransactions", latest.total - sent.total);
+            return update;
+        }
+    }
+
+    /**
+     * A merchant's metrics at one point, as unrounded percentages
+     */
+    private static final class Snapshot {
+
+        final long total;
+        final double authorizationRate;
+        final double[] reasonShares = new double[DeclineReason.count()];
+
+        Snapshot(AuthorizationMetrics metrics) {
+            total = metrics.getTotal();
+            authorizationRate = total == 0 ? 0 : metrics.getApproved() * 100.0 / total;
+            long declined = metrics.getDeclined();
+            for (DeclineReason reason : DeclineReason.values()) {
+                reasonShares[reason.code()] = declined == 0 ? 0 : metrics.getDeclines(reason) * 100.0 / declined;
+            }
+        }
+
+        boolean differsFrom(Snapshot other, double threshold) {
+            if (Math.abs(authorizationRate - other.authorizationRate) >= threshold) {
+                return true;
+            }
+            for (int r = 0; r < reasonShares.length; r++) {
+                if (Math.abs(reasonShares[r] - other.reasonShares[r]) >= threshold) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("totalTransactions", total);
+            map.put("authorizationRate", round(authorizationRate));
+            map.put("declineRate", total == 0 ? 0.0 : round(100 - authorizationRate));
+            Map<String, Object> shares = new LinkedHashMap<>();
+            for (DeclineReason reason : DeclineReason.values()) {
+                shares.put(reason.key(), round(reasonShares[reason.code()]));
+            }
+            map.put("declineReasons", shares);
+            return map;
+        }
+    }
+
+    private static double round(double percentage) {
+        return Math.round(percentage * 10) / 10.0;
+    }
+}
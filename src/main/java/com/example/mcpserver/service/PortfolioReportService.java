@@ -0,0 +1,162 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.analytics.AuthorizationMetrics;
+import com.example.mcpserver.analytics.DailyAggregates;
+import com.example.mcpserver.analytics.PortfolioScan;
+import com.example.mcpserver.analytics.Timeframe;
+import com.example.mcpserver.analytics.TransactionType;
+import com.example.mcpserver.exception.McpException;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Authorization report across many merchants, computed in parallel by {@link PortfolioScan} on a
+ * dedicated fork/join pool so that a nightly portfolio run doesn't compete with the common pool.
+ * Recoverable declines are estimated with the same rules as {@link RecommendationService}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PortfolioReportService implements MetricsSource {
+
+    static final int MAX_LIMIT = 10000;
+
+    private final TransactionDataService transactionDataService;
+    private final RecommendationService recommendationService;
+
+    @Value("${analytics.report.parallelism:0}")
+    private int parallelism;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    public void init() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("portfolio-report-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        log.info("Portfolio reports run on {} threads", threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Generates a portfolio report
+     *
+     * @param merchantIds Merchant IDs to report on, or null for every merchant
+     * @param timeframeKey The timeframe for analysis
+     * @param transactionType A transaction type, or "all"
+     * @param sortBy authorization_rate to list the lowest authorization rates first, or recovery to
+     *               list the largest estimated recoveries first
+     * @param limit The maximum number of merchants to list
+     * @return Map containing the portfolio totals and the ranked merchants
+     */
+    public Map<String, Object> report(JsonNode merchantIds, String timeframeKey, String transactionType, String sortBy, long limit) {
+        Timeframe timeframe = Timeframe.fromKey(timeframeKey);
+        if (timeframe == null) {
+            throw McpException.badRequest("Invalid arguments for generatePortfolioReport: unknown timeframe " + timeframeKey);
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw McpException.badRequest("Invalid arguments for generatePortfolioReport: limit must be between 1 and " + MAX_LIMIT);
+        }
+        List<String> merchants = merchants(merchantIds);
+        log.info("Generating portfolio report for {} merchants over {} (type: {})", merchants.size(), timeframeKey, transactionType);
+        RequestContext context = RequestContext.current();
+        context.checkpoint();
+
+        TransactionType type = TransactionType.fromKey(transactionType);
+        long started = System.nanoTime();
+        PortfolioScan.Result scan = PortfolioScan.run(pool, transactionDataService.getAggregates(),
+                recommendationService.getRules(), merchants, timeframe.days(), type != null ? type.code() : DailyAggregates.ANY_TYPE, context::checkpoint);
+        context.checkpoint();
+
+        List<PortfolioScan.MerchantMetrics> ranked = new ArrayList<>(scan.getMerchants());
+        Comparator<PortfolioScan.MerchantMetrics> order = "recovery".equals(sortBy)
+                ? Comparator.comparingDouble(PortfolioScan.MerchantMetrics::getRecoverable).reversed()
+                : Comparator.comparingDouble(merchant -> merchant.getMetrics().getAuthorizationRate());
+        ranked.sort(order.thenComparing(PortfolioScan.MerchantMetrics::getMerchantId));
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (PortfolioScan.MerchantMetrics merchant : ranked.subList(0, (int) Math.min(limit, ranked.size()))) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("merchantId", merchant.getMerchantId());
+            row.putAll(summary(merchant.getMetrics(), merchant.getRecoverable()));
+            rows.add(row);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("timeframe", timeframeKey);
+        result.put("transactionType", transactionType);
+        result.put("sortBy", sortBy);
+        result.put("merchantsRequested", merchants.size());
+        result.put("merchantsWithTransactions", ranked.size());
+        result.put("portfolio", summary(scan.getTotal(), scan.getRecoverable()));
+        result.put("merchants", rows);
+        result.put("elapsedMillis", (System.nanoTime() - started) / 1_000_000);
+        return result;
+    }
+
+    private List<String> merchants(JsonNode merchantIds) {
+        if (merchantIds == null) {
+            return transactionDataService.getAggregates().merchantIds();
+        }
+        Set<String> merchants = new LinkedHashSet<>();
+        for (int i = 0; i < merchantIds.size(); i++) {
+            JsonNode merchantId = merchantIds.get(i);
+            if (!merchantId.isTextual()) {
+                throw McpException.badRequest("Invalid arguments for generatePortfolioReport: merchantIds[" + i + "] must be a string");
+            }
+            merchants.add(merchantId.textValue());
+        }
+        return new ArrayList<>(merchants);
+    }
+
+    private static Map<String, Object> summary(AuthorizationMetrics metrics, double recoverableDeclines) {
+        long recoverable = Math.round(recoverableDeclines);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("totalTransactions", metrics.getTotal());
+        summary.put("authorizationRate", metrics.getAuthorizationRate());
+        summary.put("declineRate", metrics.getDeclineRate());
+        summary.put("declineReasons", metrics.getDeclineReasonShares());
+        summary.put("estimatedRecoverableTransactions", recoverable);
+        summary.put("estimatedImpactPercentage",
+                metrics.getTotal() == 0 ? 0.0 : Math.round(recoverable * 1000.0 / metrics.getTotal()) / 10.0);
+        return summary;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "portfolioReports";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("parallelism", pool.getParallelism());
+        metrics.put("activeThreads", pool.getActiveThreadCount());
+        metrics.put("queuedTasks", pool.getQueuedTaskCount());
+        metrics.put("steals", pool.getStealCount());
+        return metrics;
+    }
+}
@@ -0,0 +1,444 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.model.McpRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Works out what a completions request asks for: its intent, the merchant ID it names, and the
+ * operation and operands of a calculation.
+ *
+ * Each text of the request is tokenized once into {@link QueryTokens}, recognizing the keywords of
+ * every rule in the same pass, and everything else is read off the tokens. The intent is that of the
+ * first {@link Rule} matching the query or a user message, in the order the rules were given, so a
+ * new intent is a new rule rather than another scan of the text. The merchant ID is looked for in the
+ * query, then in every message, then in the request context; the calculation is read from the query,
+ * or from the first user message when there is no query.
+ *
+ * Analyzers are immutable and can be shared between threads.
+ */
+public final class QueryAnalyzer {
+
+    public static final String AUTHORIZATION_RATE = "authorization_rate";
+    public static final String MATH = "math";
+    public static final String GREETING = "greeting";
+    public static final String HELP = "help";
+
+    static final String NO_QUERY = "No query provided";
+
+    // Checked in this order, as a query may name more than one
+    private static final List<String> OPERATIONS = Arrays.asList("add", "subtract", "multiply", "divide");
+    private static final Set<String> MERCHANT = words("merchant", "merch");
+    private static final int MIN_MERCHANT_ID_LENGTH = 5;
+
+    private final List<Rule> rules;
+    private final QueryTokens.Dictionary dictionary;
+
+    /**
+     * @param rules The rules, the one whose intent wins when several match first
+     */
+    public QueryAnalyzer(List<Rule> rules) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        Set<String> keywords = new HashSet<>(OPERATIONS);
+        keywords.addAll(MERCHANT);
+        keywords.add("id");
+        keywords.add("is");
+        for (Rule rule : rules) {
+            keywords.addAll(rule.keywords());
+        }
+        this.dictionary = new QueryTokens.Dictionary(keywords);
+    }
+
+    /**
+     * @return An analyzer for authorization rate, math, greeting and help queries, in that order
+     */
+    public static QueryAnalyzer standard() {
+        return new QueryAnalyzer(Arrays.asList(
+                new AuthorizationRateRule(),
+                new MathRule(),
+                new KeywordRule(GREETING, "hello", "hi"),
+                new KeywordRule(HELP, "help")));
+    }
+
+    public QueryTokens tokenize(String text) {
+        return new QueryTokens(text, dictionary);
+    }
+
+    /**
+     * Analyzes a completions request
+     *
+     * @param request The request
+     * @return The analysis
+     */
+    public Analysis analyze(McpRequest request) {
+        QueryTokens query = request.getQuery() != null ? tokenize(request.getQuery()) : null;
+        List<QueryTokens> userMessages = new ArrayList<>();
+        List<QueryTokens> messages = new ArrayList<>();
+        if (request.getMessages() != null) {
+            for (McpRequest.Message message : request.getMessages()) {
+                if (message.getContent() == null) {
+                    continue;
+                }
+                QueryTokens tokens = tokenize(message.getContent());
+                messages.add(tokens);
+                if ("user".equals(message.getRole())) {
+                    userMessages.add(tokens);
+                }
+            }
+        }
+
+        QueryTokens primary = query != null && !query.getText().isEmpty() ? query
+                : !userMessages.isEmpty() ? userMessages.get(0) : null;
+        Analysis analysis = new Analysis(primary != null ? primary.getText() : NO_QUERY);
+        analysis.intent = intent(query, userMessages);
+        analysis.merchantId = merchantId(query, messages);
+        if (analysis.merchantId == null && request.getContext() != null && request.getContext().get("merchantId") != null) {
+            analysis.merchantId = request.getContext().get("merchantId").toString();
+        }
+        if (primary != null) {
+            calculation(primary, analysis);
+        }
+        return analysis;
+    }
+
+    private String intent(QueryTokens query, List<QueryTokens> userMessages) {
+        for (Rule rule : rules) {
+            if (query != null && rule.matches(query)) {
+                return rule.intent();
+            }
+            for (QueryTokens message : userMessages) {
+                if (rule.matches(message)) {
+                    return rule.intent();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String merchantId(QueryTokens query, List<QueryTokens> messages) {
+        String merchantId = query != null ? merchantId(query) : null;
+        for (int i = 0; merchantId == null && i < messages.size(); i++) {
+            merchantId = merchantId(messages.get(i));
+        }
+        return merchantId;
+    }
+
+    /**
+     * Finds an ID following "merchant", as in "merchant ABC123", "merchant id: ABC123" or "merchant ID is ABC123"
+     */
+    private static String merchantId(QueryTokens tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            if (!MERCHANT.contains(tokens.keyword(i))) {
+                continue;
+            }
+            int j = i + 1;
+            if (j < tokens.size() && "id".equals(tokens.keyword(j))) {
+                j++;
+            }
+            if (j < tokens.size() && ("is".equals(tokens.keyword(j)) || tokens.symbol(j) == ':')) {
+                j++;
+            }
+            if (j < tokens.size() && isMerchantId(tokens, j)) {
+                return tokens.text(j);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isMerchantId(QueryTokens tokens, int index) {
+        if (tokens.kind(index) == QueryTokens.SYMBOL || tokens.end(index) - tokens.start(index) < MIN_MERCHANT_ID_LENGTH) {
+            return false;
+        }
+        String text = tokens.getText();
+        for (int i = tokens.start(index); i < tokens.end(index); i++) {
+            char c = text.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the operation and operands of a calculation: an expression such as "5 + 3" gives both,
+     * otherwise the operation is the first of add, subtract, multiply and divide named and the
+     * operands the first two numbers
+     */
+    private static void calculation(QueryTokens tokens, Analysis analysis) {
+        for (String operation : OPERATIONS) {
+            if (tokens.has(operation)) {
+                analysis.operation = operation;
+                break;
+            }
+        }
+        int expression = expression(tokens);
+        if (expression >= 0) {
+            analysis.operation = operation(tokens.symbol(expression + 1));
+            analysis.a = tokens.number(expression);
+            analysis.b = tokens.number(expression + 2);
+            return;
+        }
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.kind(i) != QueryTokens.NUMBER) {
+                continue;
+            }
+            if (analysis.a == null) {
+                analysis.a = tokens.number(i);
+            } else {
+                analysis.b = tokens.number(i);
+                return;
+            }
+        }
+        // A single number is no calculation
+        analysis.a = null;
+    }
+
+    /**
+     * @return The index of the first number of the first "number operator number" sequence, or -1
+     */
+    static int expression(QueryTokens tokens) {
+        for (int i = 0; i + 2 < tokens.size(); i++) {
+            if (tokens.kind(i) == QueryTokens.NUMBER && operation(tokens.symbol(i + 1)) != null
+                    && tokens.kind(i + 2) == QueryTokens.NUMBER) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String operation(char symbol) {
+        switch (symbol) {
+            case '+':
+                return "add";
+            case '-':
+                return "subtract";
+            case '*':
+            case '×':
+                return "multiply";
+            case '/':
+            case '÷':
+                return "divide";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Recognizes one intent from a text's tokens
+     */
+    public interface Rule {
+
+        /**
+         * @return The intent the rule recognizes
+         */
+        String intent();
+
+        /**
+         * @return The lowercase words the rule looks for, which tokenizing recognizes as
+         *         {@link QueryTokens#keyword keywords}
+         */
+        Set<String> keywords();
+
+        /**
+         * @param tokens A tokenized text
+         * @return Whether the text has the intent
+         */
+        boolean matches(QueryTokens tokens);
+    }
+
+    /**
+     * Matches a text with any of a set of words
+     */
+    public static final class KeywordRule implements Rule {
+
+        private final String intent;
+        private final Set<String> keywords;
+
+        public KeywordRule(String intent, String... keywords) {
+            this.intent = intent;
+            this.keywords = new LinkedHashSet<>(Arrays.asList(keywords));
+        }
+
+        @Override
+        public String intent() {
+            return intent;
+        }
+
+        @Override
+        public Set<String> keywords() {
+            return keywords;
+        }
+
+        @Override
+        public boolean matches(QueryTokens tokens) {
+            for (String keyword : keywords) {
+                if (tokens.has(keyword)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Matches asking to raise an authorization rate: a verb such as "improve", then "authorization" or
+     * "approval" within a few words, then "rate", "percentage" or "ratio" right after, as in
+     * "how can I improve my authorization rate"
+     */
+    static final class AuthorizationRateRule implements Rule {
+
+        private static final Set<String> VERBS = words("improve", "improving", "increase", "increasing",
+                "boost", "boosting", "enhance", "enhancing");
+        private static final Set<String> SUBJECTS = words("auth", "authorization", "approval");
+        private static final Set<String> MEASURES = words("rate", "percentage", "ratio");
+        private static final Set<String> KEYWORDS = union(VERBS, SUBJECTS, MEASURES);
+        // Characters allowed between the verb and the subject, and between the subject and the measure
+        private static final int SUBJECT_DISTANCE = 21;
+        private static final int MEASURE_DISTANCE = 11;
+
+        @Override
+        public String intent() {
+            return AUTHORIZATION_RATE;
+        }
+
+        @Override
+        public Set<String> keywords() {
+            return KEYWORDS;
+        }
+
+        @Override
+        public boolean matches(QueryTokens tokens) {
+            int size = tokens.size();
+            for (int verb = 0; verb < size; verb++) {
+                if (!VERBS.contains(tokens.keyword(verb))) {
+                    continue;
+                }
+                for (int subject = verb + 1; subject < size && within(tokens, verb, subject, SUBJECT_DISTANCE); subject++) {
+                    if (!SUBJECTS.contains(tokens.keyword(subject))) {
+                        continue;
+                    }
+                    for (int measure = subject + 1; measure < size && within(tokens, subject, measure, MEASURE_DISTANCE); measure++) {
+                        if (MEASURES.contains(tokens.keyword(measure))) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static boolean within(QueryTokens tokens, int from, int to, int distance) {
+            return tokens.start(to) - tokens.end(from) <= distance;
+        }
+    }
+
+    /**
+     * Matches naming a calculation, as in "calculate" or "multiply", or writing one out, as in "5 + 3"
+     */
+    static final class MathRule implements Rule {
+
+        private static final Set<String> KEYWORDS = union(words("calculate", "calculator", "math"),
+                new HashSet<>(OPERATIONS));
+
+        @Override
+        public String intent() {
+            return MATH;
+        }
+
+        @Override
+        public Set<String> keywords() {
+            return KEYWORDS;
+        }
+
+        @Override
+        public boolean matches(QueryTokens tokens) {
+            for (String keyword : KEYWORDS) {
+                if (tokens.has(keyword)) {
+                    return true;
+                }
+            }
+            return expression(tokens) >= 0;
+        }
+    }
+
+    /**
+     * @return A set that, unlike {@link Set#of}, answers false for the null keyword of other tokens
+     */
+    private static Set<String> words(String... words) {
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(words)));
+    }
+
+    @SafeVarargs
+    private static Set<String> union(Set<String>... sets) {
+        Set<String> union = new HashSet<>();
+        for (Set<String> set : sets) {
+            union.addAll(set);
+        }
+        return Collections.unmodifiableSet(union);
+    }
+
+    /**
+     * What a request asks for
+     */
+    public static final class Analysis {
+
+        private final String query;
+        private String intent;
+        private String merchantId;
+        private String operation;
+        private Double a;
+        private Double b;
+
+        Analysis(String query) {
+            this.query = query;
+        }
+
+        /**
+         * @return The text the request is mainly about: the query, or else the first user message
+         */
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * @return The intent of the first rule that matched, or null if none did
+         */
+        public String getIntent() {
+            return intent;
+        }
+
+        /**
+         * @return The merchant ID named by the request or its context, or null
+         */
+        public String getMerchantId() {
+            return merchantId;
+        }
+
+        /**
+         * @return The calculation's operation, from add, subtract, multiply and divide, or null
+         */
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * @return The first operand, or null unless the query has at least two numbers
+         */
+        public Double getA() {
+            return a;
+        }
+
+        /**
+         * @return The second operand, or null unless the query has at least two numbers
+         */
+        public Double getB() {
+            return b;
+        }
+    }
+}
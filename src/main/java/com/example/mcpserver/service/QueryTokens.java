@@ -0,0 +1,280 @@
+package com.example.mcpserver.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A query split into words, numbers and symbols in one pass over its characters, with every word
+ * looked up in a {@link Dictionary} of keywords as it is read.
+ *
+ * Words are runs of letters, digits and underscores starting with a letter, or with a digit when
+ * letters follow (such as a merchant ID like {@code 12AB34}). Numbers are ASCII digits with an optional
+ * fraction. Every other character that isn't whitespace is a symbol token of its own, so operators and
+ * punctuation keep their place between the tokens around them.
+ */
+public final class QueryTokens {
+
+    public static final byte WORD = 0;
+    public static final byte NUMBER = 1;
+    public static final byte SYMBOL = 2;
+
+    private final String text;
+    private final Dictionary dictionary;
+    private byte[] kinds;
+    private int[] starts;
+    private int[] ends;
+    private double[] numbers;
+    private String[] keywords;
+    private int size;
+    // Keyword ids seen anywhere in the text
+    private final long[] seen;
+
+    /**
+     * Tokenizes a text
+     *
+     * @param text The text
+     * @param dictionary The keywords to recognize
+     */
+    public QueryTokens(String text, Dictionary dictionary) {
+        this.text = text;
+        this.dictionary = dictionary;
+        int capacity = Math.max(4, Math.min(text.length(), 32));
+        this.kinds = new byte[capacity];
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.numbers = new double[capacity];
+        this.keywords = new String[capacity];
+        this.seen = new long[(dictionary.size() + 63) / 64];
+        tokenize();
+    }
+
+    private void tokenize() {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            if (isDigit(c)) {
+                i = skipDigits(i);
+                if (i + 1 < length && text.charAt(i) == '.' && isDigit(text.charAt(i + 1))) {
+                    i = skipDigits(i + 1);
+                }
+                if (i < length && isWordChar(text.charAt(i))) {
+                    // Digits running into letters make an identifier, not a number
+                    i = skipWord(i);
+                    add(WORD, start, i, 0, null);
+                } else {
+                    add(NUMBER, start, i, Double.parseDouble(text.substring(start, i)), null);
+                }
+            } else if (isWordChar(c)) {
+                int state = 0;
+                while (i < length && isWordChar(c = text.charAt(i))) {
+                    state = dictionary.next(state, c);
+                    i++;
+                }
+                int id = dictionary.keywordId(state);
+                if (id >= 0) {
+                    seen[id >> 6] |= 1L << id;
+                }
+                add(WORD, start, i, 0, id >= 0 ? dictionary.keyword(id) : null);
+            } else {
+                i++;
+                add(SYMBOL, start, i, 0, null);
+            }
+        }
+    }
+
+    private void add(byte kind, int start, int end, double number, String keyword) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            keywords = Arrays.copyOf(keywords, capacity);
+        }
+        kinds[size] = kind;
+        starts[size] = start;
+        ends[size] = end;
+        numbers[size] = number;
+        keywords[size] = keyword;
+        size++;
+    }
+
+    private int skipDigits(int i) {
+        while (i < text.length() && isDigit(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private int skipWord(int i) {
+        while (i < text.length() && isWordChar(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte kind(int index) {
+        return kinds[index];
+    }
+
+    /**
+     * @return The offset of the token's first character in the text
+     */
+    public int start(int index) {
+        return starts[index];
+    }
+
+    /**
+     * @return The offset just past the token's last character in the text
+     */
+    public int end(int index) {
+        return ends[index];
+    }
+
+    /**
+     * @return The token's characters
+     */
+    public String text(int index) {
+        return text.substring(starts[index], ends[index]);
+    }
+
+    /**
+     * @return The value of a number token
+     */
+    public double number(int index) {
+        return numbers[index];
+    }
+
+    /**
+     * @return The character of a symbol token, or 0 for any other token
+     */
+    public char symbol(int index) {
+        return kinds[index] == SYMBOL ? text.charAt(starts[index]) : 0;
+    }
+
+    /**
+     * @return The dictionary keyword a word token spells in any case, or null if it isn't one
+     */
+    public String keyword(int index) {
+        return keywords[index];
+    }
+
+    /**
+     * @param keyword A keyword of the dictionary
+     * @return Whether any word of the text is the keyword
+     */
+    public boolean has(String keyword) {
+        int id = dictionary.id(keyword);
+        return id >= 0 && (seen[id >> 6] & 1L << id) != 0;
+    }
+
+    /**
+     * A trie of lowercase ASCII keywords, walked one character at a time as words are read, so every
+     * keyword is recognized in the same pass that finds the word's end. Matching ignores case.
+     */
+    public static final class Dictionary {
+
+        private static final int LETTERS = 26;
+
+        // Next state per state and letter, with -1 for no keyword continuing that way; state 0 is the root
+        private final int[] transitions;
+        // Keyword id ending at each state, or -1
+        private final int[] accepting;
+        private final String[] keywords;
+        private final Map<String, Integer> ids = new HashMap<>();
+
+        /**
+         * @param keywords The keywords, lowercase ASCII letters only
+         * @throws IllegalArgumentException If a keyword is empty or has other characters
+         */
+        public Dictionary(Collection<String> keywords) {
+            this.keywords = new TreeSet<>(keywords).toArray(new String[0]);
+            int maxStates = 1;
+            for (String keyword : this.keywords) {
+                if (!keyword.matches("[a-z]+")) {
+                    throw new IllegalArgumentException("Keywords must be lowercase ASCII letters: '" + keyword + "'");
+                }
+                maxStates += keyword.length();
+            }
+            int[] transitions = new int[maxStates * LETTERS];
+            Arrays.fill(transitions, -1);
+            int[] accepting = new int[maxStates];
+            Arrays.fill(accepting, -1);
+            int states = 1;
+            for (int id = 0; id < this.keywords.length; id++) {
+                String keyword = this.keywords[id];
+                int state = 0;
+                for (int i = 0; i < keyword.length(); i++) {
+                    int slot = state * LETTERS + keyword.charAt(i) - 'a';
+                    if (transitions[slot] < 0) {
+                        transitions[slot] = states++;
+                    }
+                    state = transitions[slot];
+                }
+                accepting[state] = id;
+                ids.put(keyword, id);
+            }
+            this.transitions = Arrays.copyOf(transitions, states * LETTERS);
+            this.accepting = Arrays.copyOf(accepting, states);
+        }
+
+        /**
+         * @param state The current state, or -1 once the word can no longer be a keyword
+         * @param c The next character of the word
+         * @return The state after the character
+         */
+        int next(int state, char c) {
+            if (state < 0) {
+                return -1;
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            } else if (c < 'a' || c > 'z') {
+                return -1;
+            }
+            return transitions[state * LETTERS + c - 'a'];
+        }
+
+        int keywordId(int state) {
+            return state >= 0 ? accepting[state] : -1;
+        }
+
+        String keyword(int id) {
+            return keywords[id];
+        }
+
+        int id(String keyword) {
+            Integer id = ids.get(keyword);
+            return id != null ? id : -1;
+        }
+
+        public int size() {
+            return keywords.length;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.analytics.AuthorizationMetrics;
+import com.example.mcpserver.analytics.DeclineReason;
+import com.example.mcpserver.analytics.RecommendationRules;
+import com.example.mcpserver.analytics.Timeframe;
+import com.example.mcpserver.analytics.TransactionType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recommendations for improving a merchant's authorization rate, ranked by the declines each would
+ * recover according to the {@link RecommendationRules} in {@code analytics.recommendations.rules},
+ * or the built-in rules when that is empty.
+ *
+ * Rankings are cached per merchant, timeframe and transaction type together with the
+ * {@link TransactionDataService#getSnapshotVersion() snapshot version} they were computed from, so
+ * repeated queries are free until new transactions are ingested.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RecommendationService implements MetricsSource {
+
+    private static final String BUILT_IN_RULES = "/recommendation-rules.json";
+
+    private final TransactionDataService transactionDataService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${analytics.recommendations.rules:}")
+    private String rulesPath;
+
+    @Value("${analytics.recommendations.cache-size:10000}")
+    private long cacheSize;
+
+    private RecommendationRules rules;
+    private Cache<String, Ranking> rankings;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        String path = rulesPath.trim();
+        try (InputStream in = path.isEmpty() ? getClass().getResourceAsStream(BUILT_IN_RULES) : Files.newInputStream(Paths.get(path))) {
+            if (in == null) {
+                throw new IOException("Missing " + BUILT_IN_RULES);
+            }
+            rules = RecommendationRules.compile(objectMapper.readTree(in));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid recommendation rules " + (path.isEmpty() ? BUILT_IN_RULES : path)
+                    + ": " + e.getMessage(), e);
+        }
+        rankings = Caffeine.newBuilder().maximumSize(cacheSize).build();
+        log.info("Compiled {} recommendation rules from {}", rules.size(), path.isEmpty() ? "the built-in rules" : path);
+    }
+
+    /**
+     * @return The compiled rules
+     */
+    public RecommendationRules getRules() {
+        return rules;
+    }
+
+    /**
+     * Ranks the recommendations for a merchant's transactions in a timeframe
+     *
+     * @param merchantId The merchant ID
+     * @param timeframe The analysis window
+     * @param type The transaction type, or null for all types
+     * @return The recommendations, the largest estimated recovery first; shared, so must not be modified
+     */
+    public List<Map<String, Object>> recommend(String merchantId, Timeframe timeframe, TransactionType type) {
+        long version = transactionDataService.getSnapshotVersion();
+        String key = merchantId + '\u0000' + timeframe.key() + '\u0000' + (type != null ? type.key() : "all");
+        Ranking cached = rankings.getIfPresent(key);
+        if (cached != null && cached.version == version) {
+            hits.increment();
+            return cached.recommendations;
+        }
+        // Not ranked yet, or ranked before the latest transactions were ingested
+        misses.increment();
+        AuthorizationMetrics[] byType = new AuthorizationMetrics[TransactionType.values().length];
+        for (TransactionType candidate : TransactionType.values()) {
+            byType[candidate.code()] = type == null || type == candidate
+                    ? transactionDataService.metrics(merchantId, timeframe, candidate) : new AuthorizationMetrics();
+        }
+        List<Map<String, Object>> recommendations = toMaps(rules.rank(byType));
+        rankings.put(key, new Ranking(version, recommendations));
+        return recommendations;
+    }
+
+    /**
+     * Ranks the recommendations for the sample figures returned when there is no transaction data
+     *
+     * @param totalTransactions The sample transaction count, all taken as card transactions
+     * @param declineRate The sample decline rate as a percentage
+     * @param declineReasons The sample decline reason shares as percentages, keyed by reason name
+     * @return The recommendations, the largest estimated recovery first
+     */
+    public List<Map<String, Object>> recommendSample(long totalTransactions, double declineRate, Map<String, Object> declineReasons) {
+        AuthorizationMetrics[] byType = new AuthorizationMetrics[TransactionType.values().length];
+        for (int type = 0; type < byType.length; type++) {
+            byType[type] = new AuthorizationMetrics();
+        }
+        AuthorizationMetrics card = byType[TransactionType.CARD.code()];
+        long declined = Math.round(totalTransactions * declineRate / 100);
+        card.add(true, null, totalTransactions - declined);
+        for (Map.Entry<String, Object> share : declineReasons.entrySet()) {
+            card.add(false, DeclineReason.fromKey(share.getKey()),
+                    Math.round(declined * ((Number) share.getValue()).doubleValue() / 100));
+        }
+        return toMaps(rules.rank(byType));
+    }
+
+    private static List<Map<String, Object>> toMaps(List<RecommendationRules.Recommendation> ranked) {
+        List<Map<String, Object>> recommendations = new ArrayList<>();
+        for (RecommendationRules.Recommendation recommendation : ranked) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("id", recommendation.getId());
+            map.put("title", recommendation.getTitle());
+            map.put("description", recommendation.getDescription());
+            map.put("priority", recommendation.getPriority());
+            map.put("estimatedRecoveredTransactions", recommendation.getEstimatedRecoveredTransactions());
+            map.put("estimatedImpactPercentage", recommendation.getEstimatedImpactPercentage());
+            recommendations.add(Collections.unmodifiableMap(map));
+        }
+        return Collections.unmodifiableList(recommendations);
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "recommendations";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("rules", rules.size());
+        metrics.put("cachedRankings", rankings.estimatedSize());
+        metrics.put("hits", hits.sum());
+        metrics.put("misses", misses.sum());
+        return metrics;
+    }
+
+    /**
+     * A merchant's recommendations as of a snapshot version
+     */
+    private static final class Ranking {
+
+        final long version;
+        final List<Map<String, Object>> recommendations;
+
+        Ranking(long version, List<Map<String, Object>> recommendations) {
+            this.version = version;
+            this.recommendations = recommendations;
+        }
+    }
+}
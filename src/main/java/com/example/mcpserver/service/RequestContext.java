@@ -0,0 +1,131 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.exception.McpException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancellation flag and optional deadline of the request being processed on the current thread.
+ *
+ * Transports create a context per request and {@link #attach() attach} it to the thread doing the
+ * work. Long-running code calls {@link #checkpoint()} between steps so that work is abandoned as
+ * soon as the caller has cancelled the request, its deadline has passed, or the worker thread has
+ * been interrupted.
+ */
+public final class RequestContext {
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final RequestContext NONE = new RequestContext(NO_DEADLINE, null);
+    private static final ThreadLocal<RequestContext> CURRENT = ThreadLocal.withInitial(() -> NONE);
+
+    private final long deadlineNanos;
+    private final RequestContext parent;
+    private volatile boolean cancelled;
+
+    private RequestContext(long deadlineNanos, RequestContext parent) {
+        this.deadlineNanos = deadlineNanos;
+        this.parent = parent;
+    }
+
+    /**
+     * @return The context attached to the current thread, or a context that never expires
+     */
+    public static RequestContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Creates a new root context
+     *
+     * @param timeoutMs The time budget in milliseconds, or null for no deadline
+     * @return The new context
+     */
+    public static RequestContext create(Long timeoutMs) {
+        return new RequestContext(deadlineAfter(timeoutMs), null);
+    }
+
+    /**
+     * Creates a context that is cancelled along with this one and expires no later than it
+     *
+     * @param timeoutMs An additional time budget in milliseconds, or null
+     * @return The child context
+     */
+    public RequestContext child(Long timeoutMs) {
+        long deadline = deadlineAfter(timeoutMs);
+        if (deadlineNanos != NO_DEADLINE && (deadline == NO_DEADLINE || deadlineNanos - deadline < 0)) {
+            deadline = deadlineNanos;
+        }
+        return new RequestContext(deadline, this == NONE ? null : this);
+    }
+
+    public boolean hasDeadline() {
+        return deadlineNanos != NO_DEADLINE;
+    }
+
+    /**
+     * @return Milliseconds left until the deadline (zero once expired), or Long.MAX_VALUE if there is none
+     */
+    public long remainingMillis() {
+        if (!hasDeadline()) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return hasDeadline() && deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+
+    public void cancel() {
+        if (this != NONE) {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * Throws if the request should be abandoned
+     *
+     * @throws McpException with code CANCELLED or DEADLINE_EXCEEDED
+     */
+    public void checkpoint() {
+        if (isCancelled() || Thread.currentThread().isInterrupted()) {
+            throw McpException.cancelled("Request was cancelled");
+        }
+        if (isExpired()) {
+            throw McpException.deadlineExceeded("Request deadline exceeded");
+        }
+    }
+
+    /**
+     * Makes this the current context until the returned scope is closed
+     *
+     * @return The scope restoring the previous context on close
+     */
+    public Scope attach() {
+        RequestContext previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> CURRENT.set(previous);
+    }
+
+    /**
+     * An attached context, restored to its predecessor on close
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static long deadlineAfter(Long timeoutMs) {
+        if (timeoutMs == null) {
+            return NO_DEADLINE;
+        }
+        long now = System.nanoTime();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, Math.min(timeoutMs, TimeUnit.DAYS.toMillis(365))));
+        long deadline = now + timeoutNanos;
+        return deadline == NO_DEADLINE ? deadline - 1 : deadline;
+    }
+}
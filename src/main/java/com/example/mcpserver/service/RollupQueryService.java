@@ -0,0 +1,169 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.analytics.DailyAggregates;
+import com.example.mcpserver.analytics.DeclineReason;
+import com.example.mcpserver.analytics.RollupCube;
+import com.example.mcpserver.analytics.RollupMetric;
+import com.example.mcpserver.analytics.Timeframe;
+import com.example.mcpserver.analytics.TransactionType;
+import com.example.mcpserver.exception.McpException;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Slices of the {@link RollupCube} for the rollup query tool: a metric for each merchant, day, type
+ * or decline reason in a timeframe, next to its value in the timeframe before, ranked and cut to the top K.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RollupQueryService {
+
+    static final int MAX_LIMIT = 1000;
+
+    private final TransactionDataService transactionDataService;
+
+    /**
+     * Runs a rollup query
+     *
+     * @param metricKey The metric to report
+     * @param groupBy merchant, day, type or reason
+     * @param timeframeKey The timeframe, ending with the latest day in the cube
+     * @param transactionType A transaction type, or "all"
+     * @param merchantIds Merchant IDs to restrict the query to, or null for all merchants
+     * @param rankBy value or change
+     * @param order desc or asc
+     * @param limit The number of groups to return
+     * @return Map containing the query and its ranked groups
+     */
+    public Map<String, Object> query(String metricKey, String groupBy, String timeframeKey, String transactionType,
+                                     JsonNode merchantIds, String rankBy, String order, long limit) {
+        log.info("Querying rollups: {} by {} over {} (type: {}, ranked by {} {}, limit {})",
+                metricKey, groupBy, timeframeKey, transactionType, rankBy, order, limit);
+        RollupMetric metric = RollupMetric.fromKey(metricKey);
+        Timeframe timeframe = Timeframe.fromKey(timeframeKey);
+        if (metric == null || timeframe == null) {
+            throw McpException.badRequest("Invalid arguments for queryRollup: unknown metric or timeframe");
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw McpException.badRequest("Invalid arguments for queryRollup: limit must be between 1 and " + MAX_LIMIT);
+        }
+        RequestContext context = RequestContext.current();
+        context.checkpoint();
+
+        RollupCube cube = transactionDataService.getCube();
+        BitSet merchantFilter = merchantFilter(cube, merchantIds);
+        TransactionType type = TransactionType.fromKey(transactionType);
+        int typeCode = type != null ? type.code() : DailyAggregates.ANY_TYPE;
+        int toDay = cube.getMaxDay();
+        int fromDay = toDay - timeframe.days() + 1;
+        int previousFromDay = fromDay - timeframe.days();
+
+        List<Map<String, Object>> groups = new ArrayList<>();
+        if (toDay != Integer.MIN_VALUE) {
+            RollupCube.Dimension dimension = dimension(groupBy);
+            long[] current = cube.aggregate(fromDay, toDay, typeCode, merchantFilter, dimension);
+            long[] previous = cube.aggregate(previousFromDay, fromDay - 1, typeCode, merchantFilter, dimension);
+            context.checkpoint();
+            if ("reason".equals(groupBy)) {
+                for (DeclineReason reason : DeclineReason.values()) {
+                    RollupMetric reasonMetric = RollupMetric.fromKey(reason.key());
+                    addGroup(groups, "reason", reason.key(), reasonMetric.value(current, 0), reasonMetric.value(previous, 0));
+                }
+            } else {
+                int groupCount = current.length / RollupCube.COUNTERS;
+                for (int group = 0; group < groupCount; group++) {
+                    if (current[group * RollupCube.COUNTERS + RollupCube.TOTAL] == 0
+                            && previous[group * RollupCube.COUNTERS + RollupCube.TOTAL] == 0) {
+                        continue;
+                    }
+                    addGroup(groups, groupBy, groupKey(cube, dimension, group, fromDay),
+                            metric.value(current, group), metric.value(previous, group));
+                }
+            }
+        }
+
+        Comparator<Map<String, Object>> ranking = Comparator.comparingDouble(
+                group -> (Double) group.get("change".equals(rankBy) ? "change" : "value"));
+        groups.sort("asc".equals(order) ? ranking : ranking.reversed());
+        List<Map<String, Object>> top = new ArrayList<>(groups.subList(0, (int) Math.min(limit, groups.size())));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("metric", "reason".equals(groupBy) ? "declined" : metric.key());
+        result.put("groupBy", groupBy);
+        result.put("timeframe", timeframeKey);
+        if (toDay != Integer.MIN_VALUE) {
+            result.put("from", LocalDate.ofEpochDay(fromDay).toString());
+            result.put("to", LocalDate.ofEpochDay(toDay).toString());
+        }
+        result.put("rankBy", rankBy);
+        result.put("totalGroups", groups.size());
+        result.put("groups", top);
+        return result;
+    }
+
+    private static BitSet merchantFilter(RollupCube cube, JsonNode merchantIds) {
+        if (merchantIds == null) {
+            return null;
+        }
+        BitSet filter = new BitSet();
+        for (int i = 0; i < merchantIds.size(); i++) {
+            JsonNode merchantId = merchantIds.get(i);
+            if (!merchantId.isTextual()) {
+                throw McpException.badRequest("Invalid arguments for queryRollup: merchantIds[" + i + "] must be a string");
+            }
+            int code = cube.getMerchants().codeOf(merchantId.textValue());
+            if (code >= 0) {
+                filter.set(code);
+            }
+        }
+        return filter;
+    }
+
+    private static RollupCube.Dimension dimension(String groupBy) {
+        switch (groupBy) {
+            case "merchant":
+                return RollupCube.Dimension.MERCHANT;
+            case "day":
+                return RollupCube.Dimension.DAY;
+            case "type":
+                return RollupCube.Dimension.TYPE;
+            case "reason":
+                return RollupCube.Dimension.NONE;
+            default:
+                throw McpException.badRequest("Invalid arguments for queryRollup: unknown groupBy " + groupBy);
+        }
+    }
+
+    private static String groupKey(RollupCube cube, RollupCube.Dimension dimension, int group, int fromDay) {
+        switch (dimension) {
+            case MERCHANT:
+                return cube.getMerchants().decode(group);
+            case DAY:
+                return LocalDate.ofEpochDay(fromDay + group).toString();
+            case TYPE:
+                return TransactionType.fromCode(group).key();
+            default:
+                return "all";
+        }
+    }
+
+    private static void addGroup(List<Map<String, Object>> groups, String groupBy, String key, double value, double previous) {
+        Map<String, Object> group = new LinkedHashMap<>();
+        group.put(groupBy, key);
+        group.put("value", value);
+        group.put("previous", previous);
+        group.put("change", Math.round((value - previous) * 10.0) / 10.0);
+        groups.add(group);
+    }
+}
@@ -0,0 +1,377 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.exception.McpException;
+import com.example.mcpserver.model.tool.Tool;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Validates and binds tool arguments according to a tool's {@link Tool.ParameterDefinition}s.
+ *
+ * A binder is compiled once when the tool is registered: parameter types are resolved to
+ * extractors, enum values are put in hash sets and defaults are converted to their typed values.
+ * Array parameters that declare their {@code items} are bound element by element into a
+ * {@code double[]}, {@code long[]} or {@code String[]}, checking each element's type and enum values.
+ * Binding then makes a single pass over the argument object and either returns
+ * {@link ToolArguments} or fails with an error naming every invalid or missing parameter.
+ */
+public final class ToolArgumentBinder {
+
+    // Only used to convert declared defaults while compiling
+    private static final ObjectMapper DEFAULTS_MAPPER = new ObjectMapper();
+
+    @Getter
+    private final String function;
+    private final Map<String, Parameter> parameters;
+    private final Parameter[] ordered;
+
+    private ToolArgumentBinder(String function, List<Parameter> parameters) {
+        this.function = function;
+        this.ordered = parameters.toArray(new Parameter[0]);
+        this.parameters = new HashMap<>();
+        for (Parameter parameter : ordered) {
+            this.parameters.put(parameter.name, parameter);
+        }
+    }
+
+    /**
+     * Compiles the binder for a tool
+     *
+     * @param tool The tool
+     * @return The binder
+     * @throws IllegalArgumentException if a declared default does not match its parameter's type or enum values,
+     *                                  or array items are of a type that can't be bound
+     */
+    public static ToolArgumentBinder compile(Tool tool) {
+        List<Parameter> parameters = new ArrayList<>();
+        if (tool.getParameters() != null) {
+            // Sorted so error messages list parameters in a stable order
+            Map<String, Tool.ParameterDefinition> definitions = new TreeMap<>(tool.getParameters());
+            for (Map.Entry<String, Tool.ParameterDefinition> entry : definitions.entrySet()) {
+                parameters.add(new Parameter(parameters.size(), entry.getKey(), entry.getValue()));
+            }
+        }
+        return new ToolArgumentBinder(tool.getFunction(), parameters);
+    }
+
+    /**
+     * Validates the arguments and binds them to their declared types
+     *
+     * @param arguments The arguments object; null or a JSON null means no arguments
+     * @return The bound arguments, with defaults applied
+     * @throws McpException (BAD_REQUEST) naming every parameter that is invalid or missing
+     */
+    public ToolArguments bind(JsonNode arguments) {
+        Object[] values = new Object[ordered.length];
+        boolean[] present = new boolean[ordered.length];
+        List<String> errors = new ArrayList<>(0);
+
+        if (arguments != null && !arguments.isNull() && !arguments.isMissingNode()) {
+            if (!arguments.isObject()) {
+                throw McpException.badRequest("Invalid arguments for " + function + ": arguments must be a JSON object");
+            }
+            Iterator<Map.Entry<String, JsonNode>> fields = arguments.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                Parameter parameter = parameters.get(field.getKey());
+                // Undeclared arguments are ignored; explicit nulls count as absent
+                if (parameter == null || field.getValue().isNull()) {
+                    continue;
+                }
+                present[parameter.index] = true;
+                String error = parameter.bind(field.getValue(), values);
+                if (error != null) {
+                    errors.add(error);
+                }
+            }
+        }
+
+        for (Parameter parameter : ordered) {
+            if (present[parameter.index]) {
+                continue;
+            }
+            if (parameter.defaultValue != null) {
+                values[parameter.index] = parameter.defaultValue;
+            } else if (parameter.required) {
+                errors.add(parameter.name + " is required");
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            throw McpException.badRequest("Invalid arguments for " + function + ": " + String.join("; ", errors));
+        }
+        return new ToolArguments(this, values);
+    }
+
+    int indexOf(String name) {
+        Parameter parameter = parameters.get(name);
+        if (parameter == null) {
+            throw new IllegalArgumentException("Tool " + function + " has no parameter " + name);
+        }
+        return parameter.index;
+    }
+
+    /**
+     * A compiled parameter definition
+     */
+    private static final class Parameter {
+
+        final int index;
+        final String name;
+        final ParameterType type;
+        final boolean required;
+        final Set<Object> enumValues;
+        final String enumDescription;
+        final Object defaultValue;
+        // Element definition of an array parameter bound to a typed array, or null
+        final Parameter items;
+
+        Parameter(int index, String name, Tool.ParameterDefinition definition) {
+            this.index = index;
+            this.name = name;
+            this.type = ParameterType.of(definition.getType());
+            this.required = definition.isRequired();
+
+            if (definition.getItems() != null) {
+                if (type != ParameterType.ARRAY) {
+                    throw new IllegalArgumentException("Parameter " + name + " declares items but is not an array");
+                }
+                this.items = new Parameter(-1, name + "[]", definition.getItems());
+                if (items.type.toArray(new Object[0]) == null || items.items != null) {
+                    throw new IllegalArgumentException("Items of parameter " + name + " can't be bound to an array");
+                }
+                if (definition.getDefaultValue() != null || definition.getEnumValues() != null) {
+                    throw new IllegalArgumentException("Parameter " + name + " with items can't declare a default or enum values");
+                }
+            } else {
+                this.items = null;
+            }
+
+            if (definition.getEnumValues() != null && definition.getEnumValues().length > 0) {
+                Set<Object> values = new HashSet<>();
+                for (Object value : definition.getEnumValues()) {
+                    values.add(convert(value));
+                }
+                this.enumValues = values;
+                this.enumDescription = Arrays.toString(definition.getEnumValues());
+            } else {
+                this.enumValues = null;
+                this.enumDescription = null;
+            }
+
+            this.defaultValue = definition.getDefaultValue() != null ? convert(definition.getDefaultValue()) : null;
+            if (defaultValue != null && enumValues != null && !enumValues.contains(defaultValue)) {
+                throw new IllegalArgumentException("Default of parameter " + name + " is not one of " + enumDescription);
+            }
+        }
+
+        /**
+         * Binds one argument into its slot
+         *
+         * @return An error message, or null if the value is valid
+         */
+        String bind(JsonNode node, Object[] values) {
+            if (items != null) {
+                return bindItems(node, values);
+            }
+            Object value = type.extract(node);
+            String error = check(name, value);
+            if (error == null) {
+                values[index] = value;
+            }
+            return error;
+        }
+
+        private String bindItems(JsonNode node, Object[] values) {
+            if (!node.isArray()) {
+                return name + " must be " + type.description;
+            }
+            Object[] elements = new Object[node.size()];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = items.type.extract(node.get(i));
+                // Only the first invalid element is reported, however long the array
+                String error = items.check(name + "[" + i + "]", elements[i]);
+                if (error != null) {
+                    return error;
+                }
+            }
+            values[index] = items.type.toArray(elements);
+            return null;
+        }
+
+        private String check(String label, Object value) {
+            if (value == null) {
+                return label + " must be " + type.description;
+            }
+            if (enumValues != null && !enumValues.contains(value)) {
+                return label + " must be one of " + enumDescription;
+            }
+            if (required && value instanceof String && ((String) value).isBlank()) {
+                return label + " must not be empty";
+            }
+            return null;
+        }
+
+        private Object convert(Object declared) {
+            Object value = type.extract(DEFAULTS_MAPPER.valueToTree(declared));
+            if (value == null) {
+                throw new IllegalArgumentException("Value " + declared + " of parameter " + name
+                        + " is not " + type.description);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Parameter types and their extractors. Scalars given as strings are accepted for numeric
+     * and boolean parameters, and scalars are accepted as strings.
+     */
+    private enum ParameterType {
+
+        STRING("a string") {
+            @Override
+            Object extract(JsonNode node) {
+                return node.isValueNode() && !node.isNull() ? node.asText() : null;
+            }
+
+            @Override
+            Object toArray(Object[] elements) {
+                String[] array = new String[elements.length];
+                System.arraycopy(elements, 0, array, 0, elements.length);
+                return array;
+            }
+        },
+        NUMBER("a number") {
+            @Override
+            Object extract(JsonNode node) {
+                if (node.isNumber()) {
+                    return node.doubleValue();
+                }
+                if (node.isTextual()) {
+                    try {
+                        return Double.parseDouble(node.textValue().trim());
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            Object toArray(Object[] elements) {
+                double[] array = new double[elements.length];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = (Double) elements[i];
+                }
+                return array;
+            }
+        },
+        INTEGER("an integer") {
+            @Override
+            Object extract(JsonNode node) {
+                if (node.isIntegralNumber() && node.canConvertToLong()) {
+                    return node.longValue();
+                }
+                if (node.isTextual()) {
+                    try {
+                        return Long.parseLong(node.textValue().trim());
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            Object toArray(Object[] elements) {
+                long[] array = new long[elements.length];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = (Long) elements[i];
+                }
+                return array;
+            }
+        },
+        BOOLEAN("a boolean") {
+            @Override
+            Object extract(JsonNode node) {
+                if (node.isBoolean()) {
+                    return node.booleanValue();
+                }
+                if (node.isTextual() && ("true".equals(node.textValue()) || "false".equals(node.textValue()))) {
+                    return Boolean.valueOf(node.textValue());
+                }
+                return null;
+            }
+        },
+        OBJECT("an object") {
+            @Override
+            Object extract(JsonNode node) {
+                return node.isObject() ? node : null;
+            }
+        },
+        ARRAY("an array") {
+            @Override
+            Object extract(JsonNode node) {
+                return node.isArray() ? node : null;
+            }
+        },
+        ANY("a value") {
+            @Override
+            Object extract(JsonNode node) {
+                return node;
+            }
+        };
+
+        final String description;
+
+        ParameterType(String description) {
+            this.description = description;
+        }
+
+        /**
+         * @return The typed value, or null if the node is not of this type
+         */
+        abstract Object extract(JsonNode node);
+
+        /**
+         * @param elements Values extracted by this type
+         * @return The values as a primitive or typed array, or null if arrays of this type aren't supported
+         */
+        Object toArray(Object[] elements) {
+            return null;
+        }
+
+        static ParameterType of(String type) {
+            if (type == null) {
+                return ANY;
+            }
+            switch (type) {
+                case "string":
+                    return STRING;
+                case "number":
+                    return NUMBER;
+                case "integer":
+                    return INTEGER;
+                case "boolean":
+                    return BOOLEAN;
+                case "object":
+                    return OBJECT;
+                case "array":
+                    return ARRAY;
+                default:
+                    return ANY;
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.mcpserver.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Arrays;
+
+/**
+ * Validated tool arguments produced by a {@link ToolArgumentBinder}, with defaults applied.
+ * Values are typed by their declared parameter type: strings, doubles for numbers, longs for
+ * integers, booleans, and JSON nodes for objects and arrays. Arrays that declare their items are
+ * {@code double[]}, {@code long[]} or {@code String[]}.
+ *
+ * Two instances are equal when they are for the same function and bind the same values. Because
+ * binding coerces types and applies defaults, spellings such as {@code "a": 2} and
+ * {@code "a": "2.0"}, or an omitted argument and its default, compare equal, which makes bound
+ * arguments usable as cache keys.
+ */
+public final class ToolArguments {
+
+    private final ToolArgumentBinder binder;
+    private final Object[] values;
+
+    ToolArguments(ToolArgumentBinder binder, Object[] values) {
+        this.binder = binder;
+        this.values = values;
+    }
+
+    public String getFunction() {
+        return binder.getFunction();
+    }
+
+    /**
+     * @param name A declared parameter name
+     * @return The bound value, or null if the argument was omitted and has no default
+     * @throws IllegalArgumentException if the tool declares no such parameter
+     */
+    public Object get(String name) {
+        return values[binder.indexOf(name)];
+    }
+
+    public boolean has(String name) {
+        return get(name) != null;
+    }
+
+    public String getString(String name) {
+        return (String) get(name);
+    }
+
+    public Double getDouble(String name) {
+        return (Double) get(name);
+    }
+
+    public Long getLong(String name) {
+        return (Long) get(name);
+    }
+
+    public Boolean getBoolean(String name) {
+        return (Boolean) get(name);
+    }
+
+    public JsonNode getNode(String name) {
+        return (JsonNode) get(name);
+    }
+
+    public double[] getDoubles(String name) {
+        return (double[]) get(name);
+    }
+
+    public long[] getLongs(String name) {
+        return (long[]) get(name);
+    }
+
+    public String[] getStrings(String name) {
+        return (String[]) get(name);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ToolArguments)) {
+            return false;
+        }
+        ToolArguments that = (ToolArguments) o;
+        return getFunction().equals(that.getFunction()) && Arrays.deepEquals(values, that.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * getFunction().hashCode() + Arrays.deepHashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return getFunction() + Arrays.deepToString(values);
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.exception.McpException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool of threads and queue slots reserved for one tool.
+ *
+ * Executions beyond the pool's threads wait in the queue, and once that is full they are
+ * rejected straight away with an overloaded error instead of piling up behind a slow tool.
+ * An execution runs under the {@link RequestContext} of the caller that submitted it; it is
+ * interrupted when its future is cancelled or the caller's deadline passes.
+ */
+final class ToolBulkhead {
+
+    private final String function;
+    private final int threads;
+    private final int queueSize;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    ToolBulkhead(String function, int threads, int queueSize) {
+        this.function = function;
+        this.threads = threads;
+        this.queueSize = queueSize;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "tool-" + function + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues an execution of the tool
+     *
+     * @param context The caller's context, attached while the execution runs
+     * @param work The execution
+     * @param timer Timer used to enforce the context's deadline
+     * @return The result; fails with an McpException if the execution fails, is rejected or runs past the deadline
+     */
+    CompletableFuture<Object> submit(RequestContext context, Supplier<Object> work, ScheduledExecutorService timer) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        AtomicBoolean ranToCompletion = new AtomicBoolean();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            if (result.isDone()) {
+                // Cancelled or timed out while queued
+                return;
+            }
+            Object value;
+            try (RequestContext.Scope scope = context.attach()) {
+                context.checkpoint();
+                value = work.get();
+            } catch (Throwable e) {
+                ranToCompletion.set(true);
+                result.completeExceptionally(e);
+                return;
+            }
+            ranToCompletion.set(true);
+            result.complete(value);
+        }, null);
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            result.completeExceptionally(McpException.overloaded(
+                    "Too many concurrent executions of " + function + ", retry later"));
+            return result;
+        }
+
+        ScheduledFuture<?> timeout = null;
+        if (context.hasDeadline()) {
+            timeout = timer.schedule(() -> {
+                if (result.completeExceptionally(McpException.deadlineExceeded("Request deadline exceeded"))) {
+                    timedOut.incrementAndGet();
+                }
+            }, context.remainingMillis(), TimeUnit.MILLISECONDS);
+        }
+        ScheduledFuture<?> pendingTimeout = timeout;
+        result.whenComplete((value, error) -> {
+            if (pendingTimeout != null) {
+                pendingTimeout.cancel(false);
+            }
+            if (!ranToCompletion.get()) {
+                // Abandoned: free the queue slot, or interrupt the thread still running it
+                task.cancel(true);
+                executor.remove(task);
+            }
+        });
+        return result;
+    }
+
+    Map<String, Object> getMetrics() {
+        int active = executor.getActiveCount();
+        int queued = executor.getQueue().size();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("threads", threads);
+        metrics.put("queueCapacity", queueSize);
+        metrics.put("active", active);
+        metrics.put("queued", queued);
+        // Share of the bulkhead's threads and queue slots in use; at 1.0 executions are rejected
+        metrics.put("saturation", (double) (active + queued) / (threads + queueSize));
+        metrics.put("completed", executor.getCompletedTaskCount());
+        metrics.put("rejected", rejected.get());
+        metrics.put("timedOut", timedOut.get());
+        return metrics;
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -2,25 +2,68 @@ package com.example.mcpserver.service;
 
 import com.example.mcpserver.exception.McpException;
 import com.example.mcpserver.model.McpResponse;
+import com.example.mcpserver.model.tool.Tool;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
-public class ToolExecutorService {
+public class ToolExecutorService implements MetricsSource {
 
     private final AuthorizationRateService authorizationRateService;
     private final CalculatorService calculatorService;
+    private final RollupQueryService rollupQueryService;
+    private final PortfolioReportService portfolioReportService;
+    private final DeclineSpikeService declineSpikeService;
     private final ToolRegistry toolRegistry;
+    private final ToolResultCache toolResultCache;
     private final ObjectMapper objectMapper;
+    private final Environment environment;
+    
+    @Value("${tools.executor.default-threads:4}")
+    private int defaultThreads;
+    
+    @Value("${tools.executor.default-queue-size:64}")
+    private int defaultQueueSize;
+    
+    private final Map<String, ToolBulkhead> bulkheads = new ConcurrentHashMap<>();
+    
+    // Enforces the deadlines of executions waiting on a bulkhead
+    private ScheduledThreadPoolExecutor timer;
+    
+    @PostConstruct
+    public void init() {
+        timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "tool-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        bulkheads.values().forEach(ToolBulkhead::shutdown);
+    }
 
     /**
      * Executes a tool based on the function name and arguments
@@ -30,61 +73,185 @@ public class ToolExecutorService {
      * @return The result of the tool execution
      */
     public Object executeTool(String functionName, String arguments) {
-        log.info("Executing tool: {} with arguments: {}", functionName, arguments);
+        JsonNode argsNode;
+        try {
+            argsNode = objectMapper.readTree(arguments);
+        } catch (JsonProcessingException e) {
+            log.error("Error parsing tool arguments", e);
+            throw McpException.badRequest("Invalid tool arguments: " + e.getMessage());
+        }
+        return executeTool(functionName, argsNode);
+    }
+    
+    /**
+     * Executes a tool with arguments that have already been parsed, so callers holding a
+     * request tree or a map of arguments don't serialize them just to have them parsed again.
+     * Blocks until the execution on the tool's bulkhead completes.
+     * 
+     * @param functionName The name of the function to execute
+     * @param arguments The arguments as a JSON tree
+     * @return The result of the tool execution
+     */
+    public Object executeTool(String functionName, JsonNode arguments) {
+        CompletableFuture<Object> result = executeToolAsync(functionName, arguments);
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw McpException.cancelled("Request was cancelled");
+        } catch (CancellationException e) {
+            throw McpException.cancelled("Request was cancelled");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof McpException) {
+                throw (McpException) e.getCause();
+            }
+            log.error("Error executing tool", e.getCause());
+            throw McpException.modelError("Tool execution failed: " + e.getCause().getMessage());
+        }
+    }
+    
+    /**
+     * Executes a tool on its own bulkhead, so slow executions of one tool cannot hold up
+     * the callers of another. The arguments are validated and the result cache is consulted
+     * on the calling thread; only misses are queued.
+     * 
+     * @param functionName The name of the function to execute
+     * @param arguments The arguments as a JSON tree
+     * @return The result of the tool execution, failing with an McpException. Cancelling it
+     *         interrupts the execution; it also fails once the current {@link RequestContext}'s deadline passes.
+     */
+    public CompletableFuture<Object> executeToolAsync(String functionName, JsonNode arguments) {
+        // Argument values may carry merchant data and can be large, so only their count is logged at INFO
+        log.info("Executing tool: {} with {} argument(s)", functionName, arguments == null ? 0 : arguments.size());
+        log.debug("Arguments for {}: {}", functionName, arguments);
         
-        if (!toolRegistry.hasTool(functionName)) {
-            throw McpException.badRequest("Unknown tool function: " + functionName);
+        Tool tool = toolRegistry.getTool(functionName);
+        ToolArgumentBinder binder = toolRegistry.getArgumentBinder(functionName);
+        if (tool == null || binder == null) {
+            return CompletableFuture.failedFuture(McpException.badRequest("Unknown tool function: " + functionName));
         }
         
+        RequestContext context = RequestContext.current();
+        ToolArguments args;
         try {
-            JsonNode argsNode = objectMapper.readTree(arguments);
+            // Validated against the tool's parameter definitions, with defaults applied
+            args = binder.bind(arguments);
             
+            // Don't start work for a caller that has already gone away
+            context.checkpoint();
+        } catch (McpException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        
+        // Served from the result cache if the tool has opted in and the arguments were seen recently
+        Object cached = toolResultCache.getIfPresent(tool, args);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        
+        return bulkheadFor(tool).submit(context,
+                () -> toolResultCache.computeIfAbsent(tool, args, () -> invoke(functionName, args)), timer);
+    }
+    
+    private ToolBulkhead bulkheadFor(Tool tool) {
+        ToolBulkhead bulkhead = bulkheads.get(tool.getFunction());
+        if (bulkhead != null) {
+            return bulkhead;
+        }
+        return bulkheads.computeIfAbsent(tool.getFunction(), function -> {
+            Tool.ExecutorPolicy policy = tool.getExecutorPolicy();
+            int threads = environment.getProperty("tools.executor." + function + ".threads", Integer.class,
+                    policy != null ? policy.getThreads() : defaultThreads);
+            int queueSize = environment.getProperty("tools.executor." + function + ".queue-size", Integer.class,
+                    policy != null ? policy.getQueueSize() : defaultQueueSize);
+            log.info("Created bulkhead for {} (threads: {}, queue size: {})", function, threads, queueSize);
+            return new ToolBulkhead(function, Math.max(1, threads), Math.max(1, queueSize));
+        });
+    }
+    
+    @Override
+    public String getMetricsName() {
+        return "toolExecutors";
+    }
+    
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        for (Map.Entry<String, ToolBulkhead> entry : bulkheads.entrySet()) {
+            metrics.put(entry.getKey(), entry.getValue().getMetrics());
+        }
+        return metrics;
+    }
+    
+    private Object invoke(String functionName, ToolArguments args) {
+        try {
             switch (functionName) {
                 case "improveAuthorizationRate":
-                    return executeImproveAuthorizationRate(argsNode);
+                    return executeImproveAuthorizationRate(args);
                 case "calculate":
-                    return executeCalculate(argsNode);
+                    return executeCalculate(args);
+                case "calculateBulk":
+                    return executeCalculateBulk(args);
+                case "queryRollup":
+                    return executeQueryRollup(args);
+                case "generatePortfolioReport":
+                    return executeGeneratePortfolioReport(args);
+                case "detectDeclineSpikes":
+                    return executeDetectDeclineSpikes(args);
                 default:
                     throw McpException.badRequest("Tool function not implemented: " + functionName);
             }
-        } catch (JsonProcessingException e) {
-            log.error("Error parsing tool arguments", e);
-            throw McpException.badRequest("Invalid tool arguments: " + e.getMessage());
+        } catch (McpException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error executing tool", e);
             throw McpException.modelError("Tool execution failed: " + e.getMessage());
         }
     }
     
-    private Map<String, Object> executeImproveAuthorizationRate(JsonNode args) {
-        String merchantId = args.has("merchantId") ? args.get("merchantId").asText() : null;
-        String timeframe = args.has("timeframe") ? args.get("timeframe").asText() : "last_30_days";
-        String transactionType = args.has("transactionType") ? args.get("transactionType").asText() : "all";
-        
-        if (merchantId == null || merchantId.isEmpty()) {
-            throw McpException.badRequest("merchantId is required for improveAuthorizationRate tool");
-        }
-        
-        return authorizationRateService.improveAuthorizationRate(merchantId, timeframe, transactionType);
+    private Map<String, Object> executeImproveAuthorizationRate(ToolArguments args) {
+        return authorizationRateService.improveAuthorizationRate(
+                args.getString("merchantId"), args.getString("timeframe"), args.getString("transactionType"));
     }
     
-    private Map<String, Object> executeCalculate(JsonNode args) {
-        String operation = args.has("operation") ? args.get("operation").asText() : null;
-        Double a = args.has("a") ? args.get("a").asDouble() : null;
-        Double b = args.has("b") ? args.get("b").asDouble() : null;
-        
-        if (operation == null || operation.isEmpty()) {
-            throw McpException.badRequest("operation is required for calculate tool");
+    private Map<String, Object> executeCalculate(ToolArguments args) {
+        return calculatorService.calculate(args.getString("operation"), args.getDouble("a"), args.getDouble("b"));
+    }
+    
+    private Map<String, Object> executeCalculateBulk(ToolArguments args) {
+        // Element types and operation names were checked when the arguments were bound
+        double[] a = args.getDoubles("a");
+        double[] b = args.getDoubles("b");
+        String[] operations = args.getStrings("operations");
+        if (args.has("operation") == (operations != null)) {
+            throw McpException.badRequest("Invalid arguments for calculateBulk: give either operation or operations");
         }
-        
-        if (a == null) {
-            throw McpException.badRequest("a (first operand) is required for calculate tool");
+        if (a.length != b.length || (operations != null && operations.length != a.length)) {
+            throw McpException.badRequest("Invalid arguments for calculateBulk: a, b and operations must have the same length");
         }
-        
-        if (b == null) {
-            throw McpException.badRequest("b (second operand) is required for calculate tool");
+        if (a.length > calculatorService.getMaxBulkRows()) {
+            throw McpException.badRequest("Invalid arguments for calculateBulk: at most "
+                    + calculatorService.getMaxBulkRows() + " rows are allowed");
         }
         
-        return calculatorService.calculate(operation, a, b);
+        return operations == null
+                ? calculatorService.calculateBulk(args.getString("operation"), a, b)
+                : calculatorService.calculateBulk(operations, a, b);
+    }
+    
+    private Map<String, Object> executeQueryRollup(ToolArguments args) {
+        return rollupQueryService.query(args.getString("metric"), args.getString("groupBy"), args.getString("timeframe"),
+                args.getString("transactionType"), args.getNode("merchantIds"), args.getString("rankBy"),
+                args.getString("order"), args.getLong("limit"));
+    }
+    
+    private Map<String, Object> executeGeneratePortfolioReport(ToolArguments args) {
+        return portfolioReportService.report(args.getNode("merchantIds"), args.getString("timeframe"),
+                args.getString("transactionType"), args.getString("sortBy"), args.getLong("limit"));
+    }
+    
+    private Map<String, Object> executeDetectDeclineSpikes(ToolArguments args) {
+        return declineSpikeService.spikes(args.getString("declineReason"), args.getLong("limit"));
     }
 } 
\ No newline at end of file
@@ -0,0 +1,103 @@
+package com.example.mcpserver.service;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.RawValue;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pre-serialized tool list and server capabilities.
+ *
+ * Agents fetch these at the start of every session, yet they only change when a tool is
+ * registered. They are rendered to compact UTF-8 JSON once per {@link ToolRegistry#getVersion()
+ * registry version} and reused: JSON-RPC responses embed them as raw values so only the envelope
+ * and id are serialized per call, and HTTP serves the bytes directly with a strong ETag.
+ */
+@Slf4j
+@Service
+public class ToolListCache {
+
+    private final ToolRegistry toolRegistry;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter writer;
+    private volatile Snapshot snapshot;
+
+    public ToolListCache(ToolRegistry toolRegistry, ObjectMapper objectMapper) {
+        this.toolRegistry = toolRegistry;
+        this.objectMapper = objectMapper;
+        this.writer = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    /**
+     * @return The rendering of the current tool list, rebuilt if a tool has been registered since the last call
+     */
+    public Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        long version = toolRegistry.getVersion();
+        if (current != null && current.getVersion() == version) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || current.getVersion() != version) {
+                current = render(version);
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private Snapshot render(long version) {
+        try {
+            byte[] tools = writer.writeValueAsBytes(toolRegistry.getAvailableTools());
+
+            ObjectNode capabilities = objectMapper.createObjectNode();
+            capabilities.put("protocol_version", "1.0");
+            capabilities.put("name", "PayPal Java MCP Server");
+
+            // Add supported methods
+            capabilities.put("supports_completions", true);
+            capabilities.put("supports_execute_function", true);
+            capabilities.put("supports_get_tools", true);
+
+            // Add available tools
+            capabilities.set("tools", objectMapper.readTree(tools));
+
+            log.debug("Rendered tool list version {} ({} bytes)", version, tools.length);
+            return new Snapshot(version, tools, writer.writeValueAsBytes(capabilities));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize tool list", e);
+        }
+    }
+
+    /**
+     * One rendering of the tool list; the byte arrays are shared and must not be modified
+     */
+    @Getter
+    public static class Snapshot {
+
+        private final long version;
+        private final byte[] toolsJson;
+        private final String etag;
+        private final RawValue tools;
+        private final RawValue capabilities;
+
+        Snapshot(long version, byte[] toolsJson, byte[] capabilitiesJson) {
+            this.version = version;
+            this.toolsJson = toolsJson;
+            this.etag = "\"" + DigestUtils.md5DigestAsHex(toolsJson) + "\"";
+            // SerializedString keeps the UTF-8 encoding, which the generator copies as-is
+            this.tools = new RawValue(new SerializedString(new String(toolsJson, StandardCharsets.UTF_8)));
+            this.capabilities = new RawValue(new SerializedString(new String(capabilitiesJson, StandardCharsets.UTF_8)));
+        }
+    }
+}
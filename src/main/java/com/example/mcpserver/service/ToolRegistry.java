@@ -1,27 +1,38 @@
 package com.example.mcpserver.service;
 
 import com.example.mcpserver.model.tool.AuthorizationRateTool;
+import com.example.mcpserver.model.tool.BulkCalculatorTool;
 import com.example.mcpserver.model.tool.CalculatorTool;
+import com.example.mcpserver.model.tool.DeclineSpikeTool;
+import com.example.mcpserver.model.tool.PortfolioReportTool;
+import com.example.mcpserver.model.tool.RollupQueryTool;
 import com.example.mcpserver.model.tool.Tool;
 import javax.annotation.PostConstruct;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Service
 public class ToolRegistry {
 
     @Getter
-    private final Map<String, Tool> tools = new HashMap<>();
+    private final Map<String, Tool> tools = new ConcurrentHashMap<>();
     
     @Getter
-    private final List<Tool> availableTools = new ArrayList<>();
+    private final List<Tool> availableTools = new CopyOnWriteArrayList<>();
+    
+    // Argument binders compiled from each tool's parameter definitions
+    private final Map<String, ToolArgumentBinder> argumentBinders = new ConcurrentHashMap<>();
+    
+    // Bumped on every change to the tool list so cached renderings of it can be revalidated
+    private final AtomicLong version = new AtomicLong();
 
     @PostConstruct
     public void init() {
@@ -33,15 +44,40 @@ public class ToolRegistry {
         CalculatorTool calculatorTool = CalculatorTool.createDefault();
         registerTool(calculatorTool);
         
+        // Register the bulk calculator tool
+        BulkCalculatorTool bulkCalculatorTool = BulkCalculatorTool.createDefault();
+        registerTool(bulkCalculatorTool);
+        
+        // Register the rollup query tool
+        RollupQueryTool rollupQueryTool = RollupQueryTool.createDefault();
+        registerTool(rollupQueryTool);
+        
+        // Register the portfolio report tool
+        PortfolioReportTool portfolioReportTool = PortfolioReportTool.createDefault();
+        registerTool(portfolioReportTool);
+        
+        // Register the decline spike detection tool
+        DeclineSpikeTool declineSpikeTool = DeclineSpikeTool.createDefault();
+        registerTool(declineSpikeTool);
+        
         log.info("Initialized tool registry with {} tools", tools.size());
     }
     
     public void registerTool(Tool tool) {
+        argumentBinders.put(tool.getFunction(), ToolArgumentBinder.compile(tool));
         tools.put(tool.getFunction(), tool);
         availableTools.add(tool);
+        version.incrementAndGet();
         log.debug("Registered tool: {}", tool.getFunction());
     }
     
+    /**
+     * @return A counter that changes whenever a tool is registered
+     */
+    public long getVersion() {
+        return version.get();
+    }
+    
     public Tool getTool(String function) {
         return tools.get(function);
     }
@@ -49,4 +85,12 @@ public class ToolRegistry {
     public boolean hasTool(String function) {
         return tools.containsKey(function);
     }
+    
+    /**
+     * @param function The tool function name
+     * @return The argument binder compiled for the tool, or null if no such tool is registered
+     */
+    public ToolArgumentBinder getArgumentBinder(String function) {
+        return argumentBinders.get(function);
+    }
 } 
\ No newline at end of file
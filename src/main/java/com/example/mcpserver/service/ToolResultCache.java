@@ -0,0 +1,255 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.exception.McpException;
+import com.example.mcpserver.model.tool.Tool;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Results of tools that opt in with a {@link Tool.CachePolicy}, keyed on their bound
+ * {@link ToolArguments}.
+ *
+ * Each tool gets its own cache with the policy's TTL and maximum weight, evicting with Caffeine's
+ * W-TinyLFU policy so a burst of one-off arguments doesn't flush the frequently requested ones.
+ * A result weighs one per map entry, collection element or scalar it contains. Concurrent misses
+ * for the same arguments share one computation, and only successful results are cached: the first
+ * caller puts a future in the cache and computes the result outside of any cache lock, and the others
+ * wait on that future.
+ *
+ * Results of {@link Tool.CachePolicy#isDataBacked() data-backed} tools are keyed on the
+ * {@link TransactionDataService#getSnapshotVersion() snapshot version} as well, so they are not
+ * served once new transactions are ingested and age out like any other unused entry.
+ *
+ * Lookups and computations are separate calls so that callers can serve hits on their own thread
+ * and only hand misses to the tool's {@link ToolBulkhead}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ToolResultCache implements MetricsSource {
+
+    private final TransactionDataService transactionDataService;
+
+    @Value("${tools.cache.enabled:true}")
+    private boolean enabled;
+
+    private final Map<String, PolicyCache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * Looks up a cached result, counting a hit or a miss
+     *
+     * @param tool The tool being executed
+     * @param arguments The bound arguments
+     * @return The cached result, or null if there is none or the tool doesn't cache its results
+     */
+    public Object getIfPresent(Tool tool, ToolArguments arguments) {
+        Tool.CachePolicy policy = tool.getCachePolicy();
+        if (!isCacheable(policy)) {
+            return null;
+        }
+        // A result still being computed counts as a miss, and the caller waits for it in computeIfAbsent
+        return cacheFor(tool.getFunction(), policy).synchronous().getIfPresent(keyFor(policy, arguments));
+    }
+
+    /**
+     * Returns the cached result for the arguments, computing and caching it if there is none.
+     * Expected to follow a {@link #getIfPresent} miss.
+     *
+     * @param tool The tool being executed
+     * @param arguments The bound arguments
+     * @param compute Executes the tool; runs on the calling thread
+     * @return The result, which may be shared with other callers and must not be modified
+     */
+    public Object computeIfAbsent(Tool tool, ToolArguments arguments, Supplier<Object> compute) {
+        Tool.CachePolicy policy = tool.getCachePolicy();
+        if (!isCacheable(policy)) {
+            return compute.get();
+        }
+        AsyncCache<Key, Object> cache = cacheFor(tool.getFunction(), policy);
+        Key key = keyFor(policy, arguments);
+        try {
+            return computeOrAwait(cache, key, compute);
+        } catch (McpException e) {
+            // A caller that waited on another request's computation gets that request's
+            // cancellation or deadline; retry once with its own unless it was abandoned too
+            if (!e.isAbandoned() || Thread.currentThread().isInterrupted()) {
+                throw e;
+            }
+            RequestContext.current().checkpoint();
+            return computeOrAwait(cache, key, compute);
+        }
+    }
+
+    /**
+     * Computes the result on the calling thread unless another caller already is, in which case it
+     * waits for that caller's result
+     */
+    private static Object computeOrAwait(AsyncCache<Key, Object> cache, Key key, Supplier<Object> compute) {
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> future = cache.get(key, (k, executor) -> created);
+        if (future == created) {
+            try {
+                Object result = compute.get();
+                created.complete(result);
+                return result;
+            } catch (RuntimeException | Error e) {
+                // The cache drops a failed future, so the next caller computes afresh
+                created.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw McpException.cancelled("Request was cancelled");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private Key keyFor(Tool.CachePolicy policy, ToolArguments arguments) {
+        return new Key(arguments, policy.isDataBacked() ? transactionDataService.getSnapshotVersion() : 0);
+    }
+
+    private boolean isCacheable(Tool.CachePolicy policy) {
+        return enabled && policy != null && policy.getTtlSeconds() > 0 && policy.getMaxWeight() > 0;
+    }
+
+    private AsyncCache<Key, Object> cacheFor(String function, Tool.CachePolicy policy) {
+        PolicyCache current = caches.get(function);
+        if (current != null && current.policy.equals(policy)) {
+            return current.cache;
+        }
+        // First use, or the tool was registered again with a different policy
+        return caches.compute(function, (name, existing) -> {
+            if (existing != null && existing.policy.equals(policy)) {
+                return existing;
+            }
+            log.info("Caching results of {} (ttl: {} s, max weight: {})", name, policy.getTtlSeconds(), policy.getMaxWeight());
+            return new PolicyCache(policy);
+        }).cache;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "toolCache";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        for (Map.Entry<String, PolicyCache> entry : caches.entrySet()) {
+            Cache<Key, Object> cache = entry.getValue().cache.synchronous();
+            CacheStats stats = cache.stats();
+            Map<String, Object> toolMetrics = new LinkedHashMap<>();
+            toolMetrics.put("entries", cache.estimatedSize());
+            toolMetrics.put("weight", cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L));
+            toolMetrics.put("maxWeight", entry.getValue().policy.getMaxWeight());
+            // Every miss is looked up twice, so misses are counted as the computations they caused
+            long hits = stats.hitCount();
+            long misses = stats.loadCount();
+            toolMetrics.put("hits", hits);
+            toolMetrics.put("misses", misses);
+            toolMetrics.put("hitRate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+            toolMetrics.put("evictions", stats.evictionCount());
+            toolMetrics.put("loadFailures", stats.loadFailureCount());
+            metrics.put(entry.getKey(), toolMetrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * @return The weight of a result: one per map entry, collection element or scalar it contains
+     */
+    static int weigh(Object value) {
+        if (value instanceof Map) {
+            int weight = 1;
+            for (Object item : ((Map<?, ?>) value).values()) {
+                weight += weigh(item);
+            }
+            return weight;
+        }
+        if (value instanceof Collection) {
+            int weight = 1;
+            for (Object item : (Collection<?>) value) {
+                weight += weigh(item);
+            }
+            return weight;
+        }
+        return 1;
+    }
+
+    /**
+     * A tool's cache together with the policy it was built from
+     */
+    private static final class PolicyCache {
+
+        final Tool.CachePolicy policy;
+        final AsyncCache<Key, Object> cache;
+
+        PolicyCache(Tool.CachePolicy policy) {
+            this.policy = policy;
+            this.cache = Caffeine.newBuilder()
+                    .expireAfterWrite(Duration.ofSeconds(policy.getTtlSeconds()))
+                    .maximumWeight(policy.getMaxWeight())
+                    .weigher((Key key, Object value) -> weigh(value))
+                    .recordStats()
+                    .buildAsync();
+        }
+    }
+
+    /**
+     * Bound arguments, and for data-backed tools the snapshot version the result was computed from
+     */
+    private static final class Key {
+
+        final ToolArguments arguments;
+        final long version;
+
+        Key(ToolArguments arguments, long version) {
+            this.arguments = arguments;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return version == that.version && arguments.equals(that.arguments);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * arguments.hashCode() + Long.hashCode(version);
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.analytics.AggregateSnapshot;
+import com.example.mcpserver.analytics.AuthorizationMetrics;
+import com.example.mcpserver.analytics.DailyAggregates;
+import com.example.mcpserver.analytics.DailySketches;
+import com.example.mcpserver.analytics.DeclineSpikeDetector;
+import com.example.mcpserver.analytics.RollupCube;
+import com.example.mcpserver.analytics.Timeframe;
+import com.example.mcpserver.analytics.TransactionBatch;
+import com.example.mcpserver.analytics.TransactionFileLoader;
+import com.example.mcpserver.analytics.TransactionSegment;
+import com.example.mcpserver.analytics.TransactionSegmentWriter;
+import com.example.mcpserver.analytics.TransactionSegments;
+import com.example.mcpserver.analytics.TransactionSink;
+import com.example.mcpserver.analytics.TransactionSketches;
+import com.example.mcpserver.analytics.TransactionStore;
+import com.example.mcpserver.analytics.TransactionType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transaction history behind the authorization rate analysis, read from the CSV and JSON Lines
+ * files listed in {@code analytics.data.paths}.
+ *
+ * Queries are answered from {@link DailyAggregates}, which every transaction feeds, and from
+ * {@link DailySketches} of distinct cards and amounts, so no per-transaction rows are kept for them.
+ * Without {@code analytics.segments.dir} the files are parsed straight into these at every startup.
+ * With it, each file is converted once into monthly {@link TransactionSegment} files in that
+ * directory; a file is converted again only when it changes. The aggregates, sketches and
+ * {@link DeclineSpikeDetector} built from the latest year of segments are saved next to them as an
+ * {@link AggregateSnapshot}, so a restart loads that one file and only replays the segments when they
+ * have changed since.
+ * Transactions are rolled up into a {@link RollupCube} for portfolio queries as well. With
+ * {@code analytics.cube.path} the cube is saved and reused by later startups for as long as the files
+ * it was built from don't change.
+ * Batches of live transactions from {@link IngestionService} are {@link #ingest(TransactionBatch) applied}
+ * to the aggregates, sketches, spike detector and cube as they arrive. They are not written to segments,
+ * so a long-running ingest doesn't grow the heap or the disk with every event, and they are never saved
+ * with the cube or the snapshot.
+ * Timeframes are whole UTC days ending with the day of the latest transaction rather than the wall
+ * clock, so an exported data set keeps producing the same analysis however old it is.
+ */
+@Slf4j
+@Service
+public class TransactionDataService implements MetricsSource {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final String SNAPSHOT_FILE = "aggregates.snapshot";
+
+    @Value("${analytics.data.paths:}")
+    private String dataPaths;
+
+    @Value("${analytics.segments.dir:}")
+    private String segmentsDir;
+
+    @Value("${analytics.cube.path:}")
+    private String cubePath;
+
+    @Value("${analytics.spikes.baseline-events:2000}")
+    private int spikeBaselineEvents;
+
+    @Value("${analytics.spikes.recent-events:200}")
+    private int spikeRecentEvents;
+
+    @Value("${analytics.spikes.multiplier:3.0}")
+    private double spikeMultiplier;
+
+    @Value("${analytics.spikes.threshold:10.0}")
+    private double spikeThreshold;
+
+    // The mapped segments, or null without them
+    private TransactionSegments segments;
+    private long rows;
+    private DailyAggregates aggregates = new DailyAggregates();
+    private DailySketches sketches = new DailySketches();
+    private DeclineSpikeDetector spikes;
+    private RollupCube cube = new RollupCube();
+    private boolean cubeLoaded;
+    // Where ingested batches go; set once startup loading is done
+    private TransactionSink liveSink;
+    private volatile long liveTransactions;
+    private int segmentCount;
+    private long skippedRows;
+    // Changes once each ingested batch has been fully applied
+    private volatile long snapshotVersion;
+
+    @PostConstruct
+    public void init() {
+        spikes = new DeclineSpikeDetector(spikeBaselineEvents, spikeRecentEvents, spikeMultiplier, spikeThreshold);
+        if (segmentsDir.trim().isEmpty()) {
+            List<Path> files = dataFiles();
+            loadCube(files);
+            TransactionSink sink = aggregates.andThen(sketches).andThen(spikes);
+            TransactionFileLoader loader = new TransactionFileLoader(cubeLoaded ? sink : sink.andThen(cube));
+            for (Path path : files) {
+                try {
+                    loader.load(path);
+                } catch (IOException e) {
+                    log.error("Failed to load transactions from {}", path, e);
+                }
+            }
+            skippedRows = loader.getSkipped();
+            rows = loader.getLoaded();
+        } else {
+            Path directory = Paths.get(segmentsDir.trim());
+            try {
+                Files.createDirectories(directory);
+                for (Path path : dataFiles()) {
+                    convertIfChanged(path, directory);
+                }
+                TransactionSegments opened = TransactionSegments.open(directory);
+                segmentCount = opened.getSegments().size();
+                List<Path> files = new ArrayList<>();
+                opened.getSegments().forEach(segment -> files.add(segment.getPath()));
+                loadCube(files);
+                if (opened.size() > 0) {
+                    Path snapshot = directory.resolve(SNAPSHOT_FILE);
+                    List<String> sources = snapshotSources(files);
+                    if (!loadSnapshot(snapshot, sources)) {
+                        long firstDay = Math.floorDiv(opened.getMaxTimestamp(), DAY_MILLIS) - DailyAggregates.RING_DAYS + 1;
+                        opened.replay(firstDay * DAY_MILLIS, aggregates.andThen(sketches).andThen(spikes));
+                        saveSnapshot(snapshot, sources);
+                    }
+                    if (!cubeLoaded) {
+                        opened.replay(Long.MIN_VALUE, cube);
+                    }
+                }
+                segments = opened;
+                rows = opened.size();
+            } catch (IOException e) {
+                log.error("Failed to open transaction segments in {}", directory, e);
+            }
+        }
+        if (!cubeLoaded) {
+            saveCube();
+        }
+        liveSink = aggregates.andThen(sketches).andThen(spikes).andThen(cube);
+        snapshotVersion++;
+        if (hasData()) {
+            log.info("Transaction data holds {} transactions for {} merchants ({} MB of aggregates{})",
+                    rows, merchantCount(), aggregates.memoryBytes() >> 20,
+                    segmentCount > 0 ? ", mapped from " + segmentCount + " segments" : "");
+        }
+    }
+
+    /**
+     * Loads the saved rollup cube if it was built from exactly the given files as they are now.
+     * Otherwise the cube is rebuilt from the transactions as they are ingested.
+     */
+    private void loadCube(List<Path> files) {
+        cube.setSources(fingerprints(files));
+        if (cubePath.trim().isEmpty() || !Files.exists(Paths.get(cubePath.trim()))) {
+            return;
+        }
+        Path path = Paths.get(cubePath.trim());
+        try {
+            RollupCube saved = RollupCube.load(path);
+            if (saved.getSources().equals(cube.getSources())) {
+                cube = saved;
+                cubeLoaded = true;
+                log.info("Loaded rollup cube with {} cells from {}", saved.getCellCount(), path);
+            } else {
+                log.info("Rebuilding rollup cube {} as its transaction sources changed", path);
+            }
+        } catch (IOException e) {
+            log.warn("Rebuilding rollup cube {}: {}", path, e.getMessage());
+        }
+    }
+
+    private void saveCube() {
+        if (cubePath.trim().isEmpty()) {
+            return;
+        }
+        Path path = Paths.get(cubePath.trim());
+        try {
+            cube.save(path);
+            log.info("Saved rollup cube with {} cells to {}", cube.getCellCount(), path);
+        } catch (IOException e) {
+            log.error("Failed to save rollup cube to {}", path, e);
+        }
+    }
+
+    /**
+     * @return The segment fingerprints, and the spike detector settings its saved state depends on
+     */
+    private List<String> snapshotSources(List<Path> files) {
+        List<String> sources = fingerprints(files);
+        sources.add("spikes|" + spikeBaselineEvents + "|" + spikeRecentEvents + "|" + spikeMultiplier + "|" + spikeThreshold);
+        return sources;
+    }
+
+    /**
+     * Loads the aggregates, sketches and spike detector saved with the segments if they were built from
+     * exactly the given sources. Otherwise they are rebuilt from the segments.
+     */
+    private boolean loadSnapshot(Path path, List<String> sources) {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        DailyAggregates savedAggregates = new DailyAggregates();
+        DailySketches savedSketches = new DailySketches();
+        DeclineSpikeDetector savedSpikes = new DeclineSpikeDetector(spikeBaselineEvents, spikeRecentEvents,
+                spikeMultiplier, spikeThreshold);
+        try {
+            if (AggregateSnapshot.load(path, sources, savedAggregates, savedSketches, savedSpikes)) {
+                aggregates = savedAggregates;
+                sketches = savedSketches;
+                spikes = savedSpikes;
+                log.info("Loaded aggregates of {} merchants from {}", savedAggregates.merchantCount(), path);
+                return true;
+            }
+            log.info("Rebuilding aggregates {} as the transaction segments changed", path);
+        } catch (IOException e) {
+            log.warn("Rebuilding aggregates {}: {}", path, e.getMessage());
+        }
+        return false;
+    }
+
+    private void saveSnapshot(Path path, List<String> sources) {
+        try {
+            AggregateSnapshot.save(path, sources, aggregates, sketches, spikes);
+            log.info("Saved aggregates of {} merchants to {}", aggregates.merchantCount(), path);
+        } catch (IOException e) {
+            log.error("Failed to save aggregates to {}", path, e);
+        }
+    }
+
+    /**
+     * @return A description of each file that changes whenever its contents are likely to have changed
+     */
+    private static List<String> fingerprints(List<Path> files) {
+        List<String> fingerprints = new ArrayList<>();
+        for (Path file : files) {
+            try {
+                fingerprints.add(file.toAbsolutePath() + "|" + Files.size(file) + "|" + Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException e) {
+                fingerprints.add(file.toAbsolutePath() + "|missing");
+            }
+        }
+        return fingerprints;
+    }
+
+    private List<Path> dataFiles() {
+        List<Path> files = new ArrayList<>();
+        for (String dataPath : dataPaths.split(",")) {
+            if (!dataPath.trim().isEmpty()) {
+                files.add(Paths.get(dataPath.trim()));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Writes the segments of a data file unless segments at least as new as the file already exist
+     * in the current segment format
+     */
+    private void convertIfChanged(Path path, Path directory) {
+        String prefix = path.getFileName().toString();
+        try {
+            List<Path> existing = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + ".*" + TransactionSegmentWriter.EXTENSION)) {
+                files.forEach(existing::add);
+            }
+            FileTime modified = Files.getLastModifiedTime(path);
+            boolean current = !existing.isEmpty();
+            for (Path segment : existing) {
+                current &= Files.getLastModifiedTime(segment).compareTo(modified) >= 0 && isReadable(segment);
+            }
+            if (current) {
+                return;
+            }
+
+            TransactionStore store = new TransactionStore();
+            TransactionFileLoader loader = new TransactionFileLoader(store);
+            loader.load(path);
+            skippedRows += loader.getSkipped();
+            for (Path segment : existing) {
+                Files.delete(segment);
+            }
+            List<Path> written = TransactionSegmentWriter.writeMonthly(store, directory, prefix);
+            log.info("Wrote {} transaction segments for {}", written.size(), path);
+        } catch (IOException e) {
+            log.error("Failed to convert transactions from {} into segments", path, e);
+        }
+    }
+
+    private static boolean isReadable(Path segment) {
+        try {
+            TransactionSegment.open(segment);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Applies a batch of live transactions to each structure in turn. Batches are applied one at a time,
+     * but queries don't wait for them: a query running meanwhile may see part of the batch, e.g. in the
+     * aggregates but not yet in the cube. The snapshot version changes once the whole batch is applied,
+     * so a result cached under the version read before computing it is never served after the batch.
+     *
+     * @param batch The transactions
+     */
+    public synchronized void ingest(TransactionBatch batch) {
+        liveSink.append(batch);
+        liveTransactions += batch.size();
+        snapshotVersion++;
+    }
+
+    /**
+     * Adds a sink that sees every batch of live transactions once it has been applied
+     *
+     * @param sink The sink, which must be quick as ingestion waits for it
+     */
+    public synchronized void addLiveSink(TransactionSink sink) {
+        liveSink = liveSink.andThen(sink);
+    }
+
+    /**
+     * @return Whether any transactions were loaded; without them the analysis falls back to sample figures
+     */
+    public boolean hasData() {
+        return rows > 0 || liveTransactions > 0;
+    }
+
+    private int merchantCount() {
+        return segments != null ? segments.merchantCount() : aggregates.merchantCount();
+    }
+
+    /**
+     * @return A number that changes after each batch of live transactions is applied, for caching results
+     *         derived from them; read it before computing a result to cache under it
+     */
+    public long getSnapshotVersion() {
+        return snapshotVersion;
+    }
+
+    public RollupCube getCube() {
+        return cube;
+    }
+
+    public DailyAggregates getAggregates() {
+        return aggregates;
+    }
+
+    public DeclineSpikeDetector getSpikes() {
+        return spikes;
+    }
+
+    /**
+     * Computes authorization metrics for a merchant's transactions in a timeframe from the daily aggregates
+     *
+     * @param merchantId The merchant ID
+     * @param timeframe The analysis window, in whole days ending with the day of the latest transaction
+     * @param type The transaction type, or null for all types
+     * @return The metrics; empty if the merchant has no transactions
+     */
+    public AuthorizationMetrics metrics(String merchantId, Timeframe timeframe, TransactionType type) {
+        AuthorizationMetrics metrics = new AuthorizationMetrics();
+        aggregates.query(merchantId, timeframe.days(), type != null ? type.code() : DailyAggregates.ANY_TYPE, metrics);
+        return metrics;
+    }
+
+    /**
+     * Merges the sketches of a merchant's transactions in a timeframe
+     *
+     * @param merchantId The merchant ID
+     * @param timeframe The analysis window, in whole days ending with the day of the latest transaction
+     * @param type The transaction type, or null for all types
+     * @return The sketches; empty if the merchant has no transactions with amounts or cards
+     */
+    public TransactionSketches sketches(String merchantId, Timeframe timeframe, TransactionType type) {
+        TransactionSketches merged = new TransactionSketches();
+        sketches.query(merchantId, timeframe.days(), type != null ? type.code() : DailyAggregates.ANY_TYPE, merged);
+        return merged;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "transactions";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("rows", rows);
+        metrics.put("merchants", merchantCount());
+        metrics.put("skippedRows", skippedRows);
+        metrics.put("liveTransactions", liveTransactions);
+        metrics.put("snapshotVersion", snapshotVersion);
+        metrics.put("segments", segmentCount);
+        metrics.put("memoryBytes", segments != null ? segments.memoryBytes() : 0);
+        metrics.put("aggregateMerchants", aggregates.merchantCount());
+        metrics.put("aggregateBytes", aggregates.memoryBytes());
+        metrics.put("aggregateDropped", aggregates.getDropped());
+        metrics.put("sketchMerchants", sketches.merchantCount());
+        metrics.put("sketchBytes", sketches.memoryBytes());
+        metrics.put("spikeMerchants", spikes.merchantCount());
+        metrics.put("spikeBytes", spikes.memoryBytes());
+        metrics.put("cubeCells", cube.getCellCount());
+        metrics.put("cubeBytes", cube.memoryBytes());
+        return metrics;
+    }
+}
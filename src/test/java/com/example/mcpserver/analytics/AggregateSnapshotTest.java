@@ -0,0 +1,103 @@
+package com.example.mcpserver.analytics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AggregateSnapshotTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void loadedSnapshotShouldAnswerLikeTheStructuresItWasSavedFrom(@TempDir Path directory) throws Exception {
+        DailyAggregates aggregates = new DailyAggregates();
+        DailySketches sketches = new DailySketches();
+        DeclineSpikeDetector spikes = new DeclineSpikeDetector(100, 20, 3.0, 5.0);
+        TransactionSink sink = aggregates.andThen(sketches).andThen(spikes);
+        // Over a year, so the rings wrap
+        for (int i = 0; i < 400 * 8; i++) {
+            sink.append(20000 * DAY + i * (DAY / 8), "m" + (i % 3), TransactionType.fromCode(i % 2), i % 5 != 0,
+                    DeclineReason.fromCode(i % DeclineReason.count()), i % 7 == 0 ? Float.NaN : 5 + i % 300, i + 1, 400000 + i % 11);
+        }
+        // Enough cards in a day to make its card sketch dense
+        for (int i = 0; i < 1000; i++) {
+            sink.append(20399 * DAY + i, "m1", TransactionType.BANK, true, null, 20, 100000 + i, 0);
+        }
+        // m2 then has a run of risk declines
+        for (int i = 0; i < 40; i++) {
+            sink.append(20400 * DAY, "m2", TransactionType.CARD, false, DeclineReason.RISK_TRIGGERS);
+        }
+        assertEquals(1, spikes.spikes(null).size());
+
+        List<String> sources = Collections.singletonList("tx.csv.2024-01.seg|1|2");
+        Path path = directory.resolve("aggregates.snapshot");
+        AggregateSnapshot.save(path, sources, aggregates, sketches, spikes);
+        DailyAggregates loadedAggregates = new DailyAggregates();
+        DailySketches loadedSketches = new DailySketches();
+        DeclineSpikeDetector loadedSpikes = new DeclineSpikeDetector(100, 20, 3.0, 5.0);
+        assertTrue(AggregateSnapshot.load(path, sources, loadedAggregates, loadedSketches, loadedSpikes));
+
+        assertEquals(aggregates.getLatestDay(), loadedAggregates.getLatestDay());
+        assertEquals(aggregates.getDropped(), loadedAggregates.getDropped());
+        for (Timeframe timeframe : Timeframe.values()) {
+            for (String merchantId : List.of("m0", "m1", "m2")) {
+                AuthorizationMetrics expected = new AuthorizationMetrics();
+                AuthorizationMetrics actual = new AuthorizationMetrics();
+                aggregates.query(merchantId, timeframe.days(), DailyAggregates.ANY_TYPE, expected);
+                loadedAggregates.query(merchantId, timeframe.days(), DailyAggregates.ANY_TYPE, actual);
+                assertEquals(expected.getTotal(), actual.getTotal());
+                assertEquals(expected.getDeclineReasonShares(), actual.getDeclineReasonShares());
+
+                TransactionSketches expectedSketches = new TransactionSketches();
+                TransactionSketches actualSketches = new TransactionSketches();
+                sketches.query(merchantId, timeframe.days(), TransactionType.BANK.code(), expectedSketches);
+                loadedSketches.query(merchantId, timeframe.days(), TransactionType.BANK.code(), actualSketches);
+                assertEquals(expectedSketches.getCards().estimate(), actualSketches.getCards().estimate());
+                assertEquals(expectedSketches.getDeclinedBins().estimate(), actualSketches.getDeclinedBins().estimate());
+                assertEquals(expectedSketches.getApprovedAmounts().quantile(0.9), actualSketches.getApprovedAmounts().quantile(0.9));
+                assertEquals(expectedSketches.getDeclinedAmounts().getMean(), actualSketches.getDeclinedAmounts().getMean());
+            }
+        }
+        DeclineSpikeDetector.Spike expected = spikes.spikes(null).get(0);
+        DeclineSpikeDetector.Spike actual = loadedSpikes.spikes(null).get(0);
+        assertEquals(expected.getMerchantId(), actual.getMerchantId());
+        assertEquals(expected.getScore(), actual.getScore());
+        assertEquals(expected.getSince(), actual.getSince());
+
+        // Later events carry on from the loaded state
+        for (int i = 0; i < 200; i++) {
+            spikes.append(20400 * DAY, "m2", TransactionType.CARD, true, null);
+            loadedSpikes.append(20400 * DAY, "m2", TransactionType.CARD, true, null);
+        }
+        assertEquals(spikes.spikes(null).size(), loadedSpikes.spikes(null).size());
+    }
+
+    @Test
+    public void snapshotOfOtherSourcesShouldNotBeLoaded(@TempDir Path directory) throws Exception {
+        DailyAggregates aggregates = new DailyAggregates();
+        aggregates.append(20000 * DAY, "m1", TransactionType.CARD, true, null);
+        Path path = directory.resolve("aggregates.snapshot");
+        AggregateSnapshot.save(path, Collections.singletonList("a.seg|1|2"), aggregates, new DailySketches(),
+                new DeclineSpikeDetector(100, 20, 3.0, 5.0));
+
+        DailyAggregates loaded = new DailyAggregates();
+        assertFalse(AggregateSnapshot.load(path, Collections.singletonList("a.seg|1|3"), loaded, new DailySketches(),
+                new DeclineSpikeDetector(100, 20, 3.0, 5.0)));
+        assertEquals(0, loaded.merchantCount());
+
+        Files.write(path, new byte[] {1, 2, 3});
+        assertThrows(IOException.class, () -> AggregateSnapshot.load(path, Collections.singletonList("a.seg|1|2"),
+                loaded, new DailySketches(), new DeclineSpikeDetector(100, 20, 3.0, 5.0)));
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.mcpserver.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DailyAggregatesTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void shouldMatchCountsOverWholeDaysAndDropEventsOlderThanTheRing() {
+        DailyAggregates aggregates = new DailyAggregates();
+        long firstDay = 20000;
+        int events = 730 * 6;
+        // Two years of transactions, so the ring wraps round and reuses its buckets
+        for (int i = 0; i < events; i++) {
+            aggregates.append(timestamp(firstDay, i), merchant(i), TransactionType.fromCode(i % 3), i % 4 != 0,
+                    DeclineReason.fromCode(i % DeclineReason.count()));
+        }
+        aggregates.append(firstDay * DAY, "m1", TransactionType.CARD, true, null);
+        assertEquals(1, aggregates.getDropped());
+
+        long end = (aggregates.getLatestDay() + 1) * DAY;
+        for (Timeframe timeframe : Timeframe.values()) {
+            for (int type = DailyAggregates.ANY_TYPE; type < 3; type++) {
+                AuthorizationMetrics expected = new AuthorizationMetrics();
+                AuthorizationMetrics actual = new AuthorizationMetrics();
+                for (int i = 0; i < events; i++) {
+                    long timestamp = timestamp(firstDay, i);
+                    if (timestamp >= timeframe.startMillis(end) && merchant(i).equals("m1") && (type == DailyAggregates.ANY_TYPE || i % 3 == type)) {
+                        expected.total++;
+                        if (i % 4 != 0) {
+                            expected.approved++;
+                        } else {
+                            expected.declines[i % DeclineReason.count()]++;
+                        }
+                    }
+                }
+                aggregates.query("m1", timeframe.days(), type, actual);
+                assertEquals(expected.getTotal(), actual.getTotal());
+                assertEquals(expected.getApproved(), actual.getApproved());
+                assertEquals(expected.getDeclineReasonShares(), actual.getDeclineReasonShares());
+            }
+        }
+    }
+
+    private static long timestamp(long firstDay, int i) {
+        return firstDay * DAY + i * (DAY / 6) + 1;
+    }
+
+    private static String merchant(int i) {
+        return i % 5 == 0 ? "m2" : "m1";
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.mcpserver.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DeclineSpikeDetectorTest {
+
+    @Test
+    public void shouldFlagASpikingReasonUntilItsRateRecovers() {
+        DeclineSpikeDetector detector = new DeclineSpikeDetector(2000, 200, 3.0, 10.0);
+        Random random = new Random(42);
+        long timestamp = 1_700_000_000_000L;
+        // A steady 5% of risk declines and 3% of insufficient funds for both merchants
+        for (int i = 0; i < 50000; i++) {
+            append(detector, random, timestamp++, "m" + (i % 2), 0.05);
+        }
+        assertTrue(detector.spikes(null).isEmpty());
+
+        long spikeStart = timestamp;
+        for (int i = 0; i < 1200; i++) {
+            append(detector, random, timestamp++, "m" + (i % 2), i % 2 == 0 ? 0.15 : 0.05);
+        }
+        List<DeclineSpikeDetector.Spike> spikes = detector.spikes(null);
+        assertEquals(1, spikes.size());
+        DeclineSpikeDetector.Spike spike = spikes.get(0);
+        assertEquals("m0", spike.getMerchantId());
+        assertEquals(DeclineReason.RISK_TRIGGERS, spike.getReason());
+        assertTrue(spike.getSince() > spikeStart && spike.getSince() < spikeStart + 1200, "flagged at " + (spike.getSince() - spikeStart));
+        assertTrue(spike.getRecentRate() > 0.1 && spike.getBaselineRate() < 0.1, spike.getBaselineRate() + " to " + spike.getRecentRate());
+        assertTrue(detector.spikes(DeclineReason.INSUFFICIENT_FUNDS).isEmpty());
+
+        for (int i = 0; i < 4000; i++) {
+            append(detector, random, timestamp++, "m" + (i % 2), 0.05);
+        }
+        assertTrue(detector.spikes(null).isEmpty());
+    }
+
+    private static void append(DeclineSpikeDetector detector, Random random, long timestamp, String merchantId, double riskRate) {
+        double draw = random.nextDouble();
+        if (draw < riskRate) {
+            detector.append(timestamp, merchantId, TransactionType.CARD, false, DeclineReason.RISK_TRIGGERS);
+        } else if (draw < riskRate + 0.03) {
+            detector.append(timestamp, merchantId, TransactionType.CARD, false, DeclineReason.INSUFFICIENT_FUNDS);
+        } else {
+            detector.append(timestamp, merchantId, TransactionType.CARD, true, null);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.mcpserver.analytics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PortfolioScanTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void shouldMatchPerMerchantQueriesAcrossSplitTasks() throws Exception {
+        DailyAggregates aggregates = new DailyAggregates();
+        long day = TimeUnit.DAYS.toMillis(1);
+        List<String> merchantIds = new ArrayList<>();
+        int active = 0;
+        // Several leaf tasks' worth of merchants, one of them without transactions
+        for (int merchant = 0; merchant < PortfolioScan.LEAF_SIZE * 5; merchant++) {
+            merchantIds.add("m" + merchant);
+            active += merchant % 7 > 0 ? 1 : 0;
+            for (int i = 0; i < merchant % 7; i++) {
+                aggregates.append(20000 * day + i * day, "m" + merchant, TransactionType.CARD, i % 3 != 0, DeclineReason.EXPIRED_CARD);
+            }
+        }
+        merchantIds.add("unknown");
+        // Recovers 60% of expired card declines on cards, then half of what is left on any type
+        RecommendationRules rules = RecommendationRules.compile(new ObjectMapper().readTree("{\"rules\": ["
+                + "{\"id\": \"a\", \"title\": \"A\", \"description\": \"A\", \"transactionTypes\": [\"card\"], \"recoveryRates\": {\"expired_card\": 0.6}},"
+                + "{\"id\": \"b\", \"title\": \"B\", \"description\": \"B\", \"recoveryRates\": {\"expired_card\": 0.5}}]}"));
+
+        PortfolioScan.Result result = PortfolioScan.run(pool, aggregates, rules, merchantIds, 30, DailyAggregates.ANY_TYPE, () -> { });
+
+        AuthorizationMetrics expectedTotal = new AuthorizationMetrics();
+        for (String merchantId : merchantIds) {
+            aggregates.query(merchantId, 30, DailyAggregates.ANY_TYPE, expectedTotal);
+        }
+        assertEquals(active, result.getMerchants().size());
+        assertEquals(expectedTotal.getTotal(), result.getTotal().getTotal());
+        assertEquals(expectedTotal.getApproved(), result.getTotal().getApproved());
+        for (PortfolioScan.MerchantMetrics merchant : result.getMerchants()) {
+            AuthorizationMetrics expected = new AuthorizationMetrics();
+            aggregates.query(merchant.getMerchantId(), 30, DailyAggregates.ANY_TYPE, expected);
+            assertEquals(expected.getDeclineReasonShares(), merchant.getMetrics().getDeclineReasonShares());
+            assertEquals(expected.getDeclined() * 0.8, merchant.getRecoverable(), 1e-9);
+        }
+        assertEquals(expectedTotal.getDeclined() * 0.8, result.getRecoverable(), 1e-9);
+    }
+}
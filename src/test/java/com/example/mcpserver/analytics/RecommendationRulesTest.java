@@ -0,0 +1,56 @@
+package com.example.mcpserver.analytics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RecommendationRulesTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void shouldRankTheBuiltInRulesByRecoveredDeclinesForTheTypesTheyApplyTo() throws Exception {
+        RecommendationRules rules;
+        try (InputStream in = getClass().getResourceAsStream("/recommendation-rules.json")) {
+            rules = RecommendationRules.compile(objectMapper.readTree(in));
+        }
+        AuthorizationMetrics[] byType = new AuthorizationMetrics[TransactionType.values().length];
+        for (int type = 0; type < byType.length; type++) {
+            byType[type] = new AuthorizationMetrics();
+        }
+        // Wallet declines only count for rules without a type restriction
+        byType[TransactionType.CARD.code()].add(true, null, 800);
+        byType[TransactionType.CARD.code()].add(false, DeclineReason.EXPIRED_CARD, 100);
+        byType[TransactionType.WALLET.code()].add(false, DeclineReason.RISK_TRIGGERS, 100);
+
+        List<RecommendationRules.Recommendation> ranked = rules.rank(byType);
+        assertEquals("account_updater", ranked.get(0).getId());
+        assertEquals(60, ranked.get(0).getEstimatedRecoveredTransactions());
+        assertEquals(6.0, ranked.get(0).getEstimatedImpactPercentage());
+        assertEquals("high", ranked.get(0).getPriority());
+        assertEquals("network_tokens", ranked.get(1).getId());
+        assertEquals(30, ranked.get(1).getEstimatedRecoveredTransactions());
+        assertEquals("risk_rules", ranked.get(2).getId());
+        assertEquals("checkout_validation", ranked.get(3).getId());
+        assertEquals(4, ranked.size());
+
+        // Account updater, network tokens and checkout validation each recover part of what the others leave
+        assertEquals(100 * (1 - 0.4 * 0.7 * 0.9), rules.recoverable(byType[TransactionType.CARD.code()],
+                TransactionType.CARD.code()), 1e-9);
+        assertEquals(25.0, rules.recoverable(byType[TransactionType.WALLET.code()], TransactionType.WALLET.code()), 1e-9);
+    }
+
+    @Test
+    public void shouldRejectRulesWithUnknownReasonsOrRatesOutOfRange() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> RecommendationRules.compile(objectMapper.readTree(
+                "{\"rules\": [{\"id\": \"a\", \"title\": \"A\", \"description\": \"A\", \"recoveryRates\": {\"stolen_card\": 0.5}}]}")));
+        assertThrows(IllegalArgumentException.class, () -> RecommendationRules.compile(objectMapper.readTree(
+                "{\"rules\": [{\"id\": \"a\", \"title\": \"A\", \"description\": \"A\", \"recoveryRates\": {\"other\": 1.5}}]}")));
+        assertThrows(IllegalArgumentException.class, () -> RecommendationRules.compile(objectMapper.readTree("{\"rules\": []}")));
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.mcpserver.analytics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RollupCubeTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void shouldRollUpByDimensionAndSurviveSaveAndLoad(@TempDir Path directory) throws Exception {
+        RollupCube cube = new RollupCube();
+        // Enough merchant-days to grow the cells and their table several times
+        for (int merchant = 0; merchant < 50; merchant++) {
+            for (int day = 0; day < 60; day++) {
+                for (int i = 0; i <= merchant % 3; i++) {
+                    cube.append((19000 + day) * DAY + i, "m" + merchant, TransactionType.fromCode(i), i != 1, DeclineReason.RISK_TRIGGERS);
+                }
+            }
+        }
+        assertEquals(60 * (17 + 17 * 2 + 16 * 3), cube.getCellCount());
+
+        long[] all = cube.aggregate(19000, 19059, DailyAggregates.ANY_TYPE, null, RollupCube.Dimension.NONE);
+        assertEquals(17 * 60 + 17 * 60 * 2 + 16 * 60 * 3, all[RollupCube.TOTAL]);
+        long[] byMerchant = cube.aggregate(19030, 19059, DailyAggregates.ANY_TYPE, null, RollupCube.Dimension.MERCHANT);
+        int m2 = cube.getMerchants().codeOf("m2");
+        assertEquals(90, RollupMetric.TRANSACTIONS.value(byMerchant, m2));
+        assertEquals(30, RollupMetric.RISK_TRIGGERS.value(byMerchant, m2));
+        assertEquals(33.3, RollupMetric.DECLINE_RATE.value(byMerchant, m2));
+
+        BitSet filter = new BitSet();
+        filter.set(m2);
+        long[] byType = cube.aggregate(19059, 19059, DailyAggregates.ANY_TYPE, filter, RollupCube.Dimension.TYPE);
+        assertEquals(1, RollupMetric.DECLINED.value(byType, TransactionType.BANK.code()));
+
+        cube.setSources(Collections.singletonList("tx.csv|1|2"));
+        Path path = directory.resolve("rollup.cube");
+        cube.save(path);
+        RollupCube loaded = RollupCube.load(path);
+        assertEquals(cube.getSources(), loaded.getSources());
+        assertEquals(cube.getMaxDay(), loaded.getMaxDay());
+        assertArrayEquals(byMerchant, loaded.aggregate(19030, 19059, DailyAggregates.ANY_TYPE, null, RollupCube.Dimension.MERCHANT));
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.mcpserver.analytics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TailingInputStreamTest {
+
+    @Test
+    public void shouldFollowAppendsInBatchesUntilTheFileIsTruncated(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("live.csv");
+        Files.write(file, "timestamp,merchant_id,type,approved,decline_reason\n1000,m1,card,true,\n".getBytes(StandardCharsets.UTF_8));
+
+        TransactionStore store = new TransactionStore();
+        DailyAggregates aggregates = new DailyAggregates();
+        TransactionBatch batch = new TransactionBatch(16);
+        TransactionSink batcher = new TransactionSink() {
+            @Override
+            public void append(long timestamp, String merchantId, TransactionType type, boolean approved, DeclineReason reason) {
+                batch.add(timestamp, merchantId, type, approved, reason, Float.NaN, 0, 0);
+            }
+        };
+        TransactionFileLoader loader = new TransactionFileLoader(batcher);
+        CompletableFuture<Void> tail = CompletableFuture.runAsync(() -> {
+            try (TailingInputStream in = new TailingInputStream(file, 10)) {
+                loader.loadCsv(new InputStreamReader(in, StandardCharsets.UTF_8));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        Files.write(file, "2000,m1,card,false,expired_card\n3000,m2,bank,true,\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (loader.getLoaded() < 3 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        // Truncating the file ends the stream, so the reader can start over
+        Files.write(file, new byte[0]);
+        tail.get(10, TimeUnit.SECONDS);
+
+        assertEquals(3, batch.size());
+        store.andThen(aggregates).append(batch);
+        assertEquals(3, store.size());
+        AuthorizationMetrics metrics = new AuthorizationMetrics();
+        aggregates.query("m1", 1, DailyAggregates.ANY_TYPE, metrics);
+        assertEquals(2, metrics.total);
+        assertEquals(1, metrics.declines[DeclineReason.EXPIRED_CARD.code()]);
+    }
+
+    @Test
+    public void loaderShouldResumeAFileAtTheLastLineItConsumed(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("live.csv");
+        Files.write(file, "timestamp,merchant_id,type,approved,decline_reason\n1000,m1,card,true,\n2000,m2".getBytes(StandardCharsets.UTF_8));
+        TransactionStore store = new TransactionStore();
+        TransactionFileLoader loader = new TransactionFileLoader(store);
+        Object fileKey;
+        try (TailingInputStream in = new TailingInputStream(file, 10)) {
+            fileKey = in.getFileKey();
+        }
+        // A read error in the middle of the last line
+        InputStream failing = new SequenceInputStream(Files.newInputStream(file), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Input/output error");
+            }
+        });
+        assertThrows(IOException.class, () -> loader.loadCsv(failing));
+        assertEquals(1, loader.getLoaded());
+        long consumed = loader.getConsumed();
+        assertEquals("timestamp,merchant_id,type,approved,decline_reason\n1000,m1,card,true,\n".length(), consumed);
+
+        Files.write(file, ",bank,false,expired_card\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try (TailingInputStream in = new TailingInputStream(file, 10, consumed, fileKey)) {
+            CompletableFuture<Void> tail = CompletableFuture.runAsync(() -> {
+                try {
+                    loader.loadCsv(in);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (loader.getLoaded() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            in.close();
+            tail.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(2, store.size());
+        assertEquals(0, loader.getSkipped());
+
+        // Another file at the path ends the resumed stream at once
+        Path rotated = directory.resolve("live.csv.new");
+        Files.write(rotated, "timestamp,merchant_id,type,approved,decline_reason\n1000,m1,card,true,\n3000,m3,card,true,\n"
+                .getBytes(StandardCharsets.UTF_8));
+        Files.move(rotated, file, StandardCopyOption.REPLACE_EXISTING);
+        try (TailingInputStream in = new TailingInputStream(file, 10, consumed, fileKey)) {
+            assertTrue(fileKey == null || in.read() < 0);
+        }
+    }
+}
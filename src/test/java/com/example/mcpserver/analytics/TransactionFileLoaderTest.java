@@ -0,0 +1,38 @@
+package com.example.mcpserver.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TransactionFileLoaderTest {
+
+    @Test
+    public void shouldLoadCsvAndJsonLinesSkippingInvalidRows() throws Exception {
+        TransactionStore store = new TransactionStore();
+        DailyAggregates aggregates = new DailyAggregates();
+        TransactionFileLoader loader = new TransactionFileLoader(store.andThen(aggregates));
+        loader.loadCsv(new StringReader("merchant_id,timestamp,type,approved,decline_reason\n"
+                + "m1,1700000000000,card,true,\n"
+                + "m1,2023-11-14T22:13:21Z,bank,false,insufficient_funds\n"
+                + "m1,not-a-time,card,true,\n"
+                + "m1,1700000000002,cheque,true,\n"));
+        loader.loadJsonLines(new ByteArrayInputStream(("{\"merchantId\":\"m2\",\"timestamp\":1700000000003,\"type\":\"wallet\",\"approved\":false,\"declineReason\":\"risk_triggers\"}\n"
+                + "{\"merchantId\":\"m2\",\"type\":\"wallet\",\"approved\":true}\n").getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(3, loader.getLoaded());
+        assertEquals(3, loader.getSkipped());
+        assertEquals(3, store.size());
+        assertEquals(1700000001000L, store.getMaxTimestamp());
+        AuthorizationMetrics m1 = new AuthorizationMetrics();
+        aggregates.query("m1", 1, DailyAggregates.ANY_TYPE, m1);
+        assertEquals(1, m1.getApproved());
+        assertEquals(1, m1.getDeclines(DeclineReason.INSUFFICIENT_FUNDS));
+        AuthorizationMetrics m2 = new AuthorizationMetrics();
+        aggregates.query("m2", 1, TransactionType.WALLET.code(), m2);
+        assertEquals(1, m2.getDeclines(DeclineReason.RISK_TRIGGERS));
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.mcpserver.analytics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TransactionSegmentTest {
+
+    @Test
+    public void shouldReplayMonthlySegmentsLikeTheEventsTheyWereWrittenFrom(@TempDir Path directory) throws Exception {
+        TransactionStore store = new TransactionStore();
+        DailyAggregates expectedAggregates = new DailyAggregates();
+        DailySketches expectedSketches = new DailySketches();
+        TransactionSink sink = store.andThen(expectedAggregates).andThen(expectedSketches);
+        long start = Instant.parse("2024-01-15T00:00:00Z").toEpochMilli();
+        long hour = TimeUnit.HOURS.toMillis(1);
+        // About three months of hourly transactions for three merchants, slightly out of time order
+        for (int i = 0; i < 24 * 90; i++) {
+            long timestamp = start + (i % 10 == 0 ? i - 3 : i) * hour;
+            DeclineReason reason = DeclineReason.fromCode(i % DeclineReason.count());
+            sink.append(timestamp, "m" + (i % 3), TransactionType.fromCode(i % 4), i % 7 != 0, reason,
+                    i % 5 == 0 ? Float.NaN : 10 + i % 250, i % 400 + 1, 400000 + i % 9);
+        }
+
+        List<Path> written = TransactionSegmentWriter.writeMonthly(store, directory, "tx.csv");
+        assertEquals(4, written.size());
+        TransactionSegments segments = TransactionSegments.open(directory);
+        assertEquals(store.size(), segments.size());
+        assertEquals(store.getMaxTimestamp(), segments.getMaxTimestamp());
+        assertEquals(3, segments.merchantCount());
+
+        DailyAggregates actualAggregates = new DailyAggregates();
+        DailySketches actualSketches = new DailySketches();
+        segments.replay(Long.MIN_VALUE, actualAggregates.andThen(actualSketches));
+        for (Timeframe timeframe : Timeframe.values()) {
+            for (int type = DailyAggregates.ANY_TYPE; type < 4; type++) {
+                AuthorizationMetrics expected = new AuthorizationMetrics();
+                AuthorizationMetrics actual = new AuthorizationMetrics();
+                expectedAggregates.query("m1", timeframe.days(), type, expected);
+                actualAggregates.query("m1", timeframe.days(), type, actual);
+                assertEquals(expected.getTotal(), actual.getTotal());
+                assertEquals(expected.getApproved(), actual.getApproved());
+                assertEquals(expected.getDeclineReasonShares(), actual.getDeclineReasonShares());
+            }
+        }
+
+        TransactionSketches expected = new TransactionSketches();
+        TransactionSketches actual = new TransactionSketches();
+        expectedSketches.query("m1", Timeframe.LAST_90_DAYS.days(), DailyAggregates.ANY_TYPE, expected);
+        actualSketches.query("m1", Timeframe.LAST_90_DAYS.days(), DailyAggregates.ANY_TYPE, actual);
+        assertEquals(expected.getCards().estimate(), actual.getCards().estimate());
+        assertEquals(expected.getDeclinedBins().estimate(), actual.getDeclinedBins().estimate());
+        assertEquals(expected.getApprovedAmounts().getCount(), actual.getApprovedAmounts().getCount());
+        assertEquals(expected.getApprovedAmounts().quantile(0.95), actual.getApprovedAmounts().quantile(0.95));
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.mcpserver.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransactionSketchesTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void shouldEstimateDistinctCardsWithinTheStandardErrorAndMergeToTheUnion() {
+        HyperLogLog small = new HyperLogLog();
+        for (int card = 1; card <= 40; card++) {
+            small.add(card);
+            small.add(card);
+        }
+        assertEquals(40, small.estimate());
+        assertTrue(small.memoryBytes() < 1024);
+
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        for (int card = 1; card <= 200_000; card++) {
+            (card <= 120_000 ? first : second).add(TransactionFileLoader.fingerprint("card-" + card));
+        }
+        // Overlapping range, so the union has 200,000 distinct cards
+        for (int card = 100_000; card <= 120_000; card++) {
+            second.add(TransactionFileLoader.fingerprint("card-" + card));
+        }
+        first.merge(second);
+        first.merge(small);
+        assertEquals(200_040, first.estimate(), 200_040 * 3 * HyperLogLog.standardError() / 100);
+    }
+
+    @Test
+    public void shouldEstimateAmountQuantilesWithinTheRelativeAccuracyAcrossMergedDays() {
+        DailySketches sketches = new DailySketches();
+        Random random = new Random(42);
+        double[] declined = new double[30 * 500];
+        for (int i = 0; i < declined.length; i++) {
+            double amount = Math.exp(random.nextGaussian() + 4);
+            declined[i] = (float) amount;
+            long timestamp = (20000 + i / 500) * DAY + i;
+            sketches.append(timestamp, "m1", TransactionType.CARD, false, DeclineReason.OTHER, (float) amount, i % 700 + 1, 0);
+            sketches.append(timestamp, "m1", TransactionType.CARD, true, null, (float) amount * 2, 0, 0);
+        }
+        // Not sketched: no amount, card or BIN
+        sketches.append(20029 * DAY, "m2", TransactionType.CARD, true, null);
+        assertEquals(1, sketches.merchantCount());
+
+        TransactionSketches window = new TransactionSketches();
+        sketches.query("m1", Timeframe.LAST_90_DAYS.days(), DailyAggregates.ANY_TYPE, window);
+        assertEquals(declined.length, window.getDeclinedAmounts().getCount());
+        assertEquals(declined.length, window.getApprovedAmounts().getCount());
+        assertEquals(700, window.getDeclinedCards().estimate(), 700 * 0.05);
+
+        Arrays.sort(declined);
+        for (double quantile : new double[] {0.5, 0.9, 0.95, 0.99}) {
+            double exact = declined[(int) Math.floor(quantile * (declined.length - 1))];
+            double estimate = window.getDeclinedAmounts().quantile(quantile);
+            assertEquals(exact, estimate, exact * AmountSketch.RELATIVE_ACCURACY);
+        }
+        assertEquals(declined[declined.length - 1] * 2, window.getApprovedAmounts().getMax(), 1e-3);
+
+        TransactionSketches lastWeek = new TransactionSketches();
+        sketches.query("m1", Timeframe.LAST_7_DAYS.days(), TransactionType.CARD.code(), lastWeek);
+        assertEquals(7 * 500, lastWeek.getDeclinedAmounts().getCount());
+    }
+}
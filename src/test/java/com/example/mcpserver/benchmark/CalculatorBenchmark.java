@@ -0,0 +1,86 @@
+package com.example.mcpserver.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.example.mcpserver.service.CalculatorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares calculating a batch of rows one {@link CalculatorService#calculate} call at a time
+ * with a single {@link CalculatorService#calculateBulk} call.
+ *
+ * Run after {@code mvn test-compile} with:
+ * <pre>
+ * mvn dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main CalculatorBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculatorBenchmark {
+
+    @Param({"1000", "100000"})
+    private int rows;
+
+    @Param({"multiply", "divide"})
+    private String operation;
+
+    private final CalculatorService calculatorService = new CalculatorService();
+    private double[] a;
+    private double[] b;
+    private String[] operations;
+
+    @Setup
+    public void setUp() {
+        // Both paths log once per call; keep the comparison about the arithmetic and result building
+        ((Logger) LoggerFactory.getLogger(CalculatorService.class)).setLevel(Level.WARN);
+
+        Random random = new Random(42);
+        a = new double[rows];
+        b = new double[rows];
+        operations = new String[rows];
+        String[] choices = {"add", "subtract", "multiply", "divide"};
+        for (int i = 0; i < rows; i++) {
+            a[i] = random.nextDouble() * 1000;
+            b[i] = 1 + random.nextDouble() * 100;
+            operations[i] = choices[i % choices.length];
+        }
+    }
+
+    @Benchmark
+    public void scalar(Blackhole blackhole) {
+        for (int i = 0; i < rows; i++) {
+            blackhole.consume(calculatorService.calculate(operation, a[i], b[i]));
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> bulk() {
+        return calculatorService.calculateBulk(operation, a, b);
+    }
+
+    @Benchmark
+    public Map<String, Object> bulkMixed() {
+        return calculatorService.calculateBulk(operations, a, b);
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.mcpserver.benchmark;
+
+import com.example.mcpserver.model.McpRequest;
+import com.example.mcpserver.service.QueryAnalyzer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares {@link QueryAnalyzer} with the regular expression scans {@code McpService} used before it,
+ * for a short conversation about each kind of query. Both work out the intent, merchant ID, operation
+ * and operands, and the legacy path also lowercases the query as its default response did.
+ *
+ * Run after {@code mvn test-compile} with:
+ * <pre>
+ * mvn dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main QueryAnalyzerBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryAnalyzerBenchmark {
+
+    @Param({"authorization", "math", "other"})
+    private String query;
+
+    private final QueryAnalyzer analyzer = QueryAnalyzer.standard();
+    private McpRequest request;
+
+    @Setup
+    public void setUp() {
+        String last;
+        switch (query) {
+            case "authorization":
+                last = "How can we improve our authorization rate? Our merchant ID is MRC12345";
+                break;
+            case "math":
+                last = "Quick one before that: what is 1250.75 * 12?";
+                break;
+            default:
+                last = "Thanks, that is all for today";
+                break;
+        }
+        request = new McpRequest();
+        request.setMessages(Arrays.asList(
+                message("system", "You are a payments assistant for PayPal merchants."),
+                message("assistant", "Hello! I can look at authorization rates or do some quick calculations for you."),
+                message("user", last)));
+    }
+
+    @Benchmark
+    public QueryAnalyzer.Analysis analyzer() {
+        return analyzer.analyze(request);
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        LegacyQueryParser.parse(request, blackhole);
+    }
+
+    private static McpRequest.Message message(String role, String content) {
+        McpRequest.Message message = new McpRequest.Message();
+        message.setRole(role);
+        message.setContent(content);
+        return message;
+    }
+
+    /**
+     * The query handling of McpService before QueryAnalyzer, without the tool calls
+     */
+    static final class LegacyQueryParser {
+
+        private static final Pattern AUTH_RATE_PATTERN = Pattern.compile(
+                "\\b(improv(e|ing)|increas(e|ing)|boost(ing)?|enhanc(e|ing))\\s+.{0,20}\\b(auth(orization)?|approval)\\s+.{0,10}\\b(rate|percentage|ratio)\\b",
+                Pattern.CASE_INSENSITIVE);
+
+        private static final Pattern MATH_PATTERN = Pattern.compile(
+                "\\b(calculat(e|or)|math|add|subtract|multiply|divide)\\b|\\b(\\d+)\\s*([+\\-*/×÷])\\s*(\\d+)\\b",
+                Pattern.CASE_INSENSITIVE);
+
+        static void parse(McpRequest request, Blackhole blackhole) {
+            String query = extractQuery(request);
+            if (matches(request, AUTH_RATE_PATTERN)) {
+                blackhole.consume(extractMerchantId(request));
+            } else if (matches(request, MATH_PATTERN)) {
+                math(extractQuery(request), blackhole);
+            } else {
+                boolean greeting = query.toLowerCase().contains("hello") || query.toLowerCase().contains("hi");
+                blackhole.consume(greeting || query.toLowerCase().contains("help"));
+            }
+        }
+
+        private static String extractQuery(McpRequest request) {
+            if (request.getQuery() != null && !request.getQuery().isEmpty()) {
+                return request.getQuery();
+            }
+            if (request.getMessages() != null && !request.getMessages().isEmpty()) {
+                for (McpRequest.Message message : request.getMessages()) {
+                    if ("user".equals(message.getRole()) && message.getContent() != null) {
+                        return message.getContent();
+                    }
+                }
+            }
+            return "No query provided";
+        }
+
+        private static boolean matches(McpRequest request, Pattern pattern) {
+            if (request.getQuery() != null && pattern.matcher(request.getQuery()).find()) {
+                return true;
+            }
+            if (request.getMessages() != null) {
+                for (McpRequest.Message message : request.getMessages()) {
+                    if ("user".equals(message.getRole()) && message.getContent() != null
+                            && pattern.matcher(message.getContent()).find()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static void math(String query, Blackhole blackhole) {
+            String operation = null;
+            if (query.toLowerCase().contains("add")) {
+                operation = "add";
+            } else if (query.toLowerCase().contains("subtract")) {
+                operation = "subtract";
+            } else if (query.toLowerCase().contains("multiply")) {
+                operation = "multiply";
+            } else if (query.toLowerCase().contains("divide")) {
+                operation = "divide";
+            }
+            Pattern expressionPattern = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*([+\\-*/×÷])\\s*(\\d+(?:\\.\\d+)?)");
+            Matcher matcher = expressionPattern.matcher(query);
+            if (matcher.find()) {
+                blackhole.consume(Double.parseDouble(matcher.group(1)));
+                blackhole.consume(matcher.group(2));
+                blackhole.consume(Double.parseDouble(matcher.group(3)));
+                return;
+            }
+            blackhole.consume(operation);
+            List<Double> numbers = new ArrayList<>();
+            Matcher numberMatcher = Pattern.compile("\\d+(?:\\.\\d+)?").matcher(query);
+            while (numberMatcher.find()) {
+                numbers.add(Double.parseDouble(numberMatcher.group()));
+            }
+            blackhole.consume(numbers);
+        }
+
+        private static String extractMerchantId(McpRequest request) {
+            Pattern merchantIdPattern = Pattern.compile("\\b(?:merchant|merch)\\s*(?:id|ID)?\\s*(?:is|:)?\\s*([A-Z0-9]{5,})",
+                    Pattern.CASE_INSENSITIVE);
+            if (request.getQuery() != null) {
+                Matcher matcher = merchantIdPattern.matcher(request.getQuery());
+                if (matcher.find()) {
+                    return matcher.group(1);
+                }
+            }
+            if (request.getMessages() != null) {
+                for (McpRequest.Message message : request.getMessages()) {
+                    if (message.getContent() != null) {
+                        Matcher matcher = merchantIdPattern.matcher(message.getContent());
+                        if (matcher.find()) {
+                            return matcher.group(1);
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -1,27 +1,42 @@
 package com.example.mcpserver.controller;
 
+import com.example.mcpserver.exception.McpException;
 import com.example.mcpserver.model.McpRequest;
 import com.example.mcpserver.model.McpResponse;
+import com.example.mcpserver.config.AdmissionControlInterceptor;
+import com.example.mcpserver.service.AdmissionControlService;
+import com.example.mcpserver.service.McpInspectorService;
 import com.example.mcpserver.service.McpService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(McpController.class)
+@Import({AdmissionControlService.class, AdmissionControlInterceptor.class})
 public class McpControllerTest {
 
     @Autowired
@@ -30,9 +45,15 @@ public class McpControllerTest {
     @MockBean
     private McpService mcpService;
 
+    @MockBean
+    private McpInspectorService mcpInspectorService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private AdmissionControlService admissionControlService;
+
     @Test
     public void healthCheckShouldReturnOk() throws Exception {
         mockMvc.perform(get("/api/v1/health"))
@@ -56,13 +77,49 @@ public class McpControllerTest {
                 .build();
 
         // Mock service
-        when(mcpService.processRequest(any(McpRequest.class))).thenReturn(response);
+        when(mcpService.processRequestAsync(any(McpRequest.class))).thenReturn(CompletableFuture.completedFuture(response));
 
         // Perform request and verify
-        mockMvc.perform(post("/api/v1/completions")
+        MvcResult result = mockMvc.perform(post("/api/v1/completions")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(request)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(content().json(objectMapper.writeValueAsString(response)));
     }
-} 
\ No newline at end of file
+
+    @Test
+    public void overloadedCompletionsShouldAskToRetryLater() throws Exception {
+        McpRequest request = new McpRequest();
+        request.setQuery("How can I improve my authorization rate? Merchant ID: M12345");
+        when(mcpService.processRequestAsync(any(McpRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(McpException.overloaded("Tool improveAuthorizationRate is overloaded")));
+
+        MvcResult result = mockMvc.perform(post("/api/v1/completions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+                .andExpect(jsonPath("$.code").value("OVERLOADED"));
+    }
+
+    @Test
+    public void requestNotAdmittedShouldAskToRetryLater() throws Exception {
+        Semaphore permits = (Semaphore) ReflectionTestUtils.getField(admissionControlService, "permits");
+        int held = permits.drainPermits();
+        try {
+            mockMvc.perform(post("/api/v1/completions")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"query\":\"Test query\"}"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+        } finally {
+            permits.release(held);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.mcpserver.jsonrpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class JsonRpcFrameDecoderTest {
+
+    @Test
+    public void shouldSplitNewlineDelimitedFrames() throws IOException {
+        List<String> frames = decode("{\"id\":\"1\"}\r\n\n   \n{\"id\":\"2\"}\n{\"id\":\"3\"}", 16, 1024, 3);
+
+        assertEquals(List.of("{\"id\":\"1\"}", "{\"id\":\"2\"}", "{\"id\":\"3\"}"), frames);
+    }
+
+    @Test
+    public void shouldReadContentLengthFrames() throws IOException {
+        String body = "{\"method\":\"a\nb\"}";
+        String input = "Content-Length: " + body.length() + "\r\nContent-Type: application/json\r\n\r\n" + body
+                + "content-length:2\n\n{}"
+                + "\n{\"id\":\"3\"}\n";
+
+        List<String> frames = decode(input, 8, 1024, 5);
+
+        assertEquals(List.of(body, "{}", "{\"id\":\"3\"}"), frames);
+    }
+
+    @Test
+    public void shouldDropOversizedFramesAndContinue() throws IOException {
+        String large = "{\"data\":\"" + "x".repeat(200) + "\"}";
+        String input = large + "\n{\"id\":\"1\"}\nContent-Length: 300\r\n\r\n" + "y".repeat(300) + "{\"id\":\"2\"}\n";
+
+        List<String> frames = decode(input, 16, 64, 7);
+
+        assertEquals(List.of("<too large: " + large.length() + ">", "{\"id\":\"1\"}", "<too large: 300>", "{\"id\":\"2\"}"),
+                frames);
+    }
+
+    @Test
+    public void oversizedHeaderBlockShouldBeDroppedWithItsBody() throws IOException {
+        // A JSON-looking line inside the header block must not be taken for a frame
+        String body = "{\"id\":\"body\"}";
+        String header = "Content-Length: " + body.length() + "\r\nX-Padding: " + "a".repeat(1100) + "\r\n"
+                + "{\"id\":\"header\"}\r\n\r\n";
+        String input = header + body + "\n{\"id\":\"1\"}\n";
+
+        List<String> frames = decode(input, 16, 4096, 7);
+
+        assertEquals(List.of("<too large: " + (header.length() + body.length()) + ">", "{\"id\":\"1\"}"), frames);
+    }
+
+    @Test
+    public void oversizedHeaderBlockWithoutALengthShouldEndTheStream() throws IOException {
+        String header = "Content-Length: many\r\nX-Padding: " + "a".repeat(1100) + "\r\n\r\n";
+        String input = header + "{\"id\":\"body\"}\n{\"id\":\"1\"}\n";
+
+        List<String> frames = decode(input, 16, 4096, 7);
+
+        assertEquals(List.of("<too large: " + header.length() + ">"), frames);
+    }
+
+    private static List<String> decode(String input, int initialBufferSize, int maxFrameSize, int chunkSize)
+            throws IOException {
+        JsonRpcFrameDecoder decoder = new JsonRpcFrameDecoder(initialBufferSize, maxFrameSize);
+        List<String> frames = new ArrayList<>();
+        JsonRpcFrameDecoder.FrameHandler handler = new JsonRpcFrameDecoder.FrameHandler() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length) {
+                frames.add(new String(buffer, offset, length, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void onFrameTooLarge(long length) {
+                frames.add("<too large: " + length + ">");
+            }
+        };
+
+        InputStream in = new ChunkedInputStream(input.getBytes(StandardCharsets.UTF_8), chunkSize);
+        while (decoder.readFrom(in, handler)) {
+            // keep reading until end of stream
+        }
+        return frames;
+    }
+
+    /**
+     * Returns at most a few bytes per read to exercise frames split across reads
+     */
+    private static class ChunkedInputStream extends ByteArrayInputStream {
+
+        private final int chunkSize;
+
+        ChunkedInputStream(byte[] data, int chunkSize) {
+            super(data);
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, chunkSize));
+        }
+    }
+}
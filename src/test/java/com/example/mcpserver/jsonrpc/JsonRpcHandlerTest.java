@@ -0,0 +1,219 @@
+package com.example.mcpserver.jsonrpc;
+
+import com.example.mcpserver.exception.McpException;
+import com.example.mcpserver.model.McpRequest;
+import com.example.mcpserver.model.McpResponse;
+import com.example.mcpserver.service.AdmissionControlService;
+import com.example.mcpserver.service.McpService;
+import com.example.mcpserver.service.MetricsService;
+import com.example.mcpserver.service.MetricsSubscriptionService;
+import com.example.mcpserver.service.RequestContext;
+import com.example.mcpserver.service.ToolExecutorService;
+import com.example.mcpserver.service.ToolListCache;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class JsonRpcHandlerTest {
+
+    @Mock
+    private McpService mcpService;
+
+    @Mock
+    private ToolExecutorService toolExecutorService;
+
+    @Mock
+    private ToolListCache toolListCache;
+
+    @Mock
+    private MetricsService metricsService;
+
+    @Mock
+    private AdmissionControlService admissionControlService;
+
+    @Mock
+    private MetricsSubscriptionService metricsSubscriptionService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private JsonRpcHandler jsonRpcHandler;
+
+    @BeforeEach
+    public void setUp() {
+        jsonRpcHandler = new JsonRpcHandler(mcpService, toolExecutorService, toolListCache,
+                metricsService, admissionControlService, metricsSubscriptionService, objectMapper);
+        ReflectionTestUtils.setField(jsonRpcHandler, "maxBatchSize", 3);
+        ReflectionTestUtils.setField(jsonRpcHandler, "batchParallelism", 2);
+        jsonRpcHandler.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jsonRpcHandler.shutdown();
+    }
+
+    @Test
+    public void batchShouldReturnOneResponsePerRequest() throws Exception {
+        when(toolExecutorService.executeToolAsync(eq("calculate"), any(JsonNode.class)))
+                .thenReturn(CompletableFuture.completedFuture(Map.of("result", 8.0)));
+
+        String response = jsonRpcHandler.handleRequest("["
+                + "{\"jsonrpc\":\"2.0\",\"method\":\"executeFunction\",\"params\":{\"function\":\"calculate\",\"arguments\":{\"operation\":\"add\",\"a\":5,\"b\":3}},\"id\":\"1\"},"
+                + "{\"jsonrpc\":\"2.0\",\"method\":\"unknown\",\"id\":\"2\"}]");
+
+        JsonNode responses = objectMapper.readTree(response);
+        assertTrue(responses.isArray());
+        assertEquals(2, responses.size());
+        assertEquals("1", responses.get(0).get("id").asText());
+        assertEquals(8.0, responses.get(0).get("result").get("result").asDouble());
+        assertEquals("2", responses.get(1).get("id").asText());
+        assertEquals(-32601, responses.get(1).get("error").get("code").asInt());
+    }
+
+    @Test
+    public void batchShouldOmitNotificationsAndReportInvalidMembers() throws Exception {
+        String response = jsonRpcHandler.handleRequest("["
+                + "{\"jsonrpc\":\"2.0\",\"method\":\"unknown\"},"
+                + "42,"
+                + "{\"jsonrpc\":\"2.0\",\"method\":\"unknown\",\"id\":\"3\"}]");
+
+        JsonNode responses = objectMapper.readTree(response);
+        assertEquals(2, responses.size());
+        assertEquals(-32600, responses.get(0).get("error").get("code").asInt());
+        assertEquals("3", responses.get(1).get("id").asText());
+    }
+
+    @Test
+    public void notificationsShouldNotBeAnswered() {
+        assertNull(jsonRpcHandler.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"unknown\"}"));
+        assertNull(jsonRpcHandler.handleRequest("[{\"jsonrpc\":\"2.0\",\"method\":\"unknown\"}]"));
+    }
+
+    @Test
+    public void emptyOrOversizedBatchShouldBeRejected() throws Exception {
+        JsonNode empty = objectMapper.readTree(jsonRpcHandler.handleRequest("[]"));
+        assertEquals(-32600, empty.get("error").get("code").asInt());
+
+        String request = "{\"jsonrpc\":\"2.0\",\"method\":\"unknown\",\"id\":\"1\"}";
+        JsonNode oversized = objectMapper.readTree(jsonRpcHandler.handleRequest(
+                "[" + request + "," + request + "," + request + "," + request + "]"));
+        assertEquals(-32600, oversized.get("error").get("code").asInt());
+    }
+
+    @Test
+    public void expiredDeadlineShouldBeReportedAsTimeout() throws Exception {
+        when(toolExecutorService.executeToolAsync(eq("calculate"), any(JsonNode.class))).thenAnswer(invocation -> {
+            try {
+                RequestContext.current().checkpoint();
+                return CompletableFuture.completedFuture(Map.of("result", 8.0));
+            } catch (McpException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        });
+
+        JsonNode response = objectMapper.readTree(jsonRpcHandler.handleRequest(
+                "{\"jsonrpc\":\"2.0\",\"method\":\"executeFunction\",\"params\":{\"function\":\"calculate\","
+                        + "\"arguments\":{\"operation\":\"add\",\"a\":5,\"b\":3},\"deadlineMs\":0},\"id\":\"1\"}"));
+
+        assertEquals("1", response.get("id").asText());
+        assertEquals(-32001, response.get("error").get("code").asInt());
+    }
+
+    @Test
+    public void completionsParamsShouldBindToMcpRequest() throws Exception {
+        when(mcpService.processRequestAsync(any(McpRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(McpResponse.builder().content("ok").build()));
+
+        JsonNode response = objectMapper.readTree(jsonRpcHandler.handleRequest(
+                "{\"jsonrpc\":\"2.0\",\"method\":\"completions\",\"id\":7,"
+                        + "\"params\":{\"query\":\"add 5 and 3\",\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}],"
+                        + "\"deadlineMs\":60000}}"));
+
+        ArgumentCaptor<McpRequest> captor = ArgumentCaptor.forClass(McpRequest.class);
+        verify(mcpService).processRequestAsync(captor.capture());
+        assertEquals("add 5 and 3", captor.getValue().getQuery());
+        assertEquals("hi", captor.getValue().getMessages().get(0).getContent());
+        assertEquals("7", response.get("id").asText());
+        assertEquals("ok", response.get("result").get("content").asText());
+    }
+
+    @Test
+    public void completionsShouldNotHoldTheCallingThreadWhileAToolRuns() throws Exception {
+        CompletableFuture<McpResponse> result = new CompletableFuture<>();
+        when(mcpService.processRequestAsync(any(McpRequest.class))).thenReturn(result);
+        byte[] request = "{\"jsonrpc\":\"2.0\",\"method\":\"completions\",\"id\":8,\"params\":{\"query\":\"add 5 and 3\"}}"
+                .getBytes(StandardCharsets.UTF_8);
+
+        CompletableFuture<?> response = jsonRpcHandler.handleAsync(jsonRpcHandler.parse(request, 0, request.length));
+        assertEquals(false, response.isDone());
+        result.complete(McpResponse.builder().content("8").build());
+
+        assertEquals("8", ((McpResponse) ((JsonRpcResponse) response.get()).getResult()).getContent());
+
+        // Giving up on the response abandons the tool execution
+        CompletableFuture<McpResponse> abandoned = new CompletableFuture<>();
+        when(mcpService.processRequestAsync(any(McpRequest.class))).thenReturn(abandoned);
+        jsonRpcHandler.handleAsync(jsonRpcHandler.parse(request, 0, request.length)).cancel(true);
+        assertTrue(abandoned.isCancelled());
+    }
+
+    @Test
+    public void subscribeShouldNeedAConnection() throws Exception {
+        JsonNode response = objectMapper.readTree(jsonRpcHandler.handleRequest(
+                "{\"jsonrpc\":\"2.0\",\"method\":\"subscribe\",\"params\":{\"merchantId\":\"M1\"},\"id\":1}"));
+
+        assertEquals(-32600, response.get("error").get("code").asInt());
+    }
+
+    @Test
+    public void subscribeShouldPassParamsToTheService() throws Exception {
+        MetricsSubscriptionService.Subscriber subscriber = new MetricsSubscriptionService.Subscriber("test", params -> { });
+        when(metricsSubscriptionService.subscribe(subscriber, "M1", "last_7_days", null, 1.5, null))
+                .thenReturn(Map.of("subscriptionId", "sub-1"));
+        byte[] request = ("{\"jsonrpc\":\"2.0\",\"method\":\"subscribe\",\"id\":2,"
+                + "\"params\":{\"merchantId\":\"M1\",\"timeframe\":\"last_7_days\",\"threshold\":1.5}}")
+                .getBytes(StandardCharsets.UTF_8);
+
+        JsonRpcResponse response = (JsonRpcResponse) jsonRpcHandler.handle(
+                jsonRpcHandler.parse(request, 0, request.length), subscriber);
+
+        assertEquals("2", response.getId());
+        assertEquals(Map.of("subscriptionId", "sub-1"), response.getResult());
+    }
+
+    @Test
+    public void subscribeShouldRejectOptionsOfTheWrongType() throws Exception {
+        MetricsSubscriptionService.Subscriber subscriber = new MetricsSubscriptionService.Subscriber("test", params -> { });
+        for (String options : new String[] {"\"threshold\":\"5\"", "\"minIntervalSeconds\":2.5"}) {
+            byte[] request = ("{\"jsonrpc\":\"2.0\",\"method\":\"subscribe\",\"id\":3,"
+                    + "\"params\":{\"merchantId\":\"M1\"," + options + "}}").getBytes(StandardCharsets.UTF_8);
+
+            JsonRpcResponse response = (JsonRpcResponse) jsonRpcHandler.handle(
+                    jsonRpcHandler.parse(request, 0, request.length), subscriber);
+
+            assertEquals(-32602, response.getError().getCode(), options);
+        }
+        verifyNoInteractions(metricsSubscriptionService);
+    }
+}
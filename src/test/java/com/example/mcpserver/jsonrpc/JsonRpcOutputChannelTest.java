@@ -0,0 +1,156 @@
+package com.example.mcpserver.jsonrpc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JsonRpcOutputChannelTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void responsesQueuedWhileDrainingShouldShareOneWrite() throws Exception {
+        RecordingChannel channel = new RecordingChannel(0);
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        JsonRpcOutputChannel output = new JsonRpcOutputChannel(channel, objectMapper.writer(), tasks::add, 1 << 20);
+
+        for (int i = 0; i < 3; i++) {
+            output.send(JsonRpcResponse.success(String.valueOf(i), i));
+        }
+        // Only the first send starts a drain task
+        assertEquals(1, tasks.size());
+        tasks.poll().run();
+        output.close();
+
+        assertEquals(1, channel.writes.size());
+        String[] lines = channel.writes.get(0).split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("2", objectMapper.readTree(lines[2]).get("id").asText());
+    }
+
+    @Test
+    public void flushThresholdShouldSplitWritesUnderLoad() {
+        RecordingChannel channel = new RecordingChannel(0);
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        JsonRpcOutputChannel output = new JsonRpcOutputChannel(channel, objectMapper.writer(), tasks::add, 1);
+
+        for (int i = 0; i < 3; i++) {
+            output.send(JsonRpcResponse.success(String.valueOf(i), i));
+        }
+        tasks.poll().run();
+
+        assertEquals(3, channel.writes.size());
+    }
+
+    @Test
+    public void bufferShouldGrowToFitALargeResponse() throws Exception {
+        RecordingChannel channel = new RecordingChannel(0);
+        JsonRpcOutputChannel output = new JsonRpcOutputChannel(channel, objectMapper.writer(), Runnable::run, 1 << 20);
+        String large = "x".repeat(200 * 1024);
+
+        output.send(JsonRpcResponse.success("1", Map.of("text", large)));
+        assertTrue(bufferCapacity(output) > 200 * 1024);
+        output.send(JsonRpcResponse.success("2", "small"));
+        output.close();
+
+        String[] lines = String.join("", channel.writes).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(large, objectMapper.readTree(lines[0]).get("result").get("text").asText());
+        assertEquals("small", objectMapper.readTree(lines[1]).get("result").asText());
+    }
+
+    @Test
+    public void bufferShouldShrinkOnceOutputIsSmallAgain() {
+        RecordingChannel channel = new RecordingChannel(0);
+        JsonRpcOutputChannel output = new JsonRpcOutputChannel(channel, objectMapper.writer(), Runnable::run, 1 << 20);
+        int initial = bufferCapacity(output);
+
+        output.send(JsonRpcResponse.success("1", "x".repeat(1 << 20)));
+        int grown = bufferCapacity(output);
+        output.send(JsonRpcResponse.success("2", "x".repeat(1 << 20)));
+        // Kept while responses stay large
+        assertEquals(grown, bufferCapacity(output));
+
+        output.send(JsonRpcResponse.success("3", "small"));
+        output.close();
+        assertEquals(initial, bufferCapacity(output));
+        assertEquals(3, channel.writes.size());
+    }
+
+    private static int bufferCapacity(JsonRpcOutputChannel output) {
+        Object buffer = ReflectionTestUtils.getField(output, "buffer");
+        return (int) ReflectionTestUtils.invokeMethod(buffer, "capacity");
+    }
+
+    @Test
+    public void shortStallShouldBeWaitedOut() {
+        RecordingChannel channel = new RecordingChannel(100);
+        JsonRpcOutputChannel output = new JsonRpcOutputChannel(channel, objectMapper.writer(), Runnable::run, 1 << 20, 5000);
+
+        output.send(JsonRpcResponse.success("1", "ok"));
+        output.close();
+
+        assertEquals(1, channel.writes.size());
+    }
+
+    @Test
+    public void channelStalledPastTheWriteTimeoutShouldBeGivenUp() {
+        RecordingChannel channel = new RecordingChannel(Integer.MAX_VALUE);
+        JsonRpcOutputChannel output = new JsonRpcOutputChannel(channel, objectMapper.writer(), Runnable::run, 1 << 20, 200);
+
+        output.send(JsonRpcResponse.success("1", "ok"));
+        int attempts = channel.attempts;
+        output.send(JsonRpcResponse.success("2", "ok"));
+        // Returns straight away rather than waiting for output that will never be written
+        output.close();
+
+        assertEquals(0, channel.writes.size());
+        assertEquals(attempts, channel.attempts);
+    }
+
+    /**
+     * Records each write, after accepting nothing for the given number of attempts
+     */
+    private static class RecordingChannel implements WritableByteChannel {
+
+        final List<String> writes = new ArrayList<>();
+        final int stalls;
+        int attempts;
+
+        RecordingChannel(int stalls) {
+            this.stalls = stalls;
+        }
+
+        @Override
+        public int write(ByteBuffer source) {
+            if (attempts++ < stalls) {
+                return 0;
+            }
+            byte[] bytes = new byte[source.remaining()];
+            source.get(bytes);
+            writes.add(new String(bytes, StandardCharsets.UTF_8));
+            return bytes.length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.example.mcpserver.jsonrpc;
+
+import com.example.mcpserver.service.AdmissionControlService;
+import com.example.mcpserver.service.McpService;
+import com.example.mcpserver.service.MetricsService;
+import com.example.mcpserver.service.MetricsSubscriptionService;
+import com.example.mcpserver.service.ToolExecutorService;
+import com.example.mcpserver.service.ToolListCache;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class JsonRpcPipelineTest {
+
+    @Mock
+    private McpService mcpService;
+
+    @Mock
+    private ToolExecutorService toolExecutorService;
+
+    @Mock
+    private ToolListCache toolListCache;
+
+    @Mock
+    private MetricsService metricsService;
+
+    @Mock
+    private MetricsSubscriptionService metricsSubscriptionService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+    // The result of each tool execution, completed by the tests
+    private final Map<String, CompletableFuture<Object>> results = new ConcurrentHashMap<>();
+
+    private AdmissionControlService admissionControlService;
+    private JsonRpcHandler jsonRpcHandler;
+    private JsonRpcOutputChannel output;
+
+    @BeforeEach
+    public void setUp() {
+        admissionControlService = new AdmissionControlService();
+        ReflectionTestUtils.setField(admissionControlService, "maxInFlight", 1);
+        ReflectionTestUtils.setField(admissionControlService, "maxQueued", 1);
+        ReflectionTestUtils.setField(admissionControlService, "queueTimeoutMs", 10000L);
+        ReflectionTestUtils.setField(admissionControlService, "retryAfterSeconds", 2);
+        admissionControlService.init();
+        jsonRpcHandler = new JsonRpcHandler(mcpService, toolExecutorService, toolListCache,
+                metricsService, admissionControlService, metricsSubscriptionService, objectMapper);
+        ReflectionTestUtils.setField(jsonRpcHandler, "maxBatchSize", 3);
+        ReflectionTestUtils.setField(jsonRpcHandler, "batchParallelism", 2);
+        jsonRpcHandler.init();
+        output = new JsonRpcOutputChannel(Channels.newChannel(written), objectMapper.writer(), Runnable::run, 1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jsonRpcHandler.shutdown();
+    }
+
+    @Test
+    public void requestBeyondTheAdmissionQueueShouldBeAnsweredAsOverloaded() throws Exception {
+        ReflectionTestUtils.setField(admissionControlService, "maxQueued", 0);
+        // Every admission slot is taken
+        admissionControlService.tryAcquire();
+        JsonRpcPipeline pipeline = new JsonRpcPipeline(jsonRpcHandler, output, admissionControlService, "test", 2, 4, false);
+
+        pipeline.submit(message("{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"getMetrics\"}"));
+        pipeline.close();
+
+        JsonNode response = objectMapper.readTree(lines(1).get(0));
+        assertEquals("1", response.get("id").asText());
+        assertEquals(-32000, response.get("error").get("code").asInt());
+        assertEquals(2, response.get("error").get("data").get("retryAfterSeconds").asInt());
+    }
+
+    @Test
+    public void cancellationShouldReachARequestWaitingForAdmission() throws Exception {
+        admissionControlService.tryAcquire();
+        JsonRpcPipeline pipeline = new JsonRpcPipeline(jsonRpcHandler, output, admissionControlService, "test", 2, 4, false);
+
+        long start = System.nanoTime();
+        // Waits for an admission slot on a worker rather than on the reader
+        pipeline.submit(message("{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"getMetrics\"}"));
+        pipeline.submit(message("{\"jsonrpc\":\"2.0\",\"method\":\"$/cancelRequest\",\"params\":{\"id\":\"1\"}}"));
+
+        JsonNode response = objectMapper.readTree(lines(1).get(0));
+        assertEquals(-32800, response.get("error").get("code").asInt());
+        assertEquals(true, System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        pipeline.close();
+
+        // The cancelled request never took a slot, so the one held here is the only one in use
+        assertEquals(1, admissionControlService.getMetrics().get("inFlight"));
+        admissionControlService.release();
+        assertEquals(0, admissionControlService.getMetrics().get("inFlight"));
+    }
+
+    @Test
+    public void responsesShouldBeWrittenAsTheyComplete() throws Exception {
+        stubTools();
+        ReflectionTestUtils.setField(admissionControlService, "maxInFlight", 4);
+        admissionControlService.init();
+        JsonRpcPipeline pipeline = new JsonRpcPipeline(jsonRpcHandler, output, admissionControlService, "test", 2, 4, false);
+
+        pipeline.submit(execute("1", "a"));
+        pipeline.submit(execute("2", "b"));
+        awaitExecution("b").complete("second");
+        assertEquals("2", objectMapper.readTree(lines(1).get(0)).get("id").asText());
+        awaitExecution("a").complete("first");
+        pipeline.close();
+
+        List<String> lines = lines(2);
+        assertEquals(2, lines.size());
+        assertEquals("first", objectMapper.readTree(lines.get(1)).get("result").asText());
+    }
+
+    @Test
+    public void strictOrderingShouldHoldResponsesBackUntilEarlierOnesAreWritten() throws Exception {
+        stubTools();
+        ReflectionTestUtils.setField(admissionControlService, "maxInFlight", 4);
+        admissionControlService.init();
+        JsonRpcPipeline pipeline = new JsonRpcPipeline(jsonRpcHandler, output, admissionControlService, "test", 2, 4, true);
+
+        pipeline.submit(execute("1", "a"));
+        pipeline.submit(execute("2", "b"));
+        pipeline.submit(message("{\"jsonrpc\":\"2.0\",\"method\":\"getMetrics\"}"));
+        awaitExecution("b").complete("second");
+        Thread.sleep(100);
+        assertEquals(0, written.size());
+
+        awaitExecution("a").complete("first");
+        pipeline.close();
+
+        // The notification holds its place but writes nothing
+        List<String> lines = lines(2);
+        assertEquals(2, lines.size());
+        assertEquals("1", objectMapper.readTree(lines.get(0)).get("id").asText());
+        assertEquals("2", objectMapper.readTree(lines.get(1)).get("id").asText());
+    }
+
+    @Test
+    public void submitShouldBlockWhileMaxInFlightRequestsAreOutstanding() throws Exception {
+        stubTools();
+        ReflectionTestUtils.setField(admissionControlService, "maxInFlight", 4);
+        admissionControlService.init();
+        JsonRpcPipeline pipeline = new JsonRpcPipeline(jsonRpcHandler, output, admissionControlService, "test", 2, 1, false);
+
+        pipeline.submit(execute("1", "a"));
+        CompletableFuture<Void> second = CompletableFuture.runAsync(() -> {
+            try {
+                pipeline.submit(execute("2", "b"));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(second.isDone());
+
+        awaitExecution("a").complete("first");
+        second.get(5, TimeUnit.SECONDS);
+        awaitExecution("b").complete("second");
+        pipeline.close();
+        assertEquals(2, lines(2).size());
+    }
+
+    @Test
+    public void cancellationRacingCompletionShouldAnswerEachRequestOnce() throws Exception {
+        stubTools();
+        JsonRpcPipeline pipeline = new JsonRpcPipeline(jsonRpcHandler, output, admissionControlService, "test", 2, 4, true);
+        int requests = 50;
+
+        for (int i = 0; i < requests; i++) {
+            String id = String.valueOf(i);
+            pipeline.submit(execute(id, "f" + i));
+            CompletableFuture<Object> result = awaitExecution("f" + i);
+            CompletableFuture<Boolean> completing = CompletableFuture.supplyAsync(() -> result.complete("done"));
+            pipeline.cancel(id);
+            completing.get(5, TimeUnit.SECONDS);
+        }
+        // Only returns once every in-flight slot has been given back
+        pipeline.close();
+
+        Set<String> ids = new HashSet<>();
+        for (String line : lines(requests)) {
+            JsonNode response = objectMapper.readTree(line);
+            assertTrue(ids.add(response.get("id").asText()), line);
+            assertTrue(response.has("result") || response.get("error").get("code").asInt() == -32800, line);
+        }
+        assertEquals(requests, ids.size());
+        assertEquals(0, admissionControlService.getMetrics().get("inFlight"));
+    }
+
+    @Test
+    public void workCompletingAfterItsDeadlineShouldNotBeAnsweredAgain() throws Exception {
+        stubTools();
+        JsonRpcPipeline pipeline = new JsonRpcPipeline(jsonRpcHandler, output, admissionControlService, "test", 2, 4, false);
+
+        pipeline.submit(message("{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"executeFunction\","
+                + "\"params\":{\"function\":\"a\",\"arguments\":{},\"deadlineMs\":50}}"));
+        CompletableFuture<Object> result = awaitExecution("a");
+        assertEquals(-32001, objectMapper.readTree(lines(1).get(0)).get("error").get("code").asInt());
+        result.complete("late");
+        pipeline.close();
+
+        assertEquals(1, lines(1).size());
+        assertEquals(0, admissionControlService.getMetrics().get("inFlight"));
+    }
+
+    private void stubTools() {
+        when(toolExecutorService.executeToolAsync(anyString(), any()))
+                .thenAnswer(invocation -> results.computeIfAbsent(invocation.getArgument(0), name -> new CompletableFuture<>()));
+    }
+
+    private JsonRpcMessage execute(String id, String function) throws Exception {
+        return message("{\"jsonrpc\":\"2.0\",\"id\":\"" + id + "\",\"method\":\"executeFunction\","
+                + "\"params\":{\"function\":\"" + function + "\",\"arguments\":{}}}");
+    }
+
+    /**
+     * Waits for a tool execution to start
+     */
+    private CompletableFuture<Object> awaitExecution(String function) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!results.containsKey(function) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        return results.computeIfAbsent(function, name -> new CompletableFuture<>());
+    }
+
+    private JsonRpcMessage message(String json) throws Exception {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return jsonRpcHandler.parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Waits for at least the given number of lines to be written
+     */
+    private List<String> lines(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        List<String> lines = new ArrayList<>();
+        while (System.nanoTime() < deadline) {
+            lines.clear();
+            for (String line : written.toString(StandardCharsets.UTF_8).split("\n")) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+            if (lines.size() >= count) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+        return lines;
+    }
+}
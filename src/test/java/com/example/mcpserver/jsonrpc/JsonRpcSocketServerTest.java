@@ -0,0 +1,238 @@
+package com.example.mcpserver.jsonrpc;
+
+import com.example.mcpserver.service.AdmissionControlService;
+import com.example.mcpserver.service.McpService;
+import com.example.mcpserver.service.MetricsService;
+import com.example.mcpserver.service.MetricsSubscriptionService;
+import com.example.mcpserver.service.ToolExecutorService;
+import com.example.mcpserver.service.ToolListCache;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class JsonRpcSocketServerTest {
+
+    @Mock
+    private McpService mcpService;
+
+    @Mock
+    private ToolExecutorService toolExecutorService;
+
+    @Mock
+    private ToolListCache toolListCache;
+
+    @Mock
+    private MetricsService metricsService;
+
+    @Mock
+    private MetricsSubscriptionService metricsSubscriptionService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // The result of each tool execution, completed by the tests
+    private final Map<String, CompletableFuture<Object>> results = new ConcurrentHashMap<>();
+
+    private JsonRpcHandler jsonRpcHandler;
+    private JsonRpcSocketServer server;
+
+    @BeforeEach
+    public void setUp() {
+        AdmissionControlService admissionControlService = new AdmissionControlService();
+        ReflectionTestUtils.setField(admissionControlService, "maxInFlight", 64);
+        ReflectionTestUtils.setField(admissionControlService, "maxQueued", 64);
+        ReflectionTestUtils.setField(admissionControlService, "queueTimeoutMs", 500L);
+        ReflectionTestUtils.setField(admissionControlService, "retryAfterSeconds", 1);
+        admissionControlService.init();
+        jsonRpcHandler = new JsonRpcHandler(mcpService, toolExecutorService, toolListCache,
+                metricsService, admissionControlService, metricsSubscriptionService, objectMapper);
+        ReflectionTestUtils.setField(jsonRpcHandler, "maxBatchSize", 3);
+        ReflectionTestUtils.setField(jsonRpcHandler, "batchParallelism", 2);
+        jsonRpcHandler.init();
+
+        server = new JsonRpcSocketServer(jsonRpcHandler, admissionControlService, objectMapper);
+        ReflectionTestUtils.setField(server, "host", "127.0.0.1");
+        ReflectionTestUtils.setField(server, "port", 0);
+        ReflectionTestUtils.setField(server, "maxSessions", 8);
+        ReflectionTestUtils.setField(server, "workerThreads", 4);
+        ReflectionTestUtils.setField(server, "maxInFlight", 64);
+        ReflectionTestUtils.setField(server, "maxFrameSize", 1 << 20);
+        ReflectionTestUtils.setField(server, "flushThreshold", 65536);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop();
+        jsonRpcHandler.shutdown();
+    }
+
+    @Test
+    public void eachSessionShouldOnlyReceiveItsOwnResponses() throws Exception {
+        stubTools();
+        server.start();
+        Socket[] clients = new Socket[3];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = connect();
+            send(clients[i], execute("1", "f" + i));
+        }
+        for (int i = clients.length - 1; i >= 0; i--) {
+            awaitExecution("f" + i).complete("result-" + i);
+        }
+
+        for (int i = 0; i < clients.length; i++) {
+            JsonNode response = objectMapper.readTree(reader(clients[i]).readLine());
+            assertEquals("1", response.get("id").asText());
+            assertEquals("result-" + i, response.get("result").asText());
+            clients[i].close();
+        }
+        assertEquals(3L, server.getMetrics().get("acceptedSessions"));
+    }
+
+    @Test
+    public void readingShouldPauseWhileMaxInFlightMessagesAreWaiting() throws Exception {
+        stubTools();
+        ReflectionTestUtils.setField(server, "maxInFlight", 2);
+        server.start();
+        int requests = 10;
+        try (Socket client = connect()) {
+            StringBuilder lines = new StringBuilder();
+            for (int i = 0; i < requests; i++) {
+                lines.append(execute(String.valueOf(i), "f" + i));
+            }
+            send(client, lines.toString());
+
+            // Two requests run; the rest wait in the session's inbox with reading paused
+            awaitExecution("f0");
+            awaitExecution("f1");
+            AtomicBoolean paused = (AtomicBoolean) ReflectionTestUtils.getField(onlySession(), "paused");
+            assertTrue(paused.get());
+            assertEquals(2, results.size());
+
+            for (int i = 0; i < requests; i++) {
+                awaitExecution("f" + i).complete(i);
+            }
+            BufferedReader reader = reader(client);
+            for (int i = 0; i < requests; i++) {
+                assertTrue(objectMapper.readTree(reader.readLine()).has("result"));
+            }
+            assertEquals(false, paused.get());
+        }
+    }
+
+    @Test
+    public void cancellationReadWithItsRequestShouldStopTheRequestRunning() throws Exception {
+        server.start();
+        try (Socket client = connect()) {
+            // The cancel is handled while the request is still waiting in the session's inbox
+            send(client, execute("1", "f1")
+                    + "{\"jsonrpc\":\"2.0\",\"method\":\"$/cancelRequest\",\"params\":{\"id\":\"1\"}}\n");
+
+            JsonNode response = objectMapper.readTree(reader(client).readLine());
+            assertEquals("1", response.get("id").asText());
+            assertEquals(-32800, response.get("error").get("code").asInt());
+        }
+        verify(toolExecutorService, never()).executeToolAsync(anyString(), any());
+    }
+
+    @Test
+    public void closingASessionShouldEndItsSubscriptions() throws Exception {
+        ArgumentCaptor<MetricsSubscriptionService.Subscriber> subscriber =
+                ArgumentCaptor.forClass(MetricsSubscriptionService.Subscriber.class);
+        when(metricsSubscriptionService.subscribe(subscriber.capture(), eq("M1"), isNull(), isNull(), isNull(), isNull()))
+                .thenReturn(Map.of("subscriptionId", "sub-1"));
+        server.start();
+
+        try (Socket client = connect()) {
+            send(client, "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"subscribe\",\"params\":{\"merchantId\":\"M1\"}}\n");
+            JsonNode response = objectMapper.readTree(reader(client).readLine());
+            assertEquals("sub-1", response.get("result").get("subscriptionId").asText());
+        }
+
+        ArgumentCaptor<MetricsSubscriptionService.Subscriber> closed =
+                ArgumentCaptor.forClass(MetricsSubscriptionService.Subscriber.class);
+        verify(metricsSubscriptionService, timeout(5000)).close(closed.capture());
+        assertSame(subscriber.getValue(), closed.getValue());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!server.getMetrics().get("activeSessions").equals(0) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, server.getMetrics().get("activeSessions"));
+    }
+
+    private void stubTools() {
+        when(toolExecutorService.executeToolAsync(anyString(), any()))
+                .thenAnswer(invocation -> results.computeIfAbsent(invocation.getArgument(0), name -> new CompletableFuture<>()));
+    }
+
+    private Socket connect() throws IOException {
+        ServerSocketChannel channel = (ServerSocketChannel) ReflectionTestUtils.getField(server, "serverChannel");
+        Socket socket = new Socket();
+        socket.connect(channel.getLocalAddress());
+        socket.setSoTimeout(10000);
+        return socket;
+    }
+
+    private Object onlySession() {
+        Set<?> sessions = (Set<?>) ReflectionTestUtils.getField(server, "sessions");
+        assertEquals(1, sessions.size());
+        return sessions.iterator().next();
+    }
+
+    private static void send(Socket socket, String lines) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(lines.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static String execute(String id, String function) {
+        return "{\"jsonrpc\":\"2.0\",\"id\":\"" + id + "\",\"method\":\"executeFunction\","
+                + "\"params\":{\"function\":\"" + function + "\",\"arguments\":{}}}\n";
+    }
+
+    /**
+     * Waits for a tool execution to start
+     */
+    private CompletableFuture<Object> awaitExecution(String function) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!results.containsKey(function) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        return results.computeIfAbsent(function, name -> new CompletableFuture<>());
+    }
+}
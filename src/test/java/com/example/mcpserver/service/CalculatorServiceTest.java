@@ -0,0 +1,42 @@
+package com.example.mcpserver.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class CalculatorServiceTest {
+
+    private final CalculatorService calculatorService = new CalculatorService();
+
+    @Test
+    public void bulkShouldMatchScalarResultsAndReportDivisionByZero() {
+        double[] a = {10, 7.5, -3, 4};
+        double[] b = {2, 0, 0.5, 0};
+
+        Map<String, Object> divided = calculatorService.calculateBulk("divide", a, b);
+        double[] results = (double[]) divided.get("results");
+        assertEquals(5.0, results[0]);
+        assertEquals(-6.0, results[2]);
+        assertEquals(Double.NaN, results[1]);
+        assertArrayEquals(new int[]{1, 3}, (int[]) divided.get("divisionByZeroRows"));
+
+        Map<String, Object> mixed = calculatorService.calculateBulk(
+                new String[]{"add", "divide", "multiply", "subtract"}, a, b);
+        double[] expected = new double[a.length];
+        String[] operations = {"add", "divide", "multiply", "subtract"};
+        for (int i = 0; i < a.length; i++) {
+            if (i != 1) {
+                expected[i] = (double) calculatorService.calculate(operations[i], a[i], b[i]).get("result");
+            }
+        }
+        expected[1] = Double.NaN;
+        assertArrayEquals(expected, (double[]) mixed.get("results"));
+        assertArrayEquals(new int[]{1}, (int[]) mixed.get("divisionByZeroRows"));
+
+        assertFalse(calculatorService.calculateBulk("add", a, b).containsKey("divisionByZeroRows"));
+    }
+}
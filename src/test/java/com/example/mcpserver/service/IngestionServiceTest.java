@@ -0,0 +1,96 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.analytics.TransactionBatch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+public class IngestionServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<String> merchants = new ArrayList<>();
+    private IngestionService ingestionService;
+
+    @BeforeEach
+    public void setUp() {
+        TransactionDataService transactionDataService = Mockito.mock(TransactionDataService.class);
+        doAnswer(invocation -> {
+            TransactionBatch batch = invocation.getArgument(0);
+            synchronized (merchants) {
+                for (int i = 0; i < batch.size(); i++) {
+                    merchants.add(batch.merchantId(i));
+                }
+            }
+            return null;
+        }).when(transactionDataService).ingest(any(TransactionBatch.class));
+        ingestionService = new IngestionService(transactionDataService);
+        ReflectionTestUtils.setField(ingestionService, "batchSize", 16);
+        ReflectionTestUtils.setField(ingestionService, "batchMillis", 10L);
+        ReflectionTestUtils.setField(ingestionService, "queueCapacity", 4);
+        ReflectionTestUtils.setField(ingestionService, "pollMillis", 10L);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ingestionService.stop();
+    }
+
+    @Test
+    public void malformedJsonLineShouldBeSkippedWithoutReadingTheFileAgain() throws Exception {
+        Path file = directory.resolve("live.jsonl");
+        Files.write(file, (event("m1") + event("m2") + "{\"merchantId\": oops\n" + event("m3"))
+                .getBytes(StandardCharsets.UTF_8));
+        ReflectionTestUtils.setField(ingestionService, "ingestPaths", file.toString());
+        ingestionService.start();
+
+        awaitEvents(3);
+        Files.write(file, ("[1, 2\n" + event("m4")).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        awaitEvents(4);
+        // Several poll intervals, in which a reopened file would be loaded again
+        Thread.sleep(200);
+
+        synchronized (merchants) {
+            assertEquals(List.of("m1", "m2", "m3", "m4"), merchants);
+        }
+        Map<String, Object> metrics = ingestionService.getMetrics();
+        assertEquals(4L, metrics.get("events"));
+        assertEquals(2L, metrics.get("skippedRows"));
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> perSource = (List<Map<String, Object>>) metrics.get("perSource");
+        assertEquals(1L, perSource.get(0).get("opens"));
+    }
+
+    private static String event(String merchantId) {
+        return "{\"timestamp\":1700000000000,\"merchantId\":\"" + merchantId + "\",\"type\":\"card\",\"approved\":true}\n";
+    }
+
+    private void awaitEvents(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            synchronized (merchants) {
+                if (merchants.size() >= count) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.analytics.AuthorizationMetrics;
+import com.example.mcpserver.analytics.DailyAggregates;
+import com.example.mcpserver.analytics.DeclineReason;
+import com.example.mcpserver.analytics.Timeframe;
+import com.example.mcpserver.analytics.TransactionBatch;
+import com.example.mcpserver.analytics.TransactionSink;
+import com.example.mcpserver.analytics.TransactionType;
+import com.example.mcpserver.exception.McpException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MetricsSubscriptionServiceTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long FIRST_DAY = 20000;
+
+    private final DailyAggregates aggregates = new DailyAggregates();
+    private TransactionSink changeTracker;
+    private MetricsSubscriptionService service;
+
+    @BeforeEach
+    public void setUp() {
+        // The daily aggregates are real; the data service only hands them out as it would after ingesting
+        TransactionDataService transactionDataService = Mockito.mock(TransactionDataService.class);
+        when(transactionDataService.getAggregates()).thenReturn(aggregates);
+        when(transactionDataService.metrics(anyString(), any(Timeframe.class), any())).thenAnswer(invocation -> {
+            Timeframe timeframe = invocation.getArgument(1);
+            TransactionType type = invocation.getArgument(2);
+            AuthorizationMetrics metrics = new AuthorizationMetrics();
+            aggregates.query(invocation.getArgument(0), timeframe.days(),
+                    type != null ? type.code() : DailyAggregates.ANY_TYPE, metrics);
+            return metrics;
+        });
+        service = new MetricsSubscriptionService(transactionDataService);
+        // Ticks are driven by the tests
+        ReflectionTestUtils.setField(service, "tickMillis", TimeUnit.HOURS.toMillis(1));
+        ReflectionTestUtils.setField(service, "maxPerConnection", 10);
+        ReflectionTestUtils.setField(service, "defaultThreshold", 0.5);
+        ReflectionTestUtils.setField(service, "defaultIntervalSeconds", 5);
+        service.init();
+        ArgumentCaptor<TransactionSink> sink = ArgumentCaptor.forClass(TransactionSink.class);
+        verify(transactionDataService).addLiveSink(sink.capture());
+        changeTracker = sink.getValue();
+
+        ingest(FIRST_DAY, "m1", 90, 10);
+        ingest(FIRST_DAY, "m2", 90, 10);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    public void smallMovesShouldAddUpUntilTheyCrossTheThreshold() {
+        List<Map<String, Object>> sent = new ArrayList<>();
+        MetricsSubscriptionService.Subscriber subscriber = new MetricsSubscriptionService.Subscriber("test", sent::add);
+        service.subscribe(subscriber, "m1", "last_7_days", null, 2.0, 0);
+        service.tick();
+
+        // 90% to 90.9%, then 91.7%: each under two points from the 90% last sent
+        ingest(FIRST_DAY, "m1", 10, 0);
+        service.tick();
+        ingest(FIRST_DAY, "m1", 10, 0);
+        service.tick();
+        assertEquals(0, sent.size());
+
+        // 92.3%
+        ingest(FIRST_DAY, "m1", 10, 0);
+        service.tick();
+        assertEquals(1, sent.size());
+        Map<String, Object> update = updates(sent.get(0)).get(0);
+        assertEquals(2.3, update.get("authorizationRateChange"));
+        assertEquals(30L, update.get("newTransactions"));
+
+        // Measured from the update just sent
+        ingest(FIRST_DAY, "m1", 10, 0);
+        service.tick();
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void updateShouldBeHeldBackForTheMinimumIntervalAndSendOnlyTheLatestMetrics() throws Exception {
+        List<Map<String, Object>> sent = new ArrayList<>();
+        MetricsSubscriptionService.Subscriber subscriber = new MetricsSubscriptionService.Subscriber("test", sent::add);
+        service.subscribe(subscriber, "m1", "last_7_days", null, 1.0, 1);
+
+        ingest(FIRST_DAY, "m1", 0, 10);
+        service.tick();
+        ingest(FIRST_DAY, "m1", 0, 10);
+        service.tick();
+        assertEquals(0, sent.size());
+
+        Thread.sleep(1100);
+        service.tick();
+        assertEquals(1, sent.size());
+        List<Map<String, Object>> updates = updates(sent.get(0));
+        assertEquals(1, updates.size());
+        assertEquals(20L, updates.get(0).get("newTransactions"));
+        assertEquals(1L, service.getMetrics().get("coalescedUpdates"));
+    }
+
+    @Test
+    public void updatesDueToOneClientShouldShareANotification() {
+        List<Map<String, Object>> sent = new ArrayList<>();
+        List<Map<String, Object>> otherSent = new ArrayList<>();
+        MetricsSubscriptionService.Subscriber subscriber = new MetricsSubscriptionService.Subscriber("test", sent::add);
+        MetricsSubscriptionService.Subscriber other = new MetricsSubscriptionService.Subscriber("other", otherSent::add);
+        service.subscribe(subscriber, "m1", "last_7_days", null, 1.0, 0);
+        service.subscribe(subscriber, "m2", "last_7_days", null, 1.0, 0);
+        service.subscribe(other, "m1", "last_7_days", null, 1.0, 0);
+        service.tick();
+        long evaluations = (Long) service.getMetrics().get("evaluations");
+
+        ingest(FIRST_DAY, "m1", 0, 10);
+        ingest(FIRST_DAY, "m2", 0, 10);
+        service.tick();
+
+        assertEquals(1, sent.size());
+        assertEquals(2, updates(sent.get(0)).size());
+        assertEquals(1, otherSent.size());
+        // m1 is computed once for both clients
+        assertEquals(evaluations + 2, service.getMetrics().get("evaluations"));
+    }
+
+    @Test
+    public void newDayShouldReevaluateMerchantsWithoutNewTransactions() {
+        List<Map<String, Object>> sent = new ArrayList<>();
+        MetricsSubscriptionService.Subscriber subscriber = new MetricsSubscriptionService.Subscriber("test", sent::add);
+        service.subscribe(subscriber, "m1", "last_7_days", null, 1.0, 0);
+        service.tick();
+
+        // Only another merchant trades, but m1's transactions fall out of its window
+        ingest(FIRST_DAY + 7, "m3", 1, 0);
+        service.tick();
+
+        assertEquals(1, sent.size());
+        Map<String, Object> update = updates(sent.get(0)).get(0);
+        assertEquals(-90.0, update.get("authorizationRateChange"));
+        assertEquals(-100L, update.get("newTransactions"));
+    }
+
+    @Test
+    public void closeShouldEndTheClientsSubscriptions() {
+        List<Map<String, Object>> sent = new ArrayList<>();
+        MetricsSubscriptionService.Subscriber subscriber = new MetricsSubscriptionService.Subscriber("test", sent::add);
+        service.subscribe(subscriber, "m1", "last_7_days", null, 1.0, 0);
+        service.subscribe(subscriber, "m2", "last_7_days", null, 1.0, 0);
+        service.tick();
+
+        service.close(subscriber);
+        ingest(FIRST_DAY, "m1", 0, 10);
+        service.tick();
+
+        assertTrue(sent.isEmpty());
+        assertEquals(0, service.getMetrics().get("activeSubscriptions"));
+        assertEquals(0, service.getMetrics().get("subscribedMerchants"));
+        assertThrows(McpException.class, () -> service.subscribe(subscriber, "m1", null, null, null, null));
+    }
+
+    /**
+     * Ingests a merchant's transactions on one day, as the data service does: aggregates first, then live sinks
+     */
+    private void ingest(long day, String merchantId, int approved, int declined) {
+        TransactionBatch batch = new TransactionBatch(approved + declined);
+        for (int i = 0; i < approved + declined; i++) {
+            batch.add(day * DAY + i, merchantId, TransactionType.CARD, i < approved,
+                    i < approved ? null : DeclineReason.INSUFFICIENT_FUNDS, 10, 0, 0);
+        }
+        batch.replay(aggregates);
+        changeTracker.append(batch);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> updates(Map<String, Object> params) {
+        return (List<Map<String, Object>>) params.get("updates");
+    }
+}
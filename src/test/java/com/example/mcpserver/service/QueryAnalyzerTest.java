@@ -0,0 +1,96 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.model.McpRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class QueryAnalyzerTest {
+
+    private final QueryAnalyzer analyzer = QueryAnalyzer.standard();
+
+    @Test
+    public void authorizationRateQueryShouldFindTheMerchantInAnyMessage() {
+        McpRequest request = new McpRequest();
+        request.setMessages(Arrays.asList(
+                message("user", "How can I IMPROVE my authorization rate?"),
+                message("assistant", "Sure, what is your merchant ID?"),
+                message("user", "merchant id: ABC12345")));
+
+        QueryAnalyzer.Analysis analysis = analyzer.analyze(request);
+
+        assertEquals(QueryAnalyzer.AUTHORIZATION_RATE, analysis.getIntent());
+        assertEquals("ABC12345", analysis.getMerchantId());
+        assertEquals("How can I IMPROVE my authorization rate?", analysis.getQuery());
+    }
+
+    @Test
+    public void authorizationWordsTooFarApartShouldNotMatch() {
+        QueryAnalyzer.Analysis analysis = analyze("improve the checkout flow so that authorization goes faster at a good rate");
+
+        assertNull(analysis.getIntent());
+    }
+
+    @Test
+    public void expressionShouldGiveOperationAndOperands() {
+        QueryAnalyzer.Analysis analysis = analyze("what is 12.5 × 4, then add one");
+
+        assertEquals(QueryAnalyzer.MATH, analysis.getIntent());
+        assertEquals("multiply", analysis.getOperation());
+        assertEquals(12.5, analysis.getA());
+        assertEquals(4.0, analysis.getB());
+    }
+
+    @Test
+    public void namedOperationShouldTakeTheFirstTwoNumbers() {
+        QueryAnalyzer.Analysis analysis = analyze("Subtract 3 from 10 for merchant 12345");
+
+        assertEquals(QueryAnalyzer.MATH, analysis.getIntent());
+        assertEquals("subtract", analysis.getOperation());
+        assertEquals(3.0, analysis.getA());
+        assertEquals(10.0, analysis.getB());
+        assertEquals("12345", analysis.getMerchantId());
+
+        QueryAnalyzer.Analysis single = analyze("divide 7");
+        assertEquals("divide", single.getOperation());
+        assertNull(single.getA());
+    }
+
+    @Test
+    public void keywordsShouldMatchWholeWordsOnly() {
+        assertEquals(QueryAnalyzer.GREETING, analyze("Hi there").getIntent());
+        assertEquals(QueryAnalyzer.HELP, analyze("can you help with this").getIntent());
+        assertNull(analyze("what is this address for").getIntent());
+    }
+
+    @Test
+    public void addedRuleShouldBeRecognized() {
+        QueryAnalyzer custom = new QueryAnalyzer(Collections.singletonList(new QueryAnalyzer.KeywordRule("refund", "refund", "chargeback")));
+        McpRequest request = new McpRequest();
+        request.setQuery("Why was this CHARGEBACK filed?");
+        request.setContext(Map.of("merchantId", "M42"));
+
+        QueryAnalyzer.Analysis analysis = custom.analyze(request);
+
+        assertEquals("refund", analysis.getIntent());
+        assertEquals("M42", analysis.getMerchantId());
+    }
+
+    private QueryAnalyzer.Analysis analyze(String query) {
+        McpRequest request = new McpRequest();
+        request.setQuery(query);
+        return analyzer.analyze(request);
+    }
+
+    private static McpRequest.Message message(String role, String content) {
+        McpRequest.Message message = new McpRequest.Message();
+        message.setRole(role);
+        message.setContent(content);
+        return message;
+    }
+}
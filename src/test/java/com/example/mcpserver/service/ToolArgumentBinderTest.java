@@ -0,0 +1,68 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.exception.McpException;
+import com.example.mcpserver.model.tool.AuthorizationRateTool;
+import com.example.mcpserver.model.tool.BulkCalculatorTool;
+import com.example.mcpserver.model.tool.CalculatorTool;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ToolArgumentBinderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void shouldBindTypedValuesAndApplyDefaults() throws Exception {
+        ToolArgumentBinder binder = ToolArgumentBinder.compile(AuthorizationRateTool.createDefault());
+
+        ToolArguments args = binder.bind(objectMapper.readTree("{\"merchantId\":\"M1\",\"unknown\":true}"));
+
+        assertEquals("M1", args.getString("merchantId"));
+        assertEquals("last_30_days", args.getString("timeframe"));
+        assertEquals("all", args.getString("transactionType"));
+
+        ToolArguments numbers = ToolArgumentBinder.compile(CalculatorTool.createDefault())
+                .bind(objectMapper.readTree("{\"operation\":\"add\",\"a\":5,\"b\":\"2.5\"}"));
+        assertEquals(5.0, numbers.getDouble("a"));
+        assertEquals(2.5, numbers.getDouble("b"));
+    }
+
+    @Test
+    public void shouldReportEveryInvalidArgument() throws Exception {
+        ToolArgumentBinder binder = ToolArgumentBinder.compile(CalculatorTool.createDefault());
+
+        McpException e = assertThrows(McpException.class,
+                () -> binder.bind(objectMapper.readTree("{\"operation\":\"modulo\",\"a\":\"x\"}")));
+
+        assertEquals("BAD_REQUEST", e.getErrorCode());
+        assertTrue(e.getMessage().contains("operation must be one of [add, subtract, multiply, divide]"), e.getMessage());
+        assertTrue(e.getMessage().contains("a must be a number"), e.getMessage());
+        assertTrue(e.getMessage().contains("b is required"), e.getMessage());
+    }
+
+    @Test
+    public void arraysWithDeclaredItemsShouldBindToTypedArrays() throws Exception {
+        ToolArgumentBinder binder = ToolArgumentBinder.compile(BulkCalculatorTool.createDefault());
+
+        ToolArguments args = binder.bind(objectMapper.readTree(
+                "{\"operations\":[\"add\",\"divide\"],\"a\":[1,\"2.5\"],\"b\":[3,4]}"));
+
+        assertArrayEquals(new String[] {"add", "divide"}, args.getStrings("operations"));
+        assertArrayEquals(new double[] {1, 2.5}, args.getDoubles("a"));
+        assertArrayEquals(new double[] {3, 4}, args.getDoubles("b"));
+        // Equal by content, so bound arrays still work as cache keys
+        assertEquals(args, binder.bind(objectMapper.readTree(
+                "{\"operations\":[\"add\",\"divide\"],\"a\":[1.0,2.5],\"b\":[\"3\",4]}")));
+
+        McpException e = assertThrows(McpException.class, () -> binder.bind(objectMapper.readTree(
+                "{\"operations\":[\"add\",\"modulo\"],\"a\":[1,null,\"x\"],\"b\":3}")));
+        assertTrue(e.getMessage().contains("operations[1] must be one of [add, subtract, multiply, divide]"), e.getMessage());
+        assertTrue(e.getMessage().contains("a[1] must be a number"), e.getMessage());
+        assertTrue(e.getMessage().contains("b must be an array"), e.getMessage());
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.exception.McpException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ToolBulkheadTest {
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final ToolBulkhead bulkhead = new ToolBulkhead("slow", 1, 1);
+
+    @AfterEach
+    public void tearDown() {
+        bulkhead.shutdown();
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void shouldRejectWhenFullAndInterruptCancelledExecutions() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<Object> running = bulkhead.submit(RequestContext.create(null), () -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        }, timer);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Object> queued = bulkhead.submit(RequestContext.create(null), () -> "queued", timer);
+
+        ExecutionException rejected = assertThrows(ExecutionException.class,
+                () -> bulkhead.submit(RequestContext.create(null), () -> "rejected", timer).get());
+        assertEquals("OVERLOADED", ((McpException) rejected.getCause()).getErrorCode());
+
+        running.cancel(true);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+
+        Map<String, Object> metrics = bulkhead.getMetrics();
+        assertEquals(1L, metrics.get("rejected"));
+    }
+
+    @Test
+    public void shouldFailWithDeadlineExceeded() {
+        CompletableFuture<Object> result = bulkhead.submit(RequestContext.create(50L), () -> {
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }, timer);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertEquals("DEADLINE_EXCEEDED", ((McpException) e.getCause()).getErrorCode());
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.model.tool.CalculatorTool;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ToolListCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void snapshotShouldBeReusedUntilToolListChanges() throws Exception {
+        ToolRegistry toolRegistry = new ToolRegistry();
+        toolRegistry.init();
+        ToolListCache cache = new ToolListCache(toolRegistry, objectMapper);
+
+        ToolListCache.Snapshot first = cache.getSnapshot();
+        assertSame(first, cache.getSnapshot());
+        assertEquals(6, objectMapper.readTree(first.getToolsJson()).size());
+
+        toolRegistry.registerTool(CalculatorTool.createDefault());
+        ToolListCache.Snapshot second = cache.getSnapshot();
+        assertNotEquals(first.getEtag(), second.getEtag());
+
+        // The raw capabilities value is embedded unchanged in the response envelope
+        JsonNode response = objectMapper.readTree(objectMapper.writeValueAsString(second.getCapabilities()));
+        assertEquals(7, response.get("tools").size());
+        assertEquals("1.0", response.get("protocol_version").asText());
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.mcpserver.service;
+
+import com.example.mcpserver.exception.McpException;
+import com.example.mcpserver.analytics.TransactionBatch;
+import com.example.mcpserver.model.tool.AuthorizationRateTool;
+import com.example.mcpserver.model.tool.CalculatorTool;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ToolResultCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldServeEquivalentArgumentsFromCacheButNotFailures() throws Exception {
+        ToolResultCache cache = new ToolResultCache(mock(TransactionDataService.class));
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        CalculatorTool tool = CalculatorTool.createDefault();
+        ToolArgumentBinder binder = ToolArgumentBinder.compile(tool);
+        AtomicInteger computations = new AtomicInteger();
+
+        ToolArguments first = binder.bind(objectMapper.readTree("{\"operation\":\"add\",\"a\":5,\"b\":2}"));
+        ToolArguments second = binder.bind(objectMapper.readTree("{\"b\":\"2.0\",\"a\":5.0,\"operation\":\"add\"}"));
+        assertNull(cache.getIfPresent(tool, first));
+        Object result = cache.computeIfAbsent(tool, first, () -> {
+            computations.incrementAndGet();
+            return Collections.singletonMap("result", 7.0);
+        });
+
+        assertSame(result, cache.getIfPresent(tool, second));
+        assertEquals(1, computations.get());
+
+        ToolArguments failing = binder.bind(objectMapper.readTree("{\"operation\":\"divide\",\"a\":1,\"b\":0}"));
+        for (int i = 0; i < 2; i++) {
+            assertNull(cache.getIfPresent(tool, failing));
+            assertThrows(McpException.class, () -> cache.computeIfAbsent(tool, failing, () -> {
+                computations.incrementAndGet();
+                throw McpException.badRequest("Division by zero");
+            }));
+        }
+        assertEquals(3, computations.get());
+
+        Map<String, Object> metrics = (Map<String, Object>) cache.getMetrics().get("calculate");
+        assertEquals(1L, metrics.get("hits"));
+        assertEquals(3L, metrics.get("misses"));
+    }
+
+    @Test
+    public void dataBackedResultShouldNotBeServedAfterIngest() throws Exception {
+        TransactionDataService transactionDataService = mock(TransactionDataService.class);
+        AtomicLong version = new AtomicLong();
+        when(transactionDataService.getSnapshotVersion()).thenAnswer(invocation -> version.get());
+        doAnswer(invocation -> version.incrementAndGet()).when(transactionDataService).ingest(any(TransactionBatch.class));
+        ToolResultCache cache = new ToolResultCache(transactionDataService);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        AuthorizationRateTool tool = AuthorizationRateTool.createDefault();
+        ToolArguments args = ToolArgumentBinder.compile(tool).bind(objectMapper.readTree("{\"merchantId\":\"m1\"}"));
+
+        Object before = cache.computeIfAbsent(tool, args, () -> Collections.singletonMap("authorizationRate", 0.9));
+        assertSame(before, cache.getIfPresent(tool, args));
+
+        transactionDataService.ingest(new TransactionBatch(1));
+
+        assertNull(cache.getIfPresent(tool, args));
+        Object after = cache.computeIfAbsent(tool, args, () -> Collections.singletonMap("authorizationRate", 0.8));
+        assertSame(after, cache.getIfPresent(tool, args));
+    }
+
+    @Test
+    public void concurrentMissesShouldShareOneComputationWithoutBlockingLookups() throws Exception {
+        ToolResultCache cache = new ToolResultCache(mock(TransactionDataService.class));
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        CalculatorTool tool = CalculatorTool.createDefault();
+        ToolArguments args = ToolArgumentBinder.compile(tool).bind(objectMapper.readTree("{\"operation\":\"add\",\"a\":1,\"b\":2}"));
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Object> leader = CompletableFuture.supplyAsync(() -> cache.computeIfAbsent(tool, args, () -> {
+            computations.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Collections.singletonMap("result", 3.0);
+        }));
+        started.await(10, TimeUnit.SECONDS);
+        CompletableFuture<Object> follower = CompletableFuture.supplyAsync(() -> cache.computeIfAbsent(tool, args, () -> {
+            computations.incrementAndGet();
+            return Collections.singletonMap("result", 3.0);
+        }));
+        // A result still being computed is a miss rather than a wait
+        assertNull(cache.getIfPresent(tool, args));
+        release.countDown();
+
+        assertSame(leader.get(10, TimeUnit.SECONDS), follower.get(10, TimeUnit.SECONDS));
+        assertEquals(1, computations.get());
+        assertSame(leader.get(), cache.getIfPresent(tool, args));
+    }
+}